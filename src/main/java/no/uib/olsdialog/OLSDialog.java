@@ -3,25 +3,39 @@ package no.uib.olsdialog;
 import no.uib.olsdialog.util.*;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
-import javax.swing.tree.DefaultMutableTreeNode;
-import javax.swing.tree.TreeNode;
-import javax.xml.rpc.ServiceException;
 import java.awt.*;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.rmi.RemoteException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.swing.table.DefaultTableColumnModel;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableColumn;
-import uk.ac.ebi.ols.soap.Query;
-import uk.ac.ebi.ols.soap.QueryService;
-import uk.ac.ebi.ols.soap.QueryServiceLocator;
 import uk.ac.ebi.ols.soap.model.DataHolder;
-import no.uib.jsparklines.extra.HtmlLinksRenderer;
+import no.uib.olsdialog.client.CachingOntologyClient;
+import no.uib.olsdialog.client.ChildrenCache;
+import no.uib.olsdialog.client.ConcurrentQueries;
+import no.uib.olsdialog.client.LocalOntology;
+import no.uib.olsdialog.client.LocalOntologyRouter;
+import no.uib.olsdialog.client.ModificationMassIndex;
+import no.uib.olsdialog.client.OntologyClient;
+import no.uib.olsdialog.client.OntologyNamesSnapshot;
+import no.uib.olsdialog.client.PooledOlsClient;
+import no.uib.olsdialog.client.RankedTermNames;
+import no.uib.olsdialog.client.TermLevels;
+import no.uib.olsdialog.client.TermNameIndex;
+import no.uib.olsdialog.client.TermStore;
 
 /**
  * A dialog for interacting with the Ontology Lookup Service OLS
@@ -66,19 +80,89 @@ public class OLSDialog extends javax.swing.JDialog {
      */
     private Map<String, String> preselectedNames2Ids;
     /**
-     * Counts the number of times the users has pressed a key on the keyboard in
-     * the search field.
+     * The ontologies in the ontology combo box, key: the name shown, value:
+     * the ontology label, followed by the accession number of the parent term
+     * for preselected parent terms. Used to recognize an ontology whose name
+     * changed.
      */
-    private int keyPressedCounter = 0;
+    private Map<String, String> ontologyItemIds = new HashMap<String, String>();
     /**
-     * The time to wait between keys typed before updating the search.
+     * Runs the lookups in the OLS in the background.
      */
-    private int waitingTime = 1000;
+    private final TaskPipeline taskPipeline = new TaskPipeline();
     /**
-     * The search is only performed if a certain amount of characters are
-     * inserted.
+     * Runs the term name searches, waiting for the user to stop typing before
+     * starting a search.
+     */
+    private final SearchScheduler termNameSearchScheduler = new SearchScheduler(taskPipeline);
+    /**
+     * Runs the term id searches.
+     */
+    private final TaskChannel termIdSearchChannel = taskPipeline.createChannel();
+    /**
+     * Runs the modification mass searches.
+     */
+    private final TaskChannel massSearchChannel = taskPipeline.createChannel();
+    /**
+     * Loads the root terms of the ontology to browse.
+     */
+    private final TaskChannel browseOntologyChannel = taskPipeline.createChannel();
+    /**
+     * Loads the meta data of the selected term, one channel per search type.
+     */
+    private final Map<Integer, TaskChannel> metaDataChannels = new HashMap<Integer, TaskChannel>();
+    /**
+     * The maximum time to wait for the term name and term id searches in the
+     * preselected ontologies, in seconds.
+     */
+    private static final int PRESELECTED_ONTOLOGY_SEARCH_TIMEOUT = 30;
+    /**
+     * The maximum time to wait for the term name search in each ontology
+     * when searching all ontologies, in seconds.
+     */
+    private static final int ONTOLOGY_SEARCH_TIMEOUT = 30;
+    /**
+     * The maximum number of concurrent term name searches when searching
+     * several ontologies.
+     */
+    private static final int TERM_NAME_SEARCH_PARALLELISM = PooledOlsClient.DEFAULT_POOL_SIZE;
+    /**
+     * The number of levels of children retrieved at once in the ontology
+     * browser, so that the terms shown are known to have children or not
+     * where the deeper level is available, e.g., in a local ontology.
+     */
+    private static final int TREE_BROWSER_LEVELS = 2;
+    /**
+     * The term name search is only sent to the OLS if a certain amount of
+     * characters are inserted. The local term name index is searched from the
+     * first character.
      */
     private final int MINIMUM_WORD_LENGTH = 3;
+    /**
+     * The maximum number of term name search results taken from the local
+     * term name index.
+     */
+    private static final int MAXIMUM_INDEXED_TERM_NAME_RESULTS = 100;
+    /**
+     * The maximum number of modification combinations shown in the mass
+     * search results table, the ones with the smallest mass errors.
+     */
+    private static final int MAXIMUM_MASS_COMBINATIONS = 500;
+    /**
+     * The number of term name search results shown at first and added each
+     * time the results table is scrolled to the end.
+     */
+    private static final int TERM_NAME_SEARCH_PAGE_SIZE = 100;
+    /**
+     * The results of the current term name search, ranked by relevance.
+     */
+    private RankedTermNames termNameSearchResults = new RankedTermNames("", null, TERM_NAME_SEARCH_PAGE_SIZE);
+    /**
+     * True if the term name search results are only the best matching terms
+     * of the local term name index, cut to MAXIMUM_INDEXED_TERM_NAME_RESULTS,
+     * and no complete search has followed.
+     */
+    private boolean termNameSearchResultsTruncated = false;
     /**
      * The default error message used when connecting to OLS fails.
      */
@@ -104,13 +188,41 @@ public class OLSDialog extends javax.swing.JDialog {
      */
     public static final Integer OLS_DIALOG_BROWSE_ONTOLOGY = 3;
     /**
-     * The OLS connection.
+     * The name of the file in the local data folder holding the cached terms.
+     */
+    private static final String TERM_STORE_FILE_NAME = "terms.dat";
+    /**
+     * The name of the sub folder of the local data folder holding the OBO
+     * files to import.
      */
-    private static Query olsConnection;
+    private static final String OBO_FOLDER_NAME = "obo";
+    /**
+     * The name of the file in the local data folder holding the ontology
+     * names.
+     */
+    private static final String ONTOLOGY_NAMES_FILE_NAME = "ontologies.properties";
+    /**
+     * The ontology names last retrieved from the OLS, shared by all dialogs.
+     */
+    private static OntologyNamesSnapshot ontologyNamesSnapshot;
+    /**
+     * The OLS connection, shared by all dialogs.
+     */
+    private static volatile OntologyClient olsConnection;
+    /**
+     * True if the ontology selected for browsing is preloaded in the
+     * background, shared by all dialogs.
+     */
+    private static boolean ontologyPreloading = false;
     /**
      * The OLS tree browser.
      */
     private TreeBrowser treeBrowser;
+    /**
+     * The crawler preloading the ontology selected for browsing, null if
+     * none.
+     */
+    private OntologyCrawler ontologyCrawler;
     /**
      * The currently selected ontology accession number in the browse tab.
      */
@@ -488,14 +600,41 @@ public class OLSDialog extends javax.swing.JDialog {
 
         initComponents();
 
-        olsResultsTermNameSearchJTable.getColumn("Accession").setCellRenderer(new HtmlLinksRenderer(
-                selectedRowHtmlTagFontColor, notSelectedRowHtmlTagFontColor));
-        olsResultsTermIdSearchJTable.getColumn("Accession").setCellRenderer(new HtmlLinksRenderer(
-                selectedRowHtmlTagFontColor, notSelectedRowHtmlTagFontColor));
-        olsResultsMassSearchJTable.getColumn("Accession").setCellRenderer(new HtmlLinksRenderer(
-                selectedRowHtmlTagFontColor, notSelectedRowHtmlTagFontColor));
+        taskPipeline.setProgressBar(olsProgressJProgressBar);
+
+        // open the local term store and the local ontologies in the background
+        if (olsConnection == null) {
+            ConcurrentQueries.submit(new Callable<OntologyClient>() {
+
+                public OntologyClient call() {
+                    return getOntologyClient();
+                }
+            });
+        }
+
+        olsResultsTermNameSearchJTable.getColumn("Accession").setCellRenderer(new AccessionLinkRenderer(
+                Color.decode(selectedRowHtmlTagFontColor), Color.decode(notSelectedRowHtmlTagFontColor)));
+        olsResultsTermIdSearchJTable.getColumn("Accession").setCellRenderer(new AccessionLinkRenderer(
+                Color.decode(selectedRowHtmlTagFontColor), Color.decode(notSelectedRowHtmlTagFontColor)));
+        olsResultsMassSearchJTable.getColumn("Accession").setCellRenderer(new AccessionLinkRenderer(
+                Color.decode(selectedRowHtmlTagFontColor), Color.decode(notSelectedRowHtmlTagFontColor)));
+
+        // keep the accession columns just wide enough for the accession numbers
+        ColumnWidthEstimator.install(olsResultsTermNameSearchJTable, "Accession", 6);
+        ColumnWidthEstimator.install(olsResultsTermIdSearchJTable, "Accession", 6);
+        ColumnWidthEstimator.install(olsResultsMassSearchJTable, "Accession", 6);
 
         olsResultsTermNameSearchJScrollPane.getViewport().setOpaque(false);
+
+        // show more term name search results when scrolling to the end of the table
+        olsResultsTermNameSearchJScrollPane.getVerticalScrollBar().addAdjustmentListener(new AdjustmentListener() {
+
+            public void adjustmentValueChanged(AdjustmentEvent e) {
+                if (!e.getValueIsAdjusting()) {
+                    showMoreTermNameSearchResults();
+                }
+            }
+        });
         termDetailsTermNameSearchJScrollPane.getViewport().setOpaque(false);
         olsResultsTermIdSearchJScrollPane.getViewport().setOpaque(false);
         termDetailsTermIdSearchJScrollPane.getViewport().setOpaque(false);
@@ -518,6 +657,7 @@ public class OLSDialog extends javax.swing.JDialog {
         // use combobox renderer that centers the text
         ontologyJComboBox.setRenderer(new MyComboBoxRenderer(null, SwingConstants.CENTER));
         massTypeJComboBox.setRenderer(new MyComboBoxRenderer(null, SwingConstants.CENTER));
+        massCombinationJComboBox.setRenderer(new MyComboBoxRenderer(null, SwingConstants.CENTER));
 
         // disable reordring of the columns
         olsResultsTermNameSearchJTable.getTableHeader().setReorderingAllowed(false);
@@ -534,6 +674,274 @@ public class OLSDialog extends javax.swing.JDialog {
         olsResultsTermIdSearchJTable.setSelectionMode(javax.swing.ListSelectionModel.SINGLE_SELECTION);
     }
 
+    /**
+     * Returns the client used for all lookups in the OLS. Unless another
+     * client has been set, a pooled OLS web service client is created the
+     * first time this method is called, with the term names, metadata and
+     * cross references cached in the local data folder and the child terms
+     * cached in memory. The OBO files in the "obo" sub folder of the local
+     * data folder are imported in the background and used instead of the OLS
+     * for their ontologies.
+     *
+     * @return the ontology client
+     */
+    public static synchronized OntologyClient getOntologyClient() {
+        if (olsConnection == null) {
+            TermStore termStore = null;
+            try {
+                termStore = TermStore.open(new File(Util.getLocalDataFolder(), TERM_STORE_FILE_NAME));
+            } catch (IOException e) {
+                Util.writeToErrorLog("Could not open the local term store, terms will not be stored: ");
+                e.printStackTrace();
+            }
+            CachingOntologyClient cachingClient = new CachingOntologyClient(new PooledOlsClient(), termStore);
+            LocalOntologyRouter router = new LocalOntologyRouter(cachingClient, cachingClient.getTermNameIndex());
+            router.importOntologies(new File(Util.getLocalDataFolder(), OBO_FOLDER_NAME));
+            olsConnection = router;
+        }
+        return olsConnection;
+    }
+
+    /**
+     * Imports the given OBO file, e.g., the PSI-MS or PSI-MOD ontology, and
+     * uses it instead of the OLS for all the lookups in that ontology. To
+     * import a file every time the dialog is used, put it in the "obo" sub
+     * folder of the local data folder instead.
+     *
+     * @param oboFile the OBO file
+     * @return the imported ontology
+     * @throws IOException if the file cannot be read or parsed
+     * @throws IllegalStateException if the client set with setOntologyClient
+     * does not support local ontologies
+     */
+    public static LocalOntology importOntology(File oboFile) throws IOException {
+
+        OntologyClient ontologyClient = getOntologyClient();
+
+        if (!(ontologyClient instanceof LocalOntologyRouter)) {
+            throw new IllegalStateException("The current ontology client does not support local ontologies.");
+        }
+
+        return ((LocalOntologyRouter) ontologyClient).importOntology(oboFile);
+    }
+
+    /**
+     * Returns the names of the imported local ontologies.
+     *
+     * @return the ontology names, key: ontology label, value: ontology name
+     */
+    private static Map<String, String> getLocalOntologyNames() {
+
+        OntologyClient ontologyClient = getOntologyClient();
+
+        if (ontologyClient instanceof LocalOntologyRouter) {
+            return ((LocalOntologyRouter) ontologyClient).getLocalOntologyNames();
+        }
+
+        return new HashMap<String, String>();
+    }
+
+    /**
+     * Returns the index of the term names seen so far, used to search the
+     * term names without contacting the OLS.
+     *
+     * @return the term name index, or null if the current client does not
+     * index the term names or is still being opened
+     */
+    private static TermNameIndex getTermNameIndex() {
+
+        // used while typing, so do not wait for the client to be opened
+        OntologyClient ontologyClient = olsConnection;
+
+        if (ontologyClient instanceof LocalOntologyRouter) {
+            return ((LocalOntologyRouter) ontologyClient).getTermNameIndex();
+        }
+
+        if (ontologyClient instanceof CachingOntologyClient) {
+            return ((CachingOntologyClient) ontologyClient).getTermNameIndex();
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the cache of the child terms retrieved through the current
+     * client, shared with the tree browser so that the children are only
+     * kept once.
+     *
+     * @return the children cache, or null if the current client does not
+     * cache the children or is still being opened
+     */
+    private static ChildrenCache getChildrenCache() {
+
+        // used when browsing, so do not wait for the client to be opened
+        OntologyClient ontologyClient = olsConnection;
+
+        if (ontologyClient instanceof LocalOntologyRouter) {
+            ontologyClient = ((LocalOntologyRouter) ontologyClient).getDelegate();
+        }
+
+        if (ontologyClient instanceof CachingOntologyClient) {
+            return ((CachingOntologyClient) ontologyClient).getChildrenCache();
+        }
+
+        return null;
+    }
+
+    /**
+     * Sets the client to use for all lookups in the OLS, e.g., to use a
+     * different service end point or pool size. Setting the client to null
+     * restores the default client.
+     *
+     * @param ontologyClient the ontology client
+     */
+    public static synchronized void setOntologyClient(OntologyClient ontologyClient) {
+        olsConnection = ontologyClient;
+    }
+
+    /**
+     * Sets whether the ontology selected for browsing is preloaded in the
+     * background, so that browsing it afterwards needs no lookups in the OLS.
+     * Off by default. Only affects the ontologies selected after the call.
+     *
+     * @param preloading true to preload the ontologies
+     */
+    public static synchronized void setOntologyPreloading(boolean preloading) {
+        ontologyPreloading = preloading;
+    }
+
+    /**
+     * Returns true if the ontology selected for browsing is preloaded in the
+     * background.
+     *
+     * @return true if the ontologies are preloaded
+     */
+    public static synchronized boolean isOntologyPreloading() {
+        return ontologyPreloading;
+    }
+
+    /**
+     * Returns the crawler preloading the ontology selected for browsing, e.g.,
+     * to pause it or follow its progress.
+     *
+     * @return the crawler, null if none
+     */
+    public OntologyCrawler getOntologyCrawler() {
+        return ontologyCrawler;
+    }
+
+    /**
+     * Starts preloading the given ontology in the background if preloading is
+     * on and the ontology can be browsed, cancelling the preloading of the
+     * previously selected ontology. The progress is shown in the tool tip of
+     * the Browse Ontology tab.
+     *
+     * @param ontology the ontology label
+     */
+    private void preloadOntology(final String ontology) {
+
+        if (ontologyCrawler != null) {
+            if (ontologyCrawler.getOntology().equalsIgnoreCase(ontology) && !ontologyCrawler.isStopped()) {
+                return;
+            }
+            stopPreloading();
+        }
+
+        if (!isOntologyPreloading() || ontologyJComboBox.getSelectedIndex() == 0
+                || ontology.equalsIgnoreCase("NEWT") || isPreselectedOption()) {
+            return;
+        }
+
+        OntologyClient ontologyClient = olsConnection;
+
+        if (ontologyClient == null) {
+
+            // wait for the client to be opened in the background
+            taskPipeline.execute(new BackgroundTask<OntologyClient>() {
+
+                @Override
+                public OntologyClient doInBackground() {
+                    return getOntologyClient();
+                }
+
+                @Override
+                public void succeeded(OntologyClient result) {
+                    if (ontologyCrawler == null && ontology.equalsIgnoreCase(getCurrentOntologyLabel())) {
+                        preloadOntology(ontology);
+                    }
+                }
+            });
+
+            return;
+        }
+
+        final OntologyCrawler crawler = new OntologyCrawler(ontologyClient, ontology);
+
+        crawler.setProgressListener(new OntologyCrawler.ProgressListener() {
+
+            public void progressChanged(OntologyCrawler crawler) {
+                showPreloadingProgress(crawler);
+            }
+
+            public void crawlStopped(OntologyCrawler crawler) {
+                showPreloadingProgress(crawler);
+            }
+        });
+
+        ontologyCrawler = crawler;
+        crawler.start();
+    }
+
+    /**
+     * Shows the progress of the given crawler in the tool tip of the Browse
+     * Ontology tab. Can be called from any thread.
+     *
+     * @param crawler the crawler
+     */
+    private void showPreloadingProgress(final OntologyCrawler crawler) {
+
+        final String progress;
+
+        if (crawler.isFinished()) {
+            progress = "Preloaded " + crawler.getCrawledTermCount() + " terms of " + crawler.getOntology();
+        } else if (crawler.isStopped()) {
+            progress = null;
+        } else {
+            progress = "Preloading " + crawler.getOntology() + ": "
+                    + crawler.getCrawledTermCount() + " of " + crawler.getFoundTermCount() + " terms";
+        }
+
+        SwingUtilities.invokeLater(new Runnable() {
+
+            public void run() {
+                if (crawler == ontologyCrawler) {
+                    searchTypeJTabbedPane.setToolTipTextAt(OLS_DIALOG_BROWSE_ONTOLOGY, progress);
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancels the preloading of the current ontology and clears its progress
+     * from the tool tip of the Browse Ontology tab. The progress reported by
+     * the cancelled crawler afterwards is ignored, see showPreloadingProgress.
+     */
+    private void stopPreloading() {
+
+        if (ontologyCrawler != null) {
+            ontologyCrawler.cancel();
+            ontologyCrawler = null;
+        }
+
+        searchTypeJTabbedPane.setToolTipTextAt(OLS_DIALOG_BROWSE_ONTOLOGY, null);
+    }
+
+    @Override
+    public void dispose() {
+        stopPreloading();
+        super.dispose();
+    }
+
     /**
      * Retrieves the version number set in the pom file.
      *
@@ -577,17 +985,7 @@ public class OLSDialog extends javax.swing.JDialog {
         Map<String, String> retrievedValues = new HashMap<String, String>();
 
         try {
-            Map roots;
-            if (parentTerm == null) {
-                roots = olsConnection.getRootTerms(ontology);
-            } else {
-                roots = olsConnection.getTermChildren(parentTerm, ontology, 1, null);
-            }
-
-            if (roots != null) {
-                retrievedValues.putAll(roots);
-            }
-
+            retrievedValues.putAll(fetchOntologyRoots(ontology, parentTerm));
         } catch (RemoteException e) {
             JOptionPane.showMessageDialog(
                     this,
@@ -600,6 +998,39 @@ public class OLSDialog extends javax.swing.JDialog {
         return retrievedValues;
     }
 
+    /**
+     * Gets the root terms of an ontology, or the children of the given parent
+     * term, from the OLS.
+     *
+     * @param ontology the ontology
+     * @param parentTerm the parent term, null for the root terms of the
+     * ontology
+     * @return the root terms, key: term id, value: term name. Never null.
+     * @throws RemoteException if the lookup fails
+     */
+    private static Map<String, String> fetchOntologyRoots(String ontology, String parentTerm) throws RemoteException {
+
+        return fetchTermLevels(ontology, parentTerm, 1).getChildren(parentTerm);
+    }
+
+    /**
+     * Returns the given number of levels of children below the given term,
+     * from the OLS or the local ontology. Only the first level is retrieved
+     * from the OLS, the deeper levels are the ones already known, see
+     * TermLevels.
+     *
+     * @param ontology the ontology
+     * @param parentTerm the parent term, null for the root terms of the
+     * ontology
+     * @param levels the number of levels, 1 for the direct children only
+     * @return the levels of children, including the children of the parent
+     * term
+     * @throws RemoteException if the lookup fails
+     */
+    private static TermLevels fetchTermLevels(String ontology, String parentTerm, int levels) throws RemoteException {
+        return TermLevels.getTermLevels(getOntologyClient(), parentTerm, ontology, levels);
+    }
+
     /**
      * Clears the meta data section for the selected search type.
      *
@@ -651,9 +1082,7 @@ public class OLSDialog extends javax.swing.JDialog {
 
             currentDefinitionsJTextPane.setText("");
 
-            while (currentTermDetailsJTable.getRowCount() > 0) {
-                ((DefaultTableModel) currentTermDetailsJTable.getModel()).removeRow(0);
-            }
+            ((DefaultTableModel) currentTermDetailsJTable.getModel()).setRowCount(0);
 
             currentTermDetailsJScrollPane.getVerticalScrollBar().setValue(0);
         }
@@ -661,9 +1090,7 @@ public class OLSDialog extends javax.swing.JDialog {
         if (clearSearchResults) {
             if (searchType != OLS_DIALOG_BROWSE_ONTOLOGY) {
 
-                while (currentSearchResultsJTable.getRowCount() > 0) {
-                    ((DefaultTableModel) currentSearchResultsJTable.getModel()).removeRow(0);
-                }
+                ((ResultsTableModel) currentSearchResultsJTable.getModel()).clear();
 
                 currentSearchResultsJScrollPane.getVerticalScrollBar().setValue(0);
             }
@@ -671,49 +1098,48 @@ public class OLSDialog extends javax.swing.JDialog {
     }
 
     /**
-     * Tries to load the children of a given term.
+     * Loads the children of the term of the given tree node in the
+     * background and adds them to the node. If the term has no children, the
+     * node becomes a leaf.
      *
-     * @param parent the tree node where to load the terms
-     * @param termId the term id to query on
-     * @return true if the terms was loaded successfully, false otherwise
+     * @param node the tree node where to load the terms
      */
-    public boolean loadChildren(TreeNode parent, String termId) {
+    public void loadChildren(final LazyOntologyTreeModel.TermNode node) {
 
-        if (termId == null) {
-            return false;
-        }
+        final String termId = node.getTermId();
+        final String ontology = getCurrentOntologyLabel();
 
-        boolean error = false;
+        taskPipeline.execute(new BackgroundTask<TermLevels>() {
 
-        String ontology = getCurrentOntologyLabel();
+            @Override
+            public TermLevels doInBackground() throws Exception {
+                //get children from OLS
+                return fetchTermLevels(ontology, termId, TREE_BROWSER_LEVELS);
+            }
 
-        //get children from OLS
-        Map<String, String> childTerms = null;
+            @Override
+            public void succeeded(TermLevels childLevels) {
 
-        try {
-            childTerms = olsConnection.getTermChildren(termId, ontology, 1, null);
-        } catch (RemoteException ex) {
-            JOptionPane.showMessageDialog(
-                    this,
-                    defaultOlsConnectionFailureErrorMessage,
-                    "OLS Connection Error", JOptionPane.ERROR_MESSAGE);
-            Util.writeToErrorLog("Error when trying to access OLS: ");
-            ex.printStackTrace();
-            error = true;
-        }
+                if (debug && childLevels.getChildren(termId).isEmpty()) {
+                    System.out.println("no children returned for " + termId);
+                }
 
-        if (!error && childTerms != null && !childTerms.isEmpty()) {
-            // add the nodes to the tree
-            for (String tId : childTerms.keySet()) {
-                treeBrowser.addNode(tId, childTerms.get(tId));
+                treeBrowser.setChildren(node, childLevels);
             }
-            return true;
-        } else {
-            if (debug) {
-                System.out.println("no children returned for " + termId);
+
+            @Override
+            public void failed(Exception e) {
+
+                treeBrowser.loadingFailed(node);
+
+                JOptionPane.showMessageDialog(
+                        OLSDialog.this,
+                        defaultOlsConnectionFailureErrorMessage,
+                        "OLS Connection Error", JOptionPane.ERROR_MESSAGE);
+                Util.writeToErrorLog("Error when trying to access OLS: ");
+                e.printStackTrace();
             }
-            return false;
-        }
+        });
     }
 
     /**
@@ -741,12 +1167,14 @@ public class OLSDialog extends javax.swing.JDialog {
     }
 
     /**
-     * Load metadata for a given termId.
+     * Load metadata for a given termId. The meta data is retrieved in the
+     * background and inserted when available, unless another term has been
+     * selected in the meantime.
      *
      * @param termId the term to load meta data for
      * @param searchType the search type where the meta data will be inserted
      */
-    public void loadMetaData(String termId, Integer searchType) {
+    public void loadMetaData(final String termId, final Integer searchType) {
 
         JTextPane currentDefinitionsJTextPane = null;
         JTable currentTermDetailsJTable = null;
@@ -770,6 +1198,10 @@ public class OLSDialog extends javax.swing.JDialog {
             currentTermDetailsJScrollPane = termDetailsTermIdSearchJScrollPane;
         }
 
+        // any meta data still being loaded is for a previous selection
+        TaskChannel metaDataChannel = getMetaDataChannel(searchType);
+        metaDataChannel.cancel();
+
         //clear meta data
         clearData(searchType, false, true);
 
@@ -777,49 +1209,139 @@ public class OLSDialog extends javax.swing.JDialog {
             return;
         }
 
-        String ontology = getOntologyLabelFromTermId(termId);
+        final String ontology = getOntologyLabelFromTermId(termId);
 
         if (searchType == OLS_DIALOG_TERM_NAME_SEARCH) {
             currentlySelectedTermNameSearchAccessionNumber = termId;
-            viewTermHierarchyTermNameSearchJLabel.setEnabled(true);
         } else if (searchType == OLS_DIALOG_PSI_MOD_MASS_SEARCH) {
             currentlySelectedMassSearchAccessionNumber = termId;
-            viewTermHierarchyMassSearchJLabel.setEnabled(true);
         } else if (searchType == OLS_DIALOG_BROWSE_ONTOLOGY) {
             currentlySelectedBrowseOntologyAccessionNumber = termId;
-            viewTermHierarchyBrowseOntologyJLabel.setEnabled(true);
         } else if (searchType == OLS_DIALOG_TERM_ID_SEARCH) {
             currentlySelectedTermIdSearchAccessionNumber = termId;
-            viewTermHierarchyTermIdSearchJLabel.setEnabled(true);
         }
 
-        boolean error = false;
+        setViewTermHierarchyEnabled(searchType, true);
+        metadata = null;
 
         if (ontology != null && ontology.equalsIgnoreCase("NEWT")) {
             currentDefinitionsJTextPane.setText("Retreiving 'Term Details' is disabled for NEWT.");
             currentDefinitionsJTextPane.setCaretPosition(0);
             currentTermDetailsJTable.setEnabled(false);
-            error = true;
-        } else {
-            currentTermDetailsJTable.setEnabled(true);
+            updateInsertSelectedButton(searchType);
+            return;
         }
 
-        if (!error) {
+        currentTermDetailsJTable.setEnabled(true);
+        updateInsertSelectedButton(searchType);
 
-            metadata = null;
-            Map<String, String> xRefs = null;
+        final JTextPane definitionsJTextPane = currentDefinitionsJTextPane;
+        final JTable termDetailsJTable = currentTermDetailsJTable;
+        final JScrollPane termDetailsJScrollPane = currentTermDetailsJScrollPane;
+
+        metaDataChannel.submit(new BackgroundTask<Map<String, String>>() {
+
+            /**
+             * True if the term has meta data.
+             */
+            private boolean metaDataFound = false;
+
+            @Override
+            public Map<String, String> doInBackground() throws Exception {
+
+                // get the cross references at the same time as the meta data
+                Future<Map<String, String>> xRefsFuture = ConcurrentQueries.submit(new Callable<Map<String, String>>() {
+
+                    public Map<String, String> call() throws Exception {
+                        return getOntologyClient().getTermXrefs(termId, ontology);
+                    }
+                });
+
+                try {
+                    final Map<String, String> termMetadata = getOntologyClient().getTermMetadata(termId, ontology);
+
+                    // show the meta data straight away
+                    publish(new Runnable() {
+
+                        public void run() {
+                            insertMetaData(termMetadata);
+                        }
+                    });
+
+                    return xRefsFuture.get();
+
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                } finally {
+                    xRefsFuture.cancel(true);
+                }
+            }
+
+            /**
+             * Inserts the meta data into the definition pane and the term
+             * details table.
+             *
+             * @param termMetadata the meta data
+             */
+            private void insertMetaData(Map<String, String> termMetadata) {
+
+                metadata = termMetadata;
+
+                if (metadata != null && !metadata.isEmpty()) {
+
+                    metaDataFound = true;
+
+                    // retrieve the terms meta data and insert into the table
+                    // note that "definition" is handled separatly
+                    for (Iterator<String> i = metadata.keySet().iterator(); i.hasNext();) {
+                        String key = i.next();
+
+                        if (key != null && key.equalsIgnoreCase("definition")) {
+                            definitionsJTextPane.setText("" + metadata.get(key));
+                            definitionsJTextPane.setCaretPosition(0);
+                        } else {
+                            ((DefaultTableModel) termDetailsJTable.getModel()).addRow(
+                                    new Object[]{key, metadata.get(key)});
+                        }
+                    }
+
+                    if (definitionsJTextPane.getText().equalsIgnoreCase("null")) {
+                        definitionsJTextPane.setText("(no definition provided in CV term)");
+                    }
+
+                    // set the horizontal scroll bar to the top
+                    termDetailsJScrollPane.getVerticalScrollBar().setValue(0);
+                } else {
+                    setViewTermHierarchyEnabled(searchType, false);
+                }
+            }
+
+            @Override
+            public void succeeded(Map<String, String> xRefs) {
+
+                // iterate the xrefs and insert them into the table
+                if (metaDataFound && xRefs != null) {
+                    for (Iterator<String> i = xRefs.keySet().iterator(); i.hasNext();) {
+                        String key = i.next();
+
+                        ((DefaultTableModel) termDetailsJTable.getModel()).addRow(
+                                new Object[]{key, xRefs.get(key)});
+                    }
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
 
-            //query OLS
-            try {
-                metadata = olsConnection.getTermMetadata(termId, ontology);
-                xRefs = olsConnection.getTermXrefs(termId, ontology);
-            } catch (RemoteException ex) {
                 JOptionPane.showMessageDialog(
-                        this,
+                        OLSDialog.this,
                         defaultOlsConnectionFailureErrorMessage,
                         "OLS Connection Error", JOptionPane.ERROR_MESSAGE);
                 Util.writeToErrorLog("Error when trying to access OLS: ");
-                ex.printStackTrace();
+                e.printStackTrace();
 
                 if (searchType == OLS_DIALOG_TERM_NAME_SEARCH) {
                     currentlySelectedTermNameSearchAccessionNumber = null;
@@ -831,74 +1353,56 @@ public class OLSDialog extends javax.swing.JDialog {
                     currentlySelectedTermIdSearchAccessionNumber = termId;
                 }
 
-                error = true;
+                setViewTermHierarchyEnabled(searchType, false);
+                updateInsertSelectedButton(searchType);
             }
+        });
+    }
 
-            if (!error && !metadata.isEmpty()) {
-
-                // retrieve the terms meta data and insert into the table
-                // note that "definition" is handled separatly
-                for (Iterator i = metadata.keySet().iterator(); i.hasNext();) {
-                    String key = (String) i.next();
-
-                    if (key != null && key.equalsIgnoreCase("definition")) {
-                        currentDefinitionsJTextPane.setText("" + metadata.get(key));
-                        currentDefinitionsJTextPane.setCaretPosition(0);
-                    } else {
-                        ((DefaultTableModel) currentTermDetailsJTable.getModel()).addRow(
-                                new Object[]{key, metadata.get(key)});
-                    }
-                }
+    /**
+     * Returns the channel loading the meta data for the given search type.
+     *
+     * @param searchType the search type
+     * @return the meta data channel
+     */
+    private TaskChannel getMetaDataChannel(Integer searchType) {
 
-                if (currentDefinitionsJTextPane.getText().equalsIgnoreCase("null")) {
-                    currentDefinitionsJTextPane.setText("(no definition provided in CV term)");
-                }
+        TaskChannel metaDataChannel = metaDataChannels.get(searchType);
 
-                // iterate the xrefs and insert them into the table
-                for (Iterator i = xRefs.keySet().iterator(); i.hasNext();) {
-                    String key = (String) i.next();
+        if (metaDataChannel == null) {
+            metaDataChannel = taskPipeline.createChannel();
+            metaDataChannels.put(searchType, metaDataChannel);
+        }
 
-                    ((DefaultTableModel) currentTermDetailsJTable.getModel()).addRow(
-                            new Object[]{key, xRefs.get(key)});
-                }
+        return metaDataChannel;
+    }
 
-                // set the horizontal scroll bar to the top
-                currentTermDetailsJScrollPane.getVerticalScrollBar().setValue(0);
-            } else {
-                if (searchType == OLS_DIALOG_TERM_NAME_SEARCH) {
-                    viewTermHierarchyTermNameSearchJLabel.setEnabled(false);
-                } else if (searchType == OLS_DIALOG_PSI_MOD_MASS_SEARCH) {
-                    viewTermHierarchyMassSearchJLabel.setEnabled(false);
-                } else if (searchType == OLS_DIALOG_BROWSE_ONTOLOGY) {
-                    viewTermHierarchyBrowseOntologyJLabel.setEnabled(false);
-                } else if (searchType == OLS_DIALOG_TERM_ID_SEARCH) {
-                    viewTermHierarchyTermIdSearchJLabel.setEnabled(false);
-                }
-            }
-        } else {
-            if (ontology != null && ontology.equalsIgnoreCase("NEWT")) {
-                if (searchType == OLS_DIALOG_TERM_NAME_SEARCH) {
-                    viewTermHierarchyTermNameSearchJLabel.setEnabled(true);
-                } else if (searchType == OLS_DIALOG_PSI_MOD_MASS_SEARCH) {
-                    viewTermHierarchyMassSearchJLabel.setEnabled(true);
-                } else if (searchType == OLS_DIALOG_BROWSE_ONTOLOGY) {
-                    viewTermHierarchyBrowseOntologyJLabel.setEnabled(true);
-                } else if (searchType == OLS_DIALOG_TERM_ID_SEARCH) {
-                    viewTermHierarchyTermIdSearchJLabel.setEnabled(true);
-                }
-            } else {
-                if (searchType == OLS_DIALOG_TERM_NAME_SEARCH) {
-                    viewTermHierarchyTermNameSearchJLabel.setEnabled(false);
-                } else if (searchType == OLS_DIALOG_PSI_MOD_MASS_SEARCH) {
-                    viewTermHierarchyMassSearchJLabel.setEnabled(false);
-                } else if (searchType == OLS_DIALOG_BROWSE_ONTOLOGY) {
-                    viewTermHierarchyBrowseOntologyJLabel.setEnabled(false);
-                } else if (searchType == OLS_DIALOG_TERM_ID_SEARCH) {
-                    viewTermHierarchyTermIdSearchJLabel.setEnabled(false);
-                }
-            }
+    /**
+     * Enables or disables the 'View Term Hierarchy' link of the given search
+     * type.
+     *
+     * @param searchType the search type
+     * @param enabled true to enable the link
+     */
+    private void setViewTermHierarchyEnabled(Integer searchType, boolean enabled) {
+        if (searchType == OLS_DIALOG_TERM_NAME_SEARCH) {
+            viewTermHierarchyTermNameSearchJLabel.setEnabled(enabled);
+        } else if (searchType == OLS_DIALOG_PSI_MOD_MASS_SEARCH) {
+            viewTermHierarchyMassSearchJLabel.setEnabled(enabled);
+        } else if (searchType == OLS_DIALOG_BROWSE_ONTOLOGY) {
+            viewTermHierarchyBrowseOntologyJLabel.setEnabled(enabled);
+        } else if (searchType == OLS_DIALOG_TERM_ID_SEARCH) {
+            viewTermHierarchyTermIdSearchJLabel.setEnabled(enabled);
         }
+    }
 
+    /**
+     * Enables the 'Use Selected Term' button if a term is selected for the
+     * given search type.
+     *
+     * @param searchType the search type
+     */
+    private void updateInsertSelectedButton(Integer searchType) {
         if (searchType == OLS_DIALOG_TERM_NAME_SEARCH) {
             insertSelectedJButton.setEnabled(currentlySelectedTermNameSearchAccessionNumber != null);
         } else if (searchType == OLS_DIALOG_PSI_MOD_MASS_SEARCH) {
@@ -970,111 +1474,321 @@ public class OLSDialog extends javax.swing.JDialog {
             }
         }
 
-        if (currentToolTipLine.length() > 0) {
-            currentToolTip += aToolTip.substring(currentStartIndex);
+        if (currentToolTipLine.length() > 0) {
+            currentToolTip += aToolTip.substring(currentStartIndex);
+        }
+
+        currentToolTip += "</html>";
+
+        return currentToolTip;
+    }
+
+    /**
+     * Inserts the ontology names into the ontology combo box. The names from
+     * the last session are inserted straight away and refreshed from the OLS
+     * in the background. Only if there are no names from an earlier session
+     * does the dialog wait for the OLS.
+     *
+     * @return false if an error occurred, true otherwise
+     */
+    private boolean openOlsConnectionAndInsertOntologyNames() {
+
+        boolean error = false;
+
+        preselectedNames2Ids = new HashMap<String, String>();
+
+        final OntologyNamesSnapshot snapshot = getOntologyNamesSnapshot();
+
+        if (snapshot.hasOntologyNames()) {
+
+            insertOntologyNames(snapshot);
+
+            taskPipeline.execute(new BackgroundTask<Boolean>() {
+
+                @Override
+                public Boolean doInBackground() throws Exception {
+                    return refreshOntologyNames(snapshot);
+                }
+
+                @Override
+                public void succeeded(Boolean changed) {
+                    if (changed) {
+                        reconcileOntologyNames(snapshot);
+                    }
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    // keep the names from the last session
+                    Util.writeToErrorLog("Error when trying to access OLS: ");
+                    e.printStackTrace();
+                }
+            });
+
+        } else {
+
+            try {
+                refreshOntologyNames(snapshot);
+                insertOntologyNames(snapshot);
+            } catch (RemoteException ex) {
+
+                // offline, use the imported local ontologies if any
+                Map<String, String> localOntologyNames = getLocalOntologyNames();
+
+                if (!localOntologyNames.isEmpty()) {
+                    Util.writeToErrorLog("Error when trying to access OLS, only the local ontologies are available: ");
+                    ex.printStackTrace();
+                    OntologyNamesSnapshot localSnapshot = new OntologyNamesSnapshot(new File(Util.getLocalDataFolder(), ONTOLOGY_NAMES_FILE_NAME));
+                    localSnapshot.update(localOntologyNames, new HashMap<String, String>());
+                    insertOntologyNames(localSnapshot);
+                    return false;
+                }
+
+                JOptionPane.showMessageDialog(
+                        this,
+                        defaultOlsConnectionFailureErrorMessage,
+                        "Failed to Contact the OLS", JOptionPane.ERROR_MESSAGE);
+                Util.writeToErrorLog("Error when trying to access OLS: ");
+                ex.printStackTrace();
+                error = true;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                error = true;
+            }
+        }
+
+        return error;
+    }
+
+    /**
+     * Returns the ontology names last retrieved from the OLS, read from the
+     * local data folder the first time this method is called.
+     *
+     * @return the ontology names snapshot
+     */
+    private static synchronized OntologyNamesSnapshot getOntologyNamesSnapshot() {
+        if (ontologyNamesSnapshot == null) {
+            File file = new File(Util.getLocalDataFolder(), ONTOLOGY_NAMES_FILE_NAME);
+            try {
+                ontologyNamesSnapshot = OntologyNamesSnapshot.load(file);
+            } catch (IOException e) {
+                Util.writeToErrorLog("Could not read the local ontology names, they will be retrieved from the OLS: ");
+                e.printStackTrace();
+                ontologyNamesSnapshot = new OntologyNamesSnapshot(file);
+            }
+        }
+        return ontologyNamesSnapshot;
+    }
+
+    /**
+     * Retrieves the ontology names and the names of the preselected parent
+     * terms from the OLS and updates the snapshot. The term names are
+     * retrieved in parallel. Terms whose name cannot be retrieved keep their
+     * previous name.
+     *
+     * @param snapshot the snapshot to update
+     * @return true if the snapshot changed
+     * @throws RemoteException if the ontology names cannot be retrieved
+     * @throws InterruptedException if interrupted while waiting for the term
+     * names
+     */
+    private boolean refreshOntologyNames(OntologyNamesSnapshot snapshot) throws RemoteException, InterruptedException {
+
+        Map<String, String> ontologyNames = getOntologyClient().getOntologyNames();
+
+        Map<String, Callable<String>> queries = new LinkedHashMap<String, Callable<String>>();
+
+        for (Iterator<String> i = ontologyNames.keySet().iterator(); i.hasNext();) {
+            final String key = i.next();
+            List<String> ontologyTermIds = preselectedOntologies.get(key.toUpperCase());
+
+            if (ontologyTermIds != null) {
+                for (final String ontologyTermId : ontologyTermIds) {
+                    queries.put(ontologyTermId, new Callable<String>() {
+
+                        public String call() throws Exception {
+                            return getOntologyClient().getTermById(ontologyTermId, key);
+                        }
+                    });
+                }
+            }
+        }
+
+        Map<String, String> termNames = ConcurrentQueries.fanOut(queries, PRESELECTED_ONTOLOGY_SEARCH_TIMEOUT, TimeUnit.SECONDS,
+                new ConcurrentQueries.ResultListener<String, String>() {
+
+                    public void resultArrived(String ontologyTermId, String ontologyTermName) {
+                    }
+
+                    public void queryFailed(String ontologyTermId, Exception e) {
+                        Util.writeToErrorLog("Error when trying to retrieve the name of " + ontologyTermId + " from the OLS: ");
+                        e.printStackTrace();
+                    }
+                });
+
+        boolean changed = snapshot.update(ontologyNames, termNames);
+
+        if (changed) {
+            try {
+                snapshot.save();
+            } catch (IOException e) {
+                Util.writeToErrorLog("Could not store the ontology names locally: ");
+                e.printStackTrace();
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Inserts the ontology names from the given snapshot into the ontology
+     * combo box and selects the requested ontology.
+     *
+     * @param snapshot the ontology names snapshot
+     */
+    private void insertOntologyNames(OntologyNamesSnapshot snapshot) {
+
+        Map<String, String> ontologyNames = snapshot.getOntologyNames();
+        Vector<String> ontologyNamesAndKeys = getOntologyNamesAndKeys(snapshot);
+
+        String ontologyToSelect = "";
+
+        for (Map.Entry<String, String> entry : ontologyNames.entrySet()) {
+            String temp = entry.getValue() + " [" + entry.getKey() + "]";
+            if (selectedOntology.equalsIgnoreCase(temp) || selectedOntology.equalsIgnoreCase(entry.getKey())) {
+                ontologyToSelect = temp;
+            }
+        }
+
+        for (String ontologyName : ontologyNamesAndKeys) {
+            if (selectedOntology.equalsIgnoreCase(ontologyName)) {
+                ontologyToSelect = ontologyName;
+            }
+        }
+
+        //check all preselected ontologies have been found in OLS
+        if (!preselectedOntologies.isEmpty()) {
+            int preselectedOntologiesFound = 0;
+            for (String key : ontologyNames.keySet()) {
+                if (preselectedOntologies.containsKey(key.toUpperCase())) {
+                    preselectedOntologiesFound++;
+                }
+            }
+            if (preselectedOntologiesFound != preselectedOntologies.size()) {
+                String msg = "Warning: One or more of your preselected ontologies have not been found in OLS";
+                Util.writeToErrorLog(msg);
+            }
         }
 
-        currentToolTip += "</html>";
+        ontologyJComboBox.setModel(new DefaultComboBoxModel(ontologyNamesAndKeys));
+        //default selected ontology. Has to be the same name shown in the menu
+        ontologyJComboBox.setSelectedItem(ontologyToSelect);
 
-        return currentToolTip;
+        hideOrShowNewtLinks();
+
+        lastSelectedOntology = (String) ontologyJComboBox.getSelectedItem();
     }
 
     /**
-     * Opens the OLS connection and retrieves and inserts the ontology names
-     * into the ontology combo box.
+     * Updates the ontology combo box in place to match the given snapshot,
+     * adding the new ontologies, removing the ones no longer in the OLS and
+     * keeping the current selection, also if its name changed.
      *
-     * @return false if an error occurred, true otherwise
+     * @param snapshot the ontology names snapshot
      */
-    private boolean openOlsConnectionAndInsertOntologyNames() {
-
-        boolean error = false;
+    private void reconcileOntologyNames(OntologyNamesSnapshot snapshot) {
 
-        Vector ontologyNamesAndKeys = new Vector();
+        Map<String, String> previousOntologyItemIds = ontologyItemIds;
+        Vector<String> ontologyNamesAndKeys = getOntologyNamesAndKeys(snapshot);
 
-        preselectedNames2Ids = new HashMap<String, String>();
-
-        try {
-            QueryService locator = new QueryServiceLocator();
-            olsConnection = locator.getOntologyQuery();
-            Map map = olsConnection.getOntologyNames();
+        DefaultComboBoxModel model = (DefaultComboBoxModel) ontologyJComboBox.getModel();
 
-            String ontologyToSelect = "";
+        // insert the new names after their predecessor in the sorted list
+        for (int i = 0; i < ontologyNamesAndKeys.size(); i++) {
+            String ontologyName = ontologyNamesAndKeys.get(i);
+            if (model.getIndexOf(ontologyName) == -1) {
+                int index = (i == 0) ? 0 : model.getIndexOf(ontologyNamesAndKeys.get(i - 1)) + 1;
+                model.insertElementAt(ontologyName, index);
+            }
+        }
 
-            for (Iterator i = map.keySet().iterator(); i.hasNext();) {
-                String key = (String) i.next();
-                String temp = map.get(key) + " [" + key + "]";
-                if (preselectedOntologies.isEmpty()) {
-                    ontologyNamesAndKeys.add(temp);
-                } else {
-                    if (preselectedOntologies.keySet().contains(key.toUpperCase())) {
-                        if (preselectedOntologies.get(key.toUpperCase()) == null) {
-                            ontologyNamesAndKeys.add(temp);
-                        } else {
-                            for (String ontologyTermId : preselectedOntologies.get(key.toUpperCase())) {
-                                String ontologyTermName = olsConnection.getTermById(ontologyTermId, key);
-                                String suffix = ontologyTermName;
-                                if (ontologyTermName == null) {
-                                    suffix = ontologyTermId;
-                                } else if (ontologyTermName.length() == 0) {
-                                    suffix = ontologyTermId;
-                                }
-                                String ontologyName = temp + " / " + suffix;
-                                if (selectedOntology.equalsIgnoreCase(ontologyName)) {
-                                    ontologyToSelect = ontologyName;
-                                }
-                                ontologyNamesAndKeys.add(ontologyName);
-                                preselectedNames2Ids.put(suffix, ontologyTermId);
-                            }
-                        }
-                    }
-                }
+        // select the new name of the selected ontology, without reloading it
+        String selectedItem = (String) model.getSelectedItem();
 
-                if (selectedOntology.equalsIgnoreCase(temp) || selectedOntology.equalsIgnoreCase(key)) {
-                    ontologyToSelect = temp;
+        if (selectedItem != null && !ontologyNamesAndKeys.contains(selectedItem)) {
+            String selectedId = previousOntologyItemIds.get(selectedItem);
+            for (String ontologyName : ontologyNamesAndKeys) {
+                if (selectedId != null && selectedId.equals(ontologyItemIds.get(ontologyName))) {
+                    lastSelectedOntology = ontologyName;
+                    model.setSelectedItem(ontologyName);
+                    break;
                 }
             }
-            //check all preselected ontologies have been found in OLS
-            if (!preselectedOntologies.isEmpty()) {
-                if (preselectedOntologies.size() != ontologyNamesAndKeys.size()) {
-                    String msg = "Warning: One or more of your preselected ontologies have not been found in OLS";
-                    Util.writeToErrorLog(msg);
-                }
+        }
+
+        // remove the names no longer in use
+        for (int i = model.getSize() - 1; i >= 0; i--) {
+            if (!ontologyNamesAndKeys.contains((String) model.getElementAt(i))) {
+                model.removeElementAt(i);
             }
+        }
+    }
 
-            // sort the ontologies into alphabetic ascending order
-            java.util.Collections.sort(ontologyNamesAndKeys);
+    /**
+     * Returns the sorted list of ontologies to show in the ontology combo
+     * box, including the options for searching all or the preselected
+     * ontologies. Also updates the mapping from the preselected term names to
+     * their accession numbers.
+     *
+     * @param snapshot the ontology names snapshot
+     * @return the ontologies to show
+     */
+    private Vector<String> getOntologyNamesAndKeys(OntologyNamesSnapshot snapshot) {
 
-            ontologyNamesAndKeys.add(0, "-- Search in All Ontologies available in the OLS registry --");
-            if (preselectedOntologies.size() > 1) {
-                ontologyNamesAndKeys.add(1, "-- Search in these preselected Ontologies --");
-            }
+        Vector<String> ontologyNamesAndKeys = new Vector<String>();
+        Map<String, String> newOntologyItemIds = new HashMap<String, String>();
 
-            ontologyJComboBox.setModel(new DefaultComboBoxModel(ontologyNamesAndKeys));
-            //default selected ontology. Has to be the same name shown in the menu
-            ontologyJComboBox.setSelectedItem(ontologyToSelect);
+        for (Map.Entry<String, String> entry : snapshot.getOntologyNames().entrySet()) {
+            String key = entry.getKey();
+            String temp = entry.getValue() + " [" + key + "]";
+            if (preselectedOntologies.isEmpty()) {
+                ontologyNamesAndKeys.add(temp);
+                newOntologyItemIds.put(temp, key);
+            } else {
+                if (preselectedOntologies.keySet().contains(key.toUpperCase())) {
+                    if (preselectedOntologies.get(key.toUpperCase()) == null) {
+                        ontologyNamesAndKeys.add(temp);
+                        newOntologyItemIds.put(temp, key);
+                    } else {
+                        for (String ontologyTermId : preselectedOntologies.get(key.toUpperCase())) {
+                            String ontologyTermName = snapshot.getTermName(ontologyTermId);
+                            String suffix = ontologyTermName;
+                            if (ontologyTermName == null) {
+                                suffix = ontologyTermId;
+                            } else if (ontologyTermName.length() == 0) {
+                                suffix = ontologyTermId;
+                            }
+                            String ontologyName = temp + " / " + suffix;
+                            ontologyNamesAndKeys.add(ontologyName);
+                            newOntologyItemIds.put(ontologyName, key + " / " + ontologyTermId);
+                            preselectedNames2Ids.put(suffix, ontologyTermId);
+                        }
+                    }
+                }
+            }
+        }
 
-            hideOrShowNewtLinks();
+        // sort the ontologies into alphabetic ascending order
+        java.util.Collections.sort(ontologyNamesAndKeys);
 
-            lastSelectedOntology = (String) ontologyJComboBox.getSelectedItem();
-        } catch (RemoteException ex) {
-            JOptionPane.showMessageDialog(
-                    this,
-                    defaultOlsConnectionFailureErrorMessage,
-                    "Failed to Contact the OLS", JOptionPane.ERROR_MESSAGE);
-            Util.writeToErrorLog("Error when trying to access OLS: ");
-            ex.printStackTrace();
-            error = true;
-        } catch (ServiceException ex) {
-            JOptionPane.showMessageDialog(
-                    this,
-                    defaultOlsConnectionFailureErrorMessage,
-                    "Failed to Contact the OLS", JOptionPane.ERROR_MESSAGE);
-            Util.writeToErrorLog("Error when trying to access OLS: ");
-            ex.printStackTrace();
-            error = true;
+        ontologyNamesAndKeys.add(0, "-- Search in All Ontologies available in the OLS registry --");
+        if (preselectedOntologies.size() > 1) {
+            ontologyNamesAndKeys.add(1, "-- Search in these preselected Ontologies --");
         }
 
-        return error;
+        ontologyItemIds = newOntologyItemIds;
+
+        return ontologyNamesAndKeys;
     }
 
     /**
@@ -1097,88 +1811,70 @@ public class OLSDialog extends javax.swing.JDialog {
 
     /**
      * Update the ontology tree browser with the roots of the selected ontology.
+     * The root terms are retrieved in the background.
      */
     private void updateBrowseOntologyView() {
 
-        this.setCursor(new java.awt.Cursor(java.awt.Cursor.WAIT_CURSOR));
-
         // get selected ontology
-        String ontology = getCurrentOntologyLabel();
+        final String ontology = getCurrentOntologyLabel();
+
+        preloadOntology(ontology);
 
         // get selected predefined ontology term for selected ontology
         String parentTermName = getCurrentOntologyTermLabel();
-        String parentTermId = preselectedNames2Ids.get(parentTermName);
-
-        // set the root to the ontology label
-        if (parentTermName != null && parentTermId != null) {
-            treeBrowser.initialize("[" + parentTermId + "] " + parentTermName);
-        } else {
-            treeBrowser.initialize(ontology);
-        }
+        final String parentTermId = preselectedNames2Ids.get(parentTermName);
 
-        // load root terms
-        Map<String, String> rootTerms = getOntologyRoots(ontology, parentTermId);
+        // share the children cache of the client, if already opened
+        ChildrenCache childrenCache = getChildrenCache();
 
-        // update the tree
-        for (String termId : rootTerms.keySet()) {
-            treeBrowser.addNode(termId, rootTerms.get(termId));
+        if (childrenCache != null) {
+            treeBrowser.setChildrenCache(childrenCache);
         }
 
-        // not root terms found
-        if (rootTerms.isEmpty()) {
-            treeBrowser.addNode("No Root Terms Defined!", "");
+        // set the root to the ontology label
+        if (parentTermName != null && parentTermId != null) {
+            treeBrowser.initialize("[" + parentTermId + "] " + parentTermName, ontology);
+        } else {
+            treeBrowser.initialize(ontology, ontology);
         }
 
-        // makes sure that all second level non visible nodes are added
-        treeBrowser.updateTree();
-
-        // move the horizontal scroll bar value to the top
-        treeBrowser.scrollToTop();
-
         currentlySelectedBrowseOntologyAccessionNumber = null;
 
         clearData(OLS_DIALOG_BROWSE_ONTOLOGY, true, true);
 
-        if (debug) {
-            System.out.println("updated roots");
-        }
+        browseOntologyChannel.submit(new BackgroundTask<TermLevels>() {
 
-        this.setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
-    }
+            @Override
+            public TermLevels doInBackground() throws Exception {
+                return fetchTermLevels(ontology, parentTermId, TREE_BROWSER_LEVELS);
+            }
 
-    /**
-     * Adds a second level of non visible nodes. Needed to be able to show
-     * folder icons for the current level of nodes.
-     *
-     * @param termId the term id for the term to add the second level for
-     * @param ontology the ontology to get the terms from
-     * @param parentNode the node to add the new nodes to
-     * @return true if an error occurred, false otherwise
-     */
-    public boolean addSecondLevelOfNodes(String termId, String ontology, DefaultMutableTreeNode parentNode) {
+            @Override
+            public void succeeded(TermLevels rootLevels) {
 
-        boolean error = false;
+                treeBrowser.setRootTerms(rootLevels, parentTermId);
 
-        try {
-            // get the next level of nodes
-            Map<String, String> secondLevelChildTerms = olsConnection.getTermChildren(termId, ontology, 1, null);
+                // move the horizontal scroll bar value to the top
+                treeBrowser.scrollToTop();
 
-            // add the level of non visible nodes
-            for (String tId2 : secondLevelChildTerms.keySet()) {
-                treeBrowser.addNode(parentNode, tId2, secondLevelChildTerms.get(tId2), false);
+                if (debug) {
+                    System.out.println("updated roots");
+                }
             }
 
-        } catch (RemoteException ex) {
-            JOptionPane.showMessageDialog(
-                    this,
-                    defaultOlsConnectionFailureErrorMessage,
-                    "OLS Connection Error", JOptionPane.ERROR_MESSAGE);
-            Util.writeToErrorLog("Error when trying to access OLS: ");
-            ex.printStackTrace();
-            error = true;
-        }
+            @Override
+            public void failed(Exception e) {
 
-        return error;
+                treeBrowser.loadingFailed(null);
+
+                JOptionPane.showMessageDialog(
+                        OLSDialog.this,
+                        defaultOlsConnectionFailureErrorMessage,
+                        "OLS Connection Error", JOptionPane.ERROR_MESSAGE);
+                Util.writeToErrorLog("Error when trying to access OLS: ");
+                e.printStackTrace();
+            }
+        });
     }
 
     /**
@@ -1226,6 +1922,7 @@ public class OLSDialog extends javax.swing.JDialog {
         cancelJButton = new javax.swing.JButton();
         helpJButton = new javax.swing.JButton();
         aboutJButton = new javax.swing.JButton();
+        olsProgressJProgressBar = new javax.swing.JProgressBar();
         searchParametersJPanel = new javax.swing.JPanel();
         searchTypeJTabbedPane = new javax.swing.JTabbedPane();
         termNameSearchJPanel = new javax.swing.JPanel();
@@ -1275,6 +1972,7 @@ public class OLSDialog extends javax.swing.JDialog {
         precisionJTextField = new javax.swing.JTextField();
         typeLabel = new javax.swing.JLabel();
         massTypeJComboBox = new javax.swing.JComboBox();
+        massCombinationJComboBox = new javax.swing.JComboBox();
         dummyLabelJLabel = new javax.swing.JLabel();
         modificationMassSearchJButton = new javax.swing.JButton();
         browseOntologyJPanel = new javax.swing.JPanel();
@@ -1352,6 +2050,9 @@ public class OLSDialog extends javax.swing.JDialog {
             }
         });
 
+        olsProgressJProgressBar.setToolTipText("Waiting for the OLS...");
+        olsProgressJProgressBar.setIndeterminate(true);
+
         searchParametersJPanel.setBorder(javax.swing.BorderFactory.createTitledBorder("Search Parameters"));
         searchParametersJPanel.setOpaque(false);
 
@@ -1397,29 +2098,7 @@ public class OLSDialog extends javax.swing.JDialog {
 
         selectedTermTermNameJLabel.setText("Selected Term");
 
-        olsResultsTermNameSearchJTable.setModel(new javax.swing.table.DefaultTableModel(
-            new Object [][] {
-
-            },
-            new String [] {
-                "Accession", "CV Term"
-            }
-        ) {
-            Class[] types = new Class [] {
-                java.lang.String.class, java.lang.String.class
-            };
-            boolean[] canEdit = new boolean [] {
-                false, false
-            };
-
-            public Class getColumnClass(int columnIndex) {
-                return types [columnIndex];
-            }
-
-            public boolean isCellEditable(int rowIndex, int columnIndex) {
-                return canEdit [columnIndex];
-            }
-        });
+        olsResultsTermNameSearchJTable.setModel(new ResultsTableModel(new String[]{"Accession", "CV Term"}, new Class[]{String.class, String.class}));
         olsResultsTermNameSearchJTable.setOpaque(false);
         olsResultsTermNameSearchJTable.addMouseListener(new java.awt.event.MouseAdapter() {
             public void mouseClicked(java.awt.event.MouseEvent evt) {
@@ -1596,29 +2275,7 @@ public class OLSDialog extends javax.swing.JDialog {
 
         searchTermTermIdLabel.setText("Selected Term");
 
-        olsResultsTermIdSearchJTable.setModel(new javax.swing.table.DefaultTableModel(
-            new Object [][] {
-
-            },
-            new String [] {
-                "Accession", "CV Term"
-            }
-        ) {
-            Class[] types = new Class [] {
-                java.lang.String.class, java.lang.String.class
-            };
-            boolean[] canEdit = new boolean [] {
-                false, false
-            };
-
-            public Class getColumnClass(int columnIndex) {
-                return types [columnIndex];
-            }
-
-            public boolean isCellEditable(int rowIndex, int columnIndex) {
-                return canEdit [columnIndex];
-            }
-        });
+        olsResultsTermIdSearchJTable.setModel(new ResultsTableModel(new String[]{"Accession", "CV Term"}, new Class[]{String.class, String.class}));
         olsResultsTermIdSearchJTable.setOpaque(false);
         olsResultsTermIdSearchJTable.addMouseListener(new java.awt.event.MouseAdapter() {
             public void mouseClicked(java.awt.event.MouseEvent evt) {
@@ -1798,29 +2455,7 @@ public class OLSDialog extends javax.swing.JDialog {
         termDetailsMassSearchJTable.setOpaque(false);
         termDetailsMassSearchJScrollPane.setViewportView(termDetailsMassSearchJTable);
 
-        olsResultsMassSearchJTable.setModel(new javax.swing.table.DefaultTableModel(
-            new Object [][] {
-
-            },
-            new String [] {
-                "Accession", "CV Term"
-            }
-        ) {
-            Class[] types = new Class [] {
-                java.lang.String.class, java.lang.String.class
-            };
-            boolean[] canEdit = new boolean [] {
-                false, false
-            };
-
-            public Class getColumnClass(int columnIndex) {
-                return types [columnIndex];
-            }
-
-            public boolean isCellEditable(int rowIndex, int columnIndex) {
-                return canEdit [columnIndex];
-            }
-        });
+        olsResultsMassSearchJTable.setModel(new ResultsTableModel(new String[]{"Accession", "CV Term", "Mass", "Error"}, new Class[]{String.class, String.class, Double.class, Double.class}));
         olsResultsMassSearchJTable.setOpaque(false);
         olsResultsMassSearchJTable.addMouseListener(new java.awt.event.MouseAdapter() {
             public void mouseClicked(java.awt.event.MouseEvent evt) {
@@ -1895,6 +2530,9 @@ public class OLSDialog extends javax.swing.JDialog {
             }
         });
 
+        massCombinationJComboBox.setModel(new javax.swing.DefaultComboBoxModel(new String[] { "Single", "Pairs", "Triples" }));
+        massCombinationJComboBox.setToolTipText("Number of Modifications Adding Up to the Mass");
+
         dummyLabelJLabel.setFont(dummyLabelJLabel.getFont().deriveFont(dummyLabelJLabel.getFont().getSize()-1f));
         dummyLabelJLabel.setText(" ");
 
@@ -1927,6 +2565,8 @@ public class OLSDialog extends javax.swing.JDialog {
                         .add(typeLabel)
                         .add(18, 18, 18)
                         .add(massTypeJComboBox, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED)
+                        .add(massCombinationJComboBox, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE)
                         .addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED)))
                 .add(modificationMassSearchJButton, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, 80, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE)
                 .addContainerGap())
@@ -1937,6 +2577,7 @@ public class OLSDialog extends javax.swing.JDialog {
                 .addContainerGap(org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                 .add(massPanelLayout.createParallelGroup(org.jdesktop.layout.GroupLayout.BASELINE)
                     .add(modificationMassSearchJButton)
+                    .add(massCombinationJComboBox, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE)
                     .add(massTypeJComboBox, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE)
                     .add(typeLabel)
                     .add(precisionJTextField, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE)
@@ -2121,6 +2762,8 @@ public class OLSDialog extends javax.swing.JDialog {
                         .add(helpJButton, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, 23, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE)
                         .addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED)
                         .add(aboutJButton, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, 25, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED)
+                        .add(olsProgressJProgressBar, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, 100, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE)
                         .addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                         .add(insertSelectedJButton)
                         .addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED)
@@ -2143,7 +2786,10 @@ public class OLSDialog extends javax.swing.JDialog {
                             .add(cancelJButton, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE)
                             .add(insertSelectedJButton)))
                     .add(aboutJButton, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, 24, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE)
-                    .add(helpJButton, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, 24, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE))
+                    .add(helpJButton, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, 24, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE)
+                    .add(backgroundPanelLayout.createSequentialGroup()
+                        .add(6, 6, 6)
+                        .add(olsProgressJProgressBar, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, 12, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE)))
                 .addContainerGap())
         );
 
@@ -2259,108 +2905,311 @@ public class OLSDialog extends javax.swing.JDialog {
      */
     private void termNameSearchJTextFieldKeyReleased(java.awt.event.KeyEvent evt) {//GEN-FIRST:event_termNameSearchJTextFieldKeyReleased
 
-        keyPressedCounter++;
+        final String searchText = termNameSearchJTextField.getText();
+
+        // search the selected ontology and find all matching terms
+        String currentOntology = getCurrentOntologyLabel();
+
+        // if 'search in all ontologies' is selected, set the ontology to null
+        if (ontologyJComboBox.getSelectedIndex() == 0) {
+            currentOntology = null;
+        }
+
+        final String ontology = currentOntology;
+        final boolean searchPreselectedOntologies = isPreselectedOption();
+
+        // the ontologies to search, null for all ontologies
+        List<String> ontologies = null;
+
+        if (searchPreselectedOntologies) {
+            ontologies = new ArrayList<String>();
+            for (String preselectedOntology : preselectedOntologies.keySet()) {
+                ontologies.add(preselectedOntology.toUpperCase());
+            }
+        } else if (ontology != null) {
+            ontologies = Collections.singletonList(ontology);
+        }
+
+        // all the ontologies are searched one at a time, so that the results are shown per ontology
+        // as they arrive, unless the ontologies are not known yet
+        List<String> searchedOntologies = ontologies;
+
+        if (searchedOntologies == null) {
+            searchedOntologies = getAllOntologyLabels();
+        }
+
+        // the imported ontologies are also searched through the client, which answers them locally
+        // with all the terms containing the search text, not only the word prefixes found in the index
+        TermNameIndex termNameIndex = getTermNameIndex();
+        final List<String> olsOntologies = searchedOntologies;
+
+        final boolean searchOntologiesSeparately = olsOntologies != null && (searchPreselectedOntologies || ontology == null);
+
+        // the OLS search is only performed if a certain amount of characters are inserted
+        boolean searchOls = searchText.length() >= MINIMUM_WORD_LENGTH
+                && (olsOntologies == null || !olsOntologies.isEmpty());
+
+        insertSelectedJButton.setEnabled(false);
+        currentlySelectedTermNameSearchAccessionNumber = null;
+        clearData(OLS_DIALOG_TERM_NAME_SEARCH, true, true);
+        termNameSearchResults = new RankedTermNames(searchText,
+                preselectedOntologies == null ? null : preselectedOntologies.keySet(), TERM_NAME_SEARCH_PAGE_SIZE);
+
+        // show the matching terms in the local index straight away
+        termNameSearchResultsTruncated = false;
+
+        if (termNameIndex != null && searchText.trim().length() > 0) {
+            Map<String, String> indexedTerms = termNameIndex.search(searchText, ontologies, MAXIMUM_INDEXED_TERM_NAME_RESULTS);
+            termNameSearchResultsTruncated = indexedTerms.size() >= MAXIMUM_INDEXED_TERM_NAME_RESULTS;
+            addTermNameSearchResults(indexedTerms);
+            updateTermNameSearchResultsView();
+        }
+
+        if (olsResultsTermNameSearchJTable.getRowCount() == 0 && (searchOls || termNameIndex == null || searchText.trim().length() == 0)) {
+            numberOfTermsTermNameSearchJTextField.setText("-");
+            numberOfTermsTermNameSearchJTextField.setToolTipText("Number of Matching Terms");
+        }
+
+        if (!searchOls) {
+
+            termNameSearchScheduler.cancel();
+
+            setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
+            termNameSearchJTextField.setCursor(new java.awt.Cursor(java.awt.Cursor.TEXT_CURSOR));
+
+            return;
+        }
 
-        new Thread("SearchThread") {
+        termNameSearchScheduler.schedule(new BackgroundTask<Map<String, String>>() {
 
             @Override
-            public synchronized void run() {
+            public Map<String, String> doInBackground() throws Exception {
 
-                try {
-                    wait(waitingTime);
-                } catch (InterruptedException e) {
+                // the selected ontology, or all the ontologies at once if not known, in a single query
+                if (!searchOntologiesSeparately) {
+                    Map<String, String> map = getOntologyClient().getTermsByName(searchText, ontology, false);
+                    publishTermNameSearchResults(map);
+                    return map;
                 }
 
-                // see if the gui is to be updated or not
-                if (keyPressedCounter == 1) {
+                // search the ontologies concurrently, showing the results per ontology as they arrive
+                Map<String, Callable<Map<String, String>>> queries = new LinkedHashMap<String, Callable<Map<String, String>>>();
 
-                    setCursor(new java.awt.Cursor(java.awt.Cursor.WAIT_CURSOR));
-                    termNameSearchJTextField.setCursor(new java.awt.Cursor(java.awt.Cursor.WAIT_CURSOR));
+                for (final String upperCaseOntology : olsOntologies) {
+                    queries.put(upperCaseOntology, new Callable<Map<String, String>>() {
 
-                    insertSelectedJButton.setEnabled(false);
-                    currentlySelectedTermNameSearchAccessionNumber = null;
+                        public Map<String, String> call() throws Exception {
+                            return getOntologyClient().getTermsByName(searchText, upperCaseOntology, false);
+                        }
+                    });
+                }
+
+                final Map<String, String> map = new HashMap<String, String>();
+                final List<Exception> errors = new ArrayList<Exception>();
+
+                ConcurrentQueries.ResultListener<String, Map<String, String>> listener =
+                        new ConcurrentQueries.ResultListener<String, Map<String, String>>() {
+
+                            public void resultArrived(String searchedOntology, Map<String, String> terms) {
+                                Map<String, String> newTerms = new HashMap<String, String>(terms);
+                                newTerms.keySet().removeAll(map.keySet());
+                                map.putAll(newTerms);
+                                publishTermNameSearchResults(newTerms);
+                            }
+
+                            public void queryFailed(String searchedOntology, Exception e) {
+                                Util.writeToErrorLog("Error when trying to search " + searchedOntology + " in the OLS: ");
+                                e.printStackTrace();
+                                errors.add(e);
+                            }
+                        };
+
+                // the few preselected ontologies share one deadline, while each of all the ontologies
+                // has its own, so that the search is not cut short as a whole
+                if (searchPreselectedOntologies) {
+                    ConcurrentQueries.fanOut(queries, TERM_NAME_SEARCH_PARALLELISM,
+                            PRESELECTED_ONTOLOGY_SEARCH_TIMEOUT, TimeUnit.SECONDS, listener);
+                } else {
+                    ConcurrentQueries.fanOutEach(queries, TERM_NAME_SEARCH_PARALLELISM,
+                            ONTOLOGY_SEARCH_TIMEOUT, TimeUnit.SECONDS, listener);
+                }
+
+                // only report an error if none of the ontologies could be searched
+                if (!queries.isEmpty() && errors.size() == queries.size()) {
+                    throw errors.get(0);
+                }
+
+                return map;
+            }
+
+            /**
+             * Adds the given terms to the results table and updates the
+             * number of terms found, unless the search has been superseded.
+             *
+             * @param terms the terms to add, key: accession number, value:
+             * term name
+             */
+            private void publishTermNameSearchResults(final Map<String, String> terms) {
+                publish(new Runnable() {
+
+                    public void run() {
+                        addTermNameSearchResults(terms);
+                        updateNumberOfTermNameSearchResults();
+                    }
+                });
+            }
+
+            @Override
+            public void started() {
+                setCursor(new java.awt.Cursor(java.awt.Cursor.WAIT_CURSOR));
+                termNameSearchJTextField.setCursor(new java.awt.Cursor(java.awt.Cursor.WAIT_CURSOR));
+            }
+
+            @Override
+            public void succeeded(Map<String, String> map) {
+
+                // the complete search has found all the matching terms
+                termNameSearchResultsTruncated = false;
+                updateTermNameSearchResultsView();
+
+                setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
+                termNameSearchJTextField.setCursor(new java.awt.Cursor(java.awt.Cursor.TEXT_CURSOR));
+            }
+
+            @Override
+            public void failed(Exception e) {
+
+                setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
+                termNameSearchJTextField.setCursor(new java.awt.Cursor(java.awt.Cursor.TEXT_CURSOR));
+
+                JOptionPane.showMessageDialog(
+                        OLSDialog.this,
+                        defaultOlsConnectionFailureErrorMessage,
+                        "OLS Connection Error", JOptionPane.ERROR_MESSAGE);
+                Util.writeToErrorLog("Error when trying to access OLS: ");
+                e.printStackTrace();
+            }
+        });
+    }//GEN-LAST:event_termNameSearchJTextFieldKeyReleased
+
+    /**
+     * Returns the labels of all the ontologies in the ontology list, the
+     * preselected ontologies first.
+     *
+     * @return the upper case ontology labels, or null if the ontologies are
+     * not known
+     */
+    private List<String> getAllOntologyLabels() {
+
+        Map<String, String> ontologyNames = getOntologyNamesSnapshot().getOntologyNames();
+
+        if (ontologyNames.isEmpty()) {
+            return null;
+        }
+
+        Set<String> labels = new LinkedHashSet<String>();
+
+        if (preselectedOntologies != null) {
+            for (String preselectedOntology : preselectedOntologies.keySet()) {
+                labels.add(preselectedOntology.toUpperCase());
+            }
+        }
+
+        for (String label : ontologyNames.keySet()) {
+            labels.add(label.toUpperCase());
+        }
+
+        return new ArrayList<String>(labels);
+    }
+
+    /**
+     * Adds the given terms to the term name search results, skipping the
+     * terms already found, and updates the results table if the best terms
+     * changed.
+     *
+     * @param terms the terms to add, key: accession number, value: term name
+     */
+    private void addTermNameSearchResults(Map<String, String> terms) {
+        if (termNameSearchResults.addAll(terms)) {
+            updateTermNameSearchResultsTable();
+        }
+    }
 
-                    try {
-                        // clear the old meta data
-                        clearData(OLS_DIALOG_TERM_NAME_SEARCH, true, true);
+    /**
+     * Shows the next page of the term name search results when the results
+     * table is scrolled to the end.
+     */
+    private void showMoreTermNameSearchResults() {
 
-                        // the search is only performed if a certain amount of characters are inserted
-                        if (termNameSearchJTextField.getText().length() >= MINIMUM_WORD_LENGTH) {
+        JScrollBar scrollBar = olsResultsTermNameSearchJScrollPane.getVerticalScrollBar();
 
-                            // search the selected ontology and find all matching terms
-                            String ontology = getCurrentOntologyLabel();
+        if (termNameSearchResults.hasMore() && olsResultsTermNameSearchJTable.getRowCount() > 0
+                && scrollBar.getValue() + scrollBar.getVisibleAmount() >= scrollBar.getMaximum()) {
+            termNameSearchResults.showMore();
+            updateTermNameSearchResultsTable();
+        }
+    }
 
-                            // if 'search in all ontologies' is selected, set the ontology to null
-                            if (ontologyJComboBox.getSelectedIndex() == 0) {
-                                ontology = null;
-                            }
+    /**
+     * Shows the best term name search results in the results table, the
+     * most relevant first, keeping the selected term selected.
+     */
+    private void updateTermNameSearchResultsTable() {
 
-                            Map map = new HashMap();
-                            if (isPreselectedOption() == true) {
-                                // Ontology terms for preselected Ontologies
-                                for (String preselectedOntology : preselectedOntologies.keySet()) {
-                                    map.putAll(olsConnection.getTermsByName(termNameSearchJTextField.getText(), preselectedOntology.toUpperCase(), false));
-                                }
-                            } else {
-                                map = olsConnection.getTermsByName(termNameSearchJTextField.getText(), ontology, false);
-                            }
+        int selectedRow = olsResultsTermNameSearchJTable.getSelectedRow();
+        Object selectedTermId = selectedRow == -1 ? null : olsResultsTermNameSearchJTable.getValueAt(selectedRow, 0);
+        selectedRow = -1;
 
-                            for (Iterator i = map.keySet().iterator(); i.hasNext();) {
-                                String key = (String) i.next();
-                                ((DefaultTableModel) olsResultsTermNameSearchJTable.getModel()).addRow(new Object[]{
-                                    getOlsAccessionLink(key), map.get(key)});
-                            }
+        List<Object[]> rows = new ArrayList<Object[]>();
 
-                            // set the preferred size of the accession column
-                            Integer width = getPreferredColumnWidth(olsResultsTermNameSearchJTable, olsResultsTermNameSearchJTable.getColumn("Accession").getModelIndex(), 6);
+        for (Map.Entry<String, String> term : termNameSearchResults.getShownTerms().entrySet()) {
+            if (term.getKey().equals(selectedTermId)) {
+                selectedRow = rows.size();
+            }
+            rows.add(new Object[]{term.getKey(), term.getValue()});
+        }
 
-                            if (width != null) {
-                                olsResultsTermNameSearchJTable.getColumn("Accession").setMinWidth(width);
-                                olsResultsTermNameSearchJTable.getColumn("Accession").setMaxWidth(width);
-                            } else {
-                                olsResultsTermNameSearchJTable.getColumn("Accession").setMinWidth(15);
-                                olsResultsTermNameSearchJTable.getColumn("Accession").setMaxWidth(Integer.MAX_VALUE);
-                            }
+        ((ResultsTableModel) olsResultsTermNameSearchJTable.getModel()).setRows(rows);
 
-                            termNameSearchJTextField.requestFocus();
+        if (selectedRow != -1) {
+            olsResultsTermNameSearchJTable.setRowSelectionInterval(selectedRow, selectedRow);
+        } else if (selectedTermId != null) {
+            // the selected term was pushed out by more relevant terms
+            insertSelectedJButton.setEnabled(false);
+        }
+    }
 
-                            setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
-                            termNameSearchJTextField.setCursor(new java.awt.Cursor(java.awt.Cursor.TEXT_CURSOR));
-                            numberOfTermsTermNameSearchJTextField.setText("" + map.size());
+    /**
+     * Updates the number of terms found and the scroll position after
+     * inserting the term name search results.
+     */
+    private void updateTermNameSearchResultsView() {
 
-                            // make the first row visible
-                            if (olsResultsTermNameSearchJTable.getRowCount() > 0) {
-                                olsResultsTermNameSearchJTable.scrollRectToVisible(olsResultsTermNameSearchJTable.getCellRect(0, 0, false));
-                            }
+        termNameSearchJTextField.requestFocus();
+        updateNumberOfTermNameSearchResults();
 
-                            //No matching terms found
-                            if (map.isEmpty()) {
-                                //JOptionPane.showMessageDialog(this, "No mathcing terms found.");
-                            }
-                        } else {
-                            numberOfTermsTermNameSearchJTextField.setText("-");
-                        }
-                    } catch (RemoteException ex) {
-                        JOptionPane.showMessageDialog(
-                                null,
-                                defaultOlsConnectionFailureErrorMessage,
-                                "OLS Connection Error", JOptionPane.ERROR_MESSAGE);
-                        Util.writeToErrorLog("Error when trying to access OLS: ");
-                        ex.printStackTrace();
-                    }
+        // make the first row visible
+        if (olsResultsTermNameSearchJTable.getRowCount() > 0) {
+            olsResultsTermNameSearchJTable.scrollRectToVisible(olsResultsTermNameSearchJTable.getCellRect(0, 0, false));
+        }
+    }
 
-                    setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
-                    termNameSearchJTextField.setCursor(new java.awt.Cursor(java.awt.Cursor.TEXT_CURSOR));
+    /**
+     * Updates the number of terms found. If the results are cut to the best
+     * matching terms of the local term name index, the number is followed by
+     * a '+' and the tooltip tells the user to refine the search.
+     */
+    private void updateNumberOfTermNameSearchResults() {
 
-                    // gui updated, reset the counter
-                    keyPressedCounter = 0;
-                } else {
-                    // gui not updated, decrease the counter
-                    keyPressedCounter--;
-                }
-            }
-        }.start();
-    }//GEN-LAST:event_termNameSearchJTextFieldKeyReleased
+        if (termNameSearchResultsTruncated) {
+            numberOfTermsTermNameSearchJTextField.setText(termNameSearchResults.size() + "+");
+            numberOfTermsTermNameSearchJTextField.setToolTipText("<html>Only the " + MAXIMUM_INDEXED_TERM_NAME_RESULTS
+                    + " best matching terms are shown.<br>Type more characters to narrow the search.</html>");
+        } else {
+            numberOfTermsTermNameSearchJTextField.setText("" + termNameSearchResults.size());
+            numberOfTermsTermNameSearchJTextField.setToolTipText("Number of Matching Terms");
+        }
+    }
 
     /**
      * Inserts the selected ontology into the parents text field or table and
@@ -2370,8 +3219,6 @@ public class OLSDialog extends javax.swing.JDialog {
      */
     private void insertSelectedJButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_insertSelectedJButtonActionPerformed
 
-        this.setCursor(new java.awt.Cursor(java.awt.Cursor.WAIT_CURSOR));
-
         String termId = null;
 
         if (searchTypeJTabbedPane.getSelectedIndex() == OLS_DIALOG_TERM_NAME_SEARCH) {
@@ -2384,73 +3231,99 @@ public class OLSDialog extends javax.swing.JDialog {
             termId = "" + olsResultsTermIdSearchJTable.getValueAt(olsResultsTermIdSearchJTable.getSelectedRow(), 0);
         }
 
+        if (termId != null && AccessionLinkRenderer.isCombination(termId)) {
+            showCombinationNotSupportedMessage();
+            return;
+        }
+
         if (termId != null) {
 
-            // remove the link details
-            if (searchTypeJTabbedPane.getSelectedIndex() != OLS_DIALOG_BROWSE_ONTOLOGY) {
-                termId = termId.substring(termId.indexOf("termId=") + "termId=".length());
-                termId = termId.substring(0, termId.indexOf("\""));
-            }
+            final String selectedTermId = termId;
 
-            String ontologyLong = ((String) ontologyJComboBox.getSelectedItem());
-            String ontologyShort;
+            final String selectedOntologyLong = ((String) ontologyJComboBox.getSelectedItem());
+            final boolean ontologyFromTermId = ontologyJComboBox.getSelectedIndex() == 0 || isPreselectedOption() == true;
 
-            if (ontologyJComboBox.getSelectedIndex() == 0 || isPreselectedOption() == true) {
+            // the ontology and term names are looked up in the background
+            taskPipeline.execute(new BackgroundTask<String[]>() {
 
-                ontologyShort = getOntologyLabelFromTermId(termId);
+                /**
+                 * True if the ontology names could not be retrieved.
+                 */
+                private boolean ontologyNamesFailed = false;
 
-                if (ontologyShort == null) {
-                    ontologyShort = "NEWT";
-                    ontologyLong = "NEWT UniProt Taxonomy Database [NEWT]";
-                } else {
+                @Override
+                public String[] doInBackground() throws Exception {
+
+                    String ontologyLong = selectedOntologyLong;
+                    String ontologyShort;
+
+                    if (ontologyFromTermId) {
+
+                        ontologyShort = getOntologyLabelFromTermId(selectedTermId);
+
+                        if (ontologyShort == null) {
+                            ontologyShort = "NEWT";
+                            ontologyLong = "NEWT UniProt Taxonomy Database [NEWT]";
+                        } else {
+
+                            try {
+                                Map ontologies = getOntologyClient().getOntologyNames();
+                                ontologyLong = ontologies.get(ontologyShort).toString() + "[" + ontologyShort + "]"; // @TODO: possible null pointer...
+                            } catch (RemoteException ex) {
+                                Util.writeToErrorLog("Error when trying to access OLS: ");
+                                ex.printStackTrace();
+                                ontologyNamesFailed = true;
+                                ontologyLong = "unknown";
+                            }
+                        }
+                    } else {
+                        ontologyShort = ontologyLong.substring(ontologyLong.lastIndexOf("[") + 1, ontologyLong.length() - 1);
+                    }
+
+                    String selectedValue = getOntologyClient().getTermById(selectedTermId, ontologyShort);
+
+                    return new String[]{selectedValue, ontologyShort, ontologyLong};
+                }
+
+                @Override
+                public void succeeded(String[] result) {
+
+                    if (ontologyNamesFailed) {
+                        JOptionPane.showMessageDialog(
+                                OLSDialog.this,
+                                defaultOlsConnectionFailureErrorMessage,
+                                "OLS Connection Error", JOptionPane.ERROR_MESSAGE);
+                    }
+
+                    //insert the value into the correct text field or table
+                    if (olsInputable != null) {
+                        olsInputable.insertOLSResult(field, result[0], selectedTermId, result[1], result[2], modifiedRow, mappedTerm, metadata);
+                        OLSDialog.this.setVisible(false);
+                        OLSDialog.this.dispose();
+                    }
+                }
 
-                    try {
-                        Map ontologies = olsConnection.getOntologyNames();
-                        ontologyLong = ontologies.get(ontologyShort).toString() + "[" + ontologyShort + "]"; // @TODO: possible null pointer...
-                    } catch (RemoteException ex) {
+                @Override
+                public void failed(Exception e) {
+
+                    if (e instanceof RemoteException) {
                         JOptionPane.showMessageDialog(
-                                this,
+                                OLSDialog.this,
                                 defaultOlsConnectionFailureErrorMessage,
                                 "OLS Connection Error", JOptionPane.ERROR_MESSAGE);
-                        Util.writeToErrorLog("Error when trying to access OLS: ");
-                        ex.printStackTrace();
-                        ontologyLong = "unknown";
-                    } catch (Exception e) {
+                    } else {
                         JOptionPane.showMessageDialog(
-                                this,
+                                OLSDialog.this,
                                 "There seems to be a technical issue with the given term.\n"
                                         + "Try choosing a related similar term instead.",
                                 "OLS Error", JOptionPane.WARNING_MESSAGE);
-                        Util.writeToErrorLog("Error when trying to access OLS: ");
-                        e.printStackTrace();
-                        ontologyLong = "unknown";
-                        return;
                     }
-                }
-            } else {
-                ontologyShort = ontologyLong.substring(ontologyLong.lastIndexOf("[") + 1, ontologyLong.length() - 1);
-            }
 
-            try {
-                String selectedValue = olsConnection.getTermById(termId, ontologyShort);
-
-                //insert the value into the correct text field or table
-                if (olsInputable != null) {
-                    olsInputable.insertOLSResult(field, selectedValue, termId, ontologyShort, ontologyLong, modifiedRow, mappedTerm, metadata);
-                    this.setVisible(false);
-                    this.dispose();
+                    Util.writeToErrorLog("Error when trying to access OLS: ");
+                    e.printStackTrace();
                 }
-            } catch (RemoteException ex) {
-                JOptionPane.showMessageDialog(
-                        this,
-                        defaultOlsConnectionFailureErrorMessage,
-                        "OLS Connection Error", JOptionPane.ERROR_MESSAGE);
-                Util.writeToErrorLog("Error when trying to access OLS: ");
-                ex.printStackTrace();
-            }
+            });
         }
-
-        this.setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
     }//GEN-LAST:event_insertSelectedJButtonActionPerformed
 
     /**
@@ -2465,7 +3338,11 @@ public class OLSDialog extends javax.swing.JDialog {
 
         int row = searchResultTable.getSelectedRow();
 
-        if (row != -1) {
+        // combinations of modifications cannot be used as a single term
+        boolean combination = row != -1
+                && AccessionLinkRenderer.isCombination((String) searchResultTable.getValueAt(row, 0));
+
+        if (row != -1 && !combination) {
             insertSelectedJButton.setEnabled(true);
         } else {
             insertSelectedJButton.setEnabled(false);
@@ -2501,15 +3378,47 @@ public class OLSDialog extends javax.swing.JDialog {
                 }
 
                 String termID = (String) searchResultTable.getValueAt(row, 0);
-                termID = termID.substring(termID.indexOf("termId=") + "termId=".length());
-                termID = termID.substring(0, termID.indexOf("\""));
-                loadMetaData(termID, searchType);
+
+                if (combination) {
+                    showCombinationDetails(termID);
+                } else {
+                    loadMetaData(termID, searchType);
+                }
             }
         }
 
         this.setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
     }
 
+    /**
+     * Clears the meta data of the mass search and explains that the selected
+     * combination of modifications cannot be used or viewed as a single
+     * term.
+     *
+     * @param accessions the accession numbers of the combination, e.g.,
+     * "MOD:00425 + MOD:00400"
+     */
+    private void showCombinationDetails(String accessions) {
+
+        loadMetaData(null, OLS_DIALOG_PSI_MOD_MASS_SEARCH);
+
+        definitionMassSearchJTextPane.setText("The selected row is a combination of modifications: " + accessions + ".\n\n"
+                + "A combination cannot be used or viewed as a single term. Search for the mass of one of "
+                + "the modifications to select it on its own.");
+        definitionMassSearchJTextPane.setCaretPosition(0);
+    }
+
+    /**
+     * Tells the user that a combination of modifications cannot be used or
+     * viewed as a single term.
+     */
+    private void showCombinationNotSupportedMessage() {
+        JOptionPane.showMessageDialog(this,
+                "A combination of modifications cannot be used or viewed as a single term.\n"
+                + "Select a single modification instead.",
+                "Modification Combination", JOptionPane.INFORMATION_MESSAGE);
+    }
+
     /**
      * Closes the dialog.
      *
@@ -2568,18 +3477,57 @@ public class OLSDialog extends javax.swing.JDialog {
         DataHolder[] retval = null;
 
         try {
-            QueryService locator = new QueryServiceLocator();
-            Query service = locator.getOntologyQuery();
-
-            retval = service.getTermsByAnnotationData("MOD", massDeltaType, null, fromMass, toMass);
-
-        } catch (ServiceException ex) {
+            retval = getOntologyClient().getTermsByAnnotationData("MOD", massDeltaType, null, fromMass, toMass);
+        } catch (RemoteException ex) {
             JOptionPane.showMessageDialog(
                     this,
                     defaultOlsConnectionFailureErrorMessage,
                     "OLS Connection Error", JOptionPane.ERROR_MESSAGE);
             Util.writeToErrorLog("Error when trying to access OLS: ");
             ex.printStackTrace();
+        }
+
+        return retval;
+    }
+
+    /**
+     * Returns the MOD entries within the given tolerance of each of the given
+     * mass deltas, e.g., all the unexplained mass shifts of an open search.
+     * All the MOD entries of the mass delta type are retrieved once and the
+     * mass deltas are matched locally.
+     *
+     * @param massDeltaType the type of massDelta to query, e.g., "DiffMono"
+     * @param massDeltas the observed mass deltas, in any order
+     * @param tolerance the mass tolerance
+     * @param ppm true if the tolerance is in ppm, false if in Da
+     * @return the MOD entries of each mass delta, in the order of the mass
+     * deltas, or null if the lookup failed
+     */
+    public DataHolder[][] getModificationsByMassDeltas(String massDeltaType, double[] massDeltas, double tolerance, boolean ppm) {
+        return getModificationsByMassDeltas(massDeltaType, massDeltas, tolerance, ppm, 1);
+    }
+
+    /**
+     * Returns the MOD entries within the given tolerance of each of the given
+     * mass deltas, matching batches of the mass deltas in parallel.
+     *
+     * @param massDeltaType the type of massDelta to query, e.g., "DiffMono"
+     * @param massDeltas the observed mass deltas, in any order
+     * @param tolerance the mass tolerance
+     * @param ppm true if the tolerance is in ppm, false if in Da
+     * @param parallelism the maximum number of batches matched at the same
+     * time
+     * @return the MOD entries of each mass delta, in the order of the mass
+     * deltas, or null if the lookup failed
+     */
+    public DataHolder[][] getModificationsByMassDeltas(String massDeltaType, double[] massDeltas, double tolerance, boolean ppm,
+            int parallelism) {
+
+        DataHolder[][] retval = null;
+
+        try {
+            retval = ModificationMassIndex.getMassIndex(getOntologyClient(), "MOD", massDeltaType).getTerms(
+                    massDeltas, tolerance, ppm, parallelism);
         } catch (RemoteException ex) {
             JOptionPane.showMessageDialog(
                     this,
@@ -2587,6 +3535,8 @@ public class OLSDialog extends javax.swing.JDialog {
                     "OLS Connection Error", JOptionPane.ERROR_MESSAGE);
             Util.writeToErrorLog("Error when trying to access OLS: ");
             ex.printStackTrace();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         }
 
         return retval;
@@ -2639,43 +3589,143 @@ public class OLSDialog extends javax.swing.JDialog {
             }
         }
 
+        final String massType = massTypeJComboBox.getSelectedItem().toString();
+        final int combinationSize = massCombinationJComboBox.getSelectedIndex() + 1;
+
+        if (!error && combinationSize > 1 && !massType.startsWith("Diff")) {
+            JOptionPane.showMessageDialog(null,
+                    "Combinations of modifications can only be searched for the mass differences (DiffAvg or DiffMono).",
+                    "Modification Mass", JOptionPane.INFORMATION_MESSAGE);
+            massTypeJComboBox.requestFocus();
+            error = true;
+        }
+
         if (!error) {
 
-            String massType = massTypeJComboBox.getSelectedItem().toString();
+            this.setCursor(new java.awt.Cursor(java.awt.Cursor.WAIT_CURSOR));
+
+            final double modificationMass = currentModificationMass;
+            final double accuracy = currentAccuracy;
 
-            DataHolder[] results = getModificationsByMassDelta(massType,
-                    currentModificationMass - currentAccuracy,
-                    currentModificationMass + currentAccuracy);
+            massSearchChannel.submit(new BackgroundTask<List<Object[]>>() {
 
-            if (results != null) {
-                for (int i = 0; i < results.length; i++) {
-                    ((DefaultTableModel) olsResultsMassSearchJTable.getModel()).addRow(
-                            new Object[]{getOlsAccessionLink(results[i].getTermId()),
-                                results[i].getTermName()});
+                @Override
+                public List<Object[]> doInBackground() throws Exception {
+                    if (combinationSize == 1) {
+                        return getMassSearchRows(getOntologyClient().getTermsByAnnotationData(
+                                "MOD", massType, null, modificationMass - accuracy, modificationMass + accuracy), modificationMass);
+                    } else {
+                        return getMassSearchRows(ModificationMassIndex.getMassIndex(getOntologyClient(), "MOD", massType).getCombinations(
+                                modificationMass, accuracy, combinationSize, MAXIMUM_MASS_COMBINATIONS));
+                    }
                 }
 
-                // set the preferred size of the accession column
-                Integer width = getPreferredColumnWidth(olsResultsMassSearchJTable, olsResultsMassSearchJTable.getColumn("Accession").getModelIndex(), 6);
+                @Override
+                public void succeeded(List<Object[]> results) {
 
-                if (width != null) {
-                    olsResultsMassSearchJTable.getColumn("Accession").setMinWidth(width);
-                    olsResultsMassSearchJTable.getColumn("Accession").setMaxWidth(width);
-                } else {
-                    olsResultsMassSearchJTable.getColumn("Accession").setMinWidth(15);
-                    olsResultsMassSearchJTable.getColumn("Accession").setMaxWidth(Integer.MAX_VALUE);
+                    setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
+
+                    if (results != null) {
+                        ((ResultsTableModel) olsResultsMassSearchJTable.getModel()).setRows(results);
+                    }
+
+                    // make the first row visible
+                    if (olsResultsMassSearchJTable.getRowCount() > 0) {
+                        olsResultsMassSearchJTable.scrollRectToVisible(olsResultsMassSearchJTable.getCellRect(0, 0, false));
+                    }
                 }
-            }
 
+                @Override
+                public void failed(Exception e) {
+
+                    setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
+
+                    JOptionPane.showMessageDialog(
+                            OLSDialog.this,
+                            defaultOlsConnectionFailureErrorMessage,
+                            "OLS Connection Error", JOptionPane.ERROR_MESSAGE);
+                    Util.writeToErrorLog("Error when trying to access OLS: ");
+                    e.printStackTrace();
+                }
+            });
+        } else {
+            massSearchChannel.cancel();
             this.setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
+        }
+    }//GEN-LAST:event_modificationMassSearchJButtonActionPerformed
+
+    /**
+     * Returns the mass search results table rows of the given modifications,
+     * sorted by absolute mass error.
+     *
+     * @param results the modifications found
+     * @param modificationMass the searched mass
+     * @return the table rows: accession number, name, mass and mass error
+     */
+    private List<Object[]> getMassSearchRows(DataHolder[] results, double modificationMass) {
+
+        List<Object[]> rows = new ArrayList<Object[]>();
+
+        if (results == null) {
+            return rows;
+        }
+
+        for (DataHolder result : results) {
+            Double mass = ModificationMassIndex.getMass(result);
+            rows.add(new Object[]{result.getTermId(), result.getTermName(),
+                        mass, mass == null ? null : mass - modificationMass});
+        }
+
+        Collections.sort(rows, new Comparator<Object[]>() {
+
+            public int compare(Object[] row1, Object[] row2) {
+                Double error1 = (Double) row1[3];
+                Double error2 = (Double) row2[3];
+                if (error1 == null || error2 == null) {
+                    return error1 == null ? (error2 == null ? 0 : 1) : -1;
+                }
+                return Double.compare(Math.abs(error1), Math.abs(error2));
+            }
+        });
+
+        return rows;
+    }
+
+    /**
+     * Returns the mass search results table rows of the given combinations of
+     * modifications, in the order of the combinations. The accession column
+     * links each modification. Selecting the row explains how to look up the
+     * single modifications, while inserting and viewing the hierarchy are
+     * disabled, see showCombinationDetails.
+     *
+     * @param combinations the combinations found
+     * @return the table rows: accession numbers, names, summed mass and mass
+     * error
+     */
+    private List<Object[]> getMassSearchRows(List<ModificationMassIndex.Combination> combinations) {
+
+        List<Object[]> rows = new ArrayList<Object[]>();
+
+        for (ModificationMassIndex.Combination combination : combinations) {
 
-            // make the first row visible
-            if (olsResultsMassSearchJTable.getRowCount() > 0) {
-                olsResultsMassSearchJTable.scrollRectToVisible(olsResultsTermNameSearchJTable.getCellRect(0, 0, false));
+            StringBuilder accessions = new StringBuilder();
+            StringBuilder termNames = new StringBuilder();
+
+            for (DataHolder term : combination.getTerms()) {
+                if (termNames.length() > 0) {
+                    accessions.append(AccessionLinkRenderer.ACCESSION_SEPARATOR);
+                    termNames.append(" + ");
+                }
+                accessions.append(term.getTermId());
+                termNames.append(term.getTermName());
             }
+
+            rows.add(new Object[]{accessions.toString(), termNames.toString(),
+                        combination.getMass(), combination.getError()});
         }
 
-        this.setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
-    }//GEN-LAST:event_modificationMassSearchJButtonActionPerformed
+        return rows;
+    }
 
     /**
      * Enables or disables the search button based on the selection in the combo
@@ -2898,79 +3948,112 @@ public class OLSDialog extends javax.swing.JDialog {
         insertSelectedJButton.setEnabled(false);
         currentlySelectedTermIdSearchAccessionNumber = null;
 
-        try {
+        // clear the old data
+        clearData(OLS_DIALOG_TERM_ID_SEARCH, true, true);
 
-            // clear the old data
-            clearData(OLS_DIALOG_TERM_ID_SEARCH, true, true);
+        // search the selected ontology and find all matching terms
+        String currentOntology = getCurrentOntologyLabel();
 
-            // search the selected ontology and find all matching terms
-            String ontology = getCurrentOntologyLabel();
+        if (ontologyJComboBox.getSelectedIndex() == 0) {
+            currentOntology = null;
+        }
 
-            if (ontologyJComboBox.getSelectedIndex() == 0) {
-                ontology = null;
-            }
+        final String ontology = currentOntology;
+        final String termId = termIdSearchJTextField.getText().trim();
+        final boolean searchPreselectedOntologies = this.isPreselectedOption();
 
-            String currentTermName = "";
-            if (this.isPreselectedOption() == true) {
-                // Ontology term for preselected Ontologies
-                preselectedOntologiesLoop:
-                for (String preselectedOntology : preselectedOntologies.keySet()) {
-                    currentTermName = olsConnection.getTermById(termIdSearchJTextField.getText().trim(), preselectedOntology.toUpperCase());
-                    if (currentTermName.length() > 0) {
-                        break preselectedOntologiesLoop;
-                    }
+        termIdSearchChannel.submit(new BackgroundTask<String>() {
+
+            @Override
+            public String doInBackground() throws Exception {
+                if (searchPreselectedOntologies) {
+                    // Ontology term for preselected Ontologies
+                    return getTermByIdInPreselectedOntologies(termId);
+                } else {
+                    // Ontology term for one ontology or for all OLS (ontology = null).
+                    return getOntologyClient().getTermById(termId, ontology);
                 }
-            } else {
-                // Ontology term for one ontology or for all OLS (ontology = null).
-                currentTermName = olsConnection.getTermById(termIdSearchJTextField.getText().trim(), ontology);
             }
 
-            if (currentTermName == null) {
-                JOptionPane.showMessageDialog(this, "No matching terms found.", "No Matching Terms", JOptionPane.INFORMATION_MESSAGE);
-                termIdSearchJTextField.requestFocus();
-            } else {
+            @Override
+            public void succeeded(String currentTermName) {
+
+                setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
+                termIdSearchJTextField.setCursor(new java.awt.Cursor(java.awt.Cursor.TEXT_CURSOR));
 
-                if (currentTermName.equalsIgnoreCase(termIdSearchJTextField.getText().trim())) {
-                    JOptionPane.showMessageDialog(this, "No matching terms found.", "No Matching Terms", JOptionPane.INFORMATION_MESSAGE);
+                if (currentTermName == null || currentTermName.equalsIgnoreCase(termId)) {
+                    JOptionPane.showMessageDialog(OLSDialog.this, "No matching terms found.", "No Matching Terms", JOptionPane.INFORMATION_MESSAGE);
                     termIdSearchJTextField.requestFocus();
                 } else {
-                    ((DefaultTableModel) olsResultsTermIdSearchJTable.getModel()).addRow(new Object[]{
-                        getOlsAccessionLink(termIdSearchJTextField.getText().trim()), currentTermName});
-
-                    // set the preferred size of the accession column
-                    Integer width = getPreferredColumnWidth(olsResultsTermIdSearchJTable, olsResultsTermIdSearchJTable.getColumn("Accession").getModelIndex(), 6);
+                    ((ResultsTableModel) olsResultsTermIdSearchJTable.getModel()).addRow(new Object[]{
+                        termId, currentTermName});
+                }
 
-                    if (width != null) {
-                        olsResultsTermIdSearchJTable.getColumn("Accession").setMinWidth(width);
-                        olsResultsTermIdSearchJTable.getColumn("Accession").setMaxWidth(width);
-                    } else {
-                        olsResultsTermIdSearchJTable.getColumn("Accession").setMinWidth(15);
-                        olsResultsTermIdSearchJTable.getColumn("Accession").setMaxWidth(Integer.MAX_VALUE);
-                    }
+                // make the first row visible
+                if (olsResultsTermIdSearchJTable.getRowCount() > 0) {
+                    olsResultsTermIdSearchJTable.scrollRectToVisible(olsResultsTermIdSearchJTable.getCellRect(0, 0, false));
                 }
             }
 
-            this.setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
-            termIdSearchJTextField.setCursor(new java.awt.Cursor(java.awt.Cursor.TEXT_CURSOR));
+            @Override
+            public void failed(Exception e) {
 
-            // make the first row visible
-            if (olsResultsTermIdSearchJTable.getRowCount() > 0) {
-                olsResultsTermIdSearchJTable.scrollRectToVisible(olsResultsTermIdSearchJTable.getCellRect(0, 0, false));
+                setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
+                termIdSearchJTextField.setCursor(new java.awt.Cursor(java.awt.Cursor.TEXT_CURSOR));
+
+                JOptionPane.showMessageDialog(
+                        OLSDialog.this,
+                        defaultOlsConnectionFailureErrorMessage,
+                        "OLS Connection Error", JOptionPane.ERROR_MESSAGE);
+                Util.writeToErrorLog("Error when trying to access OLS: ");
+                e.printStackTrace();
             }
+        });
+    }//GEN-LAST:event_termIdSearchJButtonActionPerformed
 
-        } catch (RemoteException ex) {
-            JOptionPane.showMessageDialog(
-                    this,
-                    defaultOlsConnectionFailureErrorMessage,
-                    "OLS Connection Error", JOptionPane.ERROR_MESSAGE);
-            Util.writeToErrorLog("Error when trying to access OLS: ");
-            ex.printStackTrace();
+    /**
+     * Looks up the given term in all the preselected ontologies at the same
+     * time. If the term is found in more than one ontology, the name from the
+     * first of them in the preselected order is used.
+     *
+     * @param termId the accession number of the term
+     * @return the term name, or null if the term was not found
+     * @throws RemoteException if the lookup fails
+     */
+    private String getTermByIdInPreselectedOntologies(final String termId) throws RemoteException {
+
+        List<Callable<String>> queries = new ArrayList<Callable<String>>();
+
+        for (String preselectedOntology : preselectedOntologies.keySet()) {
+            final String upperCaseOntology = preselectedOntology.toUpperCase();
+            queries.add(new Callable<String>() {
+
+                public String call() throws Exception {
+                    return getOntologyClient().getTermById(termId, upperCaseOntology);
+                }
+            });
         }
 
-        this.setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
-        termIdSearchJTextField.setCursor(new java.awt.Cursor(java.awt.Cursor.TEXT_CURSOR));
+        try {
+            return ConcurrentQueries.firstHit(queries, new ConcurrentQueries.HitCondition<String>() {
 
-    }//GEN-LAST:event_termIdSearchJButtonActionPerformed
+                public boolean isHit(String termName) {
+                    // the OLS returns the accession number itself for unknown terms
+                    return termName != null && termName.length() > 0 && !termName.equalsIgnoreCase(termId);
+                }
+            }, PRESELECTED_ONTOLOGY_SEARCH_TIMEOUT, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RemoteException) {
+                throw (RemoteException) e.getCause();
+            }
+            throw new RemoteException("Error when looking up " + termId + ".", e.getCause());
+        } catch (TimeoutException e) {
+            throw new RemoteException("Error when looking up " + termId + ".", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted when looking up " + termId + ".", e);
+        }
+    }
 
     /**
      * If 'Enter' is pressed and the 'Search' button is enabled, the search is
@@ -3208,15 +4291,7 @@ public class OLSDialog extends javax.swing.JDialog {
             if (column == olsResultsTermNameSearchJTable.getColumn("Accession").getModelIndex()) {
                 // open protein link in web browser
                 if (column == olsResultsTermNameSearchJTable.getColumn("Accession").getModelIndex() && evt != null && evt.getButton() == MouseEvent.BUTTON1) {
-                    if (((String) olsResultsTermNameSearchJTable.getValueAt(row, column)).lastIndexOf("<html>") != -1) {
-                        String link = (String) olsResultsTermNameSearchJTable.getValueAt(row, column);
-                        link = link.substring(link.indexOf("\"") + 1);
-                        link = link.substring(0, link.indexOf("\""));
-
-                        this.setCursor(new java.awt.Cursor(java.awt.Cursor.WAIT_CURSOR));
-                        BareBonesBrowserLaunch.openURL(link);
-                        this.setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
-                    }
+                    openAccessionLink(olsResultsTermNameSearchJTable, row, column, evt.getPoint());
                 }
             }
         }
@@ -3235,15 +4310,7 @@ public class OLSDialog extends javax.swing.JDialog {
             if (column == olsResultsTermIdSearchJTable.getColumn("Accession").getModelIndex()) {
                 // open protein link in web browser
                 if (column == olsResultsTermIdSearchJTable.getColumn("Accession").getModelIndex() && evt != null && evt.getButton() == MouseEvent.BUTTON1) {
-                    if (((String) olsResultsTermIdSearchJTable.getValueAt(row, column)).lastIndexOf("<html>") != -1) {
-                        String link = (String) olsResultsTermIdSearchJTable.getValueAt(row, column);
-                        link = link.substring(link.indexOf("\"") + 1);
-                        link = link.substring(0, link.indexOf("\""));
-
-                        this.setCursor(new java.awt.Cursor(java.awt.Cursor.WAIT_CURSOR));
-                        BareBonesBrowserLaunch.openURL(link);
-                        this.setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
-                    }
+                    openAccessionLink(olsResultsTermIdSearchJTable, row, column, evt.getPoint());
                 }
             }
         }
@@ -3262,15 +4329,7 @@ public class OLSDialog extends javax.swing.JDialog {
             if (column == olsResultsMassSearchJTable.getColumn("Accession").getModelIndex()) {
                 // open protein link in web browser
                 if (column == olsResultsMassSearchJTable.getColumn("Accession").getModelIndex() && evt != null && evt.getButton() == MouseEvent.BUTTON1) {
-                    if (((String) olsResultsMassSearchJTable.getValueAt(row, column)).lastIndexOf("<html>") != -1) {
-                        String link = (String) olsResultsMassSearchJTable.getValueAt(row, column);
-                        link = link.substring(link.indexOf("\"") + 1);
-                        link = link.substring(0, link.indexOf("\""));
-
-                        this.setCursor(new java.awt.Cursor(java.awt.Cursor.WAIT_CURSOR));
-                        BareBonesBrowserLaunch.openURL(link);
-                        this.setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
-                    }
+                    openAccessionLink(olsResultsMassSearchJTable, row, column, evt.getPoint());
                 }
             }
         }
@@ -3281,8 +4340,6 @@ public class OLSDialog extends javax.swing.JDialog {
      */
     private void viewTermHierarchy() {
 
-        this.setCursor(new java.awt.Cursor(java.awt.Cursor.WAIT_CURSOR));
-
         String accession = null;
 
         if (searchTypeJTabbedPane.getSelectedIndex() == OLS_DIALOG_TERM_NAME_SEARCH) {
@@ -3295,32 +4352,42 @@ public class OLSDialog extends javax.swing.JDialog {
             accession = "" + olsResultsTermIdSearchJTable.getValueAt(olsResultsTermIdSearchJTable.getSelectedRow(), 0);
         }
 
+        if (accession != null && AccessionLinkRenderer.isCombination(accession)) {
+            showCombinationNotSupportedMessage();
+            return;
+        }
+
         if (accession != null) {
 
-            // remove the link details
-            if (searchTypeJTabbedPane.getSelectedIndex() != OLS_DIALOG_BROWSE_ONTOLOGY) {
-                accession = accession.substring(accession.indexOf("termId=") + "termId=".length());
-                accession = accession.substring(0, accession.indexOf("\""));
-            }
+            final String termId = accession;
+            final String ontology = getCurrentOntologyLabel();
 
-            String selectedValue = "";
-            String ontology = getCurrentOntologyLabel();
+            // the term name is looked up in the background
+            taskPipeline.execute(new BackgroundTask<String>() {
 
-            try {
-                selectedValue = olsConnection.getTermById(accession, ontology);
-            } catch (RemoteException ex) {
-                JOptionPane.showMessageDialog(
-                        this,
-                        defaultOlsConnectionFailureErrorMessage,
-                        "OLS Connection Error", JOptionPane.ERROR_MESSAGE);
-                Util.writeToErrorLog("Error when trying to access OLS: ");
-                ex.printStackTrace();
-            }
+                @Override
+                public String doInBackground() throws Exception {
+                    return getOntologyClient().getTermById(termId, ontology);
+                }
 
-            new TermHierarchyGraphViewer(this, true, accession, selectedValue, ontology);
-        }
+                @Override
+                public void succeeded(String selectedValue) {
+                    new TermHierarchyGraphViewer(OLSDialog.this, true, termId, selectedValue == null ? "" : selectedValue, ontology);
+                }
 
-        this.setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
+                @Override
+                public void failed(Exception e) {
+                    JOptionPane.showMessageDialog(
+                            OLSDialog.this,
+                            defaultOlsConnectionFailureErrorMessage,
+                            "OLS Connection Error", JOptionPane.ERROR_MESSAGE);
+                    Util.writeToErrorLog("Error when trying to access OLS: ");
+                    e.printStackTrace();
+
+                    new TermHierarchyGraphViewer(OLSDialog.this, true, termId, "", ontology);
+                }
+            });
+        }
     }
 
     /**
@@ -3364,6 +4431,7 @@ public class OLSDialog extends javax.swing.JDialog {
     private javax.swing.JLabel dummyLabelJLabel;
     private javax.swing.JButton helpJButton;
     private javax.swing.JButton insertSelectedJButton;
+    private javax.swing.JComboBox massCombinationJComboBox;
     private javax.swing.JLabel massLabel;
     private javax.swing.JPanel massPanel;
     private javax.swing.JPanel massSearchJPanel;
@@ -3373,6 +4441,7 @@ public class OLSDialog extends javax.swing.JDialog {
     private javax.swing.JLabel newtSpeciesTipsTermIdSearchJLabel;
     private javax.swing.JLabel newtSpeciesTipsTermNameSearchJLabel;
     private javax.swing.JTextField numberOfTermsTermNameSearchJTextField;
+    private javax.swing.JProgressBar olsProgressJProgressBar;
     private javax.swing.JScrollPane olsResultsMassSearchJScrollPane;
     private javax.swing.JTable olsResultsMassSearchJTable;
     private javax.swing.JScrollPane olsResultsTermIdSearchJScrollPane;
@@ -3423,14 +4492,38 @@ public class OLSDialog extends javax.swing.JDialog {
      *
      * @param modAccession the PSI-MOD accession number
      * @return the OLS web link
+     * @deprecated the search results tables store the raw accession numbers
+     * and draw the links with an AccessionLinkRenderer
      */
+    @Deprecated
     public String getOlsAccessionLink(String modAccession) {
-        String accessionNumberWithLink = "<html><a href=\"http://www.ebi.ac.uk/ontology-lookup/?termId=" + modAccession + "\""
+        String accessionNumberWithLink = "<html><a href=\"" + AccessionLinkRenderer.OLS_TERM_URL + modAccession + "\""
                 + "\"><font color=\"" + notSelectedRowHtmlTagFontColor + "\">"
                 + modAccession + "</font></a></html>";
         return accessionNumberWithLink;
     }
 
+    /**
+     * Opens the web link of the accession number at the given point of a
+     * search results table, if any.
+     *
+     * @param table the search results table
+     * @param row the row
+     * @param column the column
+     * @param point the point clicked, in table coordinates
+     */
+    private void openAccessionLink(JTable table, int row, int column, Point point) {
+
+        AccessionLinkRenderer renderer = (AccessionLinkRenderer) table.getColumn("Accession").getCellRenderer();
+        String accession = renderer.getAccessionAt(table, row, column, point);
+
+        if (accession != null) {
+            this.setCursor(new java.awt.Cursor(java.awt.Cursor.WAIT_CURSOR));
+            BareBonesBrowserLaunch.openURL(AccessionLinkRenderer.OLS_TERM_URL + accession);
+            this.setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
+        }
+    }
+
     /**
      * Gets the preferred width of the column specified by colIndex. The column
      * will be just wide enough to show the column head and the widest cell in
@@ -3442,7 +4535,10 @@ public class OLSDialog extends javax.swing.JDialog {
      * @param colIndex the colum index
      * @param margin the margin to add
      * @return the preferred width of the column
+     * @deprecated iterates all the rows, use a ColumnWidthEstimator instead,
+     * which sizes the column from sampled rows as the table is filled
      */
+    @Deprecated
     public int getPreferredColumnWidth(JTable table, int colIndex, int margin) {
 
         DefaultTableColumnModel colModel = (DefaultTableColumnModel) table.getColumnModel();
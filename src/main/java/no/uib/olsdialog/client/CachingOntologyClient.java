@@ -0,0 +1,591 @@
+package no.uib.olsdialog.client;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import no.uib.olsdialog.util.DaemonThreadFactory;
+import no.uib.olsdialog.util.Util;
+import uk.ac.ebi.ols.soap.model.DataHolder;
+
+/**
+ * An OntologyClient keeping the term names, metadata and cross references
+ * retrieved from another client in a persistent TermStore, and the child and
+ * root terms in an in-memory ChildrenCache. The names of all the terms seen
+ * are in addition added to a TermNameIndex, starting with the names in the
+ * store.
+ * <p>
+ * Stored data is returned straight away. If it is older than the
+ * revalidation age it is in addition refreshed in the background, so that the
+ * next lookup gets the updated data (stale-while-revalidate).
+ */
+public class CachingOntologyClient implements ExtendedOntologyClient {
+
+    /**
+     * The default age after which stored data is refreshed, one day in
+     * milliseconds.
+     */
+    public static final long DEFAULT_REVALIDATION_AGE = 24L * 60 * 60 * 1000;
+    /**
+     * The client used for the lookups not in the store.
+     */
+    private final OntologyClient delegate;
+    /**
+     * The store holding the retrieved data, null if the data is not stored.
+     */
+    private final TermStore termStore;
+    /**
+     * The cache holding the retrieved child and root terms.
+     */
+    private final ChildrenCache childrenCache;
+    /**
+     * The index of the names of the terms seen.
+     */
+    private final TermNameIndex termNameIndex = new TermNameIndex();
+    /**
+     * The mass indexes retrieved so far, key: upper case ontology label and
+     * annotation type.
+     */
+    private final ConcurrentMap<String, ModificationMassIndex> massIndexes = new ConcurrentHashMap<String, ModificationMassIndex>();
+    /**
+     * The parents retrieved so far, key: upper case ontology label and
+     * accession number.
+     */
+    private final ConcurrentMap<String, Map<String, String>> parentsCache = new ConcurrentHashMap<String, Map<String, String>>();
+    /**
+     * The age in milliseconds after which stored data is refreshed.
+     */
+    private volatile long revalidationAge = DEFAULT_REVALIDATION_AGE;
+    /**
+     * The executor refreshing stale data.
+     */
+    private final ExecutorService revalidationExecutor =
+            Executors.newSingleThreadExecutor(new DaemonThreadFactory("TermStoreRevalidation"));
+    /**
+     * The data currently being refreshed, used to avoid refreshing the same
+     * data twice.
+     */
+    private final ConcurrentMap<String, Boolean> pendingRevalidations = new ConcurrentHashMap<String, Boolean>();
+    /**
+     * True if an error writing to the store has already been logged.
+     */
+    private volatile boolean storeErrorLogged = false;
+
+    /**
+     * Creates a new CachingOntologyClient.
+     *
+     * @param delegate the client used for the lookups not in the store
+     * @param termStore the store holding the retrieved data, null to only
+     * cache the child and root terms
+     */
+    public CachingOntologyClient(OntologyClient delegate, TermStore termStore) {
+        this(delegate, termStore, new ChildrenCache());
+    }
+
+    /**
+     * Creates a new CachingOntologyClient.
+     *
+     * @param delegate the client used for the lookups not in the store
+     * @param termStore the store holding the retrieved data, null to only
+     * cache the child and root terms
+     * @param childrenCache the cache holding the retrieved child and root
+     * terms
+     */
+    public CachingOntologyClient(OntologyClient delegate, final TermStore termStore, ChildrenCache childrenCache) {
+        this.delegate = delegate;
+        this.termStore = termStore;
+        this.childrenCache = childrenCache;
+
+        // index the stored term names in the background
+        if (termStore != null) {
+            revalidationExecutor.execute(new Runnable() {
+
+                public void run() {
+                    termNameIndex.addTerms(termStore.getTermNames());
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the client used for the lookups not in the store.
+     *
+     * @return the underlying client
+     */
+    public OntologyClient getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Returns the store holding the retrieved data.
+     *
+     * @return the term store, null if the data is not stored
+     */
+    public TermStore getTermStore() {
+        return termStore;
+    }
+
+    /**
+     * Returns the cache holding the retrieved child and root terms, e.g., to
+     * inspect the hit and miss statistics.
+     *
+     * @return the children cache
+     */
+    public ChildrenCache getChildrenCache() {
+        return childrenCache;
+    }
+
+    /**
+     * Returns the index of the names of the terms seen, e.g., to search the
+     * term names without contacting the OLS.
+     *
+     * @return the term name index
+     */
+    public TermNameIndex getTermNameIndex() {
+        return termNameIndex;
+    }
+
+    /**
+     * Sets the age after which stored data is refreshed in the background.
+     *
+     * @param revalidationAge the age in milliseconds
+     */
+    public void setRevalidationAge(long revalidationAge) {
+        this.revalidationAge = revalidationAge;
+    }
+
+    public String getTermById(final String termId, final String ontology) throws RemoteException {
+
+        if (termStore != null && termId != null && isInOntology(termId, ontology)) {
+
+            String termName = termStore.getTermName(termId);
+
+            if (termName != null) {
+                revalidateIfStale(TermStore.DataType.NAME, termId, new Runnable() {
+
+                    public void run() {
+                        try {
+                            storeTermName(termId, delegate.getTermById(termId, ontology));
+                        } catch (RemoteException e) {
+                            // keep the stored name until the next attempt
+                        }
+                    }
+                });
+                return termName;
+            }
+        }
+
+        String termName = delegate.getTermById(termId, ontology);
+        storeTermName(termId, termName);
+
+        return termName;
+    }
+
+    public Map<String, String> getTermMetadata(final String termId, final String ontology) throws RemoteException {
+
+        if (termStore != null && termId != null && isInOntology(termId, ontology)) {
+
+            Map<String, String> metadata = termStore.getMetadata(termId);
+
+            if (metadata != null) {
+                revalidateIfStale(TermStore.DataType.METADATA, termId, new Runnable() {
+
+                    public void run() {
+                        try {
+                            storeMetadata(termId, delegate.getTermMetadata(termId, ontology));
+                        } catch (RemoteException e) {
+                            // keep the stored metadata until the next attempt
+                        }
+                    }
+                });
+                return metadata;
+            }
+        }
+
+        Map<String, String> metadata = delegate.getTermMetadata(termId, ontology);
+        storeMetadata(termId, metadata);
+
+        return metadata;
+    }
+
+    public Map<String, String> getTermXrefs(final String termId, final String ontology) throws RemoteException {
+
+        if (termStore != null && termId != null && isInOntology(termId, ontology)) {
+
+            Map<String, String> xrefs = termStore.getXrefs(termId);
+
+            if (xrefs != null) {
+                revalidateIfStale(TermStore.DataType.XREFS, termId, new Runnable() {
+
+                    public void run() {
+                        try {
+                            storeXrefs(termId, delegate.getTermXrefs(termId, ontology));
+                        } catch (RemoteException e) {
+                            // keep the stored cross references until the next attempt
+                        }
+                    }
+                });
+                return xrefs;
+            }
+        }
+
+        Map<String, String> xrefs = delegate.getTermXrefs(termId, ontology);
+        storeXrefs(termId, xrefs);
+
+        return xrefs;
+    }
+
+    public Map<String, String> getTermsByName(String partialName, String ontology, boolean reverseKeyOrder) throws RemoteException {
+
+        Map<String, String> terms = delegate.getTermsByName(partialName, ontology, reverseKeyOrder);
+
+        if (terms != null && !reverseKeyOrder) {
+            indexTerms(ontology, terms);
+        }
+
+        return terms;
+    }
+
+    public Map<String, String> getTermChildren(String termId, String ontology, int distance, int[] relationTypes) throws RemoteException {
+
+        // only the direct children over all relation types are cached
+        if (termId == null || distance != 1 || relationTypes != null) {
+            return delegate.getTermChildren(termId, ontology, distance, relationTypes);
+        }
+
+        Map<String, String> children = childrenCache.get(ontology, termId);
+
+        if (children == null) {
+            children = delegate.getTermChildren(termId, ontology, distance, relationTypes);
+            if (children != null) {
+                children = childrenCache.put(ontology, termId, children);
+                indexTerms(ontology, children);
+            }
+        }
+
+        return children;
+    }
+
+    /**
+     * Returns the levels of children below the given term. The children of
+     * the given term are retrieved if not cached, while the deeper levels are
+     * only taken from the cache, i.e., stop at the terms whose children have
+     * not been cached.
+     *
+     * @param termId the accession number of the term, null for the root terms
+     * @param ontology the ontology the term belongs to
+     * @param levels the number of levels, 1 for the direct children only
+     * @return the levels of children
+     * @throws RemoteException if the lookup fails
+     */
+    public TermLevels getTermLevels(String termId, String ontology, int levels) throws RemoteException {
+
+        TermLevels retrievedLevels = null;
+
+        if (childrenCache.get(ontology, termId) == null) {
+
+            retrievedLevels = TermLevels.getTermLevels(delegate, termId, ontology, levels);
+
+            for (Map.Entry<String, Map<String, String>> entry : retrievedLevels.getAllChildren().entrySet()) {
+                childrenCache.put(ontology, entry.getKey(), entry.getValue());
+                indexTerms(ontology, entry.getValue());
+            }
+        }
+
+        TermLevels termLevels = new TermLevels();
+        Set<String> level = Collections.singleton(termId);
+
+        for (int i = 0; i < levels && !level.isEmpty(); i++) {
+
+            Set<String> nextLevel = new LinkedHashSet<String>();
+
+            for (String parentId : level) {
+
+                Map<String, String> childTerms = null;
+
+                // entries too large for the cache are only in the retrieved levels
+                if (retrievedLevels != null) {
+                    childTerms = retrievedLevels.getChildren(parentId);
+                }
+                if (childTerms == null) {
+                    childTerms = childrenCache.get(ontology, parentId);
+                }
+                if (childTerms == null) {
+                    continue;
+                }
+
+                termLevels.setChildren(parentId, childTerms);
+
+                for (String childId : childTerms.keySet()) {
+                    if (!termLevels.contains(childId)) {
+                        nextLevel.add(childId);
+                    }
+                }
+            }
+
+            level = nextLevel;
+        }
+
+        return termLevels;
+    }
+
+    /**
+     * Returns the parents of the given term, retrieving them on first use.
+     * If the lookup fails, e.g., when offline, or cannot be done with the
+     * delegate client, the parents are taken from the cached children.
+     *
+     * @param termId the accession number of the term
+     * @param ontology the ontology the term belongs to
+     * @return the parent terms, key: accession number, value: term name
+     * @throws RemoteException if the lookup fails and no parents are cached
+     */
+    public Map<String, String> getTermParents(String termId, String ontology) throws RemoteException {
+
+        String key = (ontology == null ? "" : ontology.toUpperCase()) + "|" + termId;
+        Map<String, String> parents = parentsCache.get(key);
+
+        if (parents != null) {
+            return parents;
+        }
+
+        try {
+            parents = TermAncestors.getTermParents(delegate, termId, ontology);
+        } catch (RemoteException e) {
+            parents = childrenCache.getParents(ontology, termId);
+            if (parents.isEmpty()) {
+                throw e;
+            }
+            return parents;
+        }
+
+        if (parents == null) {
+            return childrenCache.getParents(ontology, termId);
+        }
+
+        parents = Collections.unmodifiableMap(new LinkedHashMap<String, String>(parents));
+        parentsCache.put(key, parents);
+        indexTerms(ontology, parents);
+
+        return parents;
+    }
+
+    public Map<String, String> getRootTerms(String ontology) throws RemoteException {
+
+        Map<String, String> roots = childrenCache.get(ontology, null);
+
+        if (roots == null) {
+            roots = delegate.getRootTerms(ontology);
+            if (roots != null) {
+                roots = childrenCache.put(ontology, null, roots);
+                indexTerms(ontology, roots);
+            }
+        }
+
+        return roots;
+    }
+
+    public Map<String, String> getOntologyNames() throws RemoteException {
+        return delegate.getOntologyNames();
+    }
+
+    /**
+     * Returns the terms with an annotation of the given type within the given
+     * range. Range lookups without a string value retrieve all the terms of
+     * the annotation type once and answer from a mass index afterwards.
+     *
+     * @param ontology the ontology to search in
+     * @param annotationType the annotation type, e.g., "DiffMono"
+     * @param strValue the string value to match, can be null
+     * @param fromDblValue the lower value limit (inclusive)
+     * @param toDblValue the upper value limit (inclusive)
+     * @return the matching terms
+     * @throws RemoteException if the lookup fails
+     */
+    public DataHolder[] getTermsByAnnotationData(String ontology, String annotationType, String strValue,
+            double fromDblValue, double toDblValue) throws RemoteException {
+
+        if (strValue != null || ontology == null
+                || fromDblValue < -ModificationMassIndex.MASS_RANGE || toDblValue > ModificationMassIndex.MASS_RANGE) {
+            return delegate.getTermsByAnnotationData(ontology, annotationType, strValue, fromDblValue, toDblValue);
+        }
+
+        return getMassIndex(ontology, annotationType).getTerms(fromDblValue, toDblValue);
+    }
+
+    /**
+     * Returns the mass index of the given ontology and annotation type,
+     * retrieving it on first use.
+     *
+     * @param ontology the ontology, e.g., "MOD"
+     * @param annotationType the annotation type, e.g., "DiffMono"
+     * @return the mass index
+     * @throws RemoteException if the lookup fails
+     */
+    public ModificationMassIndex getMassIndex(String ontology, String annotationType) throws RemoteException {
+
+        String key = ontology.toUpperCase() + "|" + annotationType;
+        ModificationMassIndex massIndex = massIndexes.get(key);
+
+        if (massIndex == null) {
+            massIndex = ModificationMassIndex.getMassIndex(delegate, ontology, annotationType);
+            ModificationMassIndex existingIndex = massIndexes.putIfAbsent(key, massIndex);
+            if (existingIndex != null) {
+                massIndex = existingIndex;
+            }
+        }
+
+        return massIndex;
+    }
+
+    /**
+     * Refreshes the given data in the background if it is older than the
+     * revalidation age and not already being refreshed.
+     *
+     * @param dataType the data type
+     * @param termId the accession number of the term
+     * @param refresh the task retrieving and storing the data
+     */
+    private void revalidateIfStale(TermStore.DataType dataType, String termId, final Runnable refresh) {
+
+        long timestamp = termStore.getTimestamp(dataType, termId);
+
+        if (timestamp < 0 || System.currentTimeMillis() - timestamp < revalidationAge) {
+            return;
+        }
+
+        final String key = dataType.name() + "|" + termId;
+
+        if (pendingRevalidations.putIfAbsent(key, Boolean.TRUE) == null) {
+            revalidationExecutor.execute(new Runnable() {
+
+                public void run() {
+                    try {
+                        refresh.run();
+                    } finally {
+                        pendingRevalidations.remove(key);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Adds the given terms to the term name index.
+     *
+     * @param ontology the ontology the terms belong to, null if unknown
+     * @param terms the terms, key: accession number, value: term name
+     */
+    private void indexTerms(String ontology, Map<String, String> terms) {
+        if (ontology == null) {
+            termNameIndex.addTerms(terms);
+        } else {
+            termNameIndex.addTerms(ontology, terms);
+        }
+    }
+
+    /**
+     * Stores and indexes the given term name, unless the term was not found.
+     *
+     * @param termId the accession number of the term
+     * @param termName the term name
+     */
+    private void storeTermName(String termId, String termName) {
+
+        // the OLS returns the accession number itself for unknown terms
+        if (termId == null || termName == null || termName.length() == 0 || termName.equalsIgnoreCase(termId)) {
+            return;
+        }
+
+        termNameIndex.addTerms(Collections.singletonMap(termId, termName));
+
+        if (termStore == null) {
+            return;
+        }
+
+        try {
+            termStore.putTermName(termId, termName);
+        } catch (IOException e) {
+            storeFailed(e);
+        }
+    }
+
+    /**
+     * Stores the given metadata, unless it is empty.
+     *
+     * @param termId the accession number of the term
+     * @param metadata the metadata
+     */
+    private void storeMetadata(String termId, Map<String, String> metadata) {
+
+        if (termStore == null || termId == null || metadata == null || metadata.isEmpty()) {
+            return;
+        }
+
+        try {
+            termStore.putMetadata(termId, metadata);
+        } catch (IOException e) {
+            storeFailed(e);
+        }
+    }
+
+    /**
+     * Stores the given cross references.
+     *
+     * @param termId the accession number of the term
+     * @param xrefs the cross references
+     */
+    private void storeXrefs(String termId, Map<String, String> xrefs) {
+
+        if (termStore == null || termId == null || xrefs == null) {
+            return;
+        }
+
+        try {
+            termStore.putXrefs(termId, xrefs);
+        } catch (IOException e) {
+            storeFailed(e);
+        }
+    }
+
+    /**
+     * Logs an error writing to the store, only the first error is logged.
+     *
+     * @param e the error
+     */
+    private void storeFailed(IOException e) {
+        if (!storeErrorLogged) {
+            storeErrorLogged = true;
+            Util.writeToErrorLog("Could not write to the local term store: ");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns true if the given accession number can belong to the given
+     * ontology, i.e., if the ontology is null or the accession number starts
+     * with the ontology label.
+     *
+     * @param termId the accession number
+     * @param ontology the ontology label, can be null
+     * @return true if the accession number can belong to the ontology
+     */
+    private static boolean isInOntology(String termId, String ontology) {
+
+        if (ontology == null) {
+            return true;
+        }
+
+        String upperCaseTermId = termId.toUpperCase();
+        String upperCaseOntology = ontology.toUpperCase();
+
+        return upperCaseTermId.startsWith(upperCaseOntology + ":")
+                || upperCaseTermId.startsWith(upperCaseOntology + "_");
+    }
+}
@@ -0,0 +1,342 @@
+package no.uib.olsdialog.client;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded, least recently used cache of the child terms of ontology
+ * terms, keyed by ontology and term. The size of the cache is measured in
+ * terms, i.e., a term with a hundred children weighs a hundred times more
+ * than a term with a single child, so that a few very large levels cannot
+ * grow the cache without limits.
+ * <p>
+ * The root terms of an ontology are cached using a null term.
+ * <p>
+ * The cached entries containing each term are indexed, so that the parents
+ * of a term are found without scanning the cache.
+ */
+public class ChildrenCache {
+
+    /**
+     * The default maximum total weight of the cache.
+     */
+    public static final int DEFAULT_MAXIMUM_WEIGHT = 200000;
+    /**
+     * The maximum total weight of the cache.
+     */
+    private final int maximumWeight;
+    /**
+     * The cached children in access order, the least recently used first.
+     */
+    private final LinkedHashMap<String, Map<String, String>> entries =
+            new LinkedHashMap<String, Map<String, String>>(64, 0.75f, true);
+    /**
+     * The cache entries including each term, used to find the parents of a
+     * term without scanning the cache. Key: cache key of the child term,
+     * value: key: cache key of the entry, value: the child term name.
+     */
+    private final Map<String, Map<String, String>> parentIndex = new HashMap<String, Map<String, String>>();
+    /**
+     * The current total weight of the cache.
+     */
+    private int weight = 0;
+    /**
+     * The number of lookups found in the cache.
+     */
+    private long hitCount = 0;
+    /**
+     * The number of lookups not found in the cache.
+     */
+    private long missCount = 0;
+    /**
+     * The number of entries removed to make room for new ones.
+     */
+    private long evictionCount = 0;
+
+    /**
+     * Creates a new ChildrenCache with the default maximum weight.
+     */
+    public ChildrenCache() {
+        this(DEFAULT_MAXIMUM_WEIGHT);
+    }
+
+    /**
+     * Creates a new ChildrenCache.
+     *
+     * @param maximumWeight the maximum total number of terms in the cache
+     */
+    public ChildrenCache(int maximumWeight) {
+        if (maximumWeight < 1) {
+            throw new IllegalArgumentException("The maximum weight has to be at least one.");
+        }
+        this.maximumWeight = maximumWeight;
+    }
+
+    /**
+     * Returns the cached children of the given term.
+     *
+     * @param ontology the ontology the term belongs to
+     * @param termId the accession number of the term, null for the root terms
+     * @return the child terms, key: accession number, value: term name, or
+     * null if not in the cache
+     */
+    public synchronized Map<String, String> get(String ontology, String termId) {
+
+        Map<String, String> children = entries.get(getKey(ontology, termId));
+
+        if (children == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+
+        return children;
+    }
+
+    /**
+     * Adds the children of the given term to the cache, removing the least
+     * recently used entries if the cache becomes too large. Children weighing
+     * more than the whole cache are not cached, and the children previously
+     * cached for the term are removed.
+     *
+     * @param ontology the ontology the term belongs to
+     * @param termId the accession number of the term, null for the root terms
+     * @param children the child terms, key: accession number, value: term name
+     * @return an unmodifiable copy of the children, as kept in the cache
+     */
+    public synchronized Map<String, String> put(String ontology, String termId, Map<String, String> children) {
+
+        Map<String, String> copy = Collections.unmodifiableMap(new LinkedHashMap<String, String>(children));
+        int entryWeight = getWeight(copy);
+
+        String key = getKey(ontology, termId);
+
+        if (entryWeight > maximumWeight) {
+            Map<String, String> previous = entries.remove(key);
+            if (previous != null) {
+                weight -= getWeight(previous);
+                unindexChildren(key, previous);
+            }
+            return copy;
+        }
+
+        Map<String, String> previous = entries.put(key, copy);
+
+        if (previous != null) {
+            weight -= getWeight(previous);
+            unindexChildren(key, previous);
+        }
+
+        weight += entryWeight;
+        indexChildren(key, copy);
+
+        for (Iterator<Map.Entry<String, Map<String, String>>> i = entries.entrySet().iterator();
+                weight > maximumWeight && i.hasNext();) {
+            Map.Entry<String, Map<String, String>> eldest = i.next();
+            weight -= getWeight(eldest.getValue());
+            unindexChildren(eldest.getKey(), eldest.getValue());
+            i.remove();
+            evictionCount++;
+        }
+
+        return copy;
+    }
+
+    /**
+     * Removes all entries from the cache. The statistics are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        parentIndex.clear();
+        weight = 0;
+    }
+
+    /**
+     * Returns the number of terms whose children are cached.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the current total weight of the cache, i.e., the number of child
+     * terms cached.
+     *
+     * @return the current weight
+     */
+    public synchronized int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Returns the maximum total weight of the cache.
+     *
+     * @return the maximum weight
+     */
+    public int getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * Returns the parents of the given term among the cached children, i.e.,
+     * the terms of the ontology whose cached children include the term. The
+     * parents whose children are not cached are missed. Does not count as a
+     * lookup.
+     *
+     * @param ontology the ontology the term belongs to
+     * @param termId the accession number of the term
+     * @return the parent terms, key: accession number, value: term name, or
+     * the accession number if the name is not cached
+     */
+    public synchronized Map<String, String> getParents(String ontology, String termId) {
+
+        String prefix = getKey(ontology, null);
+        Map<String, String> parents = new LinkedHashMap<String, String>();
+        Map<String, String> containingEntries = parentIndex.get(getKey(ontology, termId));
+
+        if (containingEntries == null) {
+            return parents;
+        }
+
+        for (String entryKey : containingEntries.keySet()) {
+
+            // the root terms entry is not a parent
+            if (entryKey.length() == prefix.length()) {
+                continue;
+            }
+
+            String parentId = entryKey.substring(prefix.length());
+            String parentName = parentId;
+
+            // the parent names are found among the children of their own parents
+            Map<String, String> parentEntries = parentIndex.get(entryKey);
+
+            if (parentEntries != null && !parentEntries.isEmpty()) {
+                parentName = parentEntries.values().iterator().next();
+            }
+
+            parents.put(parentId, parentName);
+        }
+
+        return parents;
+    }
+
+    /**
+     * Returns the number of lookups found in the cache.
+     *
+     * @return the hit count
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups not found in the cache.
+     *
+     * @return the miss count
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of entries removed to make room for new ones.
+     *
+     * @return the eviction count
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the share of the lookups found in the cache.
+     *
+     * @return the hit rate, between 0 and 1, 0 if no lookups have been done
+     */
+    public synchronized double getHitRate() {
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ChildrenCache[entries=" + entries.size() + ", weight=" + weight + "/" + maximumWeight
+                + ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + "]";
+    }
+
+    /**
+     * Returns the weight of the given children, i.e., the number of children,
+     * but at least one so that terms without children also count.
+     *
+     * @param children the children
+     * @return the weight
+     */
+    private static int getWeight(Map<String, String> children) {
+        return Math.max(1, children.size());
+    }
+
+    /**
+     * Adds the given cache entry to the parent index of each of its children.
+     *
+     * @param key the cache key of the entry
+     * @param children the children of the entry
+     */
+    private void indexChildren(String key, Map<String, String> children) {
+
+        String prefix = key.substring(0, key.indexOf('|') + 1);
+
+        for (Map.Entry<String, String> child : children.entrySet()) {
+
+            String childKey = prefix + child.getKey();
+            Map<String, String> containingEntries = parentIndex.get(childKey);
+
+            if (containingEntries == null) {
+                containingEntries = new LinkedHashMap<String, String>(4);
+                parentIndex.put(childKey, containingEntries);
+            }
+
+            containingEntries.put(key, child.getValue());
+        }
+    }
+
+    /**
+     * Removes the given cache entry from the parent index of each of its
+     * children.
+     *
+     * @param key the cache key of the entry
+     * @param children the children of the entry
+     */
+    private void unindexChildren(String key, Map<String, String> children) {
+
+        String prefix = key.substring(0, key.indexOf('|') + 1);
+
+        for (String childId : children.keySet()) {
+
+            String childKey = prefix + childId;
+            Map<String, String> containingEntries = parentIndex.get(childKey);
+
+            if (containingEntries != null) {
+                containingEntries.remove(key);
+                if (containingEntries.isEmpty()) {
+                    parentIndex.remove(childKey);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the cache key of the given term.
+     *
+     * @param ontology the ontology the term belongs to
+     * @param termId the accession number of the term, null for the root terms
+     * @return the cache key
+     */
+    private static String getKey(String ontology, String termId) {
+        return (ontology == null ? "" : ontology.toUpperCase()) + "|" + (termId == null ? "" : termId);
+    }
+}
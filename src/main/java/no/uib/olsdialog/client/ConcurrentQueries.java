@@ -0,0 +1,401 @@
+package no.uib.olsdialog.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import no.uib.olsdialog.util.DaemonThreadFactory;
+
+/**
+ * Helper methods for running several OLS queries at the same time, e.g., the
+ * same search in each of the preselected ontologies. The number of queries
+ * actually sent to the OLS at the same time is limited by the client, e.g.,
+ * by the pool size of the PooledOlsClient.
+ */
+public class ConcurrentQueries {
+
+    /**
+     * The executor running the queries.
+     */
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory("OlsQuery"));
+
+    /**
+     * Empty default private constructor.
+     */
+    private ConcurrentQueries() {
+    }
+
+    /**
+     * Receives the results of queries run concurrently, in the order they
+     * complete. The methods are called in the thread that started the
+     * queries.
+     *
+     * @param <K> the type of the query keys
+     * @param <V> the type of the query results
+     */
+    public interface ResultListener<K, V> {
+
+        /**
+         * Called when a query has completed.
+         *
+         * @param key the key of the query
+         * @param result the result of the query
+         */
+        public void resultArrived(K key, V result);
+
+        /**
+         * Called when a query has failed, or did not complete in time.
+         *
+         * @param key the key of the query
+         * @param e the error, a TimeoutException if the query did not complete
+         * in time
+         */
+        public void queryFailed(K key, Exception e);
+    }
+
+    /**
+     * Decides whether the result of a query is a hit.
+     *
+     * @param <V> the type of the query results
+     */
+    public interface HitCondition<V> {
+
+        /**
+         * Returns true if the given result is a hit.
+         *
+         * @param result the query result, can be null
+         * @return true if the result is a hit
+         */
+        public boolean isHit(V result);
+    }
+
+    /**
+     * Submits a single query to the query executor.
+     *
+     * @param <V> the type of the query result
+     * @param query the query
+     * @return the future result of the query
+     */
+    public static <V> Future<V> submit(Callable<V> query) {
+        return executor.submit(query);
+    }
+
+    /**
+     * Runs the given queries concurrently and waits for them to complete.
+     * The timeout applies to the whole batch, not to each query: queries not
+     * completed before the deadline are cancelled and reported as failed. If
+     * the calling thread is interrupted, all queries are cancelled.
+     *
+     * @param <K> the type of the query keys, e.g., the ontology labels
+     * @param <V> the type of the query results
+     * @param queries the queries to run
+     * @param timeout the maximum time to wait for the whole batch
+     * @param unit the unit of the timeout
+     * @param listener notified of each result as it arrives, can be null
+     * @return the results of the queries that completed, in the order of the
+     * queries
+     * @throws InterruptedException if the calling thread is interrupted while
+     * waiting
+     */
+    public static <K, V> Map<K, V> fanOut(Map<K, Callable<V>> queries, long timeout, TimeUnit unit,
+            ResultListener<K, V> listener) throws InterruptedException {
+        return fanOut(queries, Integer.MAX_VALUE, timeout, unit, listener);
+    }
+
+    /**
+     * Runs the given queries concurrently, but never more than the given
+     * number at the same time, and waits for them to complete. A new query is
+     * started each time one completes. Used for large batches, e.g., the
+     * children of all the terms at one level of an ontology, where starting
+     * all the queries at once would create one thread per query.
+     * <p>
+     * The timeout applies to the whole batch, including the queries still
+     * waiting for their turn: queries not completed before the deadline are
+     * cancelled and reported as failed. If the calling thread is interrupted,
+     * all queries are cancelled.
+     *
+     * @param <K> the type of the query keys, e.g., the accession numbers
+     * @param <V> the type of the query results
+     * @param queries the queries to run
+     * @param maximumParallelism the maximum number of queries running at the
+     * same time
+     * @param timeout the maximum time to wait for the whole batch
+     * @param unit the unit of the timeout
+     * @param listener notified of each result as it arrives, can be null
+     * @return the results of the queries that completed, in the order of the
+     * queries
+     * @throws InterruptedException if the calling thread is interrupted while
+     * waiting
+     */
+    public static <K, V> Map<K, V> fanOut(Map<K, Callable<V>> queries, int maximumParallelism, long timeout, TimeUnit unit,
+            ResultListener<K, V> listener) throws InterruptedException {
+        return fanOut(queries, maximumParallelism, timeout, unit, false, listener);
+    }
+
+    /**
+     * Runs the given queries concurrently, but never more than the given
+     * number at the same time, and waits for them to complete. A new query is
+     * started each time one completes. Unlike fanOut, the timeout applies to
+     * each query, counted from the time it is started, so that a long batch,
+     * e.g., the same search in every ontology, is not cut short as a whole
+     * while a single slow query does not hold back the others. Queries not
+     * completed in time are cancelled and reported as failed. If the calling
+     * thread is interrupted, all queries are cancelled.
+     *
+     * @param <K> the type of the query keys, e.g., the ontology labels
+     * @param <V> the type of the query results
+     * @param queries the queries to run
+     * @param maximumParallelism the maximum number of queries running at the
+     * same time
+     * @param queryTimeout the maximum time to wait for each query
+     * @param unit the unit of the timeout
+     * @param listener notified of each result as it arrives, can be null
+     * @return the results of the queries that completed, in the order of the
+     * queries
+     * @throws InterruptedException if the calling thread is interrupted while
+     * waiting
+     */
+    public static <K, V> Map<K, V> fanOutEach(Map<K, Callable<V>> queries, int maximumParallelism, long queryTimeout,
+            TimeUnit unit, ResultListener<K, V> listener) throws InterruptedException {
+        return fanOut(queries, maximumParallelism, queryTimeout, unit, true, listener);
+    }
+
+    /**
+     * Runs the given queries concurrently, never more than the given number
+     * at the same time, with a timeout for the whole batch or for each query.
+     *
+     * @param <K> the type of the query keys
+     * @param <V> the type of the query results
+     * @param queries the queries to run
+     * @param maximumParallelism the maximum number of queries running at the
+     * same time
+     * @param timeout the maximum time to wait for the whole batch or for each
+     * query
+     * @param unit the unit of the timeout
+     * @param timeoutPerQuery true if the timeout applies to each query, false
+     * if to the whole batch
+     * @param listener notified of each result as it arrives, can be null
+     * @return the results of the queries that completed, in the order of the
+     * queries
+     * @throws InterruptedException if the calling thread is interrupted while
+     * waiting
+     */
+    private static <K, V> Map<K, V> fanOut(Map<K, Callable<V>> queries, int maximumParallelism, long timeout, TimeUnit unit,
+            boolean timeoutPerQuery, ResultListener<K, V> listener) throws InterruptedException {
+
+        CompletionService<V> completionService = new ExecutorCompletionService<V>(executor);
+        Map<Future<V>, K> pendingQueries = new HashMap<Future<V>, K>();
+        Map<Future<V>, Long> deadlines = new HashMap<Future<V>, Long>();
+        Iterator<Map.Entry<K, Callable<V>>> queuedQueries = queries.entrySet().iterator();
+        List<K> timedOutQueries = new ArrayList<K>();
+
+        Map<K, V> completedResults = new HashMap<K, V>();
+        long timeoutNanos = unit.toNanos(timeout);
+        long batchDeadline = System.nanoTime() + timeoutNanos;
+
+        try {
+            while (true) {
+
+                // start the queued queries, unless the batch deadline has passed
+                while (pendingQueries.size() < maximumParallelism && queuedQueries.hasNext()) {
+
+                    Map.Entry<K, Callable<V>> query = queuedQueries.next();
+                    long now = System.nanoTime();
+
+                    if (!timeoutPerQuery && batchDeadline - now <= 0) {
+                        timedOutQueries.add(query.getKey());
+                        continue;
+                    }
+
+                    Future<V> future = completionService.submit(query.getValue());
+                    pendingQueries.put(future, query.getKey());
+                    deadlines.put(future, timeoutPerQuery ? now + timeoutNanos : batchDeadline);
+                }
+
+                if (pendingQueries.isEmpty()) {
+                    break;
+                }
+
+                long earliestDeadline = Long.MAX_VALUE;
+                boolean first = true;
+
+                for (long deadline : deadlines.values()) {
+                    if (first || deadline - earliestDeadline < 0) {
+                        earliestDeadline = deadline;
+                        first = false;
+                    }
+                }
+
+                Future<V> future = completionService.poll(earliestDeadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+                if (future == null) {
+
+                    // cancel the queries whose deadline has passed
+                    long now = System.nanoTime();
+
+                    for (Iterator<Map.Entry<Future<V>, Long>> i = deadlines.entrySet().iterator(); i.hasNext();) {
+                        Map.Entry<Future<V>, Long> deadline = i.next();
+                        if (deadline.getValue() - now <= 0) {
+                            deadline.getKey().cancel(true);
+                            timedOutQueries.add(pendingQueries.remove(deadline.getKey()));
+                            i.remove();
+                        }
+                    }
+
+                    continue;
+                }
+
+                K key = pendingQueries.remove(future);
+                deadlines.remove(future);
+
+                // a query cancelled after its deadline
+                if (key == null) {
+                    continue;
+                }
+
+                try {
+                    V result = future.get();
+                    completedResults.put(key, result);
+                    if (listener != null) {
+                        listener.resultArrived(key, result);
+                    }
+                } catch (ExecutionException e) {
+                    if (listener != null) {
+                        listener.queryFailed(key, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                    }
+                }
+            }
+        } finally {
+            for (Future<V> future : pendingQueries.keySet()) {
+                future.cancel(true);
+            }
+        }
+
+        // the queries that did not complete in time
+        if (listener != null) {
+            for (K key : timedOutQueries) {
+                listener.queryFailed(key, new TimeoutException("No answer from the OLS within " + timeout + " " + unit + "."));
+            }
+        }
+
+        // return the results in the order of the queries
+        Map<K, V> results = new LinkedHashMap<K, V>();
+
+        for (K key : queries.keySet()) {
+            if (completedResults.containsKey(key)) {
+                results.put(key, completedResults.get(key));
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Runs the given queries concurrently and returns the first hit in the
+     * order of the queries, i.e., the hit of a query is only returned once all
+     * the queries before it have completed without a hit. The remaining
+     * queries are then cancelled. A single round trip is thus enough as long
+     * as the queries answer within the same time.
+     * <p>
+     * If the deadline passes, the first hit among the queries completed so far
+     * is returned.
+     *
+     * @param <V> the type of the query results
+     * @param queries the queries to run, in order of priority
+     * @param hitCondition decides whether a result is a hit
+     * @param timeout the maximum time to wait for all the queries together
+     * @param unit the unit of the timeout
+     * @return the first hit, or null if none of the queries returned a hit
+     * @throws InterruptedException if the calling thread is interrupted while
+     * waiting
+     * @throws ExecutionException if a query failed and none of the queries
+     * returned a hit
+     * @throws TimeoutException if the deadline passed before a hit was found
+     */
+    public static <V> V firstHit(List<Callable<V>> queries, HitCondition<V> hitCondition, long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+
+        int queryCount = queries.size();
+        CompletionService<V> completionService = new ExecutorCompletionService<V>(executor);
+        Map<Future<V>, Integer> queryIndexes = new HashMap<Future<V>, Integer>();
+        List<Future<V>> futures = new ArrayList<Future<V>>();
+
+        for (int i = 0; i < queryCount; i++) {
+            Future<V> future = completionService.submit(queries.get(i));
+            queryIndexes.put(future, i);
+            futures.add(future);
+        }
+
+        boolean[] completed = new boolean[queryCount];
+        boolean[] hits = new boolean[queryCount];
+        List<V> results = new ArrayList<V>(Collections.<V>nCopies(queryCount, null));
+        ExecutionException firstError = null;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        // the first query that has not yet completed without a hit
+        int firstOpenQuery = 0;
+
+        try {
+            while (true) {
+
+                while (firstOpenQuery < queryCount && completed[firstOpenQuery]) {
+                    if (hits[firstOpenQuery]) {
+                        return results.get(firstOpenQuery);
+                    }
+                    firstOpenQuery++;
+                }
+
+                if (firstOpenQuery == queryCount) {
+                    break;
+                }
+
+                Future<V> future = completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+                if (future == null) {
+                    // deadline passed, use the best hit so far
+                    for (int i = firstOpenQuery; i < queryCount; i++) {
+                        if (hits[i]) {
+                            return results.get(i);
+                        }
+                    }
+                    throw new TimeoutException("No answer from the OLS within " + timeout + " " + unit + ".");
+                }
+
+                int index = queryIndexes.get(future);
+                completed[index] = true;
+
+                try {
+                    V result = future.get();
+                    results.set(index, result);
+                    hits[index] = hitCondition.isHit(result);
+                } catch (ExecutionException e) {
+                    if (firstError == null) {
+                        firstError = e;
+                    }
+                }
+            }
+        } finally {
+            for (Future<V> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        if (firstError != null) {
+            throw firstError;
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,50 @@
+package no.uib.olsdialog.client;
+
+import java.rmi.RemoteException;
+import java.util.Map;
+
+/**
+ * The lookups a client can answer better than the generic implementations
+ * built on the plain OntologyClient lookups, e.g., from an imported ontology
+ * or from a cache. Implementing this interface is optional: the static
+ * helper methods, e.g., ModificationMassIndex.getMassIndex, use these
+ * lookups if the client has them and else fall back to the generic
+ * implementations. Clients wrapping another client pass the lookups on to
+ * the wrapped client through the same helper methods.
+ */
+public interface ExtendedOntologyClient extends OntologyClient {
+
+    /**
+     * Returns the mass index of the given ontology and mass type.
+     *
+     * @param ontology the ontology, e.g., "MOD"
+     * @param massType the mass type, e.g., "DiffMono"
+     * @return the mass index
+     * @throws RemoteException if the lookup fails
+     */
+    public ModificationMassIndex getMassIndex(String ontology, String massType) throws RemoteException;
+
+    /**
+     * Returns the levels of children below the given term, including at
+     * least the children of the given term.
+     *
+     * @param termId the accession number of the term, null for the root terms
+     * of the ontology
+     * @param ontology the ontology the term belongs to
+     * @param levels the number of levels, 1 for the direct children only
+     * @return the levels of children
+     * @throws RemoteException if the lookup fails
+     */
+    public TermLevels getTermLevels(String termId, String ontology, int levels) throws RemoteException;
+
+    /**
+     * Returns the parents of the given term.
+     *
+     * @param termId the accession number of the term
+     * @param ontology the ontology the term belongs to
+     * @return the parent terms, key: accession number, value: term name, or
+     * null if the parents cannot be retrieved
+     * @throws RemoteException if the lookup fails
+     */
+    public Map<String, String> getTermParents(String termId, String ontology) throws RemoteException;
+}
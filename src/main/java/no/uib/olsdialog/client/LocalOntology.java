@@ -0,0 +1,470 @@
+package no.uib.olsdialog.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import uk.ac.ebi.ols.soap.model.DataHolder;
+
+/**
+ * An ontology held in memory, e.g., imported from a local OBO file by the
+ * OboImporter, answering the same lookups as the OLS for its own terms.
+ * <p>
+ * The child terms follow the is_a and part_of relations between the terms,
+ * see OboImporter, and the root terms are the terms without a parent in the
+ * ontology. Obsolete terms are found by accession number and
+ * name, but are never root terms.
+ * <p>
+ * A LocalOntology cannot be changed once created and can be used from several
+ * threads at the same time.
+ */
+public class LocalOntology implements ExtendedOntologyClient {
+
+    /**
+     * The ontology label, e.g., "MS".
+     */
+    private final String label;
+    /**
+     * The ontology name.
+     */
+    private final String name;
+    /**
+     * The terms, key: accession number.
+     */
+    private final Map<String, Term> terms = new LinkedHashMap<String, Term>();
+    /**
+     * The accession numbers of the children of each term, key: accession
+     * number of the parent.
+     */
+    private final Map<String, List<String>> children = new HashMap<String, List<String>>();
+    /**
+     * The accession numbers of the root terms.
+     */
+    private final List<String> rootTermIds = new ArrayList<String>();
+    /**
+     * The lower case term names, in the same order as the terms, used for the
+     * name searches.
+     */
+    private final String[] lowerCaseTermNames;
+    /**
+     * The accession numbers, in the same order as the terms.
+     */
+    private final String[] termIds;
+    /**
+     * The mass indexes built so far, key: cross reference type, e.g.,
+     * "DiffMono".
+     */
+    private final ConcurrentMap<String, ModificationMassIndex> massIndexes = new ConcurrentHashMap<String, ModificationMassIndex>();
+
+    /**
+     * Creates a new LocalOntology. Use the OboImporter to create a local
+     * ontology from a file.
+     *
+     * @param label the ontology label, e.g., "MS"
+     * @param name the ontology name
+     * @param termList the terms of the ontology
+     */
+    LocalOntology(String label, String name, List<Term> termList) {
+
+        this.label = label;
+        this.name = name;
+
+        for (Term term : termList) {
+            if (term.id != null) {
+                terms.put(term.id, term);
+            }
+        }
+
+        termIds = new String[terms.size()];
+        lowerCaseTermNames = new String[terms.size()];
+        int index = 0;
+
+        for (Term term : terms.values()) {
+
+            termIds[index] = term.id;
+            lowerCaseTermNames[index++] = term.name == null ? "" : term.name.toLowerCase();
+
+            boolean hasParent = false;
+
+            for (String parentId : term.parentIds) {
+                if (!parentId.equals(term.id) && terms.containsKey(parentId)) {
+                    List<String> siblings = children.get(parentId);
+                    if (siblings == null) {
+                        siblings = new ArrayList<String>();
+                        children.put(parentId, siblings);
+                    }
+                    siblings.add(term.id);
+                    hasParent = true;
+                }
+            }
+
+            if (!hasParent && !term.obsolete) {
+                rootTermIds.add(term.id);
+            }
+        }
+    }
+
+    /**
+     * Returns the ontology label.
+     *
+     * @return the ontology label, e.g., "MS"
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Returns the ontology name.
+     *
+     * @return the ontology name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of terms in the ontology.
+     *
+     * @return the number of terms
+     */
+    public int size() {
+        return terms.size();
+    }
+
+    /**
+     * Returns the names of all the terms of the ontology.
+     *
+     * @return the term names, key: accession number, value: term name
+     */
+    public Map<String, String> getTermNames() {
+
+        Map<String, String> termNames = new LinkedHashMap<String, String>();
+
+        for (Term term : terms.values()) {
+            if (term.name != null) {
+                termNames.put(term.id, term.name);
+            }
+        }
+
+        return termNames;
+    }
+
+    public String getTermById(String termId, String ontology) {
+
+        Term term = terms.get(termId);
+
+        if (term == null || term.name == null) {
+            return termId;
+        }
+
+        return term.name;
+    }
+
+    public Map<String, String> getTermsByName(String partialName, String ontology, boolean reverseKeyOrder) {
+
+        Map<String, String> matches = new HashMap<String, String>();
+        String lowerCasePartialName = partialName.toLowerCase();
+
+        for (int i = 0; i < termIds.length; i++) {
+            if (lowerCaseTermNames[i].indexOf(lowerCasePartialName) != -1) {
+                String termName = terms.get(termIds[i]).name;
+                if (reverseKeyOrder) {
+                    matches.put(termName, termIds[i]);
+                } else {
+                    matches.put(termIds[i], termName);
+                }
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Returns the children of the given term. The relation types are not
+     * distinguished, both the is_a and part_of relations are followed.
+     *
+     * @param termId the accession number of the parent term
+     * @param ontology the ontology the term belongs to
+     * @param distance the maximum distance from the parent term, 1 for direct
+     * children only
+     * @param relationTypes ignored
+     * @return the child terms, key: accession number, value: term name
+     */
+    public Map<String, String> getTermChildren(String termId, String ontology, int distance, int[] relationTypes) {
+
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        Set<String> level = Collections.singleton(termId);
+
+        for (int i = 0; i < distance && !level.isEmpty(); i++) {
+
+            Set<String> nextLevel = new LinkedHashSet<String>();
+
+            for (String parentId : level) {
+                List<String> childIds = children.get(parentId);
+                if (childIds != null) {
+                    for (String childId : childIds) {
+                        if (!result.containsKey(childId)) {
+                            result.put(childId, getTermById(childId, ontology));
+                            nextLevel.add(childId);
+                        }
+                    }
+                }
+            }
+
+            level = nextLevel;
+        }
+
+        return result;
+    }
+
+    public TermLevels getTermLevels(String termId, String ontology, int levels) {
+        return getTermLevels(termId, levels);
+    }
+
+    /**
+     * Returns the levels of children below the given term. A term reached
+     * through several parents is listed under each of them, but its own
+     * children are only added once.
+     *
+     * @param termId the accession number of the term, null for the root terms
+     * @param levels the number of levels, 1 for the direct children only
+     * @return the levels of children
+     */
+    public TermLevels getTermLevels(String termId, int levels) {
+
+        TermLevels termLevels = new TermLevels();
+        Set<String> level = Collections.singleton(termId);
+
+        for (int i = 0; i < levels && !level.isEmpty(); i++) {
+
+            Set<String> nextLevel = new LinkedHashSet<String>();
+
+            for (String parentId : level) {
+
+                Map<String, String> childTerms;
+
+                if (parentId == null) {
+                    childTerms = getRootTerms(label);
+                } else {
+                    childTerms = getTermChildren(parentId, label, 1, null);
+                }
+
+                termLevels.setChildren(parentId, childTerms);
+
+                for (String childId : childTerms.keySet()) {
+                    if (!termLevels.contains(childId)) {
+                        nextLevel.add(childId);
+                    }
+                }
+            }
+
+            level = nextLevel;
+        }
+
+        return termLevels;
+    }
+
+    public Map<String, String> getTermParents(String termId, String ontology) {
+        return getTermParents(termId);
+    }
+
+    /**
+     * Returns the parents of the given term, following both the is_a and
+     * part_of relations.
+     *
+     * @param termId the accession number of the term
+     * @return the parent terms, key: accession number, value: term name
+     */
+    public Map<String, String> getTermParents(String termId) {
+
+        Map<String, String> parents = new LinkedHashMap<String, String>();
+        Term term = terms.get(termId);
+
+        if (term != null) {
+            for (String parentId : term.parentIds) {
+                if (!parentId.equals(termId) && terms.containsKey(parentId)) {
+                    parents.put(parentId, getTermById(parentId, label));
+                }
+            }
+        }
+
+        return parents;
+    }
+
+    public Map<String, String> getTermMetadata(String termId, String ontology) {
+
+        Term term = terms.get(termId);
+
+        if (term == null) {
+            return new HashMap<String, String>();
+        }
+
+        return new LinkedHashMap<String, String>(term.metadata);
+    }
+
+    public Map<String, String> getTermXrefs(String termId, String ontology) {
+
+        Term term = terms.get(termId);
+
+        if (term == null) {
+            return new HashMap<String, String>();
+        }
+
+        return new LinkedHashMap<String, String>(term.xrefs);
+    }
+
+    public Map<String, String> getRootTerms(String ontology) {
+
+        Map<String, String> roots = new LinkedHashMap<String, String>();
+
+        for (String termId : rootTermIds) {
+            roots.put(termId, getTermById(termId, ontology));
+        }
+
+        return roots;
+    }
+
+    public Map<String, String> getOntologyNames() {
+        return Collections.singletonMap(label, name);
+    }
+
+    /**
+     * Returns the terms with a cross reference of the given type whose value
+     * is within the given range, e.g., the PSI-MOD "DiffMono" cross
+     * references. Range lookups without a string value are answered by
+     * binary search in a mass index built on first use.
+     *
+     * @param ontology the ontology to search in
+     * @param annotationType the cross reference type, e.g., "DiffMono"
+     * @param strValue the string value to match, can be null
+     * @param fromDblValue the lower value limit (inclusive)
+     * @param toDblValue the upper value limit (inclusive)
+     * @return the matching terms
+     */
+    public DataHolder[] getTermsByAnnotationData(String ontology, String annotationType, String strValue,
+            double fromDblValue, double toDblValue) {
+
+        if (strValue == null) {
+            return getMassIndex(annotationType).getTerms(fromDblValue, toDblValue);
+        }
+
+        List<DataHolder> matches = new ArrayList<DataHolder>();
+
+        for (DataHolder dataHolder : getAnnotatedTerms(annotationType)) {
+            if (strValue.equalsIgnoreCase(dataHolder.getAnnotationStringValue())
+                    && dataHolder.getAnnotationNumberValue() >= fromDblValue
+                    && dataHolder.getAnnotationNumberValue() <= toDblValue) {
+                matches.add(dataHolder);
+            }
+        }
+
+        return matches.toArray(new DataHolder[matches.size()]);
+    }
+
+    public ModificationMassIndex getMassIndex(String ontology, String massType) {
+        return getMassIndex(massType);
+    }
+
+    /**
+     * Returns the mass index of the given cross reference type, building it
+     * on first use.
+     *
+     * @param annotationType the cross reference type, e.g., "DiffMono"
+     * @return the mass index
+     */
+    public ModificationMassIndex getMassIndex(String annotationType) {
+
+        ModificationMassIndex massIndex = massIndexes.get(annotationType);
+
+        if (massIndex == null) {
+            massIndex = new ModificationMassIndex(annotationType, getAnnotatedTerms(annotationType).toArray(new DataHolder[0]));
+            ModificationMassIndex existingIndex = massIndexes.putIfAbsent(annotationType, massIndex);
+            if (existingIndex != null) {
+                massIndex = existingIndex;
+            }
+        }
+
+        return massIndex;
+    }
+
+    /**
+     * Returns the terms with a numerical cross reference of the given type.
+     *
+     * @param annotationType the cross reference type, e.g., "DiffMono"
+     * @return the terms, with the cross reference value as annotation value
+     */
+    private List<DataHolder> getAnnotatedTerms(String annotationType) {
+
+        List<DataHolder> annotatedTerms = new ArrayList<DataHolder>();
+
+        for (Term term : terms.values()) {
+
+            String value = term.xrefs.get(annotationType);
+
+            if (value == null) {
+                continue;
+            }
+
+            double numberValue;
+
+            try {
+                numberValue = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+
+            DataHolder dataHolder = new DataHolder();
+            dataHolder.setTermId(term.id);
+            dataHolder.setTermName(term.name);
+            dataHolder.setAnnotationType(annotationType);
+            dataHolder.setAnnotationStringValue(value);
+            dataHolder.setAnnotationNumberValue(numberValue);
+            annotatedTerms.add(dataHolder);
+        }
+
+        return annotatedTerms;
+    }
+
+    @Override
+    public String toString() {
+        return "LocalOntology[" + label + ", " + terms.size() + " terms]";
+    }
+
+    /**
+     * A term of a local ontology, as read from the ontology file.
+     */
+    static class Term {
+
+        /**
+         * The accession number.
+         */
+        String id;
+        /**
+         * The term name.
+         */
+        String name;
+        /**
+         * True if the term is obsolete.
+         */
+        boolean obsolete = false;
+        /**
+         * The metadata, including the definition.
+         */
+        final Map<String, String> metadata = new LinkedHashMap<String, String>();
+        /**
+         * The cross references.
+         */
+        final Map<String, String> xrefs = new LinkedHashMap<String, String>();
+        /**
+         * The accession numbers of the parent terms, through the is_a and
+         * part_of relations.
+         */
+        final List<String> parentIds = new ArrayList<String>();
+    }
+}
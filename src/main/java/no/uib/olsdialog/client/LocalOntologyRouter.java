@@ -0,0 +1,432 @@
+package no.uib.olsdialog.client;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import no.uib.olsdialog.util.Util;
+import uk.ac.ebi.ols.soap.model.DataHolder;
+
+/**
+ * An OntologyClient answering the lookups in the imported local ontologies
+ * itself and passing all other lookups on to another client, e.g., the OLS.
+ * <p>
+ * Lookups in all ontologies combine the results of the other client with the
+ * results of the local ontologies. If the other client fails, e.g., when
+ * offline, the local results are returned on their own. The ontology names
+ * are the exception: if the other client fails the error is passed on, so
+ * that the callers can tell the full list of ontologies from the local ones,
+ * see getLocalOntologyNames.
+ */
+public class LocalOntologyRouter implements ExtendedOntologyClient {
+
+    /**
+     * The client used for the ontologies that are not imported.
+     */
+    private final OntologyClient delegate;
+    /**
+     * The index the names of the imported terms are added to, can be null.
+     */
+    private final TermNameIndex termNameIndex;
+    /**
+     * The imported ontologies, key: upper case ontology label.
+     */
+    private final ConcurrentMap<String, LocalOntology> localOntologies = new ConcurrentHashMap<String, LocalOntology>();
+    /**
+     * The imports running in the background.
+     */
+    private final List<Future<LocalOntology>> pendingImports = new ArrayList<Future<LocalOntology>>();
+
+    /**
+     * Creates a new LocalOntologyRouter.
+     *
+     * @param delegate the client used for the ontologies that are not
+     * imported
+     * @param termNameIndex the index the names of the imported terms are
+     * added to, null if not indexed
+     */
+    public LocalOntologyRouter(OntologyClient delegate, TermNameIndex termNameIndex) {
+        this.delegate = delegate;
+        this.termNameIndex = termNameIndex;
+    }
+
+    /**
+     * Returns the client used for the ontologies that are not imported.
+     *
+     * @return the underlying client
+     */
+    public OntologyClient getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Returns the index the names of the imported terms are added to.
+     *
+     * @return the term name index, can be null
+     */
+    public TermNameIndex getTermNameIndex() {
+        return termNameIndex;
+    }
+
+    /**
+     * Adds the given ontology, replacing an earlier ontology with the same
+     * label.
+     *
+     * @param localOntology the ontology
+     */
+    public void addOntology(LocalOntology localOntology) {
+
+        localOntologies.put(localOntology.getLabel().toUpperCase(), localOntology);
+
+        if (termNameIndex != null) {
+            termNameIndex.addOntology(localOntology.getLabel(), localOntology.getTermNames());
+        }
+    }
+
+    /**
+     * Imports the given OBO file and adds the ontology.
+     *
+     * @param oboFile the OBO file
+     * @return the imported ontology
+     * @throws IOException if the file cannot be read or parsed
+     */
+    public LocalOntology importOntology(File oboFile) throws IOException {
+        LocalOntology localOntology = OboImporter.importOntology(oboFile);
+        addOntology(localOntology);
+        return localOntology;
+    }
+
+    /**
+     * Imports all the OBO files in the given folder in the background. The
+     * lookups wait for the imports to finish. Files that cannot be imported
+     * are logged and skipped.
+     *
+     * @param folder the folder with the OBO files, ignored if it does not
+     * exist
+     */
+    public void importOntologies(File folder) {
+
+        File[] oboFiles = folder.listFiles(new FileFilter() {
+
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().toLowerCase().endsWith(".obo");
+            }
+        });
+
+        if (oboFiles == null) {
+            return;
+        }
+
+        synchronized (pendingImports) {
+            for (final File oboFile : oboFiles) {
+                pendingImports.add(ConcurrentQueries.submit(new Callable<LocalOntology>() {
+
+                    public LocalOntology call() throws Exception {
+                        return importOntology(oboFile);
+                    }
+                }));
+            }
+        }
+    }
+
+    /**
+     * Returns the imported ontologies.
+     *
+     * @return the imported ontologies
+     */
+    public Collection<LocalOntology> getOntologies() {
+        awaitImports();
+        return new ArrayList<LocalOntology>(localOntologies.values());
+    }
+
+    /**
+     * Returns the names of the imported ontologies.
+     *
+     * @return the ontology names, key: ontology label, value: ontology name
+     */
+    public Map<String, String> getLocalOntologyNames() {
+
+        Map<String, String> names = new HashMap<String, String>();
+
+        for (LocalOntology localOntology : getOntologies()) {
+            names.put(localOntology.getLabel(), localOntology.getName());
+        }
+
+        return names;
+    }
+
+    public String getTermById(String termId, String ontology) throws RemoteException {
+
+        LocalOntology localOntology = getLocalOntology(ontology, termId);
+
+        if (localOntology != null) {
+            return localOntology.getTermById(termId, ontology);
+        }
+
+        return delegate.getTermById(termId, ontology);
+    }
+
+    public Map<String, String> getTermsByName(String partialName, String ontology, boolean reverseKeyOrder) throws RemoteException {
+
+        if (ontology != null) {
+
+            LocalOntology localOntology = getLocalOntology(ontology, null);
+
+            if (localOntology != null) {
+                return localOntology.getTermsByName(partialName, ontology, reverseKeyOrder);
+            }
+
+            return delegate.getTermsByName(partialName, ontology, reverseKeyOrder);
+        }
+
+        // search all ontologies, completing the remote results with the local ones
+        Collection<LocalOntology> ontologies = getOntologies();
+        Map<String, String> terms = new HashMap<String, String>();
+
+        try {
+            terms.putAll(delegate.getTermsByName(partialName, ontology, reverseKeyOrder));
+        } catch (RemoteException e) {
+            if (ontologies.isEmpty()) {
+                throw e;
+            }
+            logRemoteFailure(e);
+        }
+
+        for (LocalOntology localOntology : ontologies) {
+            terms.putAll(localOntology.getTermsByName(partialName, localOntology.getLabel(), reverseKeyOrder));
+        }
+
+        return terms;
+    }
+
+    public Map<String, String> getTermChildren(String termId, String ontology, int distance, int[] relationTypes) throws RemoteException {
+
+        LocalOntology localOntology = getLocalOntology(ontology, termId);
+
+        if (localOntology != null) {
+            return localOntology.getTermChildren(termId, ontology, distance, relationTypes);
+        }
+
+        return delegate.getTermChildren(termId, ontology, distance, relationTypes);
+    }
+
+    public Map<String, String> getTermMetadata(String termId, String ontology) throws RemoteException {
+
+        LocalOntology localOntology = getLocalOntology(ontology, termId);
+
+        if (localOntology != null) {
+            return localOntology.getTermMetadata(termId, ontology);
+        }
+
+        return delegate.getTermMetadata(termId, ontology);
+    }
+
+    public Map<String, String> getTermXrefs(String termId, String ontology) throws RemoteException {
+
+        LocalOntology localOntology = getLocalOntology(ontology, termId);
+
+        if (localOntology != null) {
+            return localOntology.getTermXrefs(termId, ontology);
+        }
+
+        return delegate.getTermXrefs(termId, ontology);
+    }
+
+    public Map<String, String> getRootTerms(String ontology) throws RemoteException {
+
+        LocalOntology localOntology = getLocalOntology(ontology, null);
+
+        if (localOntology != null) {
+            return localOntology.getRootTerms(ontology);
+        }
+
+        return delegate.getRootTerms(ontology);
+    }
+
+    /**
+     * Returns the ontologies available in the other client, completed with
+     * the imported ontologies not available there.
+     *
+     * @return the ontologies, key: ontology label, value: ontology name
+     * @throws RemoteException if the other client fails
+     */
+    public Map<String, String> getOntologyNames() throws RemoteException {
+
+        Map<String, String> names = new HashMap<String, String>(delegate.getOntologyNames());
+
+        for (Map.Entry<String, String> entry : getLocalOntologyNames().entrySet()) {
+
+            boolean found = false;
+
+            for (Iterator<String> i = names.keySet().iterator(); i.hasNext() && !found;) {
+                found = i.next().equalsIgnoreCase(entry.getKey());
+            }
+
+            if (!found) {
+                names.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return names;
+    }
+
+    public DataHolder[] getTermsByAnnotationData(String ontology, String annotationType, String strValue,
+            double fromDblValue, double toDblValue) throws RemoteException {
+
+        LocalOntology localOntology = getLocalOntology(ontology, null);
+
+        if (localOntology != null) {
+            return localOntology.getTermsByAnnotationData(ontology, annotationType, strValue, fromDblValue, toDblValue);
+        }
+
+        return delegate.getTermsByAnnotationData(ontology, annotationType, strValue, fromDblValue, toDblValue);
+    }
+
+    /**
+     * Returns the mass index of the given ontology and mass type, built from
+     * the imported ontology if there is one.
+     *
+     * @param ontology the ontology, e.g., "MOD"
+     * @param massType the mass type, e.g., "DiffMono"
+     * @return the mass index
+     * @throws RemoteException if the lookup fails
+     */
+    public ModificationMassIndex getMassIndex(String ontology, String massType) throws RemoteException {
+
+        LocalOntology localOntology = getLocalOntology(ontology, null);
+
+        if (localOntology != null) {
+            return localOntology.getMassIndex(massType);
+        }
+
+        return ModificationMassIndex.getMassIndex(delegate, ontology, massType);
+    }
+
+    /**
+     * Returns the levels of children below the given term, from the imported
+     * ontology if there is one.
+     *
+     * @param termId the accession number of the term, null for the root terms
+     * @param ontology the ontology the term belongs to
+     * @param levels the number of levels, 1 for the direct children only
+     * @return the levels of children
+     * @throws RemoteException if the lookup fails
+     */
+    public TermLevels getTermLevels(String termId, String ontology, int levels) throws RemoteException {
+
+        LocalOntology localOntology = getLocalOntology(ontology, termId);
+
+        if (localOntology != null) {
+            return localOntology.getTermLevels(termId, levels);
+        }
+
+        return TermLevels.getTermLevels(delegate, termId, ontology, levels);
+    }
+
+    /**
+     * Returns the parents of the given term, from the imported ontology if
+     * there is one.
+     *
+     * @param termId the accession number of the term
+     * @param ontology the ontology the term belongs to
+     * @return the parent terms, key: accession number, value: term name, or
+     * null if the parents cannot be retrieved with the delegate client
+     * @throws RemoteException if the lookup fails
+     */
+    public Map<String, String> getTermParents(String termId, String ontology) throws RemoteException {
+
+        LocalOntology localOntology = getLocalOntology(ontology, termId);
+
+        if (localOntology != null) {
+            return localOntology.getTermParents(termId);
+        }
+
+        return TermAncestors.getTermParents(delegate, termId, ontology);
+    }
+
+    /**
+     * Returns the imported ontology to use for the given lookup.
+     *
+     * @param ontology the ontology label, null if not given
+     * @param termId the accession number used to find the ontology if the
+     * label is not given, can be null
+     * @return the imported ontology, or null if the lookup has to be passed on
+     */
+    private LocalOntology getLocalOntology(String ontology, String termId) {
+
+        awaitImports();
+
+        if (ontology == null && termId != null) {
+            ontology = TermNameIndex.getOntologyLabel(termId);
+        }
+
+        if (ontology == null) {
+            return null;
+        }
+
+        return localOntologies.get(ontology.toUpperCase());
+    }
+
+    /**
+     * Waits for the imports running in the background to finish.
+     */
+    private void awaitImports() {
+
+        List<Future<LocalOntology>> imports;
+
+        synchronized (pendingImports) {
+            if (pendingImports.isEmpty()) {
+                return;
+            }
+            imports = new ArrayList<Future<LocalOntology>>(pendingImports);
+        }
+
+        for (Future<LocalOntology> pendingImport : imports) {
+
+            Throwable failure = null;
+
+            try {
+                pendingImport.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                failure = e.getCause();
+            }
+
+            boolean removed;
+
+            synchronized (pendingImports) {
+                removed = pendingImports.remove(pendingImport);
+            }
+
+            // only the thread removing the import reports the failure
+            if (failure != null && removed) {
+                Util.writeToErrorLog("Could not import the local ontology: ");
+                failure.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Logs a failure of the other client that is hidden by returning the
+     * local results only.
+     *
+     * @param e the failure
+     */
+    private void logRemoteFailure(RemoteException e) {
+        Util.writeToErrorLog("Error when trying to access OLS, only the local ontologies are searched: ");
+        e.printStackTrace();
+    }
+}
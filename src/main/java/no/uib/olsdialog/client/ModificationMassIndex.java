@@ -0,0 +1,583 @@
+package no.uib.olsdialog.client;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import uk.ac.ebi.ols.soap.model.DataHolder;
+
+/**
+ * The masses of one mass type, e.g., "DiffMono", of the terms of an ontology
+ * such as PSI-MOD, held in a sorted array so that the terms within a mass
+ * range are found by binary search.
+ * <p>
+ * A ModificationMassIndex cannot be changed once created and can be used from
+ * several threads at the same time.
+ */
+public class ModificationMassIndex {
+
+    /**
+     * The mass types of the PSI-MOD modifications.
+     */
+    public static final String[] MASS_TYPES = {"DiffAvg", "DiffMono", "MassAvg", "MassMono"};
+    /**
+     * The mass range retrieved at once when building an index from a client,
+     * from minus to plus this value. Wide enough to hold every PSI-MOD
+     * modification.
+     */
+    public static final double MASS_RANGE = 100000;
+    /**
+     * The minimum number of masses per parallel batch, smaller batches are
+     * not worth a thread.
+     */
+    private static final int MINIMUM_BATCH_SIZE = 1000;
+    /**
+     * Orders the combinations by absolute mass error, the smallest first.
+     */
+    private static final Comparator<Combination> COMBINATION_ERROR_ORDER = new Comparator<Combination>() {
+
+        public int compare(Combination combination1, Combination combination2) {
+            return Double.compare(Math.abs(combination1.getError()), Math.abs(combination2.getError()));
+        }
+    };
+    /**
+     * The mass type, e.g., "DiffMono".
+     */
+    private final String massType;
+    /**
+     * The masses, in ascending order.
+     */
+    private final double[] masses;
+    /**
+     * The accession numbers, in the order of the masses.
+     */
+    private final String[] termIds;
+    /**
+     * The term names, in the order of the masses.
+     */
+    private final String[] termNames;
+
+    /**
+     * Creates a new ModificationMassIndex from the given terms. Terms without
+     * a numerical mass are skipped.
+     *
+     * @param massType the mass type, e.g., "DiffMono"
+     * @param terms the terms with their masses, e.g., as returned by
+     * getTermsByAnnotationData, null if no terms were found
+     */
+    public ModificationMassIndex(String massType, DataHolder[] terms) {
+
+        this.massType = massType;
+
+        List<DataHolder> validTerms = new ArrayList<DataHolder>();
+
+        // the OLS returns null instead of an empty array if nothing is found
+        if (terms != null) {
+            for (DataHolder term : terms) {
+                if (term != null && getMass(term) != null) {
+                    validTerms.add(term);
+                }
+            }
+        }
+
+        DataHolder[] sortedTerms = validTerms.toArray(new DataHolder[validTerms.size()]);
+
+        Arrays.sort(sortedTerms, new Comparator<DataHolder>() {
+
+            public int compare(DataHolder term1, DataHolder term2) {
+                return Double.compare(getMass(term1), getMass(term2));
+            }
+        });
+
+        masses = new double[sortedTerms.length];
+        termIds = new String[sortedTerms.length];
+        termNames = new String[sortedTerms.length];
+
+        for (int i = 0; i < sortedTerms.length; i++) {
+            masses[i] = getMass(sortedTerms[i]);
+            termIds[i] = sortedTerms[i].getTermId();
+            termNames[i] = sortedTerms[i].getTermName();
+        }
+    }
+
+    /**
+     * Returns the mass type.
+     *
+     * @return the mass type, e.g., "DiffMono"
+     */
+    public String getMassType() {
+        return massType;
+    }
+
+    /**
+     * Returns the number of terms in the index.
+     *
+     * @return the number of terms
+     */
+    public int size() {
+        return masses.length;
+    }
+
+    /**
+     * Returns the terms with a mass within the given range, in ascending mass
+     * order.
+     *
+     * @param fromMass the lower mass limit (inclusive)
+     * @param toMass the upper mass limit (inclusive)
+     * @return the matching terms, with the mass as the annotation value
+     */
+    public DataHolder[] getTerms(double fromMass, double toMass) {
+
+        int from = getFirstIndex(fromMass);
+        int to = from;
+
+        while (to < masses.length && masses[to] <= toMass) {
+            to++;
+        }
+
+        return getTerms(from, to);
+    }
+
+    /**
+     * Returns the terms within the given tolerance of each of the given
+     * masses, e.g., the candidate modifications of all the unexplained mass
+     * shifts of an open search. The masses are sorted and swept against the
+     * index in a single pass.
+     *
+     * @param masses the observed masses, in any order
+     * @param tolerance the mass tolerance
+     * @param ppm true if the tolerance is in ppm, false if in Da
+     * @return the matching terms of each mass, in the order of the masses
+     */
+    public DataHolder[][] getTerms(double[] masses, double tolerance, boolean ppm) {
+
+        Integer[] order = getMassOrder(masses);
+        DataHolder[][] result = new DataHolder[masses.length][];
+        sweep(masses, order, 0, order.length, tolerance, ppm, result);
+        return result;
+    }
+
+    /**
+     * Returns the terms within the given tolerance of each of the given
+     * masses, splitting the sorted masses into batches swept in parallel.
+     *
+     * @param masses the observed masses, in any order
+     * @param tolerance the mass tolerance
+     * @param ppm true if the tolerance is in ppm, false if in Da
+     * @param parallelism the maximum number of batches swept at the same
+     * time
+     * @return the matching terms of each mass, in the order of the masses
+     * @throws InterruptedException if interrupted while waiting for the
+     * batches
+     */
+    public DataHolder[][] getTerms(final double[] masses, final double tolerance, final boolean ppm, int parallelism)
+            throws InterruptedException {
+
+        int batchCount = Math.min(parallelism, masses.length / MINIMUM_BATCH_SIZE);
+
+        if (batchCount <= 1) {
+            return getTerms(masses, tolerance, ppm);
+        }
+
+        final Integer[] order = getMassOrder(masses);
+        final DataHolder[][] result = new DataHolder[masses.length][];
+        List<Future<Object>> batches = new ArrayList<Future<Object>>();
+        int batchSize = (order.length + batchCount - 1) / batchCount;
+
+        try {
+            // sweep the first batch in the calling thread
+            for (int from = batchSize; from < order.length; from += batchSize) {
+
+                final int batchFrom = from;
+                final int batchTo = Math.min(from + batchSize, order.length);
+
+                batches.add(ConcurrentQueries.submit(new Callable<Object>() {
+
+                    public Object call() {
+                        sweep(masses, order, batchFrom, batchTo, tolerance, ppm, result);
+                        return null;
+                    }
+                }));
+            }
+
+            sweep(masses, order, 0, batchSize, tolerance, ppm, result);
+
+            for (Future<Object> batch : batches) {
+                batch.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Mass search failed.", e.getCause());
+        } finally {
+            for (Future<Object> batch : batches) {
+                batch.cancel(true);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the combinations of two or three terms whose summed mass is
+     * within the given tolerance of the given mass, e.g., oxidation plus
+     * deamidation. A term can occur more than once in a combination. The
+     * pairs are found with two pointers moving through the sorted masses, the
+     * triples by a pair search for every first term.
+     *
+     * @param mass the observed mass
+     * @param tolerance the mass tolerance, in Da
+     * @param size the number of terms per combination, 2 or 3
+     * @param maximumResults the maximum number of combinations returned
+     * @return the combinations with the smallest mass errors, sorted by
+     * absolute mass error
+     */
+    public List<Combination> getCombinations(double mass, double tolerance, int size, int maximumResults) {
+
+        if (size < 2 || size > 3) {
+            throw new IllegalArgumentException("Only combinations of two or three terms are supported.");
+        }
+
+        PriorityQueue<Combination> bestCombinations = new PriorityQueue<Combination>(Math.min(maximumResults, 1000) + 1,
+                Collections.reverseOrder(COMBINATION_ERROR_ORDER));
+
+        if (size == 2) {
+            addPairs(0, -1, mass, tolerance, bestCombinations, maximumResults);
+        } else {
+            for (int i = 0; i < masses.length && 3 * masses[i] <= mass + tolerance; i++) {
+                addPairs(i, i, mass - masses[i], tolerance, bestCombinations, maximumResults);
+            }
+        }
+
+        List<Combination> result = new ArrayList<Combination>(bestCombinations);
+        Collections.sort(result, COMBINATION_ERROR_ORDER);
+        return result;
+    }
+
+    /**
+     * Adds the pairs of terms, starting at the given position, whose summed
+     * mass is within the given tolerance of the given mass. As the mass of
+     * the first term of the pair increases, the window of the second term
+     * only moves down.
+     *
+     * @param first the position of the lowest first term of the pairs
+     * @param prefix the position of a term preceding each pair, -1 if none
+     * @param mass the mass the pairs have to add up to
+     * @param tolerance the mass tolerance, in Da
+     * @param bestCombinations the best combinations found so far, worst first
+     * @param maximumResults the maximum number of combinations kept
+     */
+    private void addPairs(int first, int prefix, double mass, double tolerance,
+            PriorityQueue<Combination> bestCombinations, int maximumResults) {
+
+        double lowerLimit = mass - tolerance;
+        double upperLimit = mass + tolerance;
+
+        if (first >= masses.length) {
+            return;
+        }
+
+        int low = getFirstIndex(lowerLimit - masses[first]);
+        int high = getFirstIndexAbove(upperLimit - masses[first]);
+
+        for (int j = first; j < masses.length && 2 * masses[j] <= upperLimit; j++) {
+
+            while (low > 0 && masses[low - 1] >= lowerLimit - masses[j]) {
+                low--;
+            }
+            while (high > 0 && masses[high - 1] > upperLimit - masses[j]) {
+                high--;
+            }
+
+            for (int k = Math.max(low, j); k < high; k++) {
+
+                double error = masses[j] + masses[k] - mass;
+
+                if (bestCombinations.size() < maximumResults
+                        || Math.abs(error) < Math.abs(bestCombinations.peek().getError())) {
+
+                    int[] positions = prefix == -1 ? new int[]{j, k} : new int[]{prefix, j, k};
+                    bestCombinations.add(new Combination(positions, error));
+
+                    if (bestCombinations.size() > maximumResults) {
+                        bestCombinations.poll();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the positions of the given masses in ascending mass order.
+     *
+     * @param masses the masses
+     * @return the positions of the masses, sorted by mass
+     */
+    private static Integer[] getMassOrder(final double[] masses) {
+
+        Integer[] order = new Integer[masses.length];
+
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            public int compare(Integer index1, Integer index2) {
+                return Double.compare(masses[index1], masses[index2]);
+            }
+        });
+
+        return order;
+    }
+
+    /**
+     * Finds the terms of a range of the sorted masses. The start of the
+     * window only moves forward, so each batch reads the index once.
+     *
+     * @param masses the observed masses
+     * @param order the positions of the masses in ascending mass order
+     * @param from the first position in the order to sweep (inclusive)
+     * @param to the last position in the order to sweep (exclusive)
+     * @param tolerance the mass tolerance
+     * @param ppm true if the tolerance is in ppm, false if in Da
+     * @param result the array receiving the matching terms of each mass
+     */
+    private void sweep(double[] masses, Integer[] order, int from, int to, double tolerance, boolean ppm,
+            DataHolder[][] result) {
+
+        int start = -1;
+        double previousLowerLimit = Double.NEGATIVE_INFINITY;
+
+        for (int i = from; i < to; i++) {
+
+            double mass = masses[order[i]];
+            double massTolerance = ppm ? Math.abs(mass) * tolerance / 1000000 : tolerance;
+            double lowerLimit = mass - massTolerance;
+            double upperLimit = mass + massTolerance;
+
+            if (start == -1 || lowerLimit < previousLowerLimit) {
+                start = getFirstIndex(lowerLimit);
+            } else {
+                while (start < this.masses.length && this.masses[start] < lowerLimit) {
+                    start++;
+                }
+            }
+
+            previousLowerLimit = lowerLimit;
+
+            int end = start;
+
+            while (end < this.masses.length && this.masses[end] <= upperLimit) {
+                end++;
+            }
+
+            result[order[i]] = getTerms(start, end);
+        }
+    }
+
+    /**
+     * Returns the terms between the given positions of the index.
+     *
+     * @param from the first position (inclusive)
+     * @param to the last position (exclusive)
+     * @return the terms, with the mass as the annotation value
+     */
+    private DataHolder[] getTerms(int from, int to) {
+
+        DataHolder[] result = new DataHolder[to - from];
+
+        for (int i = from; i < to; i++) {
+            DataHolder dataHolder = new DataHolder();
+            dataHolder.setTermId(termIds[i]);
+            dataHolder.setTermName(termNames[i]);
+            dataHolder.setAnnotationType(massType);
+            dataHolder.setAnnotationNumberValue(masses[i]);
+            dataHolder.setAnnotationStringValue(Double.toString(masses[i]));
+            result[i - from] = dataHolder;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the index of the first mass greater than or equal to the given
+     * mass.
+     *
+     * @param mass the mass
+     * @return the index of the first mass not below the given mass, the
+     * number of terms if all the masses are below
+     */
+    private int getFirstIndex(double mass) {
+
+        int low = 0;
+        int high = masses.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (masses[middle] < mass) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Returns the index of the first mass greater than the given mass.
+     *
+     * @param mass the mass
+     * @return the index of the first mass above the given mass, the number
+     * of terms if none is above
+     */
+    private int getFirstIndexAbove(double mass) {
+
+        int low = 0;
+        int high = masses.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (masses[middle] <= mass) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Returns the mass index of the given ontology and mass type, using the
+     * index kept by the client if it is an ExtendedOntologyClient and else
+     * retrieving all the terms of the mass type.
+     *
+     * @param ontologyClient the client
+     * @param ontology the ontology, e.g., "MOD"
+     * @param massType the mass type, e.g., "DiffMono"
+     * @return the mass index
+     * @throws RemoteException if the lookup fails
+     */
+    public static ModificationMassIndex getMassIndex(OntologyClient ontologyClient, String ontology, String massType)
+            throws RemoteException {
+
+        if (ontologyClient instanceof ExtendedOntologyClient) {
+            return ((ExtendedOntologyClient) ontologyClient).getMassIndex(ontology, massType);
+        }
+
+        return retrieveMassIndex(ontologyClient, ontology, massType);
+    }
+
+    /**
+     * Returns a new mass index of the given ontology and mass type, built
+     * from all the terms of the mass type retrieved with the given client.
+     *
+     * @param ontologyClient the client
+     * @param ontology the ontology, e.g., "MOD"
+     * @param massType the mass type, e.g., "DiffMono"
+     * @return the mass index
+     * @throws RemoteException if the lookup fails
+     */
+    public static ModificationMassIndex retrieveMassIndex(OntologyClient ontologyClient, String ontology, String massType)
+            throws RemoteException {
+        return new ModificationMassIndex(massType,
+                ontologyClient.getTermsByAnnotationData(ontology, massType, null, -MASS_RANGE, MASS_RANGE));
+    }
+
+    /**
+     * Returns the mass of the given term, taken from the numerical
+     * annotation value or else parsed from the string value.
+     *
+     * @param term the term
+     * @return the mass, or null if the term has no numerical mass
+     */
+    public static Double getMass(DataHolder term) {
+
+        if (term.getAnnotationNumberValue() != null) {
+            return term.getAnnotationNumberValue();
+        }
+
+        if (term.getAnnotationStringValue() != null) {
+            try {
+                return Double.valueOf(term.getAnnotationStringValue().trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * A combination of terms whose summed mass explains an observed mass.
+     */
+    public class Combination {
+
+        /**
+         * The positions of the terms in the index.
+         */
+        private final int[] positions;
+        /**
+         * The summed mass minus the observed mass.
+         */
+        private final double error;
+
+        /**
+         * Creates a new Combination.
+         *
+         * @param positions the positions of the terms in the index
+         * @param error the summed mass minus the observed mass
+         */
+        private Combination(int[] positions, double error) {
+            this.positions = positions;
+            this.error = error;
+        }
+
+        /**
+         * Returns the terms of the combination, in ascending mass order.
+         *
+         * @return the terms, with their masses as the annotation values
+         */
+        public DataHolder[] getTerms() {
+
+            DataHolder[] terms = new DataHolder[positions.length];
+
+            for (int i = 0; i < positions.length; i++) {
+                terms[i] = ModificationMassIndex.this.getTerms(positions[i], positions[i] + 1)[0];
+            }
+
+            return terms;
+        }
+
+        /**
+         * Returns the summed mass of the terms.
+         *
+         * @return the summed mass
+         */
+        public double getMass() {
+
+            double mass = 0;
+
+            for (int position : positions) {
+                mass += masses[position];
+            }
+
+            return mass;
+        }
+
+        /**
+         * Returns the summed mass minus the observed mass.
+         *
+         * @return the mass error
+         */
+        public double getError() {
+            return error;
+        }
+    }
+}
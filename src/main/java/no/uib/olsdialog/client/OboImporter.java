@@ -0,0 +1,483 @@
+package no.uib.olsdialog.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Imports ontologies from OBO files, e.g., the PSI-MS and PSI-MOD files, into
+ * LocalOntology objects.
+ * <p>
+ * The file is memory-mapped and split into chunks at the stanza boundaries,
+ * and the chunks are decoded and parsed in parallel. Only the [Term] stanzas
+ * are imported, with the following tags: id, name, def, comment, synonym (and
+ * the OBO 1.0 *_synonym tags), xref, is_a, relationship, property_value and
+ * is_obsolete. Only the is_a and part_of relationships are imported as
+ * parents, the other relationships, e.g., the PSI-MS has_units and
+ * has_regexp, do not belong to the term hierarchy and are skipped. Cross
+ * references with a quoted value, e.g., the PSI-MOD <code>xref: DiffMono:
+ * "79.966331"</code>, are imported with the value, so that they can be used
+ * for the mass searches.
+ */
+public class OboImporter {
+
+    /**
+     * The character set of the OBO files.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /**
+     * The minimum size of the chunks parsed in parallel, in bytes. Smaller
+     * files are parsed in a single chunk.
+     */
+    private static final int MINIMUM_CHUNK_SIZE = 256 * 1024;
+    /**
+     * The relationship types imported as parents, in addition to is_a.
+     */
+    private static final List<String> HIERARCHY_RELATIONSHIPS = Arrays.asList("part_of");
+
+    /**
+     * Empty constructor, use the static import methods.
+     */
+    private OboImporter() {
+    }
+
+    /**
+     * Imports the given OBO file, using one thread per processor.
+     *
+     * @param file the OBO file
+     * @return the imported ontology
+     * @throws IOException if the file cannot be read or parsed
+     */
+    public static LocalOntology importOntology(File file) throws IOException {
+        return importOntology(file, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Imports the given OBO file.
+     *
+     * @param file the OBO file
+     * @param parallelism the maximum number of chunks to parse in parallel
+     * @return the imported ontology
+     * @throws IOException if the file cannot be read or parsed
+     */
+    public static LocalOntology importOntology(File file, int parallelism) throws IOException {
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to be imported.");
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            List<Integer> boundaries = findChunkBoundaries(buffer, (int) size, Math.max(1, parallelism));
+
+            // parse the chunks in parallel
+            List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>();
+
+            for (int i = 0; i < boundaries.size() - 1; i++) {
+
+                ByteBuffer view = buffer.duplicate();
+                view.limit(boundaries.get(i + 1));
+                view.position(boundaries.get(i));
+                final ByteBuffer chunkBuffer = view.slice();
+
+                futures.add(ConcurrentQueries.submit(new Callable<Chunk>() {
+
+                    public Chunk call() throws Exception {
+                        return parseChunk(chunkBuffer);
+                    }
+                }));
+            }
+
+            // merge the chunks in file order
+            Map<String, String> header = null;
+            List<LocalOntology.Term> terms = new ArrayList<LocalOntology.Term>();
+
+            try {
+                for (Future<Chunk> future : futures) {
+                    Chunk chunk = future.get();
+                    if (header == null) {
+                        header = chunk.header;
+                    }
+                    terms.addAll(chunk.terms);
+                }
+            } catch (InterruptedException e) {
+                cancel(futures);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while importing " + file + ".");
+            } catch (ExecutionException e) {
+                cancel(futures);
+                IOException ioException = new IOException("Could not parse " + file + ": " + e.getCause());
+                ioException.initCause(e.getCause());
+                throw ioException;
+            }
+
+            return new LocalOntology(getLabel(file, header, terms), getName(file), terms);
+
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Returns the positions splitting the given file content into about the
+     * given number of chunks, each chunk but the first starting with a
+     * stanza.
+     *
+     * @param buffer the file content
+     * @param size the file size
+     * @param parallelism the wanted number of chunks
+     * @return the chunk boundaries, starting with 0 and ending with the file
+     * size
+     */
+    private static List<Integer> findChunkBoundaries(ByteBuffer buffer, int size, int parallelism) {
+
+        List<Integer> boundaries = new ArrayList<Integer>();
+        boundaries.add(0);
+
+        int chunkSize = Math.max(MINIMUM_CHUNK_SIZE, size / parallelism);
+
+        for (int position = chunkSize; position < size; position += chunkSize) {
+
+            // move forward to the start of the next stanza
+            int boundary = -1;
+
+            for (int i = Math.max(position, boundaries.get(boundaries.size() - 1) + 1); i < size - 1; i++) {
+                if (buffer.get(i) == '\n' && buffer.get(i + 1) == '[') {
+                    boundary = i + 1;
+                    break;
+                }
+            }
+
+            if (boundary == -1) {
+                break;
+            }
+
+            boundaries.add(boundary);
+            position = boundary;
+        }
+
+        boundaries.add(size);
+
+        return boundaries;
+    }
+
+    /**
+     * Parses a chunk of an OBO file.
+     *
+     * @param buffer the chunk
+     * @return the header tags and terms of the chunk
+     * @throws IOException if the chunk cannot be decoded
+     */
+    private static Chunk parseChunk(ByteBuffer buffer) throws IOException {
+
+        String text = UTF8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .decode(buffer).toString();
+
+        Chunk chunk = new Chunk();
+        boolean inHeader = true;
+        LocalOntology.Term term = null;
+        int lineStart = 0;
+
+        while (lineStart < text.length()) {
+
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd == -1) {
+                lineEnd = text.length();
+            }
+
+            String line = text.substring(lineStart, lineEnd).trim();
+            lineStart = lineEnd + 1;
+
+            if (line.length() == 0 || line.charAt(0) == '!') {
+                continue;
+            }
+
+            if (line.charAt(0) == '[') {
+                inHeader = false;
+                if (term != null) {
+                    chunk.terms.add(term);
+                }
+                term = line.equals("[Term]") ? new LocalOntology.Term() : null;
+                continue;
+            }
+
+            int colon = line.indexOf(':');
+
+            if (colon == -1) {
+                continue;
+            }
+
+            String tag = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+
+            if (inHeader) {
+                if (!chunk.header.containsKey(tag)) {
+                    chunk.header.put(tag, value);
+                }
+            } else if (term != null) {
+                addTag(term, tag, value);
+            }
+        }
+
+        if (term != null) {
+            chunk.terms.add(term);
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Adds the given tag to the given term.
+     *
+     * @param term the term
+     * @param tag the tag name
+     * @param value the tag value
+     */
+    private static void addTag(LocalOntology.Term term, String tag, String value) {
+
+        if (tag.equals("id")) {
+            term.id = getFirstToken(value);
+        } else if (tag.equals("name")) {
+            term.name = value;
+        } else if (tag.equals("def")) {
+            String[] quoted = readQuoted(value);
+            put(term.metadata, "definition", quoted[0]);
+        } else if (tag.equals("comment")) {
+            put(term.metadata, "comment", value);
+        } else if (tag.equals("synonym")) {
+            String[] quoted = readQuoted(value);
+            String scope = getFirstToken(quoted[1]);
+            if (scope.length() == 0 || scope.startsWith("[")) {
+                put(term.metadata, "synonym", quoted[0]);
+            } else {
+                put(term.metadata, scope.toLowerCase() + "_synonym", quoted[0]);
+            }
+        } else if (tag.endsWith("_synonym")) {
+            put(term.metadata, tag, readQuoted(value)[0]);
+        } else if (tag.equals("xref") || tag.equals("xref_analog")) {
+            addXref(term, removeComment(value));
+        } else if (tag.equals("is_a")) {
+            term.parentIds.add(getFirstToken(value));
+        } else if (tag.equals("relationship")) {
+            String relationType = getFirstToken(value);
+            String target = getFirstToken(value.substring(relationType.length()));
+            if (target.length() > 0 && HIERARCHY_RELATIONSHIPS.contains(relationType)) {
+                term.parentIds.add(target);
+            }
+        } else if (tag.equals("property_value")) {
+            String property = getFirstToken(value);
+            String rest = value.substring(property.length()).trim();
+            if (rest.startsWith("\"")) {
+                put(term.metadata, property, readQuoted(rest)[0]);
+            } else {
+                put(term.metadata, property, getFirstToken(rest));
+            }
+        } else if (tag.equals("is_obsolete")) {
+            term.obsolete = value.equalsIgnoreCase("true");
+        }
+    }
+
+    /**
+     * Adds the given cross reference to the given term. For cross
+     * references with a quoted value, e.g., <code>DiffMono: "79.966331"</code>
+     * or <code>RESID:AA0037 "description"</code>, the part before the quote
+     * is the key and the quoted text the value. Other cross references use
+     * the cross reference itself as both key and value.
+     *
+     * @param term the term
+     * @param xref the cross reference, without the comment
+     */
+    private static void addXref(LocalOntology.Term term, String xref) {
+
+        int quote = xref.indexOf('"');
+
+        if (quote == -1) {
+            String id = getFirstToken(xref);
+            put(term.xrefs, id, id);
+        } else {
+            String key = xref.substring(0, quote).trim();
+            if (key.endsWith(":")) {
+                key = key.substring(0, key.length() - 1).trim();
+            }
+            put(term.xrefs, key, readQuoted(xref.substring(quote))[0]);
+        }
+    }
+
+    /**
+     * Adds the given entry to the given map. If the key is already used, a
+     * number is added to the key, e.g., "exact_synonym_2".
+     *
+     * @param map the map
+     * @param key the key
+     * @param value the value
+     */
+    private static void put(Map<String, String> map, String key, String value) {
+
+        String uniqueKey = key;
+
+        for (int i = 2; map.containsKey(uniqueKey); i++) {
+            uniqueKey = key + "_" + i;
+        }
+
+        map.put(uniqueKey, value);
+    }
+
+    /**
+     * Reads a quoted string at the start of the given value, unescaping the
+     * escaped characters.
+     *
+     * @param value the value, starting with a quote
+     * @return the quoted string and the rest of the value after the closing
+     * quote; if the value does not start with a quote, the value and an empty
+     * string
+     */
+    private static String[] readQuoted(String value) {
+
+        if (!value.startsWith("\"")) {
+            return new String[]{value, ""};
+        }
+
+        StringBuilder quoted = new StringBuilder();
+        int i = 1;
+
+        for (; i < value.length(); i++) {
+            char character = value.charAt(i);
+            if (character == '\\' && i + 1 < value.length()) {
+                quoted.append(value.charAt(++i));
+            } else if (character == '"') {
+                break;
+            } else {
+                quoted.append(character);
+            }
+        }
+
+        return new String[]{quoted.toString(), i + 1 < value.length() ? value.substring(i + 1).trim() : ""};
+    }
+
+    /**
+     * Removes the trailing comment, i.e., the text after an exclamation mark,
+     * from the given value.
+     *
+     * @param value the value
+     * @return the value without the comment
+     */
+    private static String removeComment(String value) {
+
+        int comment = value.indexOf(" !");
+
+        if (comment != -1) {
+            return value.substring(0, comment).trim();
+        }
+
+        return value;
+    }
+
+    /**
+     * Returns the first whitespace separated token of the given value.
+     *
+     * @param value the value
+     * @return the first token, empty if the value is empty
+     */
+    private static String getFirstToken(String value) {
+
+        String trimmedValue = value.trim();
+
+        for (int i = 0; i < trimmedValue.length(); i++) {
+            if (Character.isWhitespace(trimmedValue.charAt(i))) {
+                return trimmedValue.substring(0, i);
+            }
+        }
+
+        return trimmedValue;
+    }
+
+    /**
+     * Returns the label of the imported ontology, i.e., the prefix of the
+     * accession number of the first term, or, if the file has no terms, the
+     * ontology header tag or the file name.
+     *
+     * @param file the OBO file
+     * @param header the header tags
+     * @param terms the terms
+     * @return the ontology label
+     */
+    private static String getLabel(File file, Map<String, String> header, List<LocalOntology.Term> terms) {
+
+        for (LocalOntology.Term term : terms) {
+            if (term.id != null && (term.id.indexOf(':') != -1 || term.id.indexOf('_') != -1)) {
+                return TermNameIndex.getOntologyLabel(term.id);
+            }
+        }
+
+        if (header != null && header.get("ontology") != null) {
+            return header.get("ontology").toUpperCase();
+        }
+
+        return getName(file).toUpperCase();
+    }
+
+    /**
+     * Returns the name of the imported ontology, i.e., the file name without
+     * the extension.
+     *
+     * @param file the OBO file
+     * @return the ontology name
+     */
+    private static String getName(File file) {
+
+        String name = file.getName();
+
+        if (name.lastIndexOf('.') > 0) {
+            name = name.substring(0, name.lastIndexOf('.'));
+        }
+
+        return name;
+    }
+
+    /**
+     * Cancels the given parse tasks.
+     *
+     * @param futures the parse tasks
+     */
+    private static void cancel(List<Future<Chunk>> futures) {
+        for (Future<Chunk> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * The header tags and terms parsed from a chunk of an OBO file.
+     */
+    private static class Chunk {
+
+        /**
+         * The header tags, only found in the first chunk.
+         */
+        private final Map<String, String> header = new HashMap<String, String>();
+        /**
+         * The terms, in file order.
+         */
+        private final List<LocalOntology.Term> terms = new ArrayList<LocalOntology.Term>();
+    }
+}
@@ -0,0 +1,104 @@
+package no.uib.olsdialog.client;
+
+import java.rmi.RemoteException;
+import java.util.Map;
+import uk.ac.ebi.ols.soap.model.DataHolder;
+
+/**
+ * The lookups the OLS Dialog performs against an ontology service. All
+ * implementations have to be safe to use from several threads at the same
+ * time.
+ */
+public interface OntologyClient {
+
+    /**
+     * Returns the name of the term with the given accession number.
+     *
+     * @param termId the accession number of the term, e.g., "MOD:00425"
+     * @param ontology the ontology to search in, null searches all ontologies
+     * @return the term name, or the accession number itself if the term is not
+     * found
+     * @throws RemoteException if the lookup fails
+     */
+    public String getTermById(String termId, String ontology) throws RemoteException;
+
+    /**
+     * Returns the terms whose name contains the given string.
+     *
+     * @param partialName the (partial) name to search for
+     * @param ontology the ontology to search in, null searches all ontologies
+     * @param reverseKeyOrder if true the keys are term names and the values
+     * accession numbers
+     * @return the matching terms, key: accession number, value: term name
+     * @throws RemoteException if the lookup fails
+     */
+    public Map<String, String> getTermsByName(String partialName, String ontology, boolean reverseKeyOrder) throws RemoteException;
+
+    /**
+     * Returns the children of the given term.
+     *
+     * @param termId the accession number of the parent term
+     * @param ontology the ontology the term belongs to
+     * @param distance the maximum distance from the parent term, 1 for direct
+     * children only
+     * @param relationTypes the relation types to follow, null for all
+     * @return the child terms, key: accession number, value: term name
+     * @throws RemoteException if the lookup fails
+     */
+    public Map<String, String> getTermChildren(String termId, String ontology, int distance, int[] relationTypes) throws RemoteException;
+
+    /**
+     * Returns the metadata of the given term, including its definition.
+     *
+     * @param termId the accession number of the term
+     * @param ontology the ontology the term belongs to
+     * @return the metadata, key: metadata name, value: metadata value
+     * @throws RemoteException if the lookup fails
+     */
+    public Map<String, String> getTermMetadata(String termId, String ontology) throws RemoteException;
+
+    /**
+     * Returns the cross references of the given term.
+     *
+     * @param termId the accession number of the term
+     * @param ontology the ontology the term belongs to
+     * @return the cross references, key: reference name, value: reference
+     * value
+     * @throws RemoteException if the lookup fails
+     */
+    public Map<String, String> getTermXrefs(String termId, String ontology) throws RemoteException;
+
+    /**
+     * Returns the root terms of the given ontology.
+     *
+     * @param ontology the ontology to get the root terms for
+     * @return the root terms, key: accession number, value: term name
+     * @throws RemoteException if the lookup fails
+     */
+    public Map<String, String> getRootTerms(String ontology) throws RemoteException;
+
+    /**
+     * Returns the ontologies available.
+     *
+     * @return the ontologies, key: ontology label, e.g., "GO", value: ontology
+     * name
+     * @throws RemoteException if the lookup fails
+     */
+    public Map<String, String> getOntologyNames() throws RemoteException;
+
+    /**
+     * Returns the terms having an annotation of the given type within the
+     * given value range, e.g., the PSI-MOD modifications with a DiffMono
+     * annotation between two masses.
+     *
+     * @param ontology the ontology to search in
+     * @param annotationType the annotation type, e.g., "DiffMono"
+     * @param strValue the string value to match, can be null
+     * @param fromDblValue the lower value limit (inclusive)
+     * @param toDblValue the upper value limit (inclusive)
+     * @return the matching terms
+     * @throws RemoteException if the lookup fails
+     */
+    public DataHolder[] getTermsByAnnotationData(String ontology, String annotationType, String strValue,
+            double fromDblValue, double toDblValue) throws RemoteException;
+}
@@ -0,0 +1,192 @@
+package no.uib.olsdialog.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * A local copy of the ontology names and of the names of the preselected
+ * parent terms, last retrieved from the OLS. Makes it possible to fill in the
+ * ontology list without waiting for the OLS, and to refresh it afterwards.
+ * <p>
+ * The snapshot is kept in a properties file, using the keys "ontology.LABEL"
+ * for the ontology names and "term.ACCESSION" for the term names.
+ */
+public class OntologyNamesSnapshot {
+
+    /**
+     * The key prefix of the ontology names.
+     */
+    private static final String ONTOLOGY_PREFIX = "ontology.";
+    /**
+     * The key prefix of the term names.
+     */
+    private static final String TERM_PREFIX = "term.";
+    /**
+     * The snapshot file.
+     */
+    private final File file;
+    /**
+     * The ontology names, key: ontology label, value: ontology name.
+     */
+    private Map<String, String> ontologyNames = new TreeMap<String, String>();
+    /**
+     * The term names, key: accession number, value: term name.
+     */
+    private final Map<String, String> termNames = new HashMap<String, String>();
+
+    /**
+     * Creates a new, empty OntologyNamesSnapshot.
+     *
+     * @param file the file to save the snapshot to
+     */
+    public OntologyNamesSnapshot(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the snapshot from the given file. If the file does not exist an
+     * empty snapshot is returned.
+     *
+     * @param file the snapshot file
+     * @return the snapshot
+     * @throws IOException if the file exists but cannot be read
+     */
+    public static OntologyNamesSnapshot load(File file) throws IOException {
+
+        OntologyNamesSnapshot snapshot = new OntologyNamesSnapshot(file);
+
+        if (!file.exists()) {
+            return snapshot;
+        }
+
+        Properties properties = new Properties();
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+
+        for (Iterator<Object> i = properties.keySet().iterator(); i.hasNext();) {
+            String key = (String) i.next();
+
+            if (key.startsWith(ONTOLOGY_PREFIX)) {
+                snapshot.ontologyNames.put(key.substring(ONTOLOGY_PREFIX.length()), properties.getProperty(key));
+            } else if (key.startsWith(TERM_PREFIX)) {
+                snapshot.termNames.put(key.substring(TERM_PREFIX.length()), properties.getProperty(key));
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Returns true if the snapshot contains the ontology names.
+     *
+     * @return true if the ontology names are known
+     */
+    public synchronized boolean hasOntologyNames() {
+        return !ontologyNames.isEmpty();
+    }
+
+    /**
+     * Returns the ontology names.
+     *
+     * @return a copy of the ontology names, key: ontology label, value:
+     * ontology name
+     */
+    public synchronized Map<String, String> getOntologyNames() {
+        return new TreeMap<String, String>(ontologyNames);
+    }
+
+    /**
+     * Returns the name of the given term.
+     *
+     * @param termId the accession number of the term
+     * @return the term name, or null if not in the snapshot
+     */
+    public synchronized String getTermName(String termId) {
+        return termNames.get(termId);
+    }
+
+    /**
+     * Replaces the ontology names and adds the given term names. Terms not
+     * included keep their previous name, as the snapshot is shared by dialogs
+     * with different preselected terms.
+     *
+     * @param newOntologyNames the ontology names, key: ontology label, value:
+     * ontology name
+     * @param newTermNames the term names, key: accession number, value: term
+     * name
+     * @return true if the snapshot changed
+     */
+    public synchronized boolean update(Map<String, String> newOntologyNames, Map<String, String> newTermNames) {
+
+        boolean changed = false;
+
+        Map<String, String> sortedOntologyNames = new TreeMap<String, String>();
+
+        // ontologies without a name are listed using their label
+        for (Map.Entry<String, String> entry : newOntologyNames.entrySet()) {
+            sortedOntologyNames.put(entry.getKey(), entry.getValue() == null ? entry.getKey() : entry.getValue());
+        }
+
+        if (!sortedOntologyNames.equals(ontologyNames)) {
+            ontologyNames = sortedOntologyNames;
+            changed = true;
+        }
+
+        for (Map.Entry<String, String> entry : newTermNames.entrySet()) {
+            if (entry.getValue() != null && !entry.getValue().equals(termNames.put(entry.getKey(), entry.getValue()))) {
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Writes the snapshot to its file. The snapshot is first written to a
+     * temporary file, so that an interrupted write does not leave a corrupt
+     * snapshot behind.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    public synchronized void save() throws IOException {
+
+        Properties properties = new Properties();
+
+        for (Map.Entry<String, String> entry : ontologyNames.entrySet()) {
+            properties.setProperty(ONTOLOGY_PREFIX + entry.getKey(), entry.getValue());
+        }
+
+        for (Map.Entry<String, String> entry : termNames.entrySet()) {
+            properties.setProperty(TERM_PREFIX + entry.getKey(), entry.getValue());
+        }
+
+        File temporaryFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(temporaryFile));
+
+        try {
+            properties.store(out, "Ontology names last retrieved from the OLS");
+        } finally {
+            out.close();
+        }
+
+        if (file.exists() && !file.delete() || !temporaryFile.renameTo(file)) {
+            throw new IOException("Could not replace " + file + " by " + temporaryFile + ".");
+        }
+    }
+}
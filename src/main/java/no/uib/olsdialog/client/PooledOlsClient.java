@@ -0,0 +1,234 @@
+package no.uib.olsdialog.client;
+
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.rpc.ServiceException;
+import uk.ac.ebi.ols.soap.Query;
+import uk.ac.ebi.ols.soap.QueryService;
+import uk.ac.ebi.ols.soap.QueryServiceLocator;
+import uk.ac.ebi.ols.soap.model.DataHolder;
+
+/**
+ * An OntologyClient talking to the OLS web service through a bounded pool of
+ * SOAP stubs. Every call borrows a stub for its own exclusive use and returns
+ * it afterwards, so concurrent lookups never share a stub and the stubs are
+ * only created once.
+ */
+public class PooledOlsClient implements ExtendedOntologyClient {
+
+    /**
+     * The default maximum number of stubs in the pool.
+     */
+    public static final int DEFAULT_POOL_SIZE = 8;
+    /**
+     * The service locator used to create the stubs.
+     */
+    private final QueryService locator;
+    /**
+     * The stubs not currently in use.
+     */
+    private final BlockingQueue<Query> idleStubs;
+    /**
+     * The maximum number of stubs to create.
+     */
+    private final int maximumPoolSize;
+    /**
+     * The number of stubs created so far.
+     */
+    private final AtomicInteger createdStubs = new AtomicInteger();
+
+    /**
+     * Creates a new PooledOlsClient with the default pool size.
+     */
+    public PooledOlsClient() {
+        this(DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Creates a new PooledOlsClient. The stubs are created lazily, the first
+     * time they are needed.
+     *
+     * @param maximumPoolSize the maximum number of stubs, i.e., the maximum
+     * number of concurrent calls to the OLS
+     */
+    public PooledOlsClient(int maximumPoolSize) {
+        if (maximumPoolSize < 1) {
+            throw new IllegalArgumentException("The pool size has to be at least one.");
+        }
+        this.maximumPoolSize = maximumPoolSize;
+        this.idleStubs = new ArrayBlockingQueue<Query>(maximumPoolSize);
+        this.locator = new QueryServiceLocator();
+    }
+
+    /**
+     * Returns the maximum number of concurrent calls to the OLS.
+     *
+     * @return the maximum number of stubs in the pool
+     */
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    /**
+     * Takes a stub from the pool, creating a new one if the pool is not yet
+     * full, or waiting for one to be returned otherwise.
+     *
+     * @return a stub for the exclusive use of the calling thread
+     * @throws RemoteException if the stub could not be created or the thread
+     * was interrupted while waiting
+     */
+    private Query borrowStub() throws RemoteException {
+
+        Query stub = idleStubs.poll();
+
+        if (stub != null) {
+            return stub;
+        }
+
+        if (createdStubs.incrementAndGet() <= maximumPoolSize) {
+            try {
+                return locator.getOntologyQuery();
+            } catch (ServiceException e) {
+                createdStubs.decrementAndGet();
+                throw new RemoteException("Could not create the OLS connection.", e);
+            }
+        }
+
+        createdStubs.decrementAndGet();
+
+        try {
+            return idleStubs.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for an OLS connection.", e);
+        }
+    }
+
+    /**
+     * Returns a stub to the pool.
+     *
+     * @param stub the stub to return
+     */
+    private void releaseStub(Query stub) {
+        idleStubs.offer(stub);
+    }
+
+    public String getTermById(String termId, String ontology) throws RemoteException {
+        Query stub = borrowStub();
+        try {
+            return stub.getTermById(termId, ontology);
+        } finally {
+            releaseStub(stub);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, String> getTermsByName(String partialName, String ontology, boolean reverseKeyOrder) throws RemoteException {
+        Query stub = borrowStub();
+        try {
+            return stub.getTermsByName(partialName, ontology, reverseKeyOrder);
+        } finally {
+            releaseStub(stub);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, String> getTermChildren(String termId, String ontology, int distance, int[] relationTypes) throws RemoteException {
+        Query stub = borrowStub();
+        try {
+            return stub.getTermChildren(termId, ontology, distance, relationTypes);
+        } finally {
+            releaseStub(stub);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, String> getTermParents(String termId, String ontology) throws RemoteException {
+        Query stub = borrowStub();
+        try {
+            return stub.getTermParents(termId, ontology);
+        } finally {
+            releaseStub(stub);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, String> getTermMetadata(String termId, String ontology) throws RemoteException {
+        Query stub = borrowStub();
+        try {
+            return stub.getTermMetadata(termId, ontology);
+        } finally {
+            releaseStub(stub);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, String> getTermXrefs(String termId, String ontology) throws RemoteException {
+        Query stub = borrowStub();
+        try {
+            return stub.getTermXrefs(termId, ontology);
+        } finally {
+            releaseStub(stub);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, String> getRootTerms(String ontology) throws RemoteException {
+        Query stub = borrowStub();
+        try {
+            return stub.getRootTerms(ontology);
+        } finally {
+            releaseStub(stub);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, String> getOntologyNames() throws RemoteException {
+        Query stub = borrowStub();
+        try {
+            return stub.getOntologyNames();
+        } finally {
+            releaseStub(stub);
+        }
+    }
+
+    public DataHolder[] getTermsByAnnotationData(String ontology, String annotationType, String strValue,
+            double fromDblValue, double toDblValue) throws RemoteException {
+        Query stub = borrowStub();
+        try {
+            return stub.getTermsByAnnotationData(ontology, annotationType, strValue, fromDblValue, toDblValue);
+        } finally {
+            releaseStub(stub);
+        }
+    }
+
+    /**
+     * Returns the mass index of the given ontology and mass type, retrieving
+     * all the terms of the mass type. The index is not kept, see
+     * CachingOntologyClient.
+     *
+     * @param ontology the ontology, e.g., "MOD"
+     * @param massType the mass type, e.g., "DiffMono"
+     * @return the mass index
+     * @throws RemoteException if the lookup fails
+     */
+    public ModificationMassIndex getMassIndex(String ontology, String massType) throws RemoteException {
+        return ModificationMassIndex.retrieveMassIndex(this, ontology, massType);
+    }
+
+    /**
+     * Returns the direct children of the given term only, see TermLevels.
+     *
+     * @param termId the accession number of the term, null for the root terms
+     * @param ontology the ontology the term belongs to
+     * @param levels ignored
+     * @return the children of the given term
+     * @throws RemoteException if the lookup fails
+     */
+    public TermLevels getTermLevels(String termId, String ontology, int levels) throws RemoteException {
+        return TermLevels.retrieveChildren(this, termId, ontology);
+    }
+}
@@ -0,0 +1,303 @@
+package no.uib.olsdialog.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * The results of a term name search ranked by relevance, of which only the
+ * best ones are shown and the rest on demand, one page at a time.
+ * <p>
+ * The terms are ranked by how the name matches the search text: an exact
+ * match first, then a match at the start of the name, at the start of a word
+ * in the name, anywhere in the name, and finally the terms matching on
+ * something else than the name, e.g., a synonym. Terms matching equally well
+ * are ranked by ontology preference, then by name length, shorter first, and
+ * then alphabetically.
+ * <p>
+ * The shown terms are kept in a bounded heap with the worst shown term at
+ * the head, so that adding a term costs at most a logarithmic number of
+ * comparisons. Terms not making it into the heap are set aside, and are never
+ * better than the shown terms.
+ */
+public class RankedTermNames {
+
+    /**
+     * The match type of a name equal to the search text.
+     */
+    private static final int EXACT_MATCH = 4;
+    /**
+     * The match type of a name starting with the search text.
+     */
+    private static final int PREFIX_MATCH = 3;
+    /**
+     * The match type of a name with a word starting with the search text.
+     */
+    private static final int WORD_MATCH = 2;
+    /**
+     * The match type of a name containing the search text.
+     */
+    private static final int SUBSTRING_MATCH = 1;
+    /**
+     * The match type of a name not containing the search text.
+     */
+    private static final int OTHER_MATCH = 0;
+    /**
+     * Orders the terms by relevance, the most relevant first.
+     */
+    private static final Comparator<RankedTerm> RELEVANCE_ORDER = new Comparator<RankedTerm>() {
+
+        public int compare(RankedTerm term1, RankedTerm term2) {
+
+            if (term1.matchType != term2.matchType) {
+                return term2.matchType - term1.matchType;
+            }
+            if (term1.preferred != term2.preferred) {
+                return term1.preferred ? -1 : 1;
+            }
+            if (term1.termName.length() != term2.termName.length()) {
+                return term1.termName.length() - term2.termName.length();
+            }
+
+            int result = term1.termName.compareToIgnoreCase(term2.termName);
+
+            if (result != 0) {
+                return result;
+            }
+
+            return term1.termId.compareTo(term2.termId);
+        }
+    };
+    /**
+     * The lower case search text.
+     */
+    private final String searchText;
+    /**
+     * The upper case labels of the preferred ontologies.
+     */
+    private final Set<String> preferredOntologies = new HashSet<String>();
+    /**
+     * The number of terms shown at a time.
+     */
+    private final int pageSize;
+    /**
+     * The accession numbers of all the terms added.
+     */
+    private final Set<String> termIds = new HashSet<String>();
+    /**
+     * The shown terms, the least relevant at the head.
+     */
+    private final PriorityQueue<RankedTerm> shownTerms;
+    /**
+     * The terms not shown, none of them more relevant than the shown terms.
+     */
+    private final List<RankedTerm> otherTerms = new ArrayList<RankedTerm>();
+    /**
+     * The maximum number of shown terms.
+     */
+    private int shownCapacity;
+
+    /**
+     * Creates a new, empty RankedTermNames.
+     *
+     * @param searchText the search text
+     * @param preferredOntologies the labels of the ontologies whose terms are
+     * preferred, can be null
+     * @param pageSize the number of terms shown at first and added by each
+     * call to showMore
+     */
+    public RankedTermNames(String searchText, Collection<String> preferredOntologies, int pageSize) {
+
+        this.searchText = searchText.trim().toLowerCase();
+        this.pageSize = pageSize;
+        shownCapacity = pageSize;
+        shownTerms = new PriorityQueue<RankedTerm>(pageSize + 1, Collections.reverseOrder(RELEVANCE_ORDER));
+
+        if (preferredOntologies != null) {
+            for (String ontology : preferredOntologies) {
+                this.preferredOntologies.add(ontology.toUpperCase());
+            }
+        }
+    }
+
+    /**
+     * Adds the given term, unless already added.
+     *
+     * @param termId the accession number
+     * @param termName the term name
+     * @return true if the shown terms changed
+     */
+    public boolean add(String termId, String termName) {
+
+        if (!termIds.add(termId)) {
+            return false;
+        }
+
+        if (termName == null) {
+            termName = "";
+        }
+
+        String ontology = TermNameIndex.getOntologyLabel(termId);
+        RankedTerm term = new RankedTerm(termId, termName, getMatchType(termName.toLowerCase()),
+                ontology != null && preferredOntologies.contains(ontology.toUpperCase()));
+
+        if (shownTerms.size() < shownCapacity) {
+            shownTerms.add(term);
+            return true;
+        }
+
+        if (RELEVANCE_ORDER.compare(term, shownTerms.peek()) < 0) {
+            otherTerms.add(shownTerms.poll());
+            shownTerms.add(term);
+            return true;
+        }
+
+        otherTerms.add(term);
+        return false;
+    }
+
+    /**
+     * Adds the given terms, skipping the ones already added.
+     *
+     * @param terms the terms, key: accession number, value: term name
+     * @return true if the shown terms changed
+     */
+    public boolean addAll(Map<String, String> terms) {
+
+        boolean changed = false;
+
+        for (Map.Entry<String, String> term : terms.entrySet()) {
+            changed |= add(term.getKey(), term.getValue());
+        }
+
+        return changed;
+    }
+
+    /**
+     * Returns the number of terms added.
+     *
+     * @return the number of terms
+     */
+    public int size() {
+        return termIds.size();
+    }
+
+    /**
+     * Returns true if there are terms not shown yet.
+     *
+     * @return true if there are more terms
+     */
+    public boolean hasMore() {
+        return !otherTerms.isEmpty();
+    }
+
+    /**
+     * Shows the next page of the terms not shown yet.
+     */
+    public void showMore() {
+
+        shownCapacity += pageSize;
+
+        Collections.sort(otherTerms, RELEVANCE_ORDER);
+        List<RankedTerm> nextPage = otherTerms.subList(0, Math.min(pageSize, otherTerms.size()));
+        shownTerms.addAll(nextPage);
+        nextPage.clear();
+    }
+
+    /**
+     * Returns the shown terms, the most relevant first.
+     *
+     * @return the shown terms, key: accession number, value: term name
+     */
+    public Map<String, String> getShownTerms() {
+
+        List<RankedTerm> terms = new ArrayList<RankedTerm>(shownTerms);
+        Collections.sort(terms, RELEVANCE_ORDER);
+
+        Map<String, String> result = new LinkedHashMap<String, String>();
+
+        for (RankedTerm term : terms) {
+            result.put(term.termId, term.termName);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns how the given name matches the search text.
+     *
+     * @param lowerCaseTermName the lower case term name
+     * @return the match type, a higher value for a better match
+     */
+    private int getMatchType(String lowerCaseTermName) {
+
+        if (searchText.length() == 0) {
+            return OTHER_MATCH;
+        }
+
+        int index = lowerCaseTermName.indexOf(searchText);
+
+        if (index == -1) {
+            return OTHER_MATCH;
+        }
+        if (index == 0) {
+            return lowerCaseTermName.length() == searchText.length() ? EXACT_MATCH : PREFIX_MATCH;
+        }
+
+        // look for a match at the start of a word
+        while (index != -1) {
+            if (!Character.isLetterOrDigit(lowerCaseTermName.charAt(index - 1))) {
+                return WORD_MATCH;
+            }
+            index = lowerCaseTermName.indexOf(searchText, index + 1);
+        }
+
+        return SUBSTRING_MATCH;
+    }
+
+    /**
+     * A term with its relevance.
+     */
+    private static class RankedTerm {
+
+        /**
+         * The accession number.
+         */
+        private final String termId;
+        /**
+         * The term name.
+         */
+        private final String termName;
+        /**
+         * How the name matches the search text, a higher value for a better
+         * match.
+         */
+        private final int matchType;
+        /**
+         * True if the term belongs to a preferred ontology.
+         */
+        private final boolean preferred;
+
+        /**
+         * Creates a new RankedTerm.
+         *
+         * @param termId the accession number
+         * @param termName the term name
+         * @param matchType how the name matches the search text
+         * @param preferred true if the term belongs to a preferred ontology
+         */
+        private RankedTerm(String termId, String termName, int matchType, boolean preferred) {
+            this.termId = termId;
+            this.termName = termName;
+            this.matchType = matchType;
+            this.preferred = preferred;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package no.uib.olsdialog.client;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ancestor graph of a term, i.e., the term, its parents, their parents,
+ * and so on up to the root terms, with the links between them.
+ * <p>
+ * The parents are taken from the local ontology or the caches of the client
+ * where known, and else retrieved from the OLS one level at a time. Links to
+ * an ancestor that is also reached through another parent are removed, so
+ * that only the direct parents are linked whether the parents given by the
+ * client are the direct parents only or all the ancestors.
+ */
+public class TermAncestors {
+
+    /**
+     * The maximum number of terms in the graph.
+     */
+    public static final int MAXIMUM_TERMS = 1000;
+    /**
+     * The maximum number of concurrent parent lookups.
+     */
+    private static final int PARALLELISM = PooledOlsClient.DEFAULT_POOL_SIZE;
+    /**
+     * The maximum time to wait for the parents of one level, in seconds.
+     */
+    private static final int LEVEL_TIMEOUT = 60;
+    /**
+     * The accession number of the term whose ancestors are in the graph.
+     */
+    private final String termId;
+    /**
+     * The names of the terms in the graph, key: accession number.
+     */
+    private final Map<String, String> termNames = new LinkedHashMap<String, String>();
+    /**
+     * The parents of the terms in the graph, key: accession number. Terms
+     * whose parents are not known are not included.
+     */
+    private final Map<String, Set<String>> parents = new HashMap<String, Set<String>>();
+
+    /**
+     * Creates a new TermAncestors with the given term only.
+     *
+     * @param termId the accession number of the term
+     * @param termName the term name
+     */
+    public TermAncestors(String termId, String termName) {
+        this.termId = termId;
+        termNames.put(termId, termName);
+    }
+
+    /**
+     * Returns the parents of the given term, if the client is an
+     * ExtendedOntologyClient, e.g., a local ontology, a caching client or the
+     * OLS client.
+     *
+     * @param ontologyClient the client
+     * @param termId the accession number of the term
+     * @param ontology the ontology the term belongs to
+     * @return the parent terms, key: accession number, value: term name, or
+     * null if the client cannot retrieve parents
+     * @throws RemoteException if the lookup fails
+     */
+    public static Map<String, String> getTermParents(OntologyClient ontologyClient, String termId, String ontology)
+            throws RemoteException {
+
+        if (ontologyClient instanceof ExtendedOntologyClient) {
+            return ((ExtendedOntologyClient) ontologyClient).getTermParents(termId, ontology);
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the ancestor graph of the given term. The parents of each
+     * level are looked up concurrently. Terms whose parents cannot be
+     * retrieved are left without parents.
+     *
+     * @param ontologyClient the client
+     * @param termId the accession number of the term
+     * @param termName the term name
+     * @param ontology the ontology the term belongs to
+     * @return the ancestor graph
+     * @throws RemoteException if the parents of the term itself cannot be
+     * retrieved
+     * @throws InterruptedException if interrupted while waiting for the
+     * lookups
+     */
+    public static TermAncestors getAncestors(final OntologyClient ontologyClient, String termId, String termName,
+            final String ontology) throws RemoteException, InterruptedException {
+
+        TermAncestors ancestors = new TermAncestors(termId, termName);
+
+        Map<String, String> termParents = getTermParents(ontologyClient, termId, ontology);
+
+        if (termParents == null) {
+            return ancestors;
+        }
+
+        Set<String> level = ancestors.addParents(termId, termParents);
+
+        while (!level.isEmpty()) {
+
+            Map<String, Callable<Map<String, String>>> queries = new LinkedHashMap<String, Callable<Map<String, String>>>();
+
+            for (final String parentId : level) {
+                queries.put(parentId, new Callable<Map<String, String>>() {
+
+                    public Map<String, String> call() throws Exception {
+                        return getTermParents(ontologyClient, parentId, ontology);
+                    }
+                });
+            }
+
+            Map<String, Map<String, String>> levelParents = ConcurrentQueries.fanOut(
+                    queries, PARALLELISM, LEVEL_TIMEOUT, TimeUnit.SECONDS, null);
+
+            Set<String> nextLevel = new LinkedHashSet<String>();
+
+            for (String parentId : level) {
+                Map<String, String> grandParents = levelParents.get(parentId);
+                if (grandParents != null) {
+                    nextLevel.addAll(ancestors.addParents(parentId, grandParents));
+                }
+            }
+
+            level = nextLevel;
+        }
+
+        ancestors.removeIndirectLinks();
+
+        return ancestors;
+    }
+
+    /**
+     * Returns the accession number of the term whose ancestors are in the
+     * graph.
+     *
+     * @return the accession number
+     */
+    public String getTermId() {
+        return termId;
+    }
+
+    /**
+     * Returns the names of the terms in the graph, the term itself first.
+     *
+     * @return the term names, key: accession number, value: term name
+     */
+    public Map<String, String> getTermNames() {
+        return Collections.unmodifiableMap(termNames);
+    }
+
+    /**
+     * Returns the parents of the given term in the graph.
+     *
+     * @param childId the accession number of the term
+     * @return the accession numbers of the parents, empty if none or not
+     * known
+     */
+    public Set<String> getParents(String childId) {
+        Set<String> termParents = parents.get(childId);
+        if (termParents == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(termParents);
+    }
+
+    /**
+     * Returns true if the term has parents in the graph.
+     *
+     * @return true if the term has parents
+     */
+    public boolean hasParents() {
+        return !getParents(termId).isEmpty();
+    }
+
+    /**
+     * Adds the given parents of a term in the graph.
+     *
+     * @param childId the accession number of the term
+     * @param termParents the parents, key: accession number, value: term
+     * name
+     * @return the parents not in the graph before, to be looked up next
+     */
+    public Set<String> addParents(String childId, Map<String, String> termParents) {
+
+        Set<String> newTerms = new LinkedHashSet<String>();
+        Set<String> childParents = new LinkedHashSet<String>();
+
+        for (Map.Entry<String, String> parent : termParents.entrySet()) {
+
+            if (parent.getKey().equals(childId)) {
+                continue;
+            }
+
+            if (!termNames.containsKey(parent.getKey())) {
+                if (termNames.size() >= MAXIMUM_TERMS) {
+                    continue;
+                }
+                termNames.put(parent.getKey(), parent.getValue());
+                newTerms.add(parent.getKey());
+            }
+
+            childParents.add(parent.getKey());
+        }
+
+        parents.put(childId, childParents);
+
+        return newTerms;
+    }
+
+    /**
+     * Removes the links from a term to a parent that is also an ancestor of
+     * another parent of the term. Parents that are ancestors of each other,
+     * i.e., in a cycle, stay linked.
+     */
+    public void removeIndirectLinks() {
+
+        Map<String, Set<String>> ancestorSets = new HashMap<String, Set<String>>();
+
+        for (Set<String> termParents : parents.values()) {
+
+            List<String> indirectParents = new ArrayList<String>();
+
+            for (String parentId : termParents) {
+                for (String otherParentId : termParents) {
+                    if (!otherParentId.equals(parentId)
+                            && getAncestorSet(otherParentId, ancestorSets, new HashSet<String>()).contains(parentId)
+                            && !getAncestorSet(parentId, ancestorSets, new HashSet<String>()).contains(otherParentId)) {
+                        indirectParents.add(parentId);
+                        break;
+                    }
+                }
+            }
+
+            termParents.removeAll(indirectParents);
+        }
+    }
+
+    /**
+     * Returns all the ancestors of the given term in the graph, computing
+     * them on first use.
+     *
+     * @param childId the accession number of the term
+     * @param ancestorSets the ancestors computed so far, key: accession
+     * number
+     * @param visiting the terms whose ancestors are being computed, used to
+     * break cycles
+     * @return the ancestors
+     */
+    private Set<String> getAncestorSet(String childId, Map<String, Set<String>> ancestorSets, Set<String> visiting) {
+
+        Set<String> ancestorSet = ancestorSets.get(childId);
+
+        if (ancestorSet != null) {
+            return ancestorSet;
+        }
+
+        ancestorSet = new HashSet<String>();
+
+        if (visiting.add(childId)) {
+            for (String parentId : getParents(childId)) {
+                ancestorSet.add(parentId);
+                ancestorSet.addAll(getAncestorSet(parentId, ancestorSets, visiting));
+            }
+            visiting.remove(childId);
+            ancestorSets.put(childId, ancestorSet);
+        }
+
+        return ancestorSet;
+    }
+}
@@ -0,0 +1,127 @@
+package no.uib.olsdialog.client;
+
+import java.rmi.RemoteException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The children of a term over several levels, i.e., the children of the term,
+ * the children of these, and so on, retrieved in one lookup and kept per
+ * parent term.
+ * <p>
+ * The levels are rebuilt on the client from the parent/child links known
+ * locally: a local ontology has all the links, and the caching client has
+ * the links of the terms whose children it has cached. The OLS itself returns
+ * the terms up to a given distance as a flat map, without the links, and in
+ * an ontology where a term can have several parents, e.g., GO, the links
+ * cannot be recovered from it. The OLS is thus only asked for the first
+ * level, and the deeper levels are the ones already known.
+ * <p>
+ * The root terms of an ontology are kept using a null term.
+ */
+public class TermLevels {
+
+    /**
+     * The children of each term, key: accession number of the parent, value:
+     * the children, key: accession number, value: term name.
+     */
+    private final Map<String, Map<String, String>> children = new LinkedHashMap<String, Map<String, String>>();
+
+    /**
+     * Returns the levels of children below the given term, from the client
+     * if it is an ExtendedOntologyClient, e.g., a local ontology or a
+     * caching client, and else only the direct children.
+     *
+     * @param ontologyClient the client
+     * @param termId the accession number of the term, null for the root terms
+     * of the ontology
+     * @param ontology the ontology the term belongs to
+     * @param levels the number of levels, 1 for the direct children only
+     * @return the levels of children, including at least the children of the
+     * given term
+     * @throws RemoteException if the lookup fails
+     */
+    public static TermLevels getTermLevels(OntologyClient ontologyClient, String termId, String ontology, int levels)
+            throws RemoteException {
+
+        if (ontologyClient instanceof ExtendedOntologyClient) {
+            return ((ExtendedOntologyClient) ontologyClient).getTermLevels(termId, ontology, levels);
+        }
+
+        return retrieveChildren(ontologyClient, termId, ontology);
+    }
+
+    /**
+     * Returns the direct children of the given term, retrieved with the
+     * given client.
+     *
+     * @param ontologyClient the client
+     * @param termId the accession number of the term, null for the root terms
+     * of the ontology
+     * @param ontology the ontology the term belongs to
+     * @return the children of the given term
+     * @throws RemoteException if the lookup fails
+     */
+    public static TermLevels retrieveChildren(OntologyClient ontologyClient, String termId, String ontology)
+            throws RemoteException {
+
+        Map<String, String> childTerms;
+
+        if (termId == null) {
+            childTerms = ontologyClient.getRootTerms(ontology);
+        } else {
+            childTerms = ontologyClient.getTermChildren(termId, ontology, 1, null);
+        }
+
+        TermLevels termLevels = new TermLevels();
+        termLevels.setChildren(termId, childTerms);
+        return termLevels;
+    }
+
+    /**
+     * Sets the children of the given term.
+     *
+     * @param termId the accession number of the term, null for the root terms
+     * @param childTerms the children, key: accession number, value: term
+     * name, null for none
+     */
+    public void setChildren(String termId, Map<String, String> childTerms) {
+        if (childTerms == null) {
+            childTerms = Collections.emptyMap();
+        }
+        children.put(termId, childTerms);
+    }
+
+    /**
+     * Returns the children of the given term.
+     *
+     * @param termId the accession number of the term, null for the root terms
+     * @return the children, key: accession number, value: term name, or null
+     * if not known
+     */
+    public Map<String, String> getChildren(String termId) {
+        return children.get(termId);
+    }
+
+    /**
+     * Returns true if the children of the given term are known.
+     *
+     * @param termId the accession number of the term, null for the root terms
+     * @return true if the children are known
+     */
+    public boolean contains(String termId) {
+        return children.containsKey(termId);
+    }
+
+    /**
+     * Returns the children of all the terms, in the order the terms were
+     * reached, i.e., level by level.
+     *
+     * @return the children, key: accession number of the parent, value: the
+     * children, key: accession number, value: term name
+     */
+    public Map<String, Map<String, String>> getAllChildren() {
+        return Collections.unmodifiableMap(children);
+    }
+}
@@ -0,0 +1,512 @@
+package no.uib.olsdialog.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An in-memory index of term names, finding the terms with words starting
+ * with the given text, e.g., "prot mod" finds "protein modification". The
+ * words of each ontology are kept in a sorted map, so that all the words with
+ * a given prefix are found in a single range lookup.
+ * <p>
+ * The results are ranked with the terms whose name starts with the search
+ * text first, then by name length and finally alphabetically, and only the
+ * best results are returned. The best results for the very short prefixes,
+ * which match most of the terms, are cached.
+ * <p>
+ * An ontology is complete when all its terms have been added, e.g., from an
+ * imported ontology file. Searches in complete ontologies do not have to be
+ * sent to the OLS, while the terms of the other ontologies only give a first
+ * set of results while waiting for the OLS.
+ */
+public class TermNameIndex {
+
+    /**
+     * The maximum length of the search texts whose results are cached.
+     */
+    private static final int MAXIMUM_CACHED_PREFIX_LENGTH = 2;
+    /**
+     * Orders the results with the best result first.
+     */
+    private static final Comparator<Candidate> RANKING = new Comparator<Candidate>() {
+
+        public int compare(Candidate candidate1, Candidate candidate2) {
+            if (candidate1.namePrefix != candidate2.namePrefix) {
+                return candidate1.namePrefix ? -1 : 1;
+            }
+            if (candidate1.termName.length() != candidate2.termName.length()) {
+                return candidate1.termName.length() - candidate2.termName.length();
+            }
+            int result = candidate1.termName.compareToIgnoreCase(candidate2.termName);
+            if (result != 0) {
+                return result;
+            }
+            return candidate1.termId.compareTo(candidate2.termId);
+        }
+    };
+    /**
+     * Orders the results with the worst result first, used to keep the best
+     * results in a bounded priority queue.
+     */
+    private static final Comparator<Candidate> REVERSE_RANKING = new Comparator<Candidate>() {
+
+        public int compare(Candidate candidate1, Candidate candidate2) {
+            return RANKING.compare(candidate2, candidate1);
+        }
+    };
+    /**
+     * The index of each ontology, key: upper case ontology label.
+     */
+    private final Map<String, OntologyIndex> ontologyIndexes = new HashMap<String, OntologyIndex>();
+    /**
+     * The upper case labels of the ontologies whose terms have all been
+     * added.
+     */
+    private final Set<String> completeOntologies = new HashSet<String>();
+
+    /**
+     * Adds the given terms of the given ontology. A term already in the index
+     * gets the new name.
+     *
+     * @param ontology the ontology label
+     * @param terms the terms, key: accession number, value: term name
+     */
+    public synchronized void addTerms(String ontology, Map<String, String> terms) {
+
+        OntologyIndex ontologyIndex = getOntologyIndex(ontology);
+
+        for (Map.Entry<String, String> entry : terms.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null && entry.getValue().length() > 0) {
+                ontologyIndex.addTerm(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Adds the given terms, finding the ontology of each term from its
+     * accession number.
+     *
+     * @param terms the terms, key: accession number, value: term name
+     */
+    public synchronized void addTerms(Map<String, String> terms) {
+
+        for (Map.Entry<String, String> entry : terms.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null && entry.getValue().length() > 0) {
+                getOntologyIndex(getOntologyLabel(entry.getKey())).addTerm(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Adds all the terms of the given ontology and marks the ontology as
+     * complete.
+     *
+     * @param ontology the ontology label
+     * @param terms all the terms of the ontology, key: accession number,
+     * value: term name
+     */
+    public synchronized void addOntology(String ontology, Map<String, String> terms) {
+        addTerms(ontology, terms);
+        completeOntologies.add(ontology.toUpperCase());
+    }
+
+    /**
+     * Returns true if all the terms of the given ontology are in the index.
+     *
+     * @param ontology the ontology label
+     * @return true if the ontology is complete
+     */
+    public synchronized boolean isComplete(String ontology) {
+        return ontology != null && completeOntologies.contains(ontology.toUpperCase());
+    }
+
+    /**
+     * Returns the number of terms in the index.
+     *
+     * @return the number of terms
+     */
+    public synchronized int size() {
+
+        int size = 0;
+
+        for (OntologyIndex ontologyIndex : ontologyIndexes.values()) {
+            size += ontologyIndex.termIds.size();
+        }
+
+        return size;
+    }
+
+    /**
+     * Returns the best ranked terms with words starting with each of the
+     * words in the given text.
+     *
+     * @param text the search text
+     * @param ontologies the labels of the ontologies to search, null to
+     * search all ontologies
+     * @param maximumResults the maximum number of results
+     * @return the terms found, best ranked first, key: accession number,
+     * value: term name
+     */
+    public synchronized Map<String, String> search(String text, Collection<String> ontologies, int maximumResults) {
+
+        Map<String, String> results = new LinkedHashMap<String, String>();
+        List<String> words = getWords(text);
+
+        if (words.isEmpty() || maximumResults < 1) {
+            return results;
+        }
+
+        String searchText = text.trim();
+        PriorityQueue<Candidate> bestCandidates = new PriorityQueue<Candidate>(maximumResults, REVERSE_RANKING);
+
+        if (ontologies == null) {
+            for (OntologyIndex ontologyIndex : ontologyIndexes.values()) {
+                ontologyIndex.search(searchText, words, maximumResults, bestCandidates);
+            }
+        } else {
+            for (String ontology : ontologies) {
+                OntologyIndex ontologyIndex = ontologyIndexes.get(ontology.toUpperCase());
+                if (ontologyIndex != null) {
+                    ontologyIndex.search(searchText, words, maximumResults, bestCandidates);
+                }
+            }
+        }
+
+        Candidate[] candidates = bestCandidates.toArray(new Candidate[bestCandidates.size()]);
+        Arrays.sort(candidates, RANKING);
+
+        for (Candidate candidate : candidates) {
+            results.put(candidate.termId, candidate.termName);
+        }
+
+        return results;
+    }
+
+    /**
+     * Returns the ontology label of the given accession number, i.e., the
+     * part before the last ':' or '_'. Accession numbers without either are
+     * assumed to be NEWT taxonomy ids.
+     *
+     * @param termId the accession number
+     * @return the ontology label
+     */
+    public static String getOntologyLabel(String termId) {
+
+        if (termId.lastIndexOf(":") != -1) {
+            return termId.substring(0, termId.lastIndexOf(":"));
+        } else if (termId.lastIndexOf("_") != -1) { // needed for EFO
+            return termId.substring(0, termId.lastIndexOf("_"));
+        } else {
+            return "NEWT";
+        }
+    }
+
+    /**
+     * Returns the index of the given ontology, created if not already there.
+     *
+     * @param ontology the ontology label
+     * @return the ontology index
+     */
+    private OntologyIndex getOntologyIndex(String ontology) {
+
+        String key = ontology.toUpperCase();
+        OntologyIndex ontologyIndex = ontologyIndexes.get(key);
+
+        if (ontologyIndex == null) {
+            ontologyIndex = new OntologyIndex();
+            ontologyIndexes.put(key, ontologyIndex);
+        }
+
+        return ontologyIndex;
+    }
+
+    /**
+     * Splits the given text into lower case words, i.e., the sequences of
+     * letters and digits.
+     *
+     * @param text the text
+     * @return the words
+     */
+    private static List<String> getWords(String text) {
+
+        List<String> words = new ArrayList<String>();
+        int start = -1;
+
+        for (int i = 0; i <= text.length(); i++) {
+            if (i < text.length() && Character.isLetterOrDigit(text.charAt(i))) {
+                if (start == -1) {
+                    start = i;
+                }
+            } else if (start != -1) {
+                words.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+
+        return words;
+    }
+
+    /**
+     * Returns true if each of the given words is the start of a word in the
+     * given term name.
+     *
+     * @param termName the term name
+     * @param words the lower case words
+     * @return true if all the words are found
+     */
+    private static boolean containsWordPrefixes(String termName, List<String> words) {
+
+        List<String> termWords = getWords(termName);
+
+        for (String word : words) {
+
+            boolean found = false;
+
+            for (Iterator<String> i = termWords.iterator(); i.hasNext() && !found;) {
+                found = i.next().startsWith(word);
+            }
+
+            if (!found) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * The index of the terms of a single ontology.
+     */
+    private static class OntologyIndex {
+
+        /**
+         * The accession numbers of the terms, by term index.
+         */
+        private final List<String> termIds = new ArrayList<String>();
+        /**
+         * The names of the terms, by term index.
+         */
+        private final List<String> termNames = new ArrayList<String>();
+        /**
+         * The index of each term, key: accession number.
+         */
+        private final Map<String, Integer> termIndexes = new HashMap<String, Integer>();
+        /**
+         * The terms containing each word, key: lower case word.
+         */
+        private final TreeMap<String, Postings> words = new TreeMap<String, Postings>();
+        /**
+         * The terms that have been renamed, whose old words may still be in
+         * the index.
+         */
+        private final BitSet renamedTerms = new BitSet();
+        /**
+         * The best results of the recent searches for short prefixes, key:
+         * search text and maximum number of results.
+         */
+        private final Map<String, Candidate[]> cachedResults = new HashMap<String, Candidate[]>();
+
+        /**
+         * Adds the given term, or renames it if already in the index.
+         *
+         * @param termId the accession number
+         * @param termName the term name
+         */
+        public void addTerm(String termId, String termName) {
+
+            Integer termIndex = termIndexes.get(termId);
+
+            if (termIndex == null) {
+                termIndex = termIds.size();
+                termIds.add(termId);
+                termNames.add(termName);
+                termIndexes.put(termId, termIndex);
+            } else if (termNames.get(termIndex).equals(termName)) {
+                return;
+            } else {
+                termNames.set(termIndex, termName);
+                renamedTerms.set(termIndex);
+            }
+
+            for (String word : new HashSet<String>(getWords(termName))) {
+                Postings postings = words.get(word);
+                if (postings == null) {
+                    postings = new Postings();
+                    words.put(word, postings);
+                }
+                postings.add(termIndex);
+            }
+
+            cachedResults.clear();
+        }
+
+        /**
+         * Adds the best ranked terms matching the given words to the given
+         * queue, keeping at most the given number of results in the queue.
+         *
+         * @param searchText the search text
+         * @param searchWords the lower case words of the search text
+         * @param maximumResults the maximum number of results
+         * @param bestCandidates the best results so far, worst first
+         */
+        public void search(String searchText, List<String> searchWords, int maximumResults, PriorityQueue<Candidate> bestCandidates) {
+
+            Candidate[] candidates;
+
+            if (searchWords.size() == 1 && searchText.length() <= MAXIMUM_CACHED_PREFIX_LENGTH) {
+
+                String key = searchText.toLowerCase() + "|" + maximumResults;
+                candidates = cachedResults.get(key);
+
+                if (candidates == null) {
+                    candidates = findCandidates(searchText, searchWords, maximumResults);
+                    cachedResults.put(key, candidates);
+                }
+            } else {
+                candidates = findCandidates(searchText, searchWords, maximumResults);
+            }
+
+            for (Candidate candidate : candidates) {
+                offer(bestCandidates, candidate, maximumResults);
+            }
+        }
+
+        /**
+         * Returns the best ranked terms matching the given words.
+         *
+         * @param searchText the search text
+         * @param searchWords the lower case words of the search text
+         * @param maximumResults the maximum number of results
+         * @return the best ranked terms, in no particular order
+         */
+        private Candidate[] findCandidates(String searchText, List<String> searchWords, int maximumResults) {
+
+            // the terms with words starting with each of the search words
+            BitSet matchingTerms = null;
+
+            for (String searchWord : searchWords) {
+
+                BitSet wordMatches = new BitSet(termIds.size());
+
+                for (Postings postings : words.subMap(searchWord, searchWord + Character.MAX_VALUE).values()) {
+                    for (int i = 0; i < postings.size; i++) {
+                        wordMatches.set(postings.termIndexes[i]);
+                    }
+                }
+
+                if (matchingTerms == null) {
+                    matchingTerms = wordMatches;
+                } else {
+                    matchingTerms.and(wordMatches);
+                }
+            }
+
+            PriorityQueue<Candidate> bestCandidates = new PriorityQueue<Candidate>(maximumResults, REVERSE_RANKING);
+
+            for (int termIndex = matchingTerms.nextSetBit(0); termIndex >= 0; termIndex = matchingTerms.nextSetBit(termIndex + 1)) {
+
+                String termName = termNames.get(termIndex);
+
+                // the old words of renamed terms are still in the index
+                if (renamedTerms.get(termIndex) && !containsWordPrefixes(termName, searchWords)) {
+                    continue;
+                }
+
+                boolean namePrefix = termName.regionMatches(true, 0, searchText, 0, searchText.length());
+                offer(bestCandidates, new Candidate(termIds.get(termIndex), termName, namePrefix), maximumResults);
+            }
+
+            return bestCandidates.toArray(new Candidate[bestCandidates.size()]);
+        }
+    }
+
+    /**
+     * Adds the given candidate to the given queue if the queue is not full or
+     * if the candidate ranks better than the worst candidate in the queue.
+     *
+     * @param bestCandidates the best candidates so far, worst first
+     * @param candidate the candidate
+     * @param maximumResults the maximum number of candidates to keep
+     */
+    private static void offer(PriorityQueue<Candidate> bestCandidates, Candidate candidate, int maximumResults) {
+        if (bestCandidates.size() < maximumResults) {
+            bestCandidates.add(candidate);
+        } else if (RANKING.compare(candidate, bestCandidates.peek()) < 0) {
+            bestCandidates.poll();
+            bestCandidates.add(candidate);
+        }
+    }
+
+    /**
+     * A growable list of term indexes.
+     */
+    private static class Postings {
+
+        /**
+         * The term indexes.
+         */
+        private int[] termIndexes = new int[2];
+        /**
+         * The number of term indexes in use.
+         */
+        private int size = 0;
+
+        /**
+         * Adds the given term index.
+         *
+         * @param termIndex the term index
+         */
+        public void add(int termIndex) {
+            if (size == termIndexes.length) {
+                int[] newTermIndexes = new int[size * 2];
+                System.arraycopy(termIndexes, 0, newTermIndexes, 0, size);
+                termIndexes = newTermIndexes;
+            }
+            termIndexes[size++] = termIndex;
+        }
+    }
+
+    /**
+     * A term matching the search text.
+     */
+    private static class Candidate {
+
+        /**
+         * The accession number.
+         */
+        private final String termId;
+        /**
+         * The term name.
+         */
+        private final String termName;
+        /**
+         * True if the term name starts with the search text.
+         */
+        private final boolean namePrefix;
+
+        /**
+         * Creates a new Candidate.
+         *
+         * @param termId the accession number
+         * @param termName the term name
+         * @param namePrefix true if the term name starts with the search text
+         */
+        public Candidate(String termId, String termName, boolean namePrefix) {
+            this.termId = termId;
+            this.termName = termName;
+            this.namePrefix = namePrefix;
+        }
+    }
+}
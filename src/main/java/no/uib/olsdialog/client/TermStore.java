@@ -0,0 +1,668 @@
+package no.uib.olsdialog.client;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A persistent store of term names, metadata and cross references, keyed by
+ * accession number. The data is kept in a single append-only file that is read
+ * through a memory-mapped buffer, while only the position of each record is
+ * kept in memory.
+ * <p>
+ * Each record consists of the record length, the data type, the time the
+ * record was written, the accession number and the data itself. A newer
+ * record for the same accession number and data type replaces the older one,
+ * and the obsolete records are removed when the store is opened.
+ * <p>
+ * Only one process can write to a given file at the time. If the file is
+ * locked by another process, the store is opened read only.
+ */
+public class TermStore {
+
+    /**
+     * The types of data stored for each term.
+     */
+    public enum DataType {
+
+        /**
+         * The term name.
+         */
+        NAME,
+        /**
+         * The term metadata.
+         */
+        METADATA,
+        /**
+         * The term cross references.
+         */
+        XREFS
+    }
+    /**
+     * The character set used for the strings.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /**
+     * The length of the data type and time stamp part of a record.
+     */
+    private static final int RECORD_HEADER_LENGTH = 1 + 8;
+    /**
+     * The minimum number of obsolete records before the file is compacted.
+     */
+    private static final int COMPACTION_THRESHOLD = 1000;
+    /**
+     * The store file.
+     */
+    private final File file;
+    /**
+     * The random access file used for writing.
+     */
+    private RandomAccessFile randomAccessFile;
+    /**
+     * The channel of the store file.
+     */
+    private FileChannel channel;
+    /**
+     * The lock preventing other processes from writing to the file.
+     */
+    private FileLock fileLock;
+    /**
+     * True if records can be added to the store.
+     */
+    private boolean writable;
+    /**
+     * The memory-mapped view of the file, null until the first read.
+     */
+    private MappedByteBuffer mappedBuffer;
+    /**
+     * The number of bytes covered by the mapped buffer.
+     */
+    private long mappedLength = 0;
+    /**
+     * The length of the valid part of the file.
+     */
+    private long fileLength = 0;
+    /**
+     * The position of the newest record of each accession number and data
+     * type.
+     */
+    private final Map<String, RecordPointer> index = new HashMap<String, RecordPointer>();
+    /**
+     * The number of records in the file that have been replaced by newer ones.
+     */
+    private int obsoleteRecords = 0;
+
+    /**
+     * Opens the store in the given file, creating the file if it does not
+     * exist. If the file contains many obsolete records it is compacted
+     * first.
+     *
+     * @param file the store file
+     * @return the opened store
+     * @throws IOException if the file cannot be opened
+     */
+    public static TermStore open(File file) throws IOException {
+
+        TermStore store = new TermStore(file);
+
+        if (store.writable && store.obsoleteRecords > COMPACTION_THRESHOLD
+                && store.obsoleteRecords > store.index.size()) {
+
+            File compactedFile = new File(file.getParentFile(), file.getName() + ".tmp");
+            store.writeLiveRecords(compactedFile);
+            store.close();
+
+            if (file.delete() && compactedFile.renameTo(file)) {
+                store = new TermStore(file);
+            } else {
+                throw new IOException("Could not replace " + file + " by the compacted " + compactedFile + ".");
+            }
+        }
+
+        return store;
+    }
+
+    /**
+     * Opens the store and reads the positions of the records.
+     *
+     * @param file the store file
+     * @throws IOException if the file cannot be opened or read
+     */
+    private TermStore(File file) throws IOException {
+
+        this.file = file;
+
+        try {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            channel = randomAccessFile.getChannel();
+            try {
+                fileLock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                // already opened for writing in this virtual machine
+                fileLock = null;
+            }
+            writable = fileLock != null;
+        } catch (FileNotFoundException e) {
+            // no write access, fall back to read only
+            randomAccessFile = new RandomAccessFile(file, "r");
+            channel = randomAccessFile.getChannel();
+            writable = false;
+        }
+
+        readIndex();
+    }
+
+    /**
+     * Reads the position of each record in the file. An incomplete record at
+     * the end of the file, e.g., after a crash, is removed.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    private void readIndex() throws IOException {
+
+        long length = channel.size();
+        long offset = 0;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+
+        try {
+            while (offset + 4 <= length) {
+
+                int recordLength = in.readInt();
+
+                if (recordLength < RECORD_HEADER_LENGTH + 4 || offset + 4 + recordLength > length) {
+                    break;
+                }
+
+                int dataType = in.readByte();
+                long timestamp = in.readLong();
+                int accessionLength = in.readInt();
+
+                if (dataType < 0 || dataType >= DataType.values().length
+                        || accessionLength < 0 || accessionLength > recordLength - RECORD_HEADER_LENGTH - 4) {
+                    break;
+                }
+
+                byte[] accession = new byte[accessionLength];
+                in.readFully(accession);
+                skipFully(in, recordLength - RECORD_HEADER_LENGTH - 4 - accessionLength);
+
+                RecordPointer previous = index.put(
+                        getKey(DataType.values()[dataType], decode(accession)),
+                        new RecordPointer(offset, 4 + recordLength, timestamp));
+
+                if (previous != null) {
+                    obsoleteRecords++;
+                }
+
+                offset += 4 + recordLength;
+            }
+        } catch (EOFException e) {
+            // incomplete last record, ignored
+        } finally {
+            in.close();
+        }
+
+        fileLength = offset;
+
+        if (writable && fileLength < length) {
+            channel.truncate(fileLength);
+        }
+    }
+
+    /**
+     * Skips the given number of bytes in the stream.
+     *
+     * @param in the stream
+     * @param bytes the number of bytes to skip
+     * @throws IOException if the bytes cannot be skipped
+     */
+    private static void skipFully(DataInputStream in, int bytes) throws IOException {
+        while (bytes > 0) {
+            int skipped = in.skipBytes(bytes);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            bytes -= skipped;
+        }
+    }
+
+    /**
+     * Writes the newest record of each term and data type to the given file.
+     *
+     * @param target the file to write to
+     * @throws IOException if the records cannot be copied
+     */
+    private void writeLiveRecords(File target) throws IOException {
+
+        List<RecordPointer> liveRecords = new ArrayList<RecordPointer>(index.values());
+        Collections.sort(liveRecords);
+
+        RandomAccessFile out = new RandomAccessFile(target, "rw");
+
+        try {
+            out.setLength(0);
+            FileChannel outChannel = out.getChannel();
+
+            for (RecordPointer record : liveRecords) {
+                long copied = 0;
+                while (copied < record.length) {
+                    copied += channel.transferTo(record.offset + copied, record.length - copied, outChannel);
+                }
+            }
+
+            outChannel.force(true);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the name of the given term.
+     *
+     * @param accession the accession number of the term
+     * @return the term name, or null if not in the store
+     */
+    public synchronized String getTermName(String accession) {
+
+        ByteBuffer data = getData(DataType.NAME, accession);
+
+        if (data == null) {
+            return null;
+        }
+
+        return readString(data);
+    }
+
+    /**
+     * Returns the metadata of the given term.
+     *
+     * @param accession the accession number of the term
+     * @return the metadata, or null if not in the store
+     */
+    public synchronized Map<String, String> getMetadata(String accession) {
+        return getMap(DataType.METADATA, accession);
+    }
+
+    /**
+     * Returns the cross references of the given term.
+     *
+     * @param accession the accession number of the term
+     * @return the cross references, or null if not in the store
+     */
+    public synchronized Map<String, String> getXrefs(String accession) {
+        return getMap(DataType.XREFS, accession);
+    }
+
+    /**
+     * Returns the time when the given data was stored.
+     *
+     * @param dataType the data type
+     * @param accession the accession number of the term
+     * @return the time the data was stored in milliseconds since the epoch, or
+     * -1 if not in the store
+     */
+    public synchronized long getTimestamp(DataType dataType, String accession) {
+
+        RecordPointer record = index.get(getKey(dataType, accession));
+
+        if (record == null) {
+            return -1;
+        }
+
+        return record.timestamp;
+    }
+
+    /**
+     * Returns the names of all the terms in the store.
+     *
+     * @return the term names, key: accession number, value: term name
+     */
+    public synchronized Map<String, String> getTermNames() {
+
+        Map<String, String> termNames = new HashMap<String, String>();
+        char nameKeyPrefix = getKey(DataType.NAME, "").charAt(0);
+
+        for (Iterator<String> i = index.keySet().iterator(); i.hasNext();) {
+            String key = i.next();
+            if (key.charAt(0) == nameKeyPrefix) {
+                String accession = key.substring(1);
+                termNames.put(accession, getTermName(accession));
+            }
+        }
+
+        return termNames;
+    }
+
+    /**
+     * Returns true if records can be added to the store, i.e., if no other
+     * store has the file open for writing.
+     *
+     * @return true if the store is writable
+     */
+    public synchronized boolean isWritable() {
+        return writable;
+    }
+
+    /**
+     * Returns the number of records in the store.
+     *
+     * @return the number of records
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Stores the name of the given term.
+     *
+     * @param accession the accession number of the term
+     * @param termName the term name
+     * @throws IOException if the name could not be written
+     */
+    public synchronized void putTermName(String accession, String termName) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, termName);
+        out.flush();
+
+        append(DataType.NAME, accession, bytes.toByteArray());
+    }
+
+    /**
+     * Stores the metadata of the given term.
+     *
+     * @param accession the accession number of the term
+     * @param metadata the metadata
+     * @throws IOException if the metadata could not be written
+     */
+    public synchronized void putMetadata(String accession, Map<String, String> metadata) throws IOException {
+        append(DataType.METADATA, accession, encodeMap(metadata));
+    }
+
+    /**
+     * Stores the cross references of the given term.
+     *
+     * @param accession the accession number of the term
+     * @param xrefs the cross references
+     * @throws IOException if the cross references could not be written
+     */
+    public synchronized void putXrefs(String accession, Map<String, String> xrefs) throws IOException {
+        append(DataType.XREFS, accession, encodeMap(xrefs));
+    }
+
+    /**
+     * Closes the store. Nothing can be read from or written to the store
+     * afterwards.
+     */
+    public synchronized void close() {
+        try {
+            if (fileLock != null) {
+                fileLock.release();
+            }
+            randomAccessFile.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        writable = false;
+        mappedBuffer = null;
+        mappedLength = 0;
+        index.clear();
+    }
+
+    /**
+     * Appends a record to the file.
+     *
+     * @param dataType the data type
+     * @param accession the accession number of the term
+     * @param data the encoded data
+     * @throws IOException if the record could not be written
+     */
+    private void append(DataType dataType, String accession, byte[] data) throws IOException {
+
+        if (!writable) {
+            return;
+        }
+
+        byte[] encodedAccession = encode(accession);
+        int recordLength = RECORD_HEADER_LENGTH + 4 + encodedAccession.length + data.length;
+        long timestamp = System.currentTimeMillis();
+
+        ByteBuffer record = ByteBuffer.allocate(4 + recordLength);
+        record.putInt(recordLength);
+        record.put((byte) dataType.ordinal());
+        record.putLong(timestamp);
+        record.putInt(encodedAccession.length);
+        record.put(encodedAccession);
+        record.put(data);
+        record.flip();
+
+        long position = fileLength;
+
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+
+        RecordPointer previous = index.put(getKey(dataType, accession), new RecordPointer(fileLength, 4 + recordLength, timestamp));
+
+        if (previous != null) {
+            obsoleteRecords++;
+        }
+
+        fileLength = position;
+    }
+
+    /**
+     * Returns a buffer positioned at the data part of the given record.
+     *
+     * @param dataType the data type
+     * @param accession the accession number of the term
+     * @return the data, or null if not in the store
+     */
+    private ByteBuffer getData(DataType dataType, String accession) {
+
+        RecordPointer record = index.get(getKey(dataType, accession));
+
+        if (record == null) {
+            return null;
+        }
+
+        try {
+            if (record.offset + record.length > mappedLength) {
+                // the record was added after the file was mapped
+                mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileLength);
+                mappedLength = fileLength;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        ByteBuffer data = mappedBuffer.duplicate();
+        data.limit((int) (record.offset + record.length));
+        data.position((int) record.offset + 4 + RECORD_HEADER_LENGTH);
+        int accessionLength = data.getInt();
+        data.position(data.position() + accessionLength);
+
+        return data;
+    }
+
+    /**
+     * Returns the map stored in the given record.
+     *
+     * @param dataType the data type
+     * @param accession the accession number of the term
+     * @return the map, or null if not in the store
+     */
+    private Map<String, String> getMap(DataType dataType, String accession) {
+
+        ByteBuffer data = getData(dataType, accession);
+
+        if (data == null) {
+            return null;
+        }
+
+        int size = data.getInt();
+        Map<String, String> map = new LinkedHashMap<String, String>();
+
+        for (int i = 0; i < size; i++) {
+            String key = readString(data);
+            map.put(key, readString(data));
+        }
+
+        return map;
+    }
+
+    /**
+     * Encodes the given map.
+     *
+     * @param map the map to encode
+     * @return the encoded map
+     * @throws IOException if the map could not be encoded
+     */
+    private static byte[] encodeMap(Map<String, String> map) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(map.size());
+
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+
+        out.flush();
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a string, or null, to the given stream.
+     *
+     * @param out the stream
+     * @param value the string to write, can be null
+     * @throws IOException if the string could not be written
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] encoded = encode(value);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+    }
+
+    /**
+     * Reads a string, or null, from the given buffer.
+     *
+     * @param data the buffer
+     * @return the string read, can be null
+     */
+    private static String readString(ByteBuffer data) {
+
+        int length = data.getInt();
+
+        if (length < 0) {
+            return null;
+        }
+
+        ByteBuffer encoded = data.slice();
+        encoded.limit(length);
+        data.position(data.position() + length);
+
+        return UTF8.decode(encoded).toString();
+    }
+
+    /**
+     * Encodes the given string as UTF-8.
+     *
+     * @param value the string
+     * @return the encoded string
+     */
+    private static byte[] encode(String value) {
+        ByteBuffer encoded = UTF8.encode(value);
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Decodes the given UTF-8 bytes.
+     *
+     * @param bytes the bytes
+     * @return the decoded string
+     */
+    private static String decode(byte[] bytes) {
+        return UTF8.decode(ByteBuffer.wrap(bytes)).toString();
+    }
+
+    /**
+     * Returns the index key of the given data.
+     *
+     * @param dataType the data type
+     * @param accession the accession number of the term
+     * @return the index key
+     */
+    private static String getKey(DataType dataType, String accession) {
+        return (char) ('0' + dataType.ordinal()) + accession;
+    }
+
+    /**
+     * The position and time stamp of a record in the file.
+     */
+    private static class RecordPointer implements Comparable<RecordPointer> {
+
+        /**
+         * The offset of the record in the file.
+         */
+        private final long offset;
+        /**
+         * The length of the record, including the record length itself.
+         */
+        private final int length;
+        /**
+         * The time the record was written.
+         */
+        private final long timestamp;
+
+        /**
+         * Creates a new RecordPointer.
+         *
+         * @param offset the offset of the record in the file
+         * @param length the length of the record
+         * @param timestamp the time the record was written
+         */
+        public RecordPointer(long offset, int length, long timestamp) {
+            this.offset = offset;
+            this.length = length;
+            this.timestamp = timestamp;
+        }
+
+        public int compareTo(RecordPointer other) {
+            return offset < other.offset ? -1 : (offset == other.offset ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package no.uib.olsdialog.util;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Insets;
+import java.awt.Point;
+import java.awt.Rectangle;
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableCellRenderer;
+
+/**
+ * A table cell renderer showing accession numbers as underlined web links.
+ * <p>
+ * The cells hold the plain accession numbers, e.g., "MOD:00425", or several
+ * accession numbers joined by ACCESSION_SEPARATOR, e.g., "MOD:00425 +
+ * MOD:00400". The text is drawn as plain text and each accession number is
+ * underlined with Java2D, no HTML is involved.
+ */
+public class AccessionLinkRenderer extends DefaultTableCellRenderer {
+
+    /**
+     * The separator between the accession numbers of a cell holding several
+     * accession numbers.
+     */
+    public static final String ACCESSION_SEPARATOR = " + ";
+    /**
+     * The web address the accession numbers link to, followed by the
+     * accession number.
+     */
+    public static final String OLS_TERM_URL = "http://www.ebi.ac.uk/ontology-lookup/?termId=";
+    /**
+     * The link color for the selected rows.
+     */
+    private final Color selectedRowLinkColor;
+    /**
+     * The link color for the rows that are not selected.
+     */
+    private final Color notSelectedRowLinkColor;
+    /**
+     * The area inside the insets, set by layoutText.
+     */
+    private final Rectangle viewRectangle = new Rectangle();
+    /**
+     * The rectangle the text is drawn in, set by layoutText.
+     */
+    private final Rectangle textRectangle = new Rectangle();
+    /**
+     * The rectangle the icon is drawn in, set by layoutText.
+     */
+    private final Rectangle iconRectangle = new Rectangle();
+
+    /**
+     * Creates a new AccessionLinkRenderer.
+     *
+     * @param selectedRowLinkColor the link color for the selected rows
+     * @param notSelectedRowLinkColor the link color for the rows that are
+     * not selected
+     */
+    public AccessionLinkRenderer(Color selectedRowLinkColor, Color notSelectedRowLinkColor) {
+        this.selectedRowLinkColor = selectedRowLinkColor;
+        this.notSelectedRowLinkColor = notSelectedRowLinkColor;
+    }
+
+    @Override
+    public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+            boolean hasFocus, int row, int column) {
+
+        super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+        setForeground(isSelected ? selectedRowLinkColor : notSelectedRowLinkColor);
+
+        return this;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+
+        super.paintComponent(g);
+
+        String text = getText();
+
+        if (text == null || text.length() == 0) {
+            return;
+        }
+
+        FontMetrics fontMetrics = g.getFontMetrics(getFont());
+        String clippedText = layoutText(fontMetrics);
+        int y = textRectangle.y + fontMetrics.getAscent() + 1;
+
+        g.setColor(getForeground());
+
+        // underline the accession numbers, not the separators
+        int start = 0;
+
+        while (start < clippedText.length()) {
+
+            int end = clippedText.indexOf(ACCESSION_SEPARATOR, start);
+
+            if (end == -1) {
+                end = clippedText.length();
+            }
+
+            int x = textRectangle.x + fontMetrics.stringWidth(clippedText.substring(0, start));
+            int width = fontMetrics.stringWidth(clippedText.substring(start, end));
+            g.drawLine(x, y, x + width - 1, y);
+
+            start = end + ACCESSION_SEPARATOR.length();
+        }
+    }
+
+    /**
+     * Returns the accession number drawn at the given point of the given
+     * cell, e.g., the one clicked.
+     *
+     * @param table the table
+     * @param row the row
+     * @param column the column, in view coordinates
+     * @param point the point, in table coordinates
+     * @return the accession number at the point, or null if the point is not
+     * on an accession number
+     */
+    public String getAccessionAt(JTable table, int row, int column, Point point) {
+
+        Object value = table.getValueAt(row, column);
+
+        if (value == null) {
+            return null;
+        }
+
+        getTableCellRendererComponent(table, value, false, false, row, column);
+        Rectangle cell = table.getCellRect(row, column, false);
+        setSize(cell.width, cell.height);
+
+        FontMetrics fontMetrics = getFontMetrics(getFont());
+        layoutText(fontMetrics);
+
+        String text = value.toString();
+        int x = point.x - cell.x - textRectangle.x;
+        int start = 0;
+
+        while (start < text.length()) {
+
+            int end = text.indexOf(ACCESSION_SEPARATOR, start);
+
+            if (end == -1) {
+                end = text.length();
+            }
+
+            int from = fontMetrics.stringWidth(text.substring(0, start));
+            int to = fontMetrics.stringWidth(text.substring(0, end));
+
+            if (x >= from && x < to) {
+                return text.substring(start, end);
+            }
+
+            start = end + ACCESSION_SEPARATOR.length();
+        }
+
+        return null;
+    }
+
+    /**
+     * Lays out the text the way the label does, setting textRectangle.
+     *
+     * @param fontMetrics the font metrics
+     * @return the text as drawn, possibly clipped
+     */
+    private String layoutText(FontMetrics fontMetrics) {
+
+        Insets insets = getInsets();
+        viewRectangle.setBounds(insets.left, insets.top,
+                getWidth() - insets.left - insets.right, getHeight() - insets.top - insets.bottom);
+        textRectangle.setBounds(0, 0, 0, 0);
+        iconRectangle.setBounds(0, 0, 0, 0);
+
+        return SwingUtilities.layoutCompoundLabel(this, fontMetrics, getText(), getIcon(),
+                getVerticalAlignment(), getHorizontalAlignment(),
+                getVerticalTextPosition(), getHorizontalTextPosition(),
+                viewRectangle, iconRectangle, textRectangle, getIconTextGap());
+    }
+
+    /**
+     * Returns true if the given cell value holds several accession numbers,
+     * e.g., a combination of modifications found by the mass search.
+     *
+     * @param value the cell value, e.g., "MOD:00425 + MOD:00400"
+     * @return true if the value holds several accession numbers
+     */
+    public static boolean isCombination(String value) {
+        return value.indexOf(ACCESSION_SEPARATOR) != -1;
+    }
+}
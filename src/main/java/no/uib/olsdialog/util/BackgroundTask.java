@@ -0,0 +1,95 @@
+package no.uib.olsdialog.util;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * A task whose slow part, e.g., a lookup in the OLS, is done in a background
+ * thread, while the results are handled on the Event Dispatch Thread.
+ *
+ * @param <T> the type of the result of the task
+ */
+public abstract class BackgroundTask<T> {
+
+    /**
+     * The channel the task belongs to, null if none.
+     */
+    private volatile TaskChannel channel;
+    /**
+     * The version given to the task by the channel.
+     */
+    private volatile long version;
+
+    /**
+     * Sets the channel the task belongs to.
+     *
+     * @param channel the channel, null if none
+     * @param version the version given to the task by the channel
+     */
+    void setChannel(TaskChannel channel, long version) {
+        this.channel = channel;
+        this.version = version;
+    }
+
+    /**
+     * Returns true unless the task has been cancelled or superseded by a newer
+     * task.
+     *
+     * @return true if the task is still current
+     */
+    public boolean isCurrent() {
+        TaskChannel currentChannel = channel;
+        return currentChannel == null || currentChannel.isCurrent(version);
+    }
+
+    /**
+     * Runs the given update on the Event Dispatch Thread, unless the task has
+     * been cancelled or superseded by then. Used to show partial results from
+     * doInBackground.
+     *
+     * @param update the update to run
+     */
+    protected void publish(final Runnable update) {
+        SwingUtilities.invokeLater(new Runnable() {
+
+            public void run() {
+                if (isCurrent()) {
+                    update.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Does the slow part of the task. Called in a background thread, i.e., no
+     * Swing components can be accessed.
+     *
+     * @return the result of the task
+     * @throws Exception if the task fails
+     */
+    public abstract T doInBackground() throws Exception;
+
+    /**
+     * Called on the Event Dispatch Thread just before the background part of
+     * the task starts. Does nothing by default.
+     */
+    public void started() {
+    }
+
+    /**
+     * Called on the Event Dispatch Thread with the result of the task.
+     *
+     * @param result the result of the task
+     */
+    public abstract void succeeded(T result);
+
+    /**
+     * Called on the Event Dispatch Thread if the task failed. Writes the error
+     * to the error log by default.
+     *
+     * @param e the error
+     */
+    public void failed(Exception e) {
+        Util.writeToErrorLog("Background task failed: ");
+        e.printStackTrace();
+    }
+}
@@ -0,0 +1,212 @@
+package no.uib.olsdialog.util;
+
+import java.awt.Component;
+import java.util.HashMap;
+import java.util.Map;
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.TableCellRenderer;
+import javax.swing.table.TableColumn;
+
+/**
+ * Keeps a table column, e.g., the Accession column of the search results
+ * tables, just wide enough for the column header and the cells.
+ * <p>
+ * The width is updated after the rows have been shown, on a later turn of
+ * the event dispatching thread. Only the rows added since the last update
+ * are measured, of which at most MAXIMUM_MEASURED_ROWS evenly spread rows,
+ * and the measured widths are cached per cell value. A very wide cell value
+ * in a large batch of rows can thus be missed, which only cuts the text of
+ * that cell.
+ */
+public class ColumnWidthEstimator implements TableModelListener {
+
+    /**
+     * The maximum number of rows measured per update.
+     */
+    public static final int MAXIMUM_MEASURED_ROWS = 100;
+    /**
+     * The maximum number of cell widths cached.
+     */
+    private static final int MAXIMUM_CACHED_WIDTHS = 10000;
+    /**
+     * The table.
+     */
+    private final JTable table;
+    /**
+     * The identifier of the column, e.g., "Accession".
+     */
+    private final Object columnIdentifier;
+    /**
+     * The margin added to the left and the right of the column.
+     */
+    private final int margin;
+    /**
+     * The measured widths, key: cell value.
+     */
+    private final Map<Object, Integer> cellWidths = new HashMap<Object, Integer>();
+    /**
+     * The width of the widest cell or header measured since the last full
+     * update, without margins.
+     */
+    private int width = 0;
+    /**
+     * The first row not measured yet.
+     */
+    private int firstPendingRow = Integer.MAX_VALUE;
+    /**
+     * The last row not measured yet.
+     */
+    private int lastPendingRow = -1;
+    /**
+     * True if all rows have to be measured again.
+     */
+    private boolean fullUpdatePending = false;
+    /**
+     * True if an update has been scheduled.
+     */
+    private boolean updateScheduled = false;
+
+    /**
+     * Creates a new ColumnWidthEstimator. Use install to attach it to the
+     * table.
+     *
+     * @param table the table
+     * @param columnIdentifier the identifier of the column, e.g., "Accession"
+     * @param margin the margin added to the left and the right of the column
+     */
+    public ColumnWidthEstimator(JTable table, Object columnIdentifier, int margin) {
+        this.table = table;
+        this.columnIdentifier = columnIdentifier;
+        this.margin = margin;
+    }
+
+    /**
+     * Creates a ColumnWidthEstimator keeping the given column of the table
+     * wide enough for its content as the rows change.
+     *
+     * @param table the table
+     * @param columnIdentifier the identifier of the column, e.g., "Accession"
+     * @param margin the margin added to the left and the right of the column
+     * @return the estimator
+     */
+    public static ColumnWidthEstimator install(JTable table, Object columnIdentifier, int margin) {
+        ColumnWidthEstimator estimator = new ColumnWidthEstimator(table, columnIdentifier, margin);
+        table.getModel().addTableModelListener(estimator);
+        return estimator;
+    }
+
+    public void tableChanged(TableModelEvent e) {
+
+        if (e.getType() == TableModelEvent.INSERT && e.getFirstRow() != TableModelEvent.HEADER_ROW) {
+            firstPendingRow = Math.min(firstPendingRow, e.getFirstRow());
+            lastPendingRow = Math.max(lastPendingRow, e.getLastRow());
+        } else {
+            fullUpdatePending = true;
+        }
+
+        if (!updateScheduled) {
+            updateScheduled = true;
+            SwingUtilities.invokeLater(new Runnable() {
+
+                public void run() {
+                    update();
+                }
+            });
+        }
+    }
+
+    /**
+     * Measures the pending rows and sets the column width.
+     */
+    public void update() {
+
+        updateScheduled = false;
+
+        int rowCount = table.getRowCount();
+        int column = table.getColumnModel().getColumnIndex(columnIdentifier);
+        TableColumn tableColumn = table.getColumnModel().getColumn(column);
+
+        if (fullUpdatePending) {
+            width = getHeaderWidth(tableColumn);
+            firstPendingRow = 0;
+            lastPendingRow = rowCount - 1;
+            fullUpdatePending = false;
+        }
+
+        lastPendingRow = Math.min(lastPendingRow, rowCount - 1);
+
+        if (firstPendingRow <= lastPendingRow) {
+
+            int step = Math.max(1, (lastPendingRow - firstPendingRow + 1) / MAXIMUM_MEASURED_ROWS);
+
+            for (int row = firstPendingRow; row <= lastPendingRow; row += step) {
+                width = Math.max(width, getCellWidth(row, column));
+            }
+
+            // the last row is always measured
+            width = Math.max(width, getCellWidth(lastPendingRow, column));
+        }
+
+        firstPendingRow = Integer.MAX_VALUE;
+        lastPendingRow = -1;
+
+        if (rowCount > 0) {
+            tableColumn.setMinWidth(width + 2 * margin);
+            tableColumn.setMaxWidth(width + 2 * margin);
+        }
+    }
+
+    /**
+     * Returns the preferred width of the header of the given column.
+     *
+     * @param tableColumn the column
+     * @return the header width
+     */
+    private int getHeaderWidth(TableColumn tableColumn) {
+
+        TableCellRenderer renderer = tableColumn.getHeaderRenderer();
+
+        if (renderer == null) {
+            if (table.getTableHeader() == null) {
+                return 0;
+            }
+            renderer = table.getTableHeader().getDefaultRenderer();
+        }
+
+        Component component = renderer.getTableCellRendererComponent(table, tableColumn.getHeaderValue(), false, false, 0, 0);
+        return component.getPreferredSize().width;
+    }
+
+    /**
+     * Returns the preferred width of the given cell, taken from the cache if
+     * the value has been measured before.
+     *
+     * @param row the row
+     * @param column the column, in view coordinates
+     * @return the cell width
+     */
+    private int getCellWidth(int row, int column) {
+
+        Object value = table.getValueAt(row, column);
+        Integer cellWidth = value == null ? null : cellWidths.get(value);
+
+        if (cellWidth == null) {
+
+            Component component = table.getCellRenderer(row, column).getTableCellRendererComponent(
+                    table, value, false, false, row, column);
+            cellWidth = component.getPreferredSize().width;
+
+            if (value != null) {
+                if (cellWidths.size() >= MAXIMUM_CACHED_WIDTHS) {
+                    cellWidths.clear();
+                }
+                cellWidths.put(value, cellWidth);
+            }
+        }
+
+        return cellWidth;
+    }
+}
@@ -0,0 +1,35 @@
+package no.uib.olsdialog.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread factory creating named daemon threads, making sure that background
+ * work never keeps the application from exiting.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+    /**
+     * The prefix of the thread names.
+     */
+    private final String namePrefix;
+    /**
+     * The number of threads created so far.
+     */
+    private final AtomicInteger threadCounter = new AtomicInteger();
+
+    /**
+     * Creates a new DaemonThreadFactory.
+     *
+     * @param namePrefix the prefix of the thread names, e.g., "OlsQuery"
+     */
+    public DaemonThreadFactory(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, namePrefix + "-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,434 @@
+package no.uib.olsdialog.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import javax.swing.event.EventListenerList;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
+import no.uib.olsdialog.client.ChildrenCache;
+
+/**
+ * A tree model for browsing an ontology, where the children of a term are
+ * only retrieved when the term is opened.
+ * <p>
+ * A term whose children have not been retrieved yet shows a single
+ * "Loading..." node, i.e., it is shown as a folder until it has been opened
+ * and found to have no children. Whether a term has children is answered
+ * from the retrieved children, which are kept in a bounded ChildrenCache per
+ * ontology and term and reused wherever the term is shown again, e.g., when
+ * switching back to an ontology. The cache is preferably the one of the
+ * ontology client, see setChildrenCache, so that the children are kept only
+ * once. The cost of browsing is thus proportional to the number of terms
+ * opened, not to the number of terms shown.
+ * <p>
+ * Retrieving the children is left to the user of the model, see
+ * startLoading and setChildren.
+ * <p>
+ * Like all Swing models the model is only to be used from the event
+ * dispatching thread.
+ */
+public class LazyOntologyTreeModel implements TreeModel {
+
+    /**
+     * The text of the placeholder nodes shown while the children of a term
+     * are being retrieved.
+     */
+    private static final String LOADING_TEXT = "Loading...";
+    /**
+     * The listeners.
+     */
+    private final EventListenerList listenerList = new EventListenerList();
+    /**
+     * The cache of the retrieved children.
+     */
+    private ChildrenCache childrenCache = new ChildrenCache();
+    /**
+     * The ontology browsed, null if none.
+     */
+    private String ontology;
+    /**
+     * The root node.
+     */
+    private TermNode root;
+
+    /**
+     * Creates a new LazyOntologyTreeModel.
+     *
+     * @param rootName the text of the root node
+     */
+    public LazyOntologyTreeModel(String rootName) {
+        root = new TermNode(null, rootName, null);
+    }
+
+    /**
+     * Replaces the whole tree by a new root node, whose children are yet to
+     * be set. The cached children are kept.
+     *
+     * @param rootName the text of the root node, e.g., the ontology label
+     * @param ontology the ontology browsed
+     */
+    public void setRoot(String rootName, String ontology) {
+        this.ontology = ontology;
+        root = new TermNode(null, rootName, null);
+        fireTreeStructureChanged(root);
+    }
+
+    /**
+     * Sets the cache of the retrieved children, e.g., the one of the ontology
+     * client, so that the children retrieved through the client are known to
+     * the tree. The children cached so far are not moved to the new cache.
+     *
+     * @param childrenCache the cache of the retrieved children
+     */
+    public void setChildrenCache(ChildrenCache childrenCache) {
+        this.childrenCache = childrenCache;
+    }
+
+    public Object getRoot() {
+        return root;
+    }
+
+    public Object getChild(Object parent, int index) {
+        return getChildren((TermNode) parent).get(index);
+    }
+
+    public int getChildCount(Object parent) {
+        return getChildren((TermNode) parent).size();
+    }
+
+    public boolean isLeaf(Object node) {
+
+        TermNode termNode = (TermNode) node;
+
+        if (termNode.children != null) {
+            return termNode.children.isEmpty();
+        }
+
+        Map<String, String> cachedChildren = getCachedChildren(termNode);
+        return cachedChildren != null && cachedChildren.isEmpty();
+    }
+
+    public int getIndexOfChild(Object parent, Object child) {
+        if (parent == null || child == null) {
+            return -1;
+        }
+        return getChildren((TermNode) parent).indexOf(child);
+    }
+
+    public void valueForPathChanged(TreePath path, Object newValue) {
+        // the tree is not editable
+    }
+
+    public void addTreeModelListener(TreeModelListener listener) {
+        listenerList.add(TreeModelListener.class, listener);
+    }
+
+    public void removeTreeModelListener(TreeModelListener listener) {
+        listenerList.remove(TreeModelListener.class, listener);
+    }
+
+    /**
+     * Returns true if the children of the given node are known, i.e., have
+     * been set or are in the cache.
+     *
+     * @param node the node
+     * @return true if the children are known
+     */
+    public boolean isLoaded(TermNode node) {
+        return node.children != null || getCachedChildren(node) != null;
+    }
+
+    /**
+     * Marks the given node as having its children retrieved, unless the
+     * children are already known or being retrieved.
+     *
+     * @param node the node
+     * @return true if the children of the node are to be retrieved, false if
+     * already known or being retrieved
+     */
+    public boolean startLoading(TermNode node) {
+
+        if (node.termId == null || node.loading || isLoaded(node)) {
+            return false;
+        }
+
+        node.loading = true;
+        return true;
+    }
+
+    /**
+     * Marks the given node as no longer having its children retrieved, e.g.,
+     * after a failed lookup, so that they can be retrieved again later.
+     *
+     * @param node the node
+     */
+    public void loadingFailed(TermNode node) {
+        node.loading = false;
+    }
+
+    /**
+     * Sets the children of the given node, replacing its placeholder. The
+     * children are cached, also if the node is no longer in the tree, e.g.,
+     * after changing ontology.
+     *
+     * @param node the node
+     * @param children the children, key: accession number, value: term name
+     */
+    public void setChildren(TermNode node, Map<String, String> children) {
+
+        node.loading = false;
+
+        if (node.termId != null) {
+            childrenCache.put(ontology, node.termId, children);
+        }
+
+        if (isInTree(node)) {
+            node.children = createNodes(node, children);
+            fireTreeStructureChanged(node);
+        }
+    }
+
+    /**
+     * Adds the given children to the cache without changing the tree, e.g.,
+     * the deeper levels retrieved together with the children of a node, so
+     * that the terms shown are known to have children or not. The children
+     * are taken to belong to the ontology browsed.
+     *
+     * @param children the children, key: accession number of the parent,
+     * value: the children, key: accession number, value: term name. Null
+     * keys are ignored.
+     */
+    public void addToCache(Map<String, Map<String, String>> children) {
+        for (Map.Entry<String, Map<String, String>> entry : children.entrySet()) {
+            if (entry.getKey() != null) {
+                childrenCache.put(ontology, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Replaces the children of the given node by a single node showing the
+     * given message, e.g., that no root terms were found. The message is not
+     * cached.
+     *
+     * @param node the node
+     * @param message the message
+     */
+    public void setMessage(TermNode node, String message) {
+
+        node.loading = false;
+
+        if (isInTree(node)) {
+            List<TermNode> children = new ArrayList<TermNode>(1);
+            children.add(createLeaf(node, message));
+            node.children = children;
+            fireTreeStructureChanged(node);
+        }
+    }
+
+    /**
+     * Returns the path from the root to the given node.
+     *
+     * @param node the node
+     * @return the path
+     */
+    public TreePath getPath(TermNode node) {
+
+        List<TermNode> path = new ArrayList<TermNode>();
+
+        for (TermNode current = node; current != null; current = current.parent) {
+            path.add(current);
+        }
+
+        Collections.reverse(path);
+        return new TreePath(path.toArray());
+    }
+
+    /**
+     * Returns the children of the given node, created from the cache if
+     * needed. A node whose children are not known has a single placeholder
+     * child.
+     *
+     * @param node the node
+     * @return the children
+     */
+    private List<TermNode> getChildren(TermNode node) {
+
+        if (node.children == null) {
+
+            Map<String, String> cachedChildren = getCachedChildren(node);
+
+            if (cachedChildren == null) {
+                if (node.placeholder == null) {
+                    node.placeholder = Collections.singletonList(createLeaf(node, LOADING_TEXT));
+                }
+                return node.placeholder;
+            }
+
+            node.children = createNodes(node, cachedChildren);
+        }
+
+        return node.children;
+    }
+
+    /**
+     * Returns the cached children of the given node in the ontology browsed.
+     *
+     * @param node the node
+     * @return the cached children, null if not cached
+     */
+    private Map<String, String> getCachedChildren(TermNode node) {
+        if (node.termId == null) {
+            return null;
+        }
+        return childrenCache.get(ontology, node.termId);
+    }
+
+    /**
+     * Creates the nodes for the given children.
+     *
+     * @param parent the parent node
+     * @param children the children, key: accession number, value: term name
+     * @return the nodes
+     */
+    private List<TermNode> createNodes(TermNode parent, Map<String, String> children) {
+
+        List<TermNode> nodes = new ArrayList<TermNode>(children.size());
+
+        for (Map.Entry<String, String> child : children.entrySet()) {
+            nodes.add(new TermNode(parent, child.getValue(), child.getKey()));
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Creates a node without children and accession number, e.g., a
+     * placeholder.
+     *
+     * @param parent the parent node
+     * @param text the text of the node
+     * @return the node
+     */
+    private TermNode createLeaf(TermNode parent, String text) {
+        TermNode leaf = new TermNode(parent, text, null);
+        leaf.children = Collections.emptyList();
+        return leaf;
+    }
+
+    /**
+     * Returns true if the given node is part of the current tree.
+     *
+     * @param node the node
+     * @return true if the node is in the tree
+     */
+    private boolean isInTree(TermNode node) {
+
+        TermNode current = node;
+
+        while (current.parent != null) {
+            current = current.parent;
+        }
+
+        return current == root;
+    }
+
+    /**
+     * Tells the listeners that the structure below the given node changed.
+     *
+     * @param node the node
+     */
+    private void fireTreeStructureChanged(TermNode node) {
+
+        TreeModelEvent event = new TreeModelEvent(this, getPath(node));
+        Object[] listeners = listenerList.getListenerList();
+
+        for (int i = listeners.length - 2; i >= 0; i -= 2) {
+            if (listeners[i] == TreeModelListener.class) {
+                ((TreeModelListener) listeners[i + 1]).treeStructureChanged(event);
+            }
+        }
+    }
+
+    /**
+     * A node in the tree, representing a term, or the root, a placeholder or
+     * a message.
+     */
+    public static class TermNode {
+
+        /**
+         * The parent node, null for the root.
+         */
+        private final TermNode parent;
+        /**
+         * The term name, or the text of the node.
+         */
+        private final String termName;
+        /**
+         * The term accession number, null if the node is not a term.
+         */
+        private final String termId;
+        /**
+         * The child nodes, null until known.
+         */
+        private List<TermNode> children;
+        /**
+         * The placeholder shown while the children are not known.
+         */
+        private List<TermNode> placeholder;
+        /**
+         * True while the children are being retrieved.
+         */
+        private boolean loading = false;
+
+        /**
+         * Creates a new TermNode.
+         *
+         * @param parent the parent node, null for the root
+         * @param termName the term name, or the text of the node
+         * @param termId the term accession number, null if the node is not a
+         * term
+         */
+        private TermNode(TermNode parent, String termName, String termId) {
+            this.parent = parent;
+            this.termName = termName;
+            this.termId = termId;
+        }
+
+        /**
+         * Returns the term name, or the text of the node if not a term.
+         *
+         * @return the term name
+         */
+        public String getTermName() {
+            return termName;
+        }
+
+        /**
+         * Returns the term accession number.
+         *
+         * @return the term accession number, null if the node is not a term
+         */
+        public String getTermId() {
+            return termId;
+        }
+
+        /**
+         * Returns the parent node.
+         *
+         * @return the parent node, null for the root
+         */
+        public TermNode getParent() {
+            return parent;
+        }
+
+        @Override
+        public String toString() {
+            return ((termId == null) ? "" : "[" + termId + "] ") + termName;
+        }
+    }
+}
@@ -0,0 +1,523 @@
+package no.uib.olsdialog.util;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import no.uib.olsdialog.client.OntologyClient;
+
+/**
+ * Preloads an ontology in the background by walking it breadth-first from
+ * the root terms, retrieving the children of every term through the given
+ * client. With a caching client the children and the term names end up in
+ * the local caches, so that browsing the ontology afterwards needs no lookups
+ * in the OLS.
+ * <p>
+ * At most the given number of lookups run at the same time, and they are
+ * started at most at the given rate. No new lookup is started while the user
+ * is waiting for the OLS, i.e., while any TaskPipeline is busy, nor while the
+ * crawl is paused. Lookups already running are not interrupted.
+ * <p>
+ * The crawl stops when all the terms have been visited, when it is cancelled,
+ * or after MAXIMUM_CONSECUTIVE_FAILURES failed lookups in a row, e.g., when
+ * the OLS cannot be reached. Anything thrown by a lookup, including errors,
+ * counts as a failed lookup.
+ */
+public class OntologyCrawler {
+
+    /**
+     * The default maximum number of concurrent lookups. Leaves most of the
+     * OLS connections to the user.
+     */
+    public static final int DEFAULT_PARALLELISM = 4;
+    /**
+     * The default maximum number of lookups started per second.
+     */
+    public static final double DEFAULT_REQUESTS_PER_SECOND = 50;
+    /**
+     * The number of failed lookups in a row after which the crawl stops.
+     */
+    public static final int MAXIMUM_CONSECUTIVE_FAILURES = 10;
+    /**
+     * How often to check whether the user is still waiting for the OLS, in
+     * milliseconds.
+     */
+    private static final long YIELD_CHECK_INTERVAL = 50;
+
+    /**
+     * Gets informed about the progress of a crawl. The methods are called
+     * from the crawler threads.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Called when the children of a term have been retrieved, or failed
+         * to be retrieved.
+         *
+         * @param crawler the crawler
+         */
+        public void progressChanged(OntologyCrawler crawler);
+
+        /**
+         * Called once when the crawl has stopped, i.e., finished, been
+         * cancelled or failed.
+         *
+         * @param crawler the crawler
+         */
+        public void crawlStopped(OntologyCrawler crawler);
+    }
+    /**
+     * The client used for the lookups.
+     */
+    private final OntologyClient ontologyClient;
+    /**
+     * The ontology crawled, e.g., "MS".
+     */
+    private final String ontology;
+    /**
+     * The maximum number of concurrent lookups.
+     */
+    private final int parallelism;
+    /**
+     * The lock guarding the state of the crawl, also waited on by the
+     * crawler threads.
+     */
+    private final Object lock = new Object();
+    /**
+     * The terms whose children are still to be retrieved, in breadth-first
+     * order. A null term stands for the root terms.
+     */
+    private final LinkedList<String> pendingTerms = new LinkedList<String>();
+    /**
+     * The accession numbers of all the terms found so far.
+     */
+    private final Set<String> foundTerms = new HashSet<String>();
+    /**
+     * The listener, can be null.
+     */
+    private volatile ProgressListener progressListener;
+    /**
+     * The minimum time between the start of two lookups, in nanoseconds.
+     */
+    private volatile long requestInterval;
+    /**
+     * The earliest time the next lookup can start, in System.nanoTime units.
+     */
+    private long nextRequestTime = 0;
+    /**
+     * The number of lookups running.
+     */
+    private int runningLookups = 0;
+    /**
+     * The number of terms whose children have been retrieved.
+     */
+    private int crawledTermCount = 0;
+    /**
+     * The number of failed lookups.
+     */
+    private int failedTermCount = 0;
+    /**
+     * The number of failed lookups in a row.
+     */
+    private int consecutiveFailures = 0;
+    /**
+     * The executor running the crawler threads, null until started.
+     */
+    private ExecutorService executor;
+    /**
+     * True while the crawl is paused.
+     */
+    private boolean paused = false;
+    /**
+     * True once the crawl has stopped.
+     */
+    private boolean stopped = false;
+    /**
+     * True if the crawl was cancelled or stopped because of failures.
+     */
+    private boolean cancelled = false;
+
+    /**
+     * Creates a new OntologyCrawler with the default parallelism and request
+     * rate. Use start to start the crawl.
+     *
+     * @param ontologyClient the client used for the lookups
+     * @param ontology the ontology to crawl, e.g., "MS"
+     */
+    public OntologyCrawler(OntologyClient ontologyClient, String ontology) {
+        this(ontologyClient, ontology, DEFAULT_PARALLELISM, DEFAULT_REQUESTS_PER_SECOND);
+    }
+
+    /**
+     * Creates a new OntologyCrawler. Use start to start the crawl.
+     *
+     * @param ontologyClient the client used for the lookups
+     * @param ontology the ontology to crawl, e.g., "MS"
+     * @param parallelism the maximum number of concurrent lookups
+     * @param requestsPerSecond the maximum number of lookups started per
+     * second
+     */
+    public OntologyCrawler(OntologyClient ontologyClient, String ontology, int parallelism, double requestsPerSecond) {
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism has to be at least one.");
+        }
+
+        this.ontologyClient = ontologyClient;
+        this.ontology = ontology;
+        this.parallelism = parallelism;
+        setRequestsPerSecond(requestsPerSecond);
+    }
+
+    /**
+     * Returns the ontology crawled.
+     *
+     * @return the ontology label, e.g., "MS"
+     */
+    public String getOntology() {
+        return ontology;
+    }
+
+    /**
+     * Sets the listener informed about the progress of the crawl.
+     *
+     * @param progressListener the listener, can be null
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Sets the maximum number of lookups started per second. Can be changed
+     * while crawling.
+     *
+     * @param requestsPerSecond the maximum number of lookups started per
+     * second
+     */
+    public void setRequestsPerSecond(double requestsPerSecond) {
+
+        if (requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("The request rate has to be positive.");
+        }
+
+        requestInterval = (long) (1000000000L / requestsPerSecond);
+    }
+
+    /**
+     * Starts crawling in the background. Does nothing if already started.
+     */
+    public void start() {
+
+        synchronized (lock) {
+
+            if (executor != null) {
+                return;
+            }
+
+            pendingTerms.add(null);
+            executor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("OlsCrawler"));
+
+            for (int i = 0; i < parallelism; i++) {
+                executor.execute(new Runnable() {
+
+                    public void run() {
+                        crawl();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Pauses the crawl. The lookups running are completed.
+     */
+    public void pause() {
+        synchronized (lock) {
+            paused = true;
+        }
+    }
+
+    /**
+     * Resumes a paused crawl.
+     */
+    public void resume() {
+        synchronized (lock) {
+            paused = false;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Cancels the crawl. The lookups running are completed, but their
+     * results are ignored.
+     */
+    public void cancel() {
+        stop(true);
+    }
+
+    /**
+     * Returns true if the crawl is paused.
+     *
+     * @return true if paused
+     */
+    public boolean isPaused() {
+        synchronized (lock) {
+            return paused;
+        }
+    }
+
+    /**
+     * Returns true if the crawl has stopped, i.e., finished, been cancelled
+     * or failed.
+     *
+     * @return true if stopped
+     */
+    public boolean isStopped() {
+        synchronized (lock) {
+            return stopped;
+        }
+    }
+
+    /**
+     * Returns true if all the terms of the ontology have been crawled.
+     *
+     * @return true if finished
+     */
+    public boolean isFinished() {
+        synchronized (lock) {
+            return stopped && !cancelled;
+        }
+    }
+
+    /**
+     * Returns the number of terms whose children have been retrieved.
+     *
+     * @return the number of crawled terms
+     */
+    public int getCrawledTermCount() {
+        synchronized (lock) {
+            return crawledTermCount;
+        }
+    }
+
+    /**
+     * Returns the number of terms found so far, i.e., the crawled terms and
+     * the terms still to be crawled.
+     *
+     * @return the number of found terms
+     */
+    public int getFoundTermCount() {
+        synchronized (lock) {
+            return foundTerms.size();
+        }
+    }
+
+    /**
+     * Returns the number of terms whose children could not be retrieved.
+     *
+     * @return the number of failed terms
+     */
+    public int getFailedTermCount() {
+        synchronized (lock) {
+            return failedTermCount;
+        }
+    }
+
+    /**
+     * Returns true if no new lookups should be started because the user is
+     * waiting for the OLS.
+     *
+     * @return true if the crawl has to yield
+     */
+    protected boolean isInteractiveWorkPending() {
+        return TaskPipeline.isAnyPipelineBusy();
+    }
+
+    /**
+     * Retrieves the children of the pending terms until the crawl stops. Run
+     * by each crawler thread.
+     */
+    private void crawl() {
+
+        try {
+            while (true) {
+
+                String termId = takeNextTerm();
+
+                if (termId == null && isStopped()) {
+                    return;
+                }
+
+                Map<String, String> childTerms;
+
+                try {
+                    if (termId == null) {
+                        childTerms = ontologyClient.getRootTerms(ontology);
+                    } else {
+                        childTerms = ontologyClient.getTermChildren(termId, ontology, 1, null);
+                    }
+                } catch (Throwable e) {
+                    // also errors, as the thread pool does not restart the crawler threads
+                    termFailed(termId, e);
+                    continue;
+                }
+
+                termCrawled(childTerms);
+            }
+        } catch (InterruptedException e) {
+            // the crawl is over
+        }
+    }
+
+    /**
+     * Waits until the next lookup can start and returns the term to look up.
+     *
+     * @return the accession number of the next term, null for the root terms
+     * or when the crawl has stopped
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private String takeNextTerm() throws InterruptedException {
+
+        synchronized (lock) {
+            while (!stopped) {
+
+                long waitTime = YIELD_CHECK_INTERVAL;
+
+                if (!paused && !pendingTerms.isEmpty() && !isInteractiveWorkPending()) {
+
+                    long now = System.nanoTime();
+
+                    if (now - nextRequestTime >= 0) {
+                        nextRequestTime = now + requestInterval;
+                        runningLookups++;
+                        return pendingTerms.removeFirst();
+                    }
+
+                    waitTime = Math.min(waitTime, Math.max(1, (nextRequestTime - now) / 1000000));
+                }
+
+                if (pendingTerms.isEmpty() && runningLookups == 0) {
+                    break;
+                }
+
+                lock.wait(waitTime);
+            }
+        }
+
+        stop(false);
+        return null;
+    }
+
+    /**
+     * Adds the children of a crawled term to the pending terms.
+     *
+     * @param childTerms the children, key: accession number, value: term
+     * name, can be null
+     */
+    private void termCrawled(Map<String, String> childTerms) {
+
+        synchronized (lock) {
+
+            runningLookups--;
+
+            if (stopped) {
+                return;
+            }
+
+            crawledTermCount++;
+            consecutiveFailures = 0;
+
+            if (childTerms != null) {
+                for (String childId : childTerms.keySet()) {
+                    if (foundTerms.add(childId)) {
+                        pendingTerms.add(childId);
+                    }
+                }
+            }
+
+            lock.notifyAll();
+        }
+
+        fireProgressChanged();
+    }
+
+    /**
+     * Counts a failed lookup, stopping the crawl after too many failures in
+     * a row.
+     *
+     * @param termId the accession number of the term, null for the root terms
+     * @param e the error
+     */
+    private void termFailed(String termId, Throwable e) {
+
+        boolean giveUp;
+
+        synchronized (lock) {
+
+            runningLookups--;
+
+            if (stopped) {
+                return;
+            }
+
+            failedTermCount++;
+            consecutiveFailures++;
+            giveUp = consecutiveFailures >= MAXIMUM_CONSECUTIVE_FAILURES || termId == null;
+
+            lock.notifyAll();
+        }
+
+        fireProgressChanged();
+
+        if (giveUp) {
+            Util.writeToErrorLog("Error when trying to access OLS, stopped preloading " + ontology + ": ");
+            e.printStackTrace();
+            stop(true);
+        }
+    }
+
+    /**
+     * Stops the crawl and informs the listener, unless already stopped.
+     *
+     * @param cancel true if the crawl did not finish
+     */
+    private void stop(boolean cancel) {
+
+        synchronized (lock) {
+
+            if (stopped) {
+                return;
+            }
+
+            stopped = true;
+            cancelled = cancel;
+            pendingTerms.clear();
+
+            if (executor != null) {
+                executor.shutdown();
+            }
+
+            lock.notifyAll();
+        }
+
+        ProgressListener listener = progressListener;
+
+        if (listener != null) {
+            listener.crawlStopped(this);
+        }
+    }
+
+    /**
+     * Informs the listener about the progress.
+     */
+    private void fireProgressChanged() {
+
+        ProgressListener listener = progressListener;
+
+        if (listener != null) {
+            listener.progressChanged(this);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package no.uib.olsdialog.util;
+
+import java.util.List;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * A read only table model for the search results tables, holding the rows in
+ * one array per column.
+ * <p>
+ * Rows are added, replaced and removed in bulk, firing a single table event
+ * per change instead of one per row, so that tables with many thousands of
+ * rows are filled and cleared at once. The model only hands out cell values,
+ * the table renders the visible rows only.
+ * <p>
+ * Like all Swing models the model is only to be used from the event
+ * dispatching thread.
+ */
+public class ResultsTableModel extends AbstractTableModel {
+
+    /**
+     * The initial number of rows the columns have room for.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+    /**
+     * The column names.
+     */
+    private final String[] columnNames;
+    /**
+     * The column classes.
+     */
+    private final Class[] columnClasses;
+    /**
+     * The cell values, one array per column.
+     */
+    private Object[][] columns;
+    /**
+     * The number of rows.
+     */
+    private int rowCount = 0;
+
+    /**
+     * Creates a new, empty ResultsTableModel.
+     *
+     * @param columnNames the column names
+     * @param columnClasses the column classes, in the same order as the names
+     */
+    public ResultsTableModel(String[] columnNames, Class[] columnClasses) {
+
+        if (columnNames.length != columnClasses.length) {
+            throw new IllegalArgumentException("The number of column names and column classes differ.");
+        }
+
+        this.columnNames = columnNames.clone();
+        this.columnClasses = columnClasses.clone();
+        columns = new Object[columnNames.length][INITIAL_CAPACITY];
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return columnClasses[column];
+    }
+
+    public Object getValueAt(int row, int column) {
+
+        if (row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount + ".");
+        }
+
+        return columns[column][row];
+    }
+
+    /**
+     * Replaces all the rows with the given rows.
+     *
+     * @param rows the new rows, one value per column
+     */
+    public void setRows(List<Object[]> rows) {
+
+        columns = new Object[columnNames.length][Math.max(rows.size(), INITIAL_CAPACITY)];
+        rowCount = 0;
+        copyRows(rows);
+
+        fireTableDataChanged();
+    }
+
+    /**
+     * Adds the given rows at the end of the table.
+     *
+     * @param rows the rows to add, one value per column
+     */
+    public void addRows(List<Object[]> rows) {
+
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        int firstRow = rowCount;
+        ensureCapacity(rowCount + rows.size());
+        copyRows(rows);
+
+        fireTableRowsInserted(firstRow, rowCount - 1);
+    }
+
+    /**
+     * Adds the given row at the end of the table.
+     *
+     * @param row the row to add, one value per column
+     */
+    public void addRow(Object[] row) {
+
+        ensureCapacity(rowCount + 1);
+        setRow(rowCount++, row);
+
+        fireTableRowsInserted(rowCount - 1, rowCount - 1);
+    }
+
+    /**
+     * Removes all the rows.
+     */
+    public void clear() {
+
+        if (rowCount == 0) {
+            return;
+        }
+
+        columns = new Object[columnNames.length][INITIAL_CAPACITY];
+        rowCount = 0;
+
+        fireTableDataChanged();
+    }
+
+    /**
+     * Copies the given rows to the end of the columns, which have to have
+     * room for them.
+     *
+     * @param rows the rows to copy
+     */
+    private void copyRows(List<Object[]> rows) {
+        for (Object[] row : rows) {
+            setRow(rowCount++, row);
+        }
+    }
+
+    /**
+     * Sets the values of the given row.
+     *
+     * @param rowIndex the row index
+     * @param row the values, one per column
+     */
+    private void setRow(int rowIndex, Object[] row) {
+
+        if (row.length != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " values, got " + row.length + ".");
+        }
+
+        for (int column = 0; column < columns.length; column++) {
+            columns[column][rowIndex] = row[column];
+        }
+    }
+
+    /**
+     * Grows the columns so that they have room for the given number of rows.
+     *
+     * @param capacity the number of rows needed
+     */
+    private void ensureCapacity(int capacity) {
+
+        if (capacity <= columns[0].length) {
+            return;
+        }
+
+        int newCapacity = Math.max(capacity, columns[0].length * 2);
+
+        for (int column = 0; column < columns.length; column++) {
+            Object[] newColumn = new Object[newCapacity];
+            System.arraycopy(columns[column], 0, newColumn, 0, rowCount);
+            columns[column] = newColumn;
+        }
+    }
+}
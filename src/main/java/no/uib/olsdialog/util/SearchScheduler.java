@@ -0,0 +1,104 @@
+package no.uib.olsdialog.util;
+
+/**
+ * A task channel for searches triggered while the user is typing, e.g., the
+ * term name search. A search is only started when the user has stopped typing
+ * for a while (debouncing), and each new search cancels the previous one.
+ * Results from a search that has been superseded by a newer one are never
+ * delivered.
+ * <p>
+ * The time to wait adapts to how fast the user types and how long the
+ * searches take: fast typists get short delays, while slow searches are
+ * delayed a bit more to avoid starting searches that will be superseded
+ * anyway.
+ */
+public class SearchScheduler extends TaskChannel {
+
+    /**
+     * The minimum time to wait after the last key stroke, in milliseconds.
+     */
+    public static final long MINIMUM_DELAY = 150;
+    /**
+     * The maximum time to wait after the last key stroke, in milliseconds.
+     */
+    public static final long MAXIMUM_DELAY = 1000;
+    /**
+     * Pauses longer than this are not counted as part of the typing, in
+     * milliseconds.
+     */
+    private static final long MAXIMUM_TYPING_INTERVAL = 2000;
+    /**
+     * The weight given to a new measurement in the running averages.
+     */
+    private static final double SMOOTHING_FACTOR = 0.3;
+    /**
+     * The time of the last search request, -1 if none.
+     */
+    private long lastRequestTime = -1;
+    /**
+     * The running average of the time between key strokes, in milliseconds.
+     */
+    private double typingInterval = 250;
+    /**
+     * The running average of the time a search takes, in milliseconds.
+     */
+    private double searchLatency = 300;
+
+    /**
+     * Creates a new SearchScheduler.
+     *
+     * @param pipeline the pipeline running the searches
+     */
+    public SearchScheduler(TaskPipeline pipeline) {
+        super(pipeline);
+    }
+
+    /**
+     * Schedules a new search, cancelling the previous one. The search is
+     * started after the current delay unless another search is scheduled
+     * before then.
+     *
+     * @param <T> the type of the search result
+     * @param task the search
+     */
+    public synchronized <T> void schedule(BackgroundTask<T> task) {
+
+        long now = System.currentTimeMillis();
+
+        if (lastRequestTime >= 0 && now - lastRequestTime < MAXIMUM_TYPING_INTERVAL) {
+            typingInterval = smooth(typingInterval, now - lastRequestTime);
+        }
+
+        lastRequestTime = now;
+
+        schedule(task, getDelay());
+    }
+
+    /**
+     * Returns the time to wait after a key stroke before starting the search,
+     * i.e., a bit longer than the average time between key strokes, plus a
+     * fraction of the average search time.
+     *
+     * @return the delay in milliseconds
+     */
+    public synchronized long getDelay() {
+        long delay = Math.round(1.5 * typingInterval + 0.25 * searchLatency);
+        return Math.max(MINIMUM_DELAY, Math.min(MAXIMUM_DELAY, delay));
+    }
+
+    @Override
+    protected synchronized void taskCompleted(long duration) {
+        searchLatency = smooth(searchLatency, duration);
+    }
+
+    /**
+     * Returns the running average updated with a new measurement.
+     *
+     * @param average the current average
+     * @param measurement the new measurement
+     * @return the updated average
+     */
+    private static double smooth(double average, double measurement) {
+        return (1 - SMOOTHING_FACTOR) * average + SMOOTHING_FACTOR * measurement;
+    }
+}
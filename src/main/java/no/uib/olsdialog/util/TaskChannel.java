@@ -0,0 +1,98 @@
+package no.uib.olsdialog.util;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A sequence of tasks where each new task supersedes the previous one, e.g.,
+ * loading the meta data of the selected term. Submitting a task cancels the
+ * previous task, and results from a superseded task are never delivered, so
+ * that a slow answer for an old selection cannot overwrite the answer for the
+ * current one.
+ */
+public class TaskChannel {
+
+    /**
+     * The pipeline running the tasks.
+     */
+    private final TaskPipeline pipeline;
+    /**
+     * The version of the current task, incremented for every new task.
+     */
+    private final AtomicLong version = new AtomicLong();
+    /**
+     * The scheduled or running task, null if none.
+     */
+    private Future<?> pendingTask;
+
+    /**
+     * Creates a new TaskChannel.
+     *
+     * @param pipeline the pipeline running the tasks
+     */
+    public TaskChannel(TaskPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Runs the given task in the background, superseding the previous task.
+     *
+     * @param <T> the type of the task result
+     * @param task the task to run
+     */
+    public <T> void submit(BackgroundTask<T> task) {
+        schedule(task, 0);
+    }
+
+    /**
+     * Runs the given task in the background after the given delay,
+     * superseding the previous task.
+     *
+     * @param <T> the type of the task result
+     * @param task the task to run
+     * @param delay the delay in milliseconds
+     */
+    public synchronized <T> void schedule(BackgroundTask<T> task, long delay) {
+
+        task.setChannel(this, version.incrementAndGet());
+
+        if (pendingTask != null) {
+            pendingTask.cancel(true);
+        }
+
+        pendingTask = pipeline.start(task, this, delay);
+    }
+
+    /**
+     * Cancels the scheduled or running task, if any. The results of the task
+     * will not be delivered.
+     */
+    public synchronized void cancel() {
+
+        version.incrementAndGet();
+
+        if (pendingTask != null) {
+            pendingTask.cancel(true);
+            pendingTask = null;
+        }
+    }
+
+    /**
+     * Returns true if the task with the given version is the current task.
+     *
+     * @param taskVersion the version of the task
+     * @return true if the task is the current one
+     */
+    boolean isCurrent(long taskVersion) {
+        return version.get() == taskVersion;
+    }
+
+    /**
+     * Called when the background part of a task has completed, also if the
+     * task has been superseded. Does nothing by default.
+     *
+     * @param duration the duration of the background part in milliseconds
+     */
+    protected void taskCompleted(long duration) {
+    }
+}
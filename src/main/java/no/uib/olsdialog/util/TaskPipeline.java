@@ -0,0 +1,224 @@
+package no.uib.olsdialog.util;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs the slow parts of the user actions, e.g., the lookups in the OLS, in
+ * background threads, keeping the Event Dispatch Thread free. While tasks are
+ * running a progress bar is shown.
+ * <p>
+ * Tasks are either run directly, using execute, or through a TaskChannel,
+ * where each new task supersedes the previous one, e.g., the meta data of the
+ * previously selected term is of no interest once a new term is selected.
+ */
+public class TaskPipeline {
+
+    /**
+     * The number of threads running tasks. Matches the default number of
+     * concurrent OLS connections.
+     */
+    private static final int THREAD_COUNT = 8;
+    /**
+     * The executor running the tasks of all pipelines.
+     */
+    private static final ScheduledExecutorService executor =
+            new ScheduledThreadPoolExecutor(THREAD_COUNT, new DaemonThreadFactory("OlsTask"));
+    /**
+     * The number of tasks running in all pipelines.
+     */
+    private static final AtomicInteger allRunningTasks = new AtomicInteger();
+    /**
+     * The number of tasks running in this pipeline.
+     */
+    private final AtomicInteger runningTasks = new AtomicInteger();
+    /**
+     * The progress bar shown while tasks are running, can be null.
+     */
+    private JProgressBar progressBar;
+
+    /**
+     * Creates a new TaskPipeline without a progress bar.
+     */
+    public TaskPipeline() {
+    }
+
+    /**
+     * Sets the progress bar to show while tasks are running. The progress bar
+     * is made indeterminate and hidden when no tasks are running.
+     *
+     * @param progressBar the progress bar, can be null
+     */
+    public void setProgressBar(JProgressBar progressBar) {
+        this.progressBar = progressBar;
+        if (progressBar != null) {
+            progressBar.setIndeterminate(true);
+            progressBar.setVisible(isBusy());
+        }
+    }
+
+    /**
+     * Creates a new channel running its tasks in this pipeline.
+     *
+     * @return the new channel
+     */
+    public TaskChannel createChannel() {
+        return new TaskChannel(this);
+    }
+
+    /**
+     * Runs the given task in the background. The task is never superseded.
+     *
+     * @param <T> the type of the task result
+     * @param task the task to run
+     */
+    public <T> void execute(BackgroundTask<T> task) {
+        task.setChannel(null, 0);
+        start(task, null, 0);
+    }
+
+    /**
+     * Returns true if tasks are running in this pipeline.
+     *
+     * @return true if tasks are running
+     */
+    public boolean isBusy() {
+        return runningTasks.get() > 0;
+    }
+
+    /**
+     * Returns true if tasks are running in any pipeline, i.e., if the user is
+     * waiting for the OLS.
+     *
+     * @return true if tasks are running in any pipeline
+     */
+    public static boolean isAnyPipelineBusy() {
+        return allRunningTasks.get() > 0;
+    }
+
+    /**
+     * Starts the given task after the given delay.
+     *
+     * @param <T> the type of the task result
+     * @param task the task to run
+     * @param channel the channel the task belongs to, null if none
+     * @param delay the delay in milliseconds
+     * @return the future of the task, used to cancel it
+     */
+    <T> Future<?> start(final BackgroundTask<T> task, final TaskChannel channel, long delay) {
+
+        Runnable runner = new Runnable() {
+
+            public void run() {
+                if (task.isCurrent()) {
+                    taskStarted();
+                    try {
+                        runTask(task, channel);
+                    } finally {
+                        taskFinished();
+                    }
+                }
+            }
+        };
+
+        if (delay > 0) {
+            return executor.schedule(runner, delay, TimeUnit.MILLISECONDS);
+        } else {
+            return executor.submit(runner);
+        }
+    }
+
+    /**
+     * Runs the background part of the given task and hands the result to the
+     * Event Dispatch Thread, unless the task has been superseded.
+     *
+     * @param <T> the type of the task result
+     * @param task the task to run
+     * @param channel the channel the task belongs to, null if none
+     */
+    private <T> void runTask(final BackgroundTask<T> task, TaskChannel channel) {
+
+        SwingUtilities.invokeLater(new Runnable() {
+
+            public void run() {
+                if (task.isCurrent()) {
+                    task.started();
+                }
+            }
+        });
+
+        long start = System.currentTimeMillis();
+
+        try {
+            final T result = task.doInBackground();
+
+            if (channel != null) {
+                channel.taskCompleted(System.currentTimeMillis() - start);
+            }
+
+            SwingUtilities.invokeLater(new Runnable() {
+
+                public void run() {
+                    if (task.isCurrent()) {
+                        task.succeeded(result);
+                    }
+                }
+            });
+        } catch (final Exception e) {
+
+            if (!task.isCurrent()) {
+                // cancelled or superseded, the error is of no interest
+                return;
+            }
+
+            SwingUtilities.invokeLater(new Runnable() {
+
+                public void run() {
+                    if (task.isCurrent()) {
+                        task.failed(e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Counts a task as started and shows the progress bar.
+     */
+    private void taskStarted() {
+        allRunningTasks.incrementAndGet();
+        runningTasks.incrementAndGet();
+        updateProgressBar();
+    }
+
+    /**
+     * Counts a task as finished and hides the progress bar if no other tasks
+     * are running.
+     */
+    private void taskFinished() {
+        allRunningTasks.decrementAndGet();
+        runningTasks.decrementAndGet();
+        updateProgressBar();
+    }
+
+    /**
+     * Shows the progress bar if tasks are running and hides it otherwise. The
+     * update is done on the Event Dispatch Thread, after the results of the
+     * tasks have been handed over.
+     */
+    private void updateProgressBar() {
+        SwingUtilities.invokeLater(new Runnable() {
+
+            public void run() {
+                if (progressBar != null) {
+                    progressBar.setVisible(isBusy());
+                }
+            }
+        });
+    }
+}
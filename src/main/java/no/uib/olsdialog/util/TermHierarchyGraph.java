@@ -0,0 +1,722 @@
+package no.uib.olsdialog.util;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.awt.geom.GeneralPath;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.AbstractAction;
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.ToolTipManager;
+import no.uib.olsdialog.client.TermAncestors;
+
+/**
+ * Draws the ancestor graph of a term with Java2D, the root terms at the top
+ * and the term itself at the bottom.
+ * <p>
+ * The graph is laid out in layers: each term is put one layer below its
+ * lowest parent, links spanning several layers are routed through dummy
+ * nodes, and the order within each layer is improved by a few sweeps moving
+ * each term towards the average position of its neighbours in the layer
+ * above or below, which reduces the number of crossing links.
+ * <p>
+ * The graph is zoomed with the mouse wheel while holding the control key, or
+ * with control plus, control minus and control zero. Put it in a scroll pane
+ * to scroll.
+ */
+public class TermHierarchyGraph extends JComponent {
+
+    /**
+     * The smallest zoom factor.
+     */
+    public static final double MINIMUM_ZOOM = 0.2;
+    /**
+     * The largest zoom factor.
+     */
+    public static final double MAXIMUM_ZOOM = 4;
+    /**
+     * The zoom factor change per step.
+     */
+    private static final double ZOOM_STEP = 1.2;
+    /**
+     * The number of ordering sweeps, half of them downwards.
+     */
+    private static final int ORDERING_SWEEPS = 8;
+    /**
+     * The maximum width of the term names, longer names are cut.
+     */
+    private static final int MAXIMUM_LABEL_WIDTH = 220;
+    /**
+     * The padding around the term names in the boxes.
+     */
+    private static final int BOX_PADDING = 6;
+    /**
+     * The horizontal space between two boxes in a layer.
+     */
+    private static final int HORIZONTAL_GAP = 20;
+    /**
+     * The vertical space between two layers.
+     */
+    private static final int VERTICAL_GAP = 40;
+    /**
+     * The margin around the graph.
+     */
+    private static final int MARGIN = 20;
+    /**
+     * The fill color of the boxes.
+     */
+    private static final Color BOX_COLOR = new Color(230, 238, 250);
+    /**
+     * The fill color of the box of the term itself.
+     */
+    private static final Color SELECTED_BOX_COLOR = new Color(255, 235, 180);
+    /**
+     * The color of the box borders and the links.
+     */
+    private static final Color LINE_COLOR = new Color(90, 110, 140);
+    /**
+     * The message shown while there is no graph, e.g., "Loading...".
+     */
+    private String message;
+    /**
+     * The nodes, the terms and the dummy nodes.
+     */
+    private final List<Node> nodes = new ArrayList<Node>();
+    /**
+     * The nodes of each layer, in drawing order.
+     */
+    private final List<List<Node>> layers = new ArrayList<List<Node>>();
+    /**
+     * The links, each from a term through its dummy nodes to a parent.
+     */
+    private final List<List<Node>> links = new ArrayList<List<Node>>();
+    /**
+     * The size of the graph at zoom factor one.
+     */
+    private final Dimension graphSize = new Dimension();
+    /**
+     * The zoom factor.
+     */
+    private double zoom = 1;
+
+    /**
+     * Creates a new TermHierarchyGraph showing the given message until the
+     * graph is set.
+     *
+     * @param message the message, e.g., "Loading..."
+     */
+    public TermHierarchyGraph(String message) {
+
+        this.message = message;
+
+        setOpaque(true);
+        setBackground(Color.WHITE);
+        setFont(new Font("Dialog", Font.PLAIN, 11));
+        ToolTipManager.sharedInstance().registerComponent(this);
+
+        addMouseWheelListener(new MouseWheelListener() {
+
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if ((e.getModifiers() & InputEvent.CTRL_MASK) != 0) {
+                    setZoom(zoom * Math.pow(ZOOM_STEP, -e.getWheelRotation()), e.getPoint());
+                } else if (getParent() != null) {
+                    // let the scroll pane scroll
+                    getParent().dispatchEvent(SwingUtilities.convertMouseEvent(TermHierarchyGraph.this, e, getParent()));
+                }
+            }
+        });
+
+        addZoomKey(KeyEvent.VK_PLUS, ZOOM_STEP);
+        addZoomKey(KeyEvent.VK_EQUALS, ZOOM_STEP);
+        addZoomKey(KeyEvent.VK_ADD, ZOOM_STEP);
+        addZoomKey(KeyEvent.VK_MINUS, 1 / ZOOM_STEP);
+        addZoomKey(KeyEvent.VK_SUBTRACT, 1 / ZOOM_STEP);
+        addZoomKey(KeyEvent.VK_0, 0);
+    }
+
+    /**
+     * Shows the given message instead of the graph.
+     *
+     * @param message the message
+     */
+    public void setMessage(String message) {
+        this.message = message;
+        nodes.clear();
+        layers.clear();
+        links.clear();
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Lays out and shows the given ancestor graph.
+     *
+     * @param ancestors the ancestor graph
+     */
+    public void setAncestors(TermAncestors ancestors) {
+
+        message = null;
+        nodes.clear();
+        layers.clear();
+        links.clear();
+
+        createNodes(ancestors);
+        orderLayers();
+        placeNodes();
+
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Returns the zoom factor.
+     *
+     * @return the zoom factor
+     */
+    public double getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Sets the zoom factor, keeping the center of the visible area in place.
+     *
+     * @param zoom the zoom factor, limited to MINIMUM_ZOOM and MAXIMUM_ZOOM
+     */
+    public void setZoom(double zoom) {
+        Rectangle visible = getVisibleRect();
+        setZoom(zoom, new Point(visible.x + visible.width / 2, visible.y + visible.height / 2));
+    }
+
+    /**
+     * Returns the bounds of the box of the term itself, at the current zoom,
+     * e.g., to scroll to it.
+     *
+     * @return the bounds, null if there is no graph
+     */
+    public Rectangle getTermBounds() {
+
+        for (Node node : nodes) {
+            if (node.selected) {
+                return new Rectangle((int) (node.x * zoom), (int) (node.y * zoom),
+                        (int) Math.ceil(node.width * zoom), (int) Math.ceil(node.height * zoom));
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+
+        if (message != null) {
+            FontMetrics fontMetrics = getFontMetrics(getFont());
+            return new Dimension(fontMetrics.stringWidth(message) + 2 * MARGIN, fontMetrics.getHeight() + 2 * MARGIN);
+        }
+
+        return new Dimension((int) Math.ceil(graphSize.width * zoom), (int) Math.ceil(graphSize.height * zoom));
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent event) {
+
+        double x = event.getX() / zoom;
+        double y = event.getY() / zoom;
+
+        for (Node node : nodes) {
+            if (node.termId != null && x >= node.x && x < node.x + node.width && y >= node.y && y < node.y + node.height) {
+                return "[" + node.termId + "] " + node.termName;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+
+        Graphics2D g2 = (Graphics2D) g.create();
+
+        try {
+            g2.setColor(getBackground());
+            g2.fillRect(0, 0, getWidth(), getHeight());
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2.setFont(getFont());
+
+            if (message != null) {
+                g2.setColor(Color.GRAY);
+                g2.drawString(message, MARGIN, MARGIN + g2.getFontMetrics().getAscent());
+                return;
+            }
+
+            g2.scale(zoom, zoom);
+            paintLinks(g2);
+            paintBoxes(g2);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    /**
+     * Paints the links, each as a line from the top of the term box through
+     * its dummy nodes to the bottom of the parent box, ending in an arrow.
+     *
+     * @param g2 the graphics
+     */
+    private void paintLinks(Graphics2D g2) {
+
+        g2.setColor(LINE_COLOR);
+        g2.setStroke(new BasicStroke(1f));
+
+        for (List<Node> link : links) {
+
+            Node child = link.get(0);
+            Node parent = link.get(link.size() - 1);
+
+            GeneralPath path = new GeneralPath();
+            path.moveTo((float) child.getCenterX(), (float) child.y);
+
+            for (int i = 1; i < link.size() - 1; i++) {
+                path.lineTo((float) link.get(i).getCenterX(), (float) link.get(i).y);
+            }
+
+            double endX = parent.getCenterX();
+            double endY = parent.y + parent.height;
+            path.lineTo((float) endX, (float) endY);
+            g2.draw(path);
+
+            // the arrow head, pointing at the parent
+            Node previous = link.get(link.size() - 2);
+            double angle = Math.atan2(endY - previous.y, endX - previous.getCenterX());
+            GeneralPath arrow = new GeneralPath();
+            arrow.moveTo((float) endX, (float) endY);
+            arrow.lineTo((float) (endX - 7 * Math.cos(angle - 0.4)), (float) (endY - 7 * Math.sin(angle - 0.4)));
+            arrow.lineTo((float) (endX - 7 * Math.cos(angle + 0.4)), (float) (endY - 7 * Math.sin(angle + 0.4)));
+            arrow.closePath();
+            g2.fill(arrow);
+        }
+    }
+
+    /**
+     * Paints the term boxes with the term names.
+     *
+     * @param g2 the graphics
+     */
+    private void paintBoxes(Graphics2D g2) {
+
+        FontMetrics fontMetrics = g2.getFontMetrics();
+
+        for (Node node : nodes) {
+
+            if (node.termId == null) {
+                continue;
+            }
+
+            int x = (int) Math.round(node.x);
+            int y = (int) Math.round(node.y);
+
+            g2.setColor(node.selected ? SELECTED_BOX_COLOR : BOX_COLOR);
+            g2.fillRoundRect(x, y, node.width, node.height, 8, 8);
+            g2.setColor(LINE_COLOR);
+            g2.drawRoundRect(x, y, node.width, node.height, 8, 8);
+            g2.setColor(Color.BLACK);
+            g2.drawString(node.label, x + BOX_PADDING, y + BOX_PADDING + fontMetrics.getAscent());
+        }
+    }
+
+    /**
+     * Creates a node per term, assigns the layers and adds the dummy nodes of
+     * the links spanning several layers.
+     *
+     * @param ancestors the ancestor graph
+     */
+    private void createNodes(TermAncestors ancestors) {
+
+        FontMetrics fontMetrics = getFontMetrics(getFont());
+        Map<String, Node> termNodes = new HashMap<String, Node>();
+
+        for (Map.Entry<String, String> term : ancestors.getTermNames().entrySet()) {
+            Node node = new Node(term.getKey(), term.getValue());
+            node.selected = term.getKey().equals(ancestors.getTermId());
+            node.label = getLabel(term.getValue() == null ? term.getKey() : term.getValue(), fontMetrics);
+            node.width = fontMetrics.stringWidth(node.label) + 2 * BOX_PADDING;
+            node.height = fontMetrics.getHeight() + 2 * BOX_PADDING;
+            termNodes.put(term.getKey(), node);
+            nodes.add(node);
+        }
+
+        // each term one layer below its lowest parent, the roots at the top
+        Map<String, Integer> termLayers = new HashMap<String, Integer>();
+        int layerCount = 0;
+
+        for (Node node : new ArrayList<Node>(nodes)) {
+            node.layer = getLayer(node.termId, ancestors, termLayers, new HashMap<String, Boolean>());
+            layerCount = Math.max(layerCount, node.layer + 1);
+        }
+
+        for (int i = 0; i < layerCount; i++) {
+            layers.add(new ArrayList<Node>());
+        }
+
+        for (Node node : new ArrayList<Node>(nodes)) {
+            layers.get(node.layer).add(node);
+        }
+
+        // the links, through a dummy node in each layer crossed
+        for (Node child : new ArrayList<Node>(nodes)) {
+            for (String parentId : ancestors.getParents(child.termId)) {
+
+                Node parent = termNodes.get(parentId);
+
+                if (parent == null || parent.layer >= child.layer) {
+                    continue;
+                }
+
+                List<Node> link = new ArrayList<Node>();
+                link.add(child);
+                Node below = child;
+
+                for (int layer = child.layer - 1; layer > parent.layer; layer--) {
+                    Node dummy = new Node(null, null);
+                    dummy.layer = layer;
+                    dummy.height = fontMetrics.getHeight() + 2 * BOX_PADDING;
+                    nodes.add(dummy);
+                    layers.get(layer).add(dummy);
+                    below.upperNeighbours.add(dummy);
+                    dummy.lowerNeighbours.add(below);
+                    link.add(dummy);
+                    below = dummy;
+                }
+
+                below.upperNeighbours.add(parent);
+                parent.lowerNeighbours.add(below);
+                link.add(parent);
+                links.add(link);
+            }
+        }
+    }
+
+    /**
+     * Returns the layer of the given term, i.e., one below its lowest parent.
+     *
+     * @param termId the accession number of the term
+     * @param ancestors the ancestor graph
+     * @param termLayers the layers computed so far
+     * @param visiting the terms whose layers are being computed, used to
+     * break cycles
+     * @return the layer, 0 for the root terms
+     */
+    private int getLayer(String termId, TermAncestors ancestors, Map<String, Integer> termLayers,
+            Map<String, Boolean> visiting) {
+
+        Integer layer = termLayers.get(termId);
+
+        if (layer != null) {
+            return layer;
+        }
+
+        if (visiting.put(termId, Boolean.TRUE) != null) {
+            return 0;
+        }
+
+        int result = 0;
+
+        for (String parentId : ancestors.getParents(termId)) {
+            result = Math.max(result, getLayer(parentId, ancestors, termLayers, visiting) + 1);
+        }
+
+        visiting.remove(termId);
+        termLayers.put(termId, result);
+
+        return result;
+    }
+
+    /**
+     * Orders the nodes within each layer by sweeping down and up, sorting
+     * each layer by the average position of the neighbours in the layer
+     * above, respectively below.
+     */
+    private void orderLayers() {
+
+        for (List<Node> layer : layers) {
+            setPositions(layer);
+        }
+
+        for (int sweep = 0; sweep < ORDERING_SWEEPS; sweep++) {
+
+            boolean down = sweep % 2 == 0;
+
+            if (down) {
+                for (int i = 1; i < layers.size(); i++) {
+                    sortByBarycenter(layers.get(i), true);
+                }
+            } else {
+                for (int i = layers.size() - 2; i >= 0; i--) {
+                    sortByBarycenter(layers.get(i), false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorts the given layer by the average position of the neighbours of
+     * each node in the adjacent layer. Nodes without such neighbours keep
+     * their position.
+     *
+     * @param layer the layer
+     * @param upper true to use the neighbours in the layer above
+     */
+    private void sortByBarycenter(List<Node> layer, boolean upper) {
+
+        for (Node node : layer) {
+
+            List<Node> neighbours = upper ? node.upperNeighbours : node.lowerNeighbours;
+
+            if (!neighbours.isEmpty()) {
+                double sum = 0;
+                for (Node neighbour : neighbours) {
+                    sum += neighbour.position;
+                }
+                node.barycenter = sum / neighbours.size();
+            } else {
+                node.barycenter = node.position;
+            }
+        }
+
+        Collections.sort(layer, new Comparator<Node>() {
+
+            public int compare(Node node1, Node node2) {
+                return Double.compare(node1.barycenter, node2.barycenter);
+            }
+        });
+
+        setPositions(layer);
+    }
+
+    /**
+     * Sets the position of each node in the given layer to its index.
+     *
+     * @param layer the layer
+     */
+    private void setPositions(List<Node> layer) {
+        for (int i = 0; i < layer.size(); i++) {
+            layer.get(i).position = i;
+        }
+    }
+
+    /**
+     * Sets the coordinates of the nodes: the layers are placed below each
+     * other and each layer is centered horizontally.
+     */
+    private void placeNodes() {
+
+        int[] layerWidths = new int[layers.size()];
+        int maximumWidth = 0;
+
+        for (int i = 0; i < layers.size(); i++) {
+            for (Node node : layers.get(i)) {
+                layerWidths[i] += node.width + HORIZONTAL_GAP;
+            }
+            layerWidths[i] -= HORIZONTAL_GAP;
+            maximumWidth = Math.max(maximumWidth, layerWidths[i]);
+        }
+
+        int y = MARGIN;
+        int rowHeight = getFontMetrics(getFont()).getHeight() + 2 * BOX_PADDING;
+
+        for (int i = 0; i < layers.size(); i++) {
+
+            double x = MARGIN + (maximumWidth - layerWidths[i]) / 2.0;
+
+            for (Node node : layers.get(i)) {
+                node.x = x;
+                node.y = y;
+                x += node.width + HORIZONTAL_GAP;
+            }
+
+            y += rowHeight + VERTICAL_GAP;
+        }
+
+        graphSize.setSize(maximumWidth + 2 * MARGIN, y - VERTICAL_GAP + MARGIN);
+    }
+
+    /**
+     * Returns the term name cut to MAXIMUM_LABEL_WIDTH.
+     *
+     * @param termName the term name
+     * @param fontMetrics the font metrics
+     * @return the label
+     */
+    private String getLabel(String termName, FontMetrics fontMetrics) {
+
+        if (fontMetrics.stringWidth(termName) <= MAXIMUM_LABEL_WIDTH) {
+            return termName;
+        }
+
+        int length = termName.length();
+
+        while (length > 1 && fontMetrics.stringWidth(termName.substring(0, length) + "...") > MAXIMUM_LABEL_WIDTH) {
+            length--;
+        }
+
+        return termName.substring(0, length) + "...";
+    }
+
+    /**
+     * Sets the zoom factor, keeping the given point in place.
+     *
+     * @param newZoom the zoom factor, limited to MINIMUM_ZOOM and
+     * MAXIMUM_ZOOM
+     * @param anchor the point to keep in place, in component coordinates
+     */
+    private void setZoom(double newZoom, Point anchor) {
+
+        newZoom = Math.max(MINIMUM_ZOOM, Math.min(MAXIMUM_ZOOM, newZoom));
+
+        if (newZoom == zoom) {
+            return;
+        }
+
+        double factor = newZoom / zoom;
+        zoom = newZoom;
+        revalidate();
+        repaint();
+
+        if (getParent() instanceof JViewport) {
+
+            JViewport viewport = (JViewport) getParent();
+            Point position = viewport.getViewPosition();
+            int x = (int) Math.round(anchor.x * factor - (anchor.x - position.x));
+            int y = (int) Math.round(anchor.y * factor - (anchor.y - position.y));
+
+            // the view has to have its new size before it can be moved
+            viewport.validate();
+            Dimension viewSize = viewport.getViewSize();
+            Dimension extentSize = viewport.getExtentSize();
+            x = Math.max(0, Math.min(x, viewSize.width - extentSize.width));
+            y = Math.max(0, Math.min(y, viewSize.height - extentSize.height));
+            viewport.setViewPosition(new Point(x, y));
+        }
+    }
+
+    /**
+     * Binds control plus the given key to a zoom step.
+     *
+     * @param keyCode the key code
+     * @param factor the zoom factor change, 0 to reset the zoom factor to one
+     */
+    private void addZoomKey(int keyCode, final double factor) {
+
+        String name = "zoom" + keyCode;
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(keyCode, InputEvent.CTRL_MASK), name);
+        getActionMap().put(name, new AbstractAction() {
+
+            public void actionPerformed(ActionEvent e) {
+                setZoom(factor == 0 ? 1 : zoom * factor);
+            }
+        });
+    }
+
+    /**
+     * A node in the layout, either a term or a dummy node on a link spanning
+     * several layers.
+     */
+    private static class Node {
+
+        /**
+         * The accession number, null for a dummy node.
+         */
+        private final String termId;
+        /**
+         * The term name, null for a dummy node.
+         */
+        private final String termName;
+        /**
+         * The text shown in the box.
+         */
+        private String label;
+        /**
+         * True for the term whose ancestors are shown.
+         */
+        private boolean selected = false;
+        /**
+         * The layer, 0 for the top layer.
+         */
+        private int layer;
+        /**
+         * The index in the layer.
+         */
+        private int position;
+        /**
+         * The average position of the neighbours, used for the ordering.
+         */
+        private double barycenter;
+        /**
+         * The neighbours in the layer above, i.e., the parents or dummy
+         * nodes leading to them.
+         */
+        private final List<Node> upperNeighbours = new ArrayList<Node>();
+        /**
+         * The neighbours in the layer below, i.e., the children or dummy
+         * nodes leading to them.
+         */
+        private final List<Node> lowerNeighbours = new ArrayList<Node>();
+        /**
+         * The x coordinate at zoom factor one.
+         */
+        private double x;
+        /**
+         * The y coordinate at zoom factor one.
+         */
+        private double y;
+        /**
+         * The box width, 0 for a dummy node.
+         */
+        private int width;
+        /**
+         * The box height.
+         */
+        private int height;
+
+        /**
+         * Creates a new Node.
+         *
+         * @param termId the accession number, null for a dummy node
+         * @param termName the term name, null for a dummy node
+         */
+        private Node(String termId, String termName) {
+            this.termId = termId;
+            this.termName = termName;
+        }
+
+        /**
+         * Returns the x coordinate of the center of the node.
+         *
+         * @return the x coordinate of the center
+         */
+        private double getCenterX() {
+            return x + width / 2.0;
+        }
+    }
+}
@@ -1,18 +1,30 @@
 package no.uib.olsdialog.util;
 
 import no.uib.olsdialog.OLSDialog;
+import no.uib.olsdialog.client.TermAncestors;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.MalformedURLException;
 import java.net.URL;
+import javax.imageio.ImageIO;
 
 /**
- * A simple dialog to retrieve and display the term hierarchy of a given CV
- * term.
+ * A simple dialog to display the term hierarchy of a given CV term.
+ * <p>
+ * The hierarchy is drawn from the parent relations known to the client,
+ * i.e., the local ontology and the cached terms, so the dialog opens at once
+ * and also works offline. Only if no parents are found is the hierarchy
+ * image generated by the OLS shown instead. The OLS images are retrieved and
+ * decoded in the background, and kept in a disk cache so that a hierarchy
+ * viewed before is shown again at once.
  *
  * @author Harald Barsnes
  */
@@ -38,13 +50,48 @@ public class TermHierarchyGraphViewer extends javax.swing.JDialog {
      * The horizontal padding.
      */
     final int HORIZONTAL_PADDING = 40;
+    /**
+     * The graph type of the OLS term hierarchy images, from the root terms
+     * to the term.
+     */
+    private static final String GRAPH_TYPE = "root";
+    /**
+     * The name of the folder of the term hierarchy image cache, in the local
+     * data folder.
+     */
+    private static final String IMAGE_CACHE_FOLDER_NAME = "hierarchy-images";
+    /**
+     * The maximum size of the term hierarchy image cache, in bytes.
+     */
+    private static final long MAXIMUM_IMAGE_CACHE_SIZE = 20 * 1024 * 1024;
+    /**
+     * The size of the buffer used when reading from the OLS, in characters.
+     */
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * The cache of the term hierarchy images, created on first use.
+     */
+    private static TermHierarchyImageCache imageCache;
+    /**
+     * The pipeline computing the hierarchies in the background.
+     */
+    private static final TaskPipeline taskPipeline = new TaskPipeline();
+    /**
+     * A reference to the OLS Dialog.
+     */
+    private OLSDialog olsDialog;
     /**
      * The scroll pane for the graph viewer.
      */
     private JScrollPane graphViewerScrollPane;
+    /**
+     * The graph drawn, showing a message until the hierarchy is known.
+     */
+    private TermHierarchyGraph termHierarchyGraph;
 
     /**
-     * Creates new TermHierarchyGraphViewer dialog and makes it visible.
+     * Creates new TermHierarchyGraphViewer dialog and makes it visible. The
+     * hierarchy is shown as soon as it has been computed in the background.
      *
      * @param olsDialog a reference to the OLS Dialog
      * @param modal
@@ -52,106 +99,281 @@ public class TermHierarchyGraphViewer extends javax.swing.JDialog {
      * @param termName the name of the term to search for
      * @param ontology the ontology to search in
      */
-    public TermHierarchyGraphViewer(OLSDialog olsDialog, boolean modal, String termId, String termName, String ontology) {
+    public TermHierarchyGraphViewer(OLSDialog olsDialog, boolean modal, final String termId, final String termName,
+            final String ontology) {
         super(olsDialog, modal);
 
+        this.olsDialog = olsDialog;
+
         initComponents();
 
         setTitle("Term Hierarchy: " + termId);
 
-        try {
-            // prepare the term details
-            termId = termId.replace(":", "%3A");
-            termName = termName.replace(" ", "_");
-            termName = termName.toLowerCase();
+        // show a placeholder until the hierarchy is known
+        termHierarchyGraph = new TermHierarchyGraph("Loading...");
+        termHierarchyGraph.setToolTipText("Ctrl + mouse wheel to zoom");
+        graphViewerScrollPane = new JScrollPane(termHierarchyGraph);
+        graphViewerScrollPane.setBackground(Color.WHITE);
+        graphViewerScrollPane.setOpaque(true);
+        graphViewerScrollPane.getViewport().setBackground(Color.WHITE);
+
+        getContentPane().add(graphViewerScrollPane);
+        setDialogSize(MINIMUM_DIALOG_WIDTH, MINIMUM_DIALOG_WIDTH / 2);
+
+        taskPipeline.execute(new BackgroundTask<TermAncestors>() {
+
+            @Override
+            public TermAncestors doInBackground() throws Exception {
+                return TermAncestors.getAncestors(OLSDialog.getOntologyClient(), termId, termName, ontology);
+            }
+
+            @Override
+            public void succeeded(TermAncestors ancestors) {
+                if (ancestors.hasParents()) {
+                    showGraph(ancestors);
+                } else {
+                    loadOlsImage(termId, termName, ontology, ancestors);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                // no parents known, try the image generated by the OLS
+                Util.writeToErrorLog("Error when trying to access OLS: ");
+                e.printStackTrace();
+                loadOlsImage(termId, termName, ontology, new TermAncestors(termId, termName));
+            }
+        });
+
+        setLocationRelativeTo(olsDialog);
+        setVisible(true);
+    }
 
-            // create the "search url"
-            String url = "http://www.ebi.ac.uk/ontology-lookup/generateSSFiles.do?" + "termId=" + termId
-                    + "&termName=" + termName
-                    + "&ontologyName=" + ontology
-                    + "&graphType=root";
+    /**
+     * Shows the given hierarchy and scrolls to the term, which is always at
+     * the bottom of the graph.
+     *
+     * @param ancestors the hierarchy
+     */
+    private void showGraph(TermAncestors ancestors) {
 
-            // read the contents of the returned xml file
-            URL mapPage = new URL(url);
+        termHierarchyGraph.setAncestors(ancestors);
+        termHierarchyGraph.setToolTipText(null);
 
-            BufferedReader in = new BufferedReader(new InputStreamReader(mapPage.openStream()));
+        Dimension graphSize = termHierarchyGraph.getPreferredSize();
+        setDialogSize(graphSize.width, graphSize.height);
 
-            String inputLine;
-            String contents = "";
+        // invoke later to give time for the scroll bars to update
+        SwingUtilities.invokeLater(new Runnable() {
 
-            while ((inputLine = in.readLine()) != null) {
-                contents += inputLine;
+            public void run() {
+                Rectangle termBounds = termHierarchyGraph.getTermBounds();
+                if (termBounds != null) {
+                    termHierarchyGraph.scrollRectToVisible(termBounds);
+                }
             }
+        });
+    }
 
-            // and extract the image file reference from the xml file
-            String imageFile = contents.substring(
-                    contents.lastIndexOf("<imgFile>") + "<imgFile>".length(), contents.lastIndexOf("</imgFile>"));
+    /**
+     * Retrieves the term hierarchy image generated by the OLS in the
+     * background and shows it. If the image cannot be retrieved, e.g., when
+     * offline, the given hierarchy is shown instead.
+     *
+     * @param termId the accession number of the term
+     * @param termName the name of the term
+     * @param ontology the ontology of the term
+     * @param ancestors the hierarchy to show if the image cannot be retrieved
+     */
+    private void loadOlsImage(final String termId, final String termName, final String ontology,
+            final TermAncestors ancestors) {
 
-            // create the image file url
-            URL imageUrlAsUrl = new URL("http://www.ebi.ac.uk/ontology-lookup/serveImgFile.do?imgFileName=" + imageFile);
+        taskPipeline.execute(new BackgroundTask<ImageIcon>() {
 
-            // create the graph image and add it to the scroll pane
-            java.awt.Image image = Toolkit.getDefaultToolkit().createImage(imageUrlAsUrl);
-            ImageIcon ii = new ImageIcon(image);
-            JLabel label = new JLabel(ii);
-            label.setBackground(Color.WHITE);
-            label.setOpaque(true);
+            @Override
+            public ImageIcon doInBackground() throws Exception {
+                return getOlsImage(termId, termName, ontology);
+            }
+
+            @Override
+            public void succeeded(ImageIcon ii) {
 
-            // add some padding to the size of the label
-            int width = ii.getIconWidth() + HORIZONTAL_PADDING;
-            int height = ii.getIconHeight() + VERTICAL_PADDING;
+                JLabel label = new JLabel(ii);
+                label.setBackground(Color.WHITE);
+                label.setOpaque(true);
 
-            label.setPreferredSize(new Dimension(width, height));
+                // add some padding to the size of the label
+                int width = ii.getIconWidth() + HORIZONTAL_PADDING;
+                int height = ii.getIconHeight() + VERTICAL_PADDING;
 
-            // add the label to the scroll pane
-            graphViewerScrollPane = new JScrollPane(label);
-            graphViewerScrollPane.setBackground(Color.WHITE);
-            graphViewerScrollPane.setOpaque(true);
+                label.setPreferredSize(new Dimension(width, height));
+                graphViewerScrollPane.setViewportView(label);
+                setDialogSize(width, height);
 
-            getContentPane().add(graphViewerScrollPane);
+                // invoke later to give time for the scroll bar to update
+                SwingUtilities.invokeLater(new Runnable() {
 
-            // make sure the dialog does not become too big (or too small)
-            if (width > MAXIMUM_DIALOG_WIDTH) {
-                width = MAXIMUM_DIALOG_WIDTH;
-            } else if (width < MINIMUM_DIALOG_WIDTH) {
-                width = MINIMUM_DIALOG_WIDTH;
+                    public void run() {
+                        // move the vertical scroll bar to the bottom to make sure
+                        // the selected node is showing (the selected node is always
+                        // at the bottom of the graph)
+                        graphViewerScrollPane.getVerticalScrollBar().setValue(graphViewerScrollPane.getVerticalScrollBar().getMaximum());
+                    }
+                });
             }
 
-            if (height > MAXIMUM_DIALOG_HEIGHT) {
-                height = MAXIMUM_DIALOG_HEIGHT;
+            @Override
+            public void failed(Exception e) {
+                Util.writeToErrorLog("Error Opening Term Hierarcy: ");
+                e.printStackTrace();
+                showGraph(ancestors);
             }
+        });
+    }
 
-            this.setSize(width + 50, height + 50); // have to add additional size due to possible scroll bars
+    /**
+     * Returns the term hierarchy image generated by the OLS, from the image
+     * cache if viewed before, and else retrieved from the OLS and added to
+     * the cache. The image is decoded here, i.e., in the background.
+     *
+     * @param termId the accession number of the term
+     * @param termName the name of the term
+     * @param ontology the ontology of the term
+     * @return the image
+     * @throws IOException if the image cannot be retrieved or decoded
+     */
+    private static ImageIcon getOlsImage(String termId, String termName, String ontology) throws IOException {
 
-            // invoke later to give time for the scroll bar to update
-            SwingUtilities.invokeLater(new Runnable() {
+        TermHierarchyImageCache cache = getImageCache();
+        byte[] imageData = null;
 
-                public void run() {
-                    // move the vertical scroll bar to the bottom to make sure
-                    // the selected node is showing (the selected node is always
-                    // at the bottom of the graph)
-                    graphViewerScrollPane.getVerticalScrollBar().setValue(graphViewerScrollPane.getVerticalScrollBar().getMaximum());
-                }
-            });
-
-        } catch (MalformedURLException e) {
-            JOptionPane.showMessageDialog(
-                    olsDialog,
-                    "An error occured when opening the term hierarcy.",
-                    "Error Opening Term Hierarcy", JOptionPane.ERROR_MESSAGE);
-            Util.writeToErrorLog("Error Opening Term Hierarcy: ");
-            e.printStackTrace();
+        try {
+            imageData = cache.get(ontology, termId, GRAPH_TYPE);
         } catch (IOException e) {
-            JOptionPane.showMessageDialog(
-                    olsDialog,
-                    "An error occured when opening the term hierarcy.",
-                    "Error Opening Term Hierarcy", JOptionPane.ERROR_MESSAGE);
-            Util.writeToErrorLog("Error Opening Term Hierarcy: ");
+            Util.writeToErrorLog("Error reading cached term hierarchy: ");
             e.printStackTrace();
         }
 
+        if (imageData == null) {
+
+            imageData = downloadOlsImage(termId, termName, ontology);
+
+            try {
+                cache.put(ontology, termId, GRAPH_TYPE, imageData);
+            } catch (IOException e) {
+                Util.writeToErrorLog("Error caching term hierarchy: ");
+                e.printStackTrace();
+            }
+        }
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageData));
+
+        if (image == null) {
+            throw new IOException("Could not decode the term hierarchy image of " + termId + ".");
+        }
+
+        return new ImageIcon(image);
+    }
+
+    /**
+     * Retrieves the term hierarchy image generated by the OLS. The OLS first
+     * generates the image and returns its file name, and then serves the
+     * image file.
+     *
+     * @param termId the accession number of the term
+     * @param termName the name of the term
+     * @param ontology the ontology of the term
+     * @return the encoded image
+     * @throws IOException if the image cannot be retrieved
+     */
+    private static byte[] downloadOlsImage(String termId, String termName, String ontology) throws IOException {
+
+        // prepare the term details
+        termId = termId.replace(":", "%3A");
+        termName = termName.replace(" ", "_");
+        termName = termName.toLowerCase();
+
+        // create the "search url"
+        String url = "http://www.ebi.ac.uk/ontology-lookup/generateSSFiles.do?" + "termId=" + termId
+                + "&termName=" + termName
+                + "&ontologyName=" + ontology
+                + "&graphType=" + GRAPH_TYPE;
+
+        // read the contents of the returned xml file
+        URL mapPage = new URL(url);
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(mapPage.openStream()));
+
+        StringBuilder contents = new StringBuilder();
+        char[] buffer = new char[BUFFER_SIZE];
+        int count;
+
+        try {
+            while ((count = in.read(buffer)) != -1) {
+                contents.append(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+
+        int imageFileStart = contents.lastIndexOf("<imgFile>");
+        int imageFileEnd = contents.lastIndexOf("</imgFile>");
+
+        if (imageFileStart == -1 || imageFileEnd < imageFileStart) {
+            throw new IOException("No term hierarchy image returned for " + termId + ".");
+        }
+
+        // and extract the image file reference from the xml file
+        String imageFile = contents.substring(imageFileStart + "<imgFile>".length(), imageFileEnd);
+
+        // retrieve the image file
+        URL imageUrlAsUrl = new URL("http://www.ebi.ac.uk/ontology-lookup/serveImgFile.do?imgFileName=" + imageFile);
+
+        InputStream imageIn = new BufferedInputStream(imageUrlAsUrl.openStream());
+
+        try {
+            return TermHierarchyImageCache.readFully(imageIn);
+        } finally {
+            imageIn.close();
+        }
+    }
+
+    /**
+     * Returns the cache of the term hierarchy images, in the local data
+     * folder.
+     *
+     * @return the image cache
+     */
+    private static synchronized TermHierarchyImageCache getImageCache() {
+        if (imageCache == null) {
+            imageCache = new TermHierarchyImageCache(
+                    new File(Util.getLocalDataFolder(), IMAGE_CACHE_FOLDER_NAME), MAXIMUM_IMAGE_CACHE_SIZE);
+        }
+        return imageCache;
+    }
+
+    /**
+     * Sets the dialog size to fit the given content size, making sure the
+     * dialog does not become too big (or too small), and keeps the dialog
+     * centered on the OLS Dialog.
+     *
+     * @param width the content width
+     * @param height the content height
+     */
+    private void setDialogSize(int width, int height) {
+
+        if (width > MAXIMUM_DIALOG_WIDTH) {
+            width = MAXIMUM_DIALOG_WIDTH;
+        } else if (width < MINIMUM_DIALOG_WIDTH) {
+            width = MINIMUM_DIALOG_WIDTH;
+        }
+
+        if (height > MAXIMUM_DIALOG_HEIGHT) {
+            height = MAXIMUM_DIALOG_HEIGHT;
+        }
+
+        this.setSize(width + 50, height + 50); // have to add additional size due to possible scroll bars
         setLocationRelativeTo(olsDialog);
-        setVisible(true);
     }
 
     /**
@@ -0,0 +1,223 @@
+package no.uib.olsdialog.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A disk cache of the term hierarchy images generated by the OLS, one file
+ * per ontology, term and graph type, so that a hierarchy viewed before is
+ * shown again without accessing the OLS.
+ * <p>
+ * The images are kept as retrieved, i.e., still encoded. When the images
+ * take more than the maximum size, the least recently used ones are deleted,
+ * together with the temporary files left behind by interrupted writes.
+ */
+public class TermHierarchyImageCache {
+
+    /**
+     * The extension of the cached image files.
+     */
+    private static final String FILE_EXTENSION = ".img";
+    /**
+     * The extension of the temporary files the images are written to.
+     */
+    private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+    /**
+     * The age after which a temporary file is taken to be left behind by an
+     * interrupted write, e.g., of a dialog that was killed, in milliseconds.
+     */
+    private static final long TEMPORARY_FILE_MAXIMUM_AGE = 60 * 60 * 1000L;
+    /**
+     * The size of the buffer used when reading, in bytes.
+     */
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * The cache folder.
+     */
+    private final File folder;
+    /**
+     * The maximum total size of the cached images, in bytes.
+     */
+    private final long maximumSize;
+
+    /**
+     * Creates a new TermHierarchyImageCache. The folder is created if it does
+     * not already exist.
+     *
+     * @param folder the cache folder
+     * @param maximumSize the maximum total size of the cached images, in
+     * bytes
+     */
+    public TermHierarchyImageCache(File folder, long maximumSize) {
+
+        this.folder = folder;
+        this.maximumSize = maximumSize;
+
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+    }
+
+    /**
+     * Returns the cached image of the given term hierarchy and marks it as
+     * recently used.
+     *
+     * @param ontology the ontology of the term
+     * @param termId the accession number of the term
+     * @param graphType the graph type, e.g., "root"
+     * @return the encoded image, null if not cached
+     * @throws IOException if the cached image cannot be read
+     */
+    public synchronized byte[] get(String ontology, String termId, String graphType) throws IOException {
+
+        File file = getFile(ontology, termId, graphType);
+
+        if (!file.isFile()) {
+            return null;
+        }
+
+        InputStream in = new FileInputStream(file);
+
+        try {
+            byte[] image = readFully(in);
+            file.setLastModified(System.currentTimeMillis());
+            return image;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Adds the image of the given term hierarchy to the cache, deleting the
+     * least recently used images if the cache gets too big. The image is
+     * first written to a temporary file, so that an interrupted write does
+     * not leave a corrupt image behind.
+     *
+     * @param ontology the ontology of the term
+     * @param termId the accession number of the term
+     * @param graphType the graph type, e.g., "root"
+     * @param image the encoded image
+     * @throws IOException if the image cannot be written
+     */
+    public synchronized void put(String ontology, String termId, String graphType, byte[] image) throws IOException {
+
+        File file = getFile(ontology, termId, graphType);
+        File temporaryFile = new File(folder, file.getName() + TEMPORARY_FILE_EXTENSION);
+        OutputStream out = new FileOutputStream(temporaryFile);
+        boolean written = false;
+
+        try {
+            out.write(image);
+            written = true;
+        } finally {
+            out.close();
+            if (!written) {
+                temporaryFile.delete();
+            }
+        }
+
+        if (file.exists() && !file.delete() || !temporaryFile.renameTo(file)) {
+            temporaryFile.delete();
+            throw new IOException("Could not replace " + file + " by " + temporaryFile + ".");
+        }
+
+        removeLeastRecentlyUsed();
+    }
+
+    /**
+     * Reads the given stream to the end, in blocks.
+     *
+     * @param in the stream, not closed
+     * @return the bytes read
+     * @throws IOException if the stream cannot be read
+     */
+    public static byte[] readFully(InputStream in) throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count;
+
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Deletes the least recently used images until the cached images take at
+     * most the maximum size. Only the images count towards the size, while
+     * the temporary files older than TEMPORARY_FILE_MAXIMUM_AGE are deleted.
+     */
+    private void removeLeastRecentlyUsed() {
+
+        File[] files = folder.listFiles();
+
+        if (files == null) {
+            return;
+        }
+
+        long totalSize = 0;
+        long oldestTemporaryFile = System.currentTimeMillis() - TEMPORARY_FILE_MAXIMUM_AGE;
+
+        for (File file : files) {
+            if (file.getName().endsWith(FILE_EXTENSION)) {
+                totalSize += file.length();
+            } else if (file.getName().endsWith(TEMPORARY_FILE_EXTENSION) && file.lastModified() < oldestTemporaryFile) {
+                file.delete();
+            }
+        }
+
+        if (totalSize <= maximumSize) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+
+            public int compare(File file1, File file2) {
+                long lastModified1 = file1.lastModified();
+                long lastModified2 = file2.lastModified();
+                return lastModified1 < lastModified2 ? -1 : (lastModified1 == lastModified2 ? 0 : 1);
+            }
+        });
+
+        for (int i = 0; i < files.length && totalSize > maximumSize; i++) {
+            if (files[i].getName().endsWith(FILE_EXTENSION)) {
+                long size = files[i].length();
+                if (files[i].delete()) {
+                    totalSize -= size;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the file of the given term hierarchy. The file name is the URL
+     * encoded ontology, accession number and graph type, which is unique and
+     * valid on all file systems. The ontology and the accession number are
+     * upper-cased, so that they are matched case-insensitively also on file
+     * systems that are case-sensitive.
+     *
+     * @param ontology the ontology of the term
+     * @param termId the accession number of the term
+     * @param graphType the graph type, e.g., "root"
+     * @return the file
+     */
+    private File getFile(String ontology, String termId, String graphType) {
+        try {
+            String name = URLEncoder.encode(ontology.toUpperCase() + " " + termId.toUpperCase() + " " + graphType, "UTF-8");
+            return new File(folder, name.replace("*", "%2A") + FILE_EXTENSION);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported.", e);
+        }
+    }
+}
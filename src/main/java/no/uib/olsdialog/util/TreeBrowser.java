@@ -1,33 +1,32 @@
 package no.uib.olsdialog.util;
 
 import no.uib.olsdialog.OLSDialog;
+import no.uib.olsdialog.client.ChildrenCache;
+import no.uib.olsdialog.client.TermLevels;
 
 import javax.swing.*;
 import javax.swing.event.*;
-import javax.swing.tree.DefaultMutableTreeNode;
-import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
 import java.awt.*;
-import java.util.Enumeration;
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * A simple tree browser for browsing a given ontology in the OLS. <br><br> The
  * code is based on an example provided by Richard Stanford, a tutorial reader.
+ * <br><br> The children of a term are retrieved when the term is expanded or
+ * selected, see LazyOntologyTreeModel.
  *
  * @author Richard Cote
  * @author Harald Barsnes
  */
-public class TreeBrowser extends JPanel implements TreeSelectionListener, TreeModelListener, TreeExpansionListener {
+public class TreeBrowser extends JPanel implements TreeSelectionListener, TreeExpansionListener {
 
     /**
-     * The root node.
+     * The tree model, shared by all the ontologies browsed.
      */
-    protected DefaultMutableTreeNode rootNode;
-    /**
-     * The tree model.
-     */
-    protected DefaultTreeModel treeModel;
+    protected LazyOntologyTreeModel treeModel;
     /**
      * The JTree.
      */
@@ -54,11 +53,17 @@ public class TreeBrowser extends JPanel implements TreeSelectionListener, TreeMo
 
         this.olsDialog = parent;
 
-        tree = new JTree(new DefaultTreeModel(new DefaultMutableTreeNode(new TermNode("Load Ontology to Browse", null))));
+        treeModel = new LazyOntologyTreeModel("Load Ontology to Browse");
+        treeModel.setChildren(getRoot(), Collections.<String, String>emptyMap());
+
+        tree = new JTree(treeModel);
         tree.setEditable(false);
         tree.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
         tree.setShowsRootHandles(true);
+
+        // the listeners are added once, the model is reused for all ontologies
         tree.addTreeSelectionListener(this);
+        tree.addTreeExpansionListener(this);
 
         // add the tree to a scroll pane
         scrollPane = new JScrollPane(tree);
@@ -75,197 +80,138 @@ public class TreeBrowser extends JPanel implements TreeSelectionListener, TreeMo
     }
 
     /**
-     * Set the root node to the ontology label.
+     * Set the root node to the ontology label. The root shows a placeholder
+     * until the root terms are set.
      *
-     * @param ontologyName the ontology label
+     * @param rootName the text of the root node, e.g., the ontology label
+     * @param ontology the ontology to browse
      */
-    public void initialize(String ontologyName) {
-        rootNode = new DefaultMutableTreeNode(new TermNode(ontologyName, null));
-        treeModel = new DefaultTreeModel(rootNode);
-        treeModel.addTreeModelListener(this);
-        tree.addTreeExpansionListener(this);
-        tree.setModel(treeModel);
+    public void initialize(String rootName, String ontology) {
+        treeModel.setRoot(rootName, ontology);
+        tree.expandPath(new TreePath(getRoot()));
     }
 
     /**
-     * Remove all nodes except the root node.
+     * Sets the cache of the retrieved children, e.g., the one of the
+     * ontology client.
+     *
+     * @param childrenCache the cache of the retrieved children
      */
-    public void clear() {
-        rootNode.removeAllChildren();
-        treeModel.reload();
+    public void setChildrenCache(ChildrenCache childrenCache) {
+        treeModel.setChildrenCache(childrenCache);
     }
 
     /**
-     * Colapses and expands the root node to make sure that all second level non
-     * visible nodes are added.
+     * Returns the root node.
+     *
+     * @return the root node
      */
-    public void updateTree() {
-        DefaultMutableTreeNode root = (DefaultMutableTreeNode) tree.getModel().getRoot();
-        TreePath path = new TreePath(root.getPath());
-        tree.collapsePath(path);
-        tree.expandPath(path);
+    private LazyOntologyTreeModel.TermNode getRoot() {
+        return (LazyOntologyTreeModel.TermNode) treeModel.getRoot();
     }
 
     /**
-     * Add child to the currently selected node, or the root node if no
-     * selection.
+     * Sets the root terms, i.e., the children of the root node, and caches
+     * the deeper levels retrieved with them.
      *
-     * @param termId the accession number of term to add
-     * @param termName the name of the term to add
-     * @return the added node
+     * @param rootLevels the root terms and the levels below them
+     * @param parentTermId the accession number of the term whose children
+     * are the root terms, null for the root terms of the ontology
      */
-    public DefaultMutableTreeNode addNode(Object termId, Object termName) {
-        DefaultMutableTreeNode parentNode;
-        TreePath parentPath = tree.getSelectionPath();
+    public void setRootTerms(TermLevels rootLevels, String parentTermId) {
 
-        if (parentPath == null) {
-            parentNode = rootNode;
+        treeModel.addToCache(rootLevels.getAllChildren());
+        Map<String, String> rootTerms = rootLevels.getChildren(parentTermId);
+
+        if (rootTerms.isEmpty()) {
+            treeModel.setMessage(getRoot(), "No Root Terms Defined!");
         } else {
-            parentNode = (DefaultMutableTreeNode) (parentPath.getLastPathComponent());
+            treeModel.setChildren(getRoot(), rootTerms);
         }
-
-        return addNode(parentNode, termId, termName, true);
     }
 
     /**
-     * Add child to a specified node, or the root node if no node specified.
+     * Sets the retrieved children of the given node, and caches the deeper
+     * levels retrieved with them. Nodes no longer in the tree, e.g., after
+     * changing ontology, are only cached.
      *
-     * @param parent
-     * @param termId
-     * @param termName
-     * @param shouldBeVisible
-     * @return the added node
+     * @param node the node
+     * @param childLevels the children of the node and the levels below them
      */
-    public DefaultMutableTreeNode addNode(
-            DefaultMutableTreeNode parent, Object termId, Object termName, boolean shouldBeVisible) {
-
-        DefaultMutableTreeNode childNode =
-                new DefaultMutableTreeNode(new TermNode(termName.toString(), termId.toString()));
-
-        if (parent == null) {
-            parent = rootNode;
-        }
-
-        treeModel.insertNodeInto(childNode, parent, parent.getChildCount());
-
-        // make sure the user can see the new node
-        if (shouldBeVisible) {
-            tree.scrollPathToVisible(new TreePath(childNode.getPath()));
-        }
-
-        return childNode;
-    }
-
-    // required by TreeModelListener interface
-    public void treeNodesChanged(TreeModelEvent e) {
-    }
-
-    // required by TreeModelListener interface
-    public void treeNodesInserted(TreeModelEvent e) {
-    }
-
-    // required by TreeModelListener interface
-    public void treeNodesRemoved(TreeModelEvent e) {
+    public void setChildren(LazyOntologyTreeModel.TermNode node, TermLevels childLevels) {
+        treeModel.addToCache(childLevels.getAllChildren());
+        treeModel.setChildren(node, childLevels.getChildren(node.getTermId()));
     }
 
-    // required by TreeModelListener interface
-    public void treeStructureChanged(TreeModelEvent e) {
+    /**
+     * Tells the tree that the children of the given node could not be
+     * retrieved. The node is collapsed, and the children are retrieved again
+     * the next time it is expanded.
+     *
+     * @param node the node, null for the root node
+     */
+    public void loadingFailed(LazyOntologyTreeModel.TermNode node) {
+        if (node == null) {
+            treeModel.setChildren(getRoot(), Collections.<String, String>emptyMap());
+        } else {
+            treeModel.loadingFailed(node);
+            tree.collapsePath(treeModel.getPath(node));
+        }
     }
 
     /**
      * This method will be called when a user selects a node in the tree.
-     * Selecting a node will:<br> 1: load the children of that term<br> 2: load
-     * the metadata for that term
+     * Selecting a node will:<br> 1: load the children of that term, by
+     * expanding it, if not already loaded<br> 2: load the metadata for that
+     * term
      */
     public void valueChanged(TreeSelectionEvent e) {
 
-        olsDialog.setCursor(new java.awt.Cursor(java.awt.Cursor.WAIT_CURSOR));
-
-        // get selected node
-        DefaultMutableTreeNode node = (DefaultMutableTreeNode) e.getPath().getLastPathComponent();
-
-        if (node == null) {
+        if (!e.isAddedPath()) {
             return;
         }
 
-        // store the current scroll bar values, used to keep the scroll bars
-        // from moving ones the new list of nodes is opened in order to make
-        // sure that the opened node remains visible
-        int verticalScrollBarValue = scrollPane.getVerticalScrollBar().getValue();
-        int horizontalScrollBarValue = scrollPane.getHorizontalScrollBar().getValue();
+        TreePath path = e.getPath();
+        LazyOntologyTreeModel.TermNode node = (LazyOntologyTreeModel.TermNode) path.getLastPathComponent();
 
-        // get node data object
-        TermNode nodeInfo = (TermNode) node.getUserObject();
+        // load the children and the meta data, unless the node is not a term, e.g., a placeholder
+        if (node.getTermId() != null) {
 
-        // load the children and the meta data, unless the term is the 'no roots defined' dummy term
-        if (nodeInfo.getTermId() != null && !nodeInfo.getTermId().equalsIgnoreCase("No Root Terms Defined!")) {
-
-            // load children only for leaf nodes and those that have not been marked as processed
-            if (node.isLeaf() && node.getAllowsChildren()) {
-
-                if (OLSDialog.debug) {
-                    System.out.println("will load children for: " + nodeInfo);
-                }
-
-                // load children. if no children, set allowsChildren to false
-                if (!olsDialog.loadChildren(node, nodeInfo.getTermId())) {
-                    node.setAllowsChildren(false);
-                }
+            // expanding the node loads its children, see treeExpanded
+            if (!treeModel.isLoaded(node)) {
+                tree.expandPath(path);
             }
 
-            // reset the scroll bars, to make sure the node clicked in the first place is still visible
-            scrollPane.getVerticalScrollBar().setValue(verticalScrollBarValue);
-            scrollPane.getHorizontalScrollBar().setValue(horizontalScrollBarValue);
-
             // load metadata
             if (OLSDialog.debug) {
-                System.out.println("will load metadata for: " + nodeInfo.getTermId());
+                System.out.println("will load metadata for: " + node.getTermId());
             }
 
-            olsDialog.loadMetaData(nodeInfo.getTermId(), OLSDialog.OLS_DIALOG_BROWSE_ONTOLOGY);
+            olsDialog.loadMetaData(node.getTermId(), OLSDialog.OLS_DIALOG_BROWSE_ONTOLOGY);
         } else {
-            olsDialog.clearData(OLSDialog.OLS_DIALOG_BROWSE_ONTOLOGY, true, true);
+            olsDialog.loadMetaData(null, OLSDialog.OLS_DIALOG_BROWSE_ONTOLOGY);
         }
-
-        olsDialog.setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
     }
 
     /**
-     * Detects when a part of the tree has been expanded and if required load a
-     * second level of non visible nodes to make it possible to show folder
-     * icons for nodes containing children.
+     * Detects when a part of the tree has been expanded and loads the
+     * children of the expanded node in the background, unless already loaded
+     * or being loaded.
      *
      * @param event
      */
     public void treeExpanded(TreeExpansionEvent event) {
 
-        olsDialog.setCursor(new java.awt.Cursor(java.awt.Cursor.WAIT_CURSOR));
-
-        // get selected node
-        DefaultMutableTreeNode node = (DefaultMutableTreeNode) event.getPath().getLastPathComponent();
-
-        if (node == null) {
-            return;
-        }
-
-        // add second level of nodes if not already added
-        Enumeration<DefaultMutableTreeNode> enumeration = node.children();
-
-        while (enumeration.hasMoreElements()) {
+        LazyOntologyTreeModel.TermNode node = (LazyOntologyTreeModel.TermNode) event.getPath().getLastPathComponent();
 
-            DefaultMutableTreeNode currentNode = enumeration.nextElement();
+        if (treeModel.startLoading(node)) {
 
-            if (currentNode.getChildCount() == 0) {
-
-                // get node data object
-                TermNode nodeInfo = (TermNode) currentNode.getUserObject();
-
-                // add the layer of non visible nodes
-                olsDialog.addSecondLevelOfNodes(nodeInfo.getTermId(), olsDialog.getCurrentOntologyLabel(), currentNode);
+            if (OLSDialog.debug) {
+                System.out.println("will load children for: " + node);
             }
-        }
 
-        olsDialog.setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
+            olsDialog.loadChildren(node);
+        }
     }
 
     /**
@@ -276,66 +222,4 @@ public class TreeBrowser extends JPanel implements TreeSelectionListener, TreeMo
     public void treeCollapsed(TreeExpansionEvent event) {
         // required by TreeExpansionListener interface
     }
-
-    /**
-     * Inner class that represents a node in the tree. It contains a term name
-     * and term id as fields.
-     */
-    private class TermNode {
-
-        private String termName;
-        private String termId;
-
-        /**
-         * Creates a TermNode object with the provided details.
-         *
-         * @param termName the name of the term to represent
-         * @param termId the accession number of the term to represent
-         */
-        public TermNode(String termName, String termId) {
-            this.termName = termName;
-            this.termId = termId;
-        }
-
-        /**
-         * Returns the term name.
-         *
-         * @return the term name
-         */
-        public String getTermName() {
-            return termName;
-        }
-
-        /**
-         * Set the term name.
-         *
-         * @param termName
-         */
-        public void setTermName(String termName) {
-            this.termName = termName;
-        }
-
-        /**
-         * Returns the term accession number.
-         *
-         * @return the term accession number
-         */
-        public String getTermId() {
-            return termId;
-        }
-
-        /**
-         * Set the term accession number.
-         *
-         * @param termId the term accession number
-         */
-        public void setTermId(String termId) {
-            this.termId = termId;
-        }
-
-        @Override
-        public String toString() {
-            return ((termId == null) ? "" : "[" + termId + "] ") + termName;
-        }
-    }
 }
@@ -1,5 +1,7 @@
 package no.uib.olsdialog.util;
 
+import java.io.File;
+
 /**
  * Includes help methods that are used by the other classes.
  *
@@ -19,4 +21,31 @@ public final class Util {
     public static void writeToErrorLog(String logEntry) {
         System.out.println(new java.util.Date(System.currentTimeMillis()).toString() + ": " + logEntry);
     }
+
+    /**
+     * Returns the folder where the OLS Dialog keeps its local data, e.g., the
+     * cached terms. Defaults to '.ols-dialog' in the user's home folder, but
+     * can be changed using the 'ols-dialog.data.folder' system property. The
+     * folder is created if it does not already exist.
+     *
+     * @return the local data folder
+     */
+    public static File getLocalDataFolder() {
+
+        String folderPath = System.getProperty("ols-dialog.data.folder");
+
+        File folder;
+
+        if (folderPath != null) {
+            folder = new File(folderPath);
+        } else {
+            folder = new File(System.getProperty("user.home"), ".ols-dialog");
+        }
+
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+
+        return folder;
+    }
 }
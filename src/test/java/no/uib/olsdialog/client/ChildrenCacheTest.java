@@ -0,0 +1,122 @@
+package no.uib.olsdialog.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the ChildrenCache.
+ */
+public class ChildrenCacheTest {
+
+    /**
+     * Tests that the least recently used entries are evicted when the cache
+     * becomes too heavy, and that the weight follows the entries.
+     */
+    @Test
+    public void testEviction() {
+
+        ChildrenCache cache = new ChildrenCache(5);
+        cache.put("MS", "MS:1", createChildren("MS:11", "MS:12"));
+        cache.put("MS", "MS:2", createChildren("MS:21", "MS:22"));
+        assertEquals(4, cache.getWeight());
+
+        // use MS:1, making MS:2 the least recently used
+        assertNotNull(cache.get("MS", "MS:1"));
+
+        cache.put("MS", "MS:3", createChildren("MS:31"));
+        assertEquals(5, cache.getWeight());
+        assertEquals(0, cache.getEvictionCount());
+
+        cache.put("ms", "MS:4", createChildren());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get("MS", "MS:2"));
+        assertNotNull(cache.get("MS", "MS:1"));
+        assertNotNull(cache.get("MS", "MS:4"));
+        assertEquals(4, cache.getWeight());
+        assertEquals(3, cache.size());
+    }
+
+    /**
+     * Tests that replacing an entry updates the weight.
+     */
+    @Test
+    public void testReplace() {
+
+        ChildrenCache cache = new ChildrenCache(10);
+        cache.put("MS", "MS:1", createChildren("MS:11", "MS:12", "MS:13"));
+        cache.put("MS", "MS:1", createChildren("MS:11"));
+
+        assertEquals(1, cache.getWeight());
+        assertEquals(createChildren("MS:11"), cache.get("MS", "MS:1"));
+    }
+
+    /**
+     * Tests that children heavier than the whole cache are not cached and
+     * remove the children previously cached for the term.
+     */
+    @Test
+    public void testOversizePut() {
+
+        ChildrenCache cache = new ChildrenCache(3);
+        cache.put("MS", "MS:1", createChildren("MS:11"));
+        cache.put("MS", "MS:2", createChildren("MS:21"));
+
+        Map<String, String> children = createChildren("MS:11", "MS:12", "MS:13", "MS:14");
+        assertEquals(children, cache.put("MS", "MS:1", children));
+
+        assertNull(cache.get("MS", "MS:1"));
+        assertNotNull(cache.get("MS", "MS:2"));
+        assertEquals(1, cache.getWeight());
+        assertTrue(cache.getParents("MS", "MS:11").isEmpty());
+    }
+
+    /**
+     * Tests that the parents are found among the cached children, with the
+     * names found among the children of their own parents, and that evicted
+     * entries are no longer used.
+     */
+    @Test
+    public void testGetParents() {
+
+        ChildrenCache cache = new ChildrenCache(100);
+        cache.put("MS", null, createChildren("MS:1", "MS:2"));
+        cache.put("MS", "MS:1", createChildren("MS:3"));
+        cache.put("MS", "MS:2", createChildren("MS:3", "MS:4"));
+        cache.put("MOD", "MOD:1", createChildren("MS:3"));
+
+        Map<String, String> parents = cache.getParents("MS", "MS:3");
+        assertEquals(2, parents.size());
+        assertEquals("name of MS:1", parents.get("MS:1"));
+        assertEquals("name of MS:2", parents.get("MS:2"));
+
+        // the root terms have no parents, and the root terms entry is no parent
+        assertTrue(cache.getParents("MS", "MS:1").isEmpty());
+
+        // without the root terms the parent names are not known
+        cache.put("MS", null, createChildren());
+        assertEquals("MS:1", cache.getParents("MS", "MS:3").get("MS:1"));
+
+        cache.clear();
+        assertTrue(cache.getParents("MS", "MS:3").isEmpty());
+    }
+
+    /**
+     * Returns the given children, each named "name of" its accession number.
+     *
+     * @param termIds the accession numbers of the children
+     * @return the children, key: accession number, value: term name
+     */
+    private static Map<String, String> createChildren(String... termIds) {
+
+        Map<String, String> children = new LinkedHashMap<String, String>();
+
+        for (String termId : termIds) {
+            children.put(termId, "name of " + termId);
+        }
+
+        return children;
+    }
+}
@@ -0,0 +1,312 @@
+package no.uib.olsdialog.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the ConcurrentQueries.
+ */
+public class ConcurrentQueriesTest {
+
+    /**
+     * A hit condition accepting non-null results.
+     */
+    private static final ConcurrentQueries.HitCondition<String> NOT_NULL = new ConcurrentQueries.HitCondition<String>() {
+
+        public boolean isHit(String result) {
+            return result != null;
+        }
+    };
+
+    /**
+     * Tests that all the results are returned in the order of the queries,
+     * whatever the order they complete in, and that the parallelism is
+     * respected.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    public void testFanOut() throws InterruptedException {
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maximumRunning = new AtomicInteger();
+        Map<Integer, Callable<Integer>> queries = new LinkedHashMap<Integer, Callable<Integer>>();
+
+        for (int i = 0; i < 20; i++) {
+            final int value = i;
+            queries.put(i, new Callable<Integer>() {
+
+                public Integer call() throws Exception {
+                    int current = running.incrementAndGet();
+                    synchronized (maximumRunning) {
+                        maximumRunning.set(Math.max(maximumRunning.get(), current));
+                    }
+                    Thread.sleep((20 - value) % 5);
+                    running.decrementAndGet();
+                    return value * value;
+                }
+            });
+        }
+
+        Map<Integer, Integer> results = ConcurrentQueries.fanOut(queries, 3, 10, TimeUnit.SECONDS, null);
+
+        assertEquals(20, results.size());
+        int expected = 0;
+        for (Map.Entry<Integer, Integer> result : results.entrySet()) {
+            assertEquals(expected, result.getKey().intValue());
+            assertEquals(expected * expected, result.getValue().intValue());
+            expected++;
+        }
+        assertTrue(maximumRunning.get() <= 3);
+    }
+
+    /**
+     * Tests that the timeout applies to the whole batch: the queries not
+     * completed in time are cancelled and reported as timed out, including
+     * the ones never started, and a failed query is reported as failed.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    public void testFanOutTimeout() throws InterruptedException {
+
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        Map<String, Callable<String>> queries = new LinkedHashMap<String, Callable<String>>();
+
+        queries.put("fast", new Callable<String>() {
+
+            public String call() {
+                return "fast result";
+            }
+        });
+        queries.put("failing", new Callable<String>() {
+
+            public String call() throws Exception {
+                throw new IllegalStateException("failed");
+            }
+        });
+        queries.put("slow", new Callable<String>() {
+
+            public String call() throws Exception {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return "slow result";
+            }
+        });
+        queries.put("queued", new Callable<String>() {
+
+            public String call() {
+                return "queued result";
+            }
+        });
+
+        final Map<String, Exception> failures = new LinkedHashMap<String, Exception>();
+        final List<String> arrived = new ArrayList<String>();
+
+        long start = System.nanoTime();
+        Map<String, String> results = ConcurrentQueries.fanOut(queries, 1, 300, TimeUnit.MILLISECONDS,
+                new ConcurrentQueries.ResultListener<String, String>() {
+
+                    public void resultArrived(String key, String result) {
+                        arrived.add(key);
+                    }
+
+                    public void queryFailed(String key, Exception e) {
+                        failures.put(key, e);
+                    }
+                });
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("took " + elapsed + " ms", elapsed < 5000);
+        assertEquals(1, results.size());
+        assertEquals("fast result", results.get("fast"));
+        assertEquals(1, arrived.size());
+        assertTrue(failures.get("failing") instanceof IllegalStateException);
+        assertTrue(failures.get("slow") instanceof TimeoutException);
+        assertTrue(failures.get("queued") instanceof TimeoutException);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Tests that the timeout of fanOutEach applies to each query: queries
+     * together taking longer than the timeout all complete, while a slow
+     * query is cancelled without holding back the queries after it.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    public void testFanOutEachTimeout() throws InterruptedException {
+
+        Map<String, Callable<String>> queries = new LinkedHashMap<String, Callable<String>>();
+
+        for (int i = 0; i < 3; i++) {
+            final String value = "result " + i;
+            queries.put("query " + i, new Callable<String>() {
+
+                public String call() throws Exception {
+                    Thread.sleep(150);
+                    return value;
+                }
+            });
+        }
+        queries.put("slow", new Callable<String>() {
+
+            public String call() throws Exception {
+                Thread.sleep(10000);
+                return "slow result";
+            }
+        });
+        queries.put("last", new Callable<String>() {
+
+            public String call() {
+                return "last result";
+            }
+        });
+
+        final Map<String, Exception> failures = new LinkedHashMap<String, Exception>();
+        final List<String> arrived = new ArrayList<String>();
+
+        long start = System.nanoTime();
+        Map<String, String> results = ConcurrentQueries.fanOutEach(queries, 1, 300, TimeUnit.MILLISECONDS,
+                new ConcurrentQueries.ResultListener<String, String>() {
+
+                    public void resultArrived(String key, String result) {
+                        arrived.add(key);
+                    }
+
+                    public void queryFailed(String key, Exception e) {
+                        failures.put(key, e);
+                    }
+                });
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("took " + elapsed + " ms", elapsed < 5000);
+        assertEquals(4, results.size());
+        assertEquals("result 2", results.get("query 2"));
+        assertEquals("last result", results.get("last"));
+        assertEquals(Arrays.asList("query 0", "query 1", "query 2", "last"), arrived);
+        assertEquals(1, failures.size());
+        assertTrue(failures.get("slow") instanceof TimeoutException);
+    }
+
+    /**
+     * Tests that the first hit in the order of the queries is returned, not
+     * the first to complete, and that the remaining queries are cancelled.
+     *
+     * @throws Exception if the queries fail
+     */
+    @Test
+    public void testFirstHit() throws Exception {
+
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        List<Callable<String>> queries = new ArrayList<Callable<String>>();
+
+        queries.add(createQuery(null, 50));
+        queries.add(createQuery("second", 100));
+        queries.add(createQuery("third", 0));
+        queries.add(new Callable<String>() {
+
+            public String call() throws Exception {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    cancelled.countDown();
+                    throw e;
+                }
+                return "fourth";
+            }
+        });
+
+        assertEquals("second", ConcurrentQueries.firstHit(queries, NOT_NULL, 10, TimeUnit.SECONDS));
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Tests that null is returned when no query returns a hit, and that a
+     * failure is only reported when no query returns a hit.
+     *
+     * @throws Exception if the queries fail unexpectedly
+     */
+    @Test
+    public void testFirstHitWithoutHit() throws Exception {
+
+        List<Callable<String>> queries = new ArrayList<Callable<String>>();
+        queries.add(createQuery(null, 0));
+        queries.add(createQuery(null, 10));
+        assertNull(ConcurrentQueries.firstHit(queries, NOT_NULL, 10, TimeUnit.SECONDS));
+
+        queries.add(new Callable<String>() {
+
+            public String call() throws Exception {
+                throw new IllegalStateException("failed");
+            }
+        });
+
+        try {
+            ConcurrentQueries.firstHit(queries, NOT_NULL, 10, TimeUnit.SECONDS);
+            fail("No ExecutionException thrown.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        queries.add(createQuery("hit", 0));
+        assertEquals("hit", ConcurrentQueries.firstHit(queries, NOT_NULL, 10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Tests that the best hit so far is returned when the deadline passes,
+     * and that a TimeoutException is thrown if there is none.
+     *
+     * @throws Exception if the queries fail unexpectedly
+     */
+    @Test
+    public void testFirstHitTimeout() throws Exception {
+
+        List<Callable<String>> queries = new ArrayList<Callable<String>>();
+        queries.add(createQuery("first", 10000));
+        queries.add(createQuery("second", 0));
+        assertEquals("second", ConcurrentQueries.firstHit(queries, NOT_NULL, 200, TimeUnit.MILLISECONDS));
+
+        queries.remove(1);
+
+        try {
+            ConcurrentQueries.firstHit(queries, NOT_NULL, 200, TimeUnit.MILLISECONDS);
+            fail("No TimeoutException thrown.");
+        } catch (TimeoutException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Returns a query returning the given result after the given delay.
+     *
+     * @param result the result
+     * @param delay the delay in milliseconds
+     * @return the query
+     */
+    private static Callable<String> createQuery(final String result, final long delay) {
+        return new Callable<String>() {
+
+            public String call() throws Exception {
+                Thread.sleep(delay);
+                return result;
+            }
+        };
+    }
+}
@@ -0,0 +1,177 @@
+package no.uib.olsdialog.client;
+
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.ols.soap.model.DataHolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the ModificationMassIndex.
+ */
+public class ModificationMassIndexTest {
+
+    /**
+     * The index.
+     */
+    private ModificationMassIndex index;
+
+    /**
+     * Creates an index of a few modifications, given in no particular order.
+     */
+    @Before
+    public void setUp() {
+        index = new ModificationMassIndex("DiffMono", new DataHolder[]{
+                    createTerm("MOD:00425", "monohydroxylated residue", 15.994915),
+                    createTerm("MOD:00002", "two", 2.0),
+                    createTerm("MOD:00400", "deamidated residue", 0.984016),
+                    createTerm("MOD:00001", "one", 1.0),
+                    createTerm("MOD:00000", "no mass", null),
+                    null});
+    }
+
+    /**
+     * Tests that the terms without a mass are skipped, and that a null array
+     * gives an empty index.
+     */
+    @Test
+    public void testCreate() {
+
+        assertEquals(4, index.size());
+        assertEquals("DiffMono", index.getMassType());
+
+        ModificationMassIndex emptyIndex = new ModificationMassIndex("DiffMono", null);
+        assertEquals(0, emptyIndex.size());
+        assertEquals(0, emptyIndex.getTerms(-1000, 1000).length);
+        assertTrue(emptyIndex.getCombinations(16, 1, 3, 10).isEmpty());
+    }
+
+    /**
+     * Tests that both mass limits are inclusive and that the terms are
+     * returned in ascending mass order.
+     */
+    @Test
+    public void testTolerance() {
+
+        DataHolder[] terms = index.getTerms(1.0, 2.0);
+        assertEquals(2, terms.length);
+        assertEquals("MOD:00001", terms[0].getTermId());
+        assertEquals("MOD:00002", terms[1].getTermId());
+        assertEquals(2.0, terms[1].getAnnotationNumberValue(), 0);
+
+        assertEquals(0, index.getTerms(1.5, 1.9).length);
+        assertEquals(4, index.getTerms(-100, 100).length);
+
+        // 10 ppm of 15.995 Da
+        DataHolder[][] results = index.getTerms(new double[]{15.995, 1.5, 50}, 10, true);
+        assertEquals(1, results[0].length);
+        assertEquals("MOD:00425", results[0][0].getTermId());
+        assertEquals(0, results[1].length);
+        assertEquals(0, results[2].length);
+
+        // 1 and 2 are at the limits, 0.984016 just below
+        results = index.getTerms(new double[]{15.995, 1.5}, 0.5, false);
+        assertEquals(1, results[0].length);
+        assertEquals(2, results[1].length);
+    }
+
+    /**
+     * Tests that the pairs within the tolerance are found, including the
+     * ones at the limits and the ones using the same term twice.
+     */
+    @Test
+    public void testPairs() {
+
+        List<ModificationMassIndex.Combination> pairs = index.getCombinations(3.5, 0.5, 2, 10);
+        assertEquals(2, pairs.size());
+        assertEquals(3.0, Math.min(pairs.get(0).getMass(), pairs.get(1).getMass()), 1e-9);
+        assertEquals(4.0, Math.max(pairs.get(0).getMass(), pairs.get(1).getMass()), 1e-9);
+
+        pairs = index.getCombinations(2.0, 0.001, 2, 10);
+        assertEquals(1, pairs.size());
+        assertEquals("MOD:00001", pairs.get(0).getTerms()[0].getTermId());
+        assertEquals("MOD:00001", pairs.get(0).getTerms()[1].getTermId());
+
+        // oxidation plus deamidation
+        pairs = index.getCombinations(16.978931, 0.001, 2, 10);
+        assertEquals(1, pairs.size());
+        DataHolder[] terms = pairs.get(0).getTerms();
+        assertEquals("MOD:00400", terms[0].getTermId());
+        assertEquals("MOD:00425", terms[1].getTermId());
+        assertEquals(0, pairs.get(0).getError(), 1e-9);
+    }
+
+    /**
+     * Tests that only the combinations with the smallest errors are kept,
+     * sorted by absolute error.
+     */
+    @Test
+    public void testBestPairs() {
+
+        List<ModificationMassIndex.Combination> pairs = index.getCombinations(17.0, 0.1, 2, 10);
+        assertEquals(2, pairs.size());
+        assertEquals("MOD:00001", pairs.get(0).getTerms()[0].getTermId());
+        assertEquals(-0.005085, pairs.get(0).getError(), 1e-9);
+        assertEquals(-0.021069, pairs.get(1).getError(), 1e-9);
+
+        pairs = index.getCombinations(17.0, 0.1, 2, 1);
+        assertEquals(1, pairs.size());
+        assertEquals(-0.005085, pairs.get(0).getError(), 1e-9);
+    }
+
+    /**
+     * Tests that the triples within the tolerance are found, each only once.
+     */
+    @Test
+    public void testTriples() {
+
+        List<ModificationMassIndex.Combination> triples = index.getCombinations(4.0, 0.001, 3, 10);
+        assertEquals(1, triples.size());
+        DataHolder[] terms = triples.get(0).getTerms();
+        assertEquals(3, terms.length);
+        assertEquals("MOD:00001", terms[0].getTermId());
+        assertEquals("MOD:00001", terms[1].getTermId());
+        assertEquals("MOD:00002", terms[2].getTermId());
+
+        // all the combinations of the masses 0.984016 and 1 are within 0.05 Da of 2.98
+        triples = index.getCombinations(2.98, 0.05, 3, 10);
+        assertEquals(4, triples.size());
+        assertEquals(2.984016, triples.get(0).getMass(), 1e-9);
+        assertEquals(2.968032, triples.get(1).getMass(), 1e-9);
+        assertEquals(3.0, triples.get(2).getMass(), 1e-9);
+        assertEquals(2.952048, triples.get(3).getMass(), 1e-9);
+    }
+
+    /**
+     * Tests that only pairs and triples are supported.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedSize() {
+        index.getCombinations(4.0, 0.001, 4, 10);
+    }
+
+    /**
+     * Returns a term with the given mass.
+     *
+     * @param termId the accession number
+     * @param termName the term name
+     * @param mass the mass, null for a term without a numerical mass
+     * @return the term
+     */
+    private static DataHolder createTerm(String termId, String termName, Double mass) {
+
+        DataHolder term = new DataHolder();
+        term.setTermId(termId);
+        term.setTermName(termName);
+        term.setAnnotationType("DiffMono");
+
+        if (mass == null) {
+            term.setAnnotationStringValue("n/a");
+        } else {
+            term.setAnnotationNumberValue(mass);
+        }
+
+        return term;
+    }
+}
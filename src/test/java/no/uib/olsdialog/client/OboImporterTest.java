@@ -0,0 +1,146 @@
+package no.uib.olsdialog.client;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the OboImporter.
+ */
+public class OboImporterTest {
+
+    /**
+     * An OBO file with a few PSI-MS terms.
+     */
+    private static final String OBO_FILE = "format-version: 1.2\n"
+            + "ontology: ms\n"
+            + "\n"
+            + "[Term]\n"
+            + "id: MS:0000000\n"
+            + "name: Proteomics Standards Initiative Mass Spectrometry Vocabularies\n"
+            + "\n"
+            + "[Term]\n"
+            + "id: MS:1000001\n"
+            + "name: sample number\n"
+            + "def: \"A reference number relevant to the sample under study.\" [PSI:MS]\n"
+            + "synonym: \"sample nr\" EXACT []\n"
+            + "xref: value-type:xsd\\:string \"The allowed value-type for this CV term.\"\n"
+            + "is_a: MS:0000000 ! Proteomics Standards Initiative Mass Spectrometry Vocabularies\n"
+            + "\n"
+            + "[Term]\n"
+            + "id: MS:1001180\n"
+            + "name: Cleavage agent regular expression\n"
+            + "relationship: part_of MS:0000000 ! Proteomics Standards Initiative Mass Spectrometry Vocabularies\n"
+            + "\n"
+            + "[Term]\n"
+            + "id: MS:1001251\n"
+            + "name: Trypsin\n"
+            + "is_a: MS:1000001 ! sample number\n"
+            + "relationship: has_regexp MS:1001180 ! Cleavage agent regular expression\n"
+            + "relationship: has_units UO:0000221 ! dalton\n"
+            + "property_value: DiffMono \"15.994915\" xsd:double\n"
+            + "\n"
+            + "[Term]\n"
+            + "id: MS:1000002\n"
+            + "name: obsolete sample name\n"
+            + "is_obsolete: true\n"
+            + "\n"
+            + "[Typedef]\n"
+            + "id: has_regexp\n"
+            + "name: has regexp\n";
+    /**
+     * The OBO file.
+     */
+    private File file;
+
+    /**
+     * Writes the OBO file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Before
+    public void setUp() throws IOException {
+
+        file = File.createTempFile("psi-ms", ".obo");
+        OutputStream out = new FileOutputStream(file);
+
+        try {
+            out.write(OBO_FILE.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Deletes the OBO file.
+     */
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Tests that the terms and their tags are imported.
+     *
+     * @throws IOException if the file cannot be imported
+     */
+    @Test
+    public void testTerms() throws IOException {
+
+        LocalOntology ontology = OboImporter.importOntology(file, 2);
+
+        assertEquals("MS", ontology.getLabel());
+        assertEquals(5, ontology.size());
+        assertEquals("sample number", ontology.getTermById("MS:1000001", "MS"));
+        assertEquals("A reference number relevant to the sample under study.",
+                ontology.getTermMetadata("MS:1000001", "MS").get("definition"));
+        assertEquals("sample nr", ontology.getTermMetadata("MS:1000001", "MS").get("exact_synonym"));
+        assertEquals("15.994915", ontology.getTermMetadata("MS:1001251", "MS").get("DiffMono"));
+        assertFalse(ontology.getTermNames().containsKey("has_regexp"));
+    }
+
+    /**
+     * Tests that the is_a and part_of relationships are imported as parents,
+     * and that the other relationships are skipped.
+     *
+     * @throws IOException if the file cannot be imported
+     */
+    @Test
+    public void testRelationships() throws IOException {
+
+        LocalOntology ontology = OboImporter.importOntology(file);
+
+        assertEquals(1, ontology.getTermParents("MS:1000001").size());
+        assertTrue(ontology.getTermParents("MS:1000001").containsKey("MS:0000000"));
+        assertTrue(ontology.getTermParents("MS:1001180").containsKey("MS:0000000"));
+
+        // has_regexp and has_units are no parents
+        assertEquals(1, ontology.getTermParents("MS:1001251").size());
+        assertTrue(ontology.getTermParents("MS:1001251").containsKey("MS:1000001"));
+        assertTrue(ontology.getTermChildren("MS:1001180", "MS", 1, null).isEmpty());
+
+        assertEquals(2, ontology.getTermChildren("MS:0000000", "MS", 1, null).size());
+        assertEquals(3, ontology.getTermChildren("MS:0000000", "MS", 2, null).size());
+    }
+
+    /**
+     * Tests that obsolete terms are imported, but not as root terms.
+     *
+     * @throws IOException if the file cannot be imported
+     */
+    @Test
+    public void testObsoleteTerms() throws IOException {
+
+        LocalOntology ontology = OboImporter.importOntology(file);
+
+        assertEquals("obsolete sample name", ontology.getTermById("MS:1000002", "MS"));
+        assertEquals(1, ontology.getRootTerms("MS").size());
+        assertTrue(ontology.getRootTerms("MS").containsKey("MS:0000000"));
+    }
+}
@@ -0,0 +1,91 @@
+package no.uib.olsdialog.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the RankedTermNames.
+ */
+public class RankedTermNamesTest {
+
+    /**
+     * Tests that the terms are ranked by match type: exact, prefix, word,
+     * substring and other matches.
+     */
+    @Test
+    public void testMatchTypes() {
+
+        RankedTermNames terms = new RankedTermNames(" Methyl ", null, 10);
+        terms.add("MOD:5", "sample");
+        terms.add("MOD:4", "dimethylated residue");
+        terms.add("MOD:3", "N-methylated residue");
+        terms.add("MOD:2", "methylated residue");
+        terms.add("MOD:1", "methyl");
+
+        assertEquals(Arrays.asList("MOD:1", "MOD:2", "MOD:3", "MOD:4", "MOD:5"),
+                new ArrayList<String>(terms.getShownTerms().keySet()));
+    }
+
+    /**
+     * Tests that equally good matches are ranked by ontology preference, then
+     * by name length and finally alphabetically.
+     */
+    @Test
+    public void testTieBreaks() {
+
+        RankedTermNames terms = new RankedTermNames("prot", Collections.singleton("mod"), 10);
+        terms.add("GO:1", "protein");
+        terms.add("MOD:1", "protein modification");
+        terms.add("MS:2", "protein b");
+        terms.add("MS:1", "Protein a");
+
+        assertEquals(Arrays.asList("MOD:1", "GO:1", "MS:1", "MS:2"),
+                new ArrayList<String>(terms.getShownTerms().keySet()));
+    }
+
+    /**
+     * Tests that only a page of the best terms is shown, that better terms
+     * added later push out the worst shown ones, and that the other terms are
+     * shown one page at a time.
+     */
+    @Test
+    public void testPaging() {
+
+        RankedTermNames terms = new RankedTermNames("a", null, 2);
+
+        assertTrue(terms.add("MS:3", "cba"));
+        assertTrue(terms.add("MS:4", "dcba"));
+        assertFalse(terms.add("MS:5", "edcba"));
+        assertTrue(terms.add("MS:1", "a"));
+        assertFalse(terms.add("MS:1", "a"));
+
+        Map<String, String> moreTerms = new LinkedHashMap<String, String>();
+        moreTerms.put("MS:2", "ab");
+        moreTerms.put("MS:6", "fedcba");
+        assertTrue(terms.addAll(moreTerms));
+
+        assertEquals(6, terms.size());
+        assertEquals(Arrays.asList("MS:1", "MS:2"), new ArrayList<String>(terms.getShownTerms().keySet()));
+        assertTrue(terms.hasMore());
+
+        terms.showMore();
+        assertEquals(Arrays.asList("MS:1", "MS:2", "MS:3", "MS:4"), new ArrayList<String>(terms.getShownTerms().keySet()));
+
+        terms.showMore();
+        assertEquals(6, terms.getShownTerms().size());
+        assertFalse(terms.hasMore());
+
+        // the pages are full, so only a better term is shown, pushing out the worst one
+        assertFalse(terms.add("MS:7", "gfedcba"));
+        assertTrue(terms.add("MS:8", "ba"));
+        assertEquals(6, terms.getShownTerms().size());
+        assertFalse(terms.getShownTerms().containsKey("MS:6"));
+        assertTrue(terms.hasMore());
+    }
+}
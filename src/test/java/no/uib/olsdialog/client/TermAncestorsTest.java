@@ -0,0 +1,142 @@
+package no.uib.olsdialog.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the TermAncestors.
+ */
+public class TermAncestorsTest {
+
+    /**
+     * Tests that a link to a parent that is also an ancestor of another
+     * parent is removed, and that the direct links are kept.
+     */
+    @Test
+    public void testRemoveIndirectLinks() {
+
+        // D -> C -> B -> A, with D and C also linked to A
+        TermAncestors ancestors = new TermAncestors("D", "d");
+        ancestors.addParents("D", createTerms("C", "A"));
+        ancestors.addParents("C", createTerms("B", "A"));
+        ancestors.addParents("B", createTerms("A"));
+
+        ancestors.removeIndirectLinks();
+
+        assertEquals(Collections.singleton("C"), ancestors.getParents("D"));
+        assertEquals(Collections.singleton("B"), ancestors.getParents("C"));
+        assertEquals(Collections.singleton("A"), ancestors.getParents("B"));
+        assertTrue(ancestors.getParents("A").isEmpty());
+        assertEquals(Arrays.asList("D", "C", "A", "B"), new ArrayList<String>(ancestors.getTermNames().keySet()));
+    }
+
+    /**
+     * Tests that parents not related to each other are all kept.
+     */
+    @Test
+    public void testKeepDirectParents() {
+
+        // C has two unrelated parents sharing the root R
+        TermAncestors ancestors = new TermAncestors("C", "c");
+        ancestors.addParents("C", createTerms("P1", "P2"));
+        ancestors.addParents("P1", createTerms("R"));
+        ancestors.addParents("P2", createTerms("R"));
+
+        ancestors.removeIndirectLinks();
+
+        assertEquals(new HashSet<String>(Arrays.asList("P1", "P2")), ancestors.getParents("C"));
+        assertEquals(Collections.singleton("R"), ancestors.getParents("P1"));
+        assertEquals(Collections.singleton("R"), ancestors.getParents("P2"));
+        assertTrue(ancestors.hasParents());
+    }
+
+    /**
+     * Tests that links of a term to itself are ignored, and that parents in
+     * a cycle stay linked.
+     */
+    @Test
+    public void testCycles() {
+
+        // A -> B -> C -> B, with A also linked to C
+        TermAncestors ancestors = new TermAncestors("A", "a");
+        ancestors.addParents("A", createTerms("B", "C", "A"));
+        ancestors.addParents("B", createTerms("C"));
+        ancestors.addParents("C", createTerms("B"));
+
+        ancestors.removeIndirectLinks();
+
+        assertEquals(new HashSet<String>(Arrays.asList("B", "C")), ancestors.getParents("A"));
+        assertEquals(Collections.singleton("C"), ancestors.getParents("B"));
+        assertEquals(Collections.singleton("B"), ancestors.getParents("C"));
+    }
+
+    /**
+     * Tests that the ancestors are looked up level by level through the
+     * client, up to the root terms.
+     *
+     * @throws Exception if the lookups fail
+     */
+    @Test
+    public void testGetAncestors() throws Exception {
+
+        List<LocalOntology.Term> terms = new ArrayList<LocalOntology.Term>();
+        terms.add(createTerm("MS:0", "root"));
+        terms.add(createTerm("MS:1", "one", "MS:0"));
+        terms.add(createTerm("MS:2", "two", "MS:1"));
+        terms.add(createTerm("MS:3", "three", "MS:2", "MS:0"));
+        LocalOntology ontology = new LocalOntology("MS", "ms", terms);
+
+        TermAncestors ancestors = TermAncestors.getAncestors(ontology, "MS:3", "three", "MS");
+
+        assertEquals("MS:3", ancestors.getTermId());
+        assertEquals(4, ancestors.getTermNames().size());
+        assertEquals("root", ancestors.getTermNames().get("MS:0"));
+        assertEquals(Collections.singleton("MS:2"), ancestors.getParents("MS:3"));
+        assertEquals(Collections.singleton("MS:0"), ancestors.getParents("MS:1"));
+
+        assertFalse(TermAncestors.getAncestors(ontology, "MS:0", "root", "MS").hasParents());
+    }
+
+    /**
+     * Returns the given terms, each named after its accession number in
+     * lower case.
+     *
+     * @param termIds the accession numbers
+     * @return the terms, key: accession number, value: term name
+     */
+    private static Map<String, String> createTerms(String... termIds) {
+
+        Map<String, String> terms = new LinkedHashMap<String, String>();
+
+        for (String termId : termIds) {
+            terms.put(termId, termId.toLowerCase());
+        }
+
+        return terms;
+    }
+
+    /**
+     * Returns a local ontology term.
+     *
+     * @param termId the accession number
+     * @param termName the term name
+     * @param parentIds the accession numbers of the parents
+     * @return the term
+     */
+    private static LocalOntology.Term createTerm(String termId, String termName, String... parentIds) {
+
+        LocalOntology.Term term = new LocalOntology.Term();
+        term.id = termId;
+        term.name = termName;
+        term.parentIds.addAll(Arrays.asList(parentIds));
+        return term;
+    }
+}
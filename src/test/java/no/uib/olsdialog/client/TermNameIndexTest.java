@@ -0,0 +1,114 @@
+package no.uib.olsdialog.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the TermNameIndex.
+ */
+public class TermNameIndexTest {
+
+    /**
+     * The index.
+     */
+    private TermNameIndex index;
+
+    /**
+     * Creates an index of a few PSI-MOD and PSI-MS terms.
+     */
+    @Before
+    public void setUp() {
+
+        Map<String, String> modTerms = new LinkedHashMap<String, String>();
+        modTerms.put("MOD:00001", "protein modification");
+        modTerms.put("MOD:00002", "modified protein residue");
+        modTerms.put("MOD:00003", "protein");
+        modTerms.put("MOD:00004", "dimethylated residue");
+        modTerms.put("MOD:00005", "methylated residue");
+        modTerms.put("MOD:00006", "Protein N-terminal modification");
+
+        Map<String, String> msTerms = new LinkedHashMap<String, String>();
+        msTerms.put("MS:1000001", "sample number");
+        msTerms.put("MS:1000002", "protein identification");
+
+        index = new TermNameIndex();
+        index.addOntology("MOD", modTerms);
+        index.addTerms("MS", msTerms);
+    }
+
+    /**
+     * Tests that the terms whose name starts with the search text come first,
+     * then the shorter names, and finally the names in alphabetical order.
+     */
+    @Test
+    public void testRanking() {
+
+        Map<String, String> results = index.search("prot", Collections.singletonList("MOD"), 10);
+
+        assertEquals(Arrays.asList("MOD:00003", "MOD:00001", "MOD:00006", "MOD:00002"),
+                new ArrayList<String>(results.keySet()));
+        assertEquals("protein", results.get("MOD:00003"));
+    }
+
+    /**
+     * Tests that each of the search words must start a word of the term
+     * name, in any order, and that words are not matched in the middle.
+     */
+    @Test
+    public void testWordPrefixes() {
+
+        assertEquals(Collections.singleton("MOD:00006"), index.search("mod n-term", null, 10).keySet());
+        assertEquals(Collections.singleton("MOD:00002"), index.search("res mod", null, 10).keySet());
+
+        // "methyl" is only a word prefix of "methylated"
+        assertEquals(Collections.singleton("MOD:00005"), index.search("methyl", null, 10).keySet());
+    }
+
+    /**
+     * Tests that only the best results are returned, also when searching
+     * several ontologies and when the results of short prefixes are cached.
+     */
+    @Test
+    public void testMaximumResults() {
+
+        List<String> best = new ArrayList<String>(index.search("p", null, 2).keySet());
+        assertEquals(Arrays.asList("MOD:00003", "MOD:00001"), best);
+
+        // cached results for a larger maximum are not mixed up
+        assertEquals(5, index.search("p", null, 10).size());
+        assertEquals(best, new ArrayList<String>(index.search("p", null, 2).keySet()));
+
+        assertEquals(Collections.singleton("MS:1000002"),
+                index.search("protein ident", Arrays.asList("MS", "MOD"), 1).keySet());
+        assertTrue(index.search("", null, 10).isEmpty());
+    }
+
+    /**
+     * Tests that renamed terms are found by their new name only, and that
+     * the complete ontologies are recorded.
+     */
+    @Test
+    public void testRename() {
+
+        assertEquals(1, index.search("sam", null, 10).size());
+
+        Map<String, String> renamedTerms = new LinkedHashMap<String, String>();
+        renamedTerms.put("MS:1000001", "sample name");
+        index.addTerms(renamedTerms);
+
+        assertEquals("sample name", index.search("sam", null, 10).get("MS:1000001"));
+        assertTrue(index.search("number", null, 10).isEmpty());
+        assertEquals(8, index.size());
+
+        assertTrue(index.isComplete("mod"));
+        assertFalse(index.isComplete("MS"));
+    }
+}
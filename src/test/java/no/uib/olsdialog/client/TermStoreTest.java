@@ -0,0 +1,177 @@
+package no.uib.olsdialog.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the TermStore.
+ */
+public class TermStoreTest {
+
+    /**
+     * The store file.
+     */
+    private File file;
+
+    /**
+     * Creates an empty store file.
+     *
+     * @throws IOException if the file cannot be created
+     */
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("terms", ".dat");
+        file.delete();
+    }
+
+    /**
+     * Deletes the store file.
+     */
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Tests that the names, metadata and cross references written are read
+     * back after reopening the store.
+     *
+     * @throws IOException if the store cannot be used
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+
+        Map<String, String> metadata = new LinkedHashMap<String, String>();
+        metadata.put("definition", "A modification.");
+        metadata.put("comment", "\u00e6\u00f8\u00e5");
+
+        Map<String, String> xrefs = new LinkedHashMap<String, String>();
+        xrefs.put("DiffMono", "15.994915");
+
+        TermStore store = TermStore.open(file);
+        assertTrue(store.isWritable());
+        store.putTermName("MOD:00425", "monohydroxylated residue");
+        store.putMetadata("MOD:00425", metadata);
+        store.putXrefs("MOD:00425", xrefs);
+        store.close();
+
+        store = TermStore.open(file);
+
+        try {
+            assertEquals(3, store.size());
+            assertEquals("monohydroxylated residue", store.getTermName("MOD:00425"));
+            assertEquals(metadata, store.getMetadata("MOD:00425"));
+            assertEquals(xrefs, store.getXrefs("MOD:00425"));
+            assertTrue(store.getTimestamp(TermStore.DataType.NAME, "MOD:00425") > 0);
+            assertNull(store.getTermName("MOD:00001"));
+            assertNull(store.getMetadata("MOD:00001"));
+            assertEquals(-1, store.getTimestamp(TermStore.DataType.XREFS, "MOD:00001"));
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * Tests that a newer record replaces the older one, also after
+     * reopening the store.
+     *
+     * @throws IOException if the store cannot be used
+     */
+    @Test
+    public void testNewerRecordReplacesOlder() throws IOException {
+
+        TermStore store = TermStore.open(file);
+        store.putTermName("MS:1000001", "old name");
+        store.putTermName("MS:1000001", "new name");
+        assertEquals("new name", store.getTermName("MS:1000001"));
+        store.close();
+
+        store = TermStore.open(file);
+
+        try {
+            assertEquals(1, store.size());
+            assertEquals("new name", store.getTermName("MS:1000001"));
+            assertEquals(1, store.getTermNames().size());
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * Tests that an incomplete record at the end of the file, e.g., after a
+     * crash, is ignored and the complete records are kept.
+     *
+     * @throws IOException if the store cannot be used
+     */
+    @Test
+    public void testIncompleteLastRecordIgnored() throws IOException {
+
+        TermStore store = TermStore.open(file);
+        store.putTermName("MS:1000001", "sample number");
+        store.close();
+
+        long length = file.length();
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+
+        try {
+            out.seek(length);
+            out.writeInt(1000);
+            out.writeByte(0);
+        } finally {
+            out.close();
+        }
+
+        store = TermStore.open(file);
+
+        try {
+            assertEquals(1, store.size());
+            assertEquals("sample number", store.getTermName("MS:1000001"));
+            assertEquals(length, file.length());
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * Tests that a second store on a locked file is read only and that the
+     * lock is released when the first store is closed.
+     *
+     * @throws IOException if the store cannot be used
+     */
+    @Test
+    public void testLockedFileIsReadOnly() throws IOException {
+
+        TermStore store = TermStore.open(file);
+        store.putTermName("MS:1000001", "sample number");
+
+        TermStore readOnlyStore = TermStore.open(file);
+
+        try {
+            assertFalse(readOnlyStore.isWritable());
+            assertEquals("sample number", readOnlyStore.getTermName("MS:1000001"));
+
+            readOnlyStore.putTermName("MS:1000002", "sample name");
+            assertNull(readOnlyStore.getTermName("MS:1000002"));
+        } finally {
+            readOnlyStore.close();
+            store.close();
+        }
+
+        store = TermStore.open(file);
+
+        try {
+            assertTrue(store.isWritable());
+            assertEquals(1, store.size());
+        } finally {
+            store.close();
+        }
+    }
+}
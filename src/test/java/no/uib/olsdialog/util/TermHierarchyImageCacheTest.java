@@ -0,0 +1,126 @@
+package no.uib.olsdialog.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the TermHierarchyImageCache.
+ */
+public class TermHierarchyImageCacheTest {
+
+    /**
+     * The cache folder.
+     */
+    private File folder;
+
+    /**
+     * Creates an empty cache folder.
+     *
+     * @throws IOException if the folder cannot be created
+     */
+    @Before
+    public void setUp() throws IOException {
+        folder = File.createTempFile("images", "");
+        folder.delete();
+        folder.mkdirs();
+    }
+
+    /**
+     * Deletes the cache folder.
+     */
+    @After
+    public void tearDown() {
+
+        File[] files = folder.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        folder.delete();
+    }
+
+    /**
+     * Tests that the ontology and the accession number are matched
+     * case-insensitively.
+     *
+     * @throws IOException if the cache cannot be accessed
+     */
+    @Test
+    public void testCaseInsensitiveKeys() throws IOException {
+
+        TermHierarchyImageCache cache = new TermHierarchyImageCache(folder, 1000);
+        cache.put("go", "go:0008150", "root", new byte[]{1, 2, 3});
+
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.get("GO", "GO:0008150", "root"));
+        assertNull(cache.get("GO", "GO:0008150", "all"));
+        assertEquals(1, folder.listFiles().length);
+    }
+
+    /**
+     * Tests that the least recently used images are deleted, that recent
+     * temporary files do not count towards the size and that old temporary
+     * files are deleted.
+     *
+     * @throws IOException if the cache cannot be accessed
+     */
+    @Test
+    public void testRemoveLeastRecentlyUsed() throws IOException {
+
+        File recentTemporaryFile = createFile("recent.img.tmp", 100);
+        File oldTemporaryFile = createFile("old.img.tmp", 100);
+        oldTemporaryFile.setLastModified(System.currentTimeMillis() - 2 * 60 * 60 * 1000L);
+
+        TermHierarchyImageCache cache = new TermHierarchyImageCache(folder, 10);
+        cache.put("MS", "MS:1", "root", new byte[6]);
+        cache.put("MS", "MS:2", "root", new byte[4]);
+
+        assertEquals(3, folder.listFiles().length);
+        assertTrue(recentTemporaryFile.exists());
+        assertFalse(oldTemporaryFile.exists());
+
+        // MS:1 is the least recently used
+        for (File file : folder.listFiles()) {
+            if (file.getName().startsWith("MS+MS%3A1+")) {
+                file.setLastModified(System.currentTimeMillis() - 60 * 1000L);
+            }
+        }
+
+        cache.put("MS", "MS:3", "root", new byte[4]);
+
+        assertNull(cache.get("MS", "MS:1", "root"));
+        assertNotNull(cache.get("MS", "MS:2", "root"));
+        assertNotNull(cache.get("MS", "MS:3", "root"));
+    }
+
+    /**
+     * Creates a file of the given size in the cache folder.
+     *
+     * @param name the file name
+     * @param size the size, in bytes
+     * @return the file
+     * @throws IOException if the file cannot be written
+     */
+    private File createFile(String name, int size) throws IOException {
+
+        File file = new File(folder, name);
+        OutputStream out = new FileOutputStream(file);
+
+        try {
+            out.write(new byte[size]);
+        } finally {
+            out.close();
+        }
+
+        return file;
+    }
+}